@@ -6,36 +6,57 @@ import org.springframework.context.annotation.Configuration;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class ExecutorConfig {
 
-    @Value("${sectionPool}")
-    private int sectionPoolSize;
+    @Value("${batchJobPool}")
+    private int batchJobPoolSize;
 
-    @Value("${lessonPool}")
-    private int lessonPoolSize;
+    @Value("${batchJobQueue}")
+    private int batchJobQueueCapacity;
 
-    @Value("${stepPool}")
-    private int stepPoolSize;
+    @Value("${stepikSyncJobPool}")
+    private int stepikSyncJobPoolSize;
+
+    @Value("${stepikSyncJobQueue}")
+    private int stepikSyncJobQueueCapacity;
 
     @Bean(name = "virtualExecutor", destroyMethod = "shutdown")
     public ExecutorService virtualExecutor(){
         return Executors.newVirtualThreadPerTaskExecutor();
     }
 
-    @Bean(name = "sectionExecutor", destroyMethod = "shutdown")
-    public ExecutorService sectionExecutor(){
-        return Executors.newFixedThreadPool(sectionPoolSize);
-    }
-
-    @Bean(name = "lessonExecutor", destroyMethod = "shutdown")
-    public ExecutorService lessonExecutor(){
-        return Executors.newFixedThreadPool(lessonPoolSize);
+    /**
+     * Фоновые batch-генерации: ограниченный пул и очередь, при переполнении задача отклоняется.
+     */
+    @Bean(name = "batchJobExecutor", destroyMethod = "shutdown")
+    public ExecutorService batchJobExecutor(){
+        return new ThreadPoolExecutor(
+                batchJobPoolSize,
+                batchJobPoolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(batchJobQueueCapacity),
+                Thread.ofVirtual().name("batch-job-", 0).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
     }
 
-    @Bean(name = "stepExecutor", destroyMethod = "shutdown")
-    public ExecutorService stepExecutor(){
-        return Executors.newFixedThreadPool(stepPoolSize);
+    /**
+     * Фоновые отправки курсов в Stepik: при переполнении задание остаётся QUEUED в БД и подхватывается позже.
+     */
+    @Bean(name = "stepikSyncJobExecutor", destroyMethod = "shutdown")
+    public ExecutorService stepikSyncJobExecutor(){
+        return new ThreadPoolExecutor(
+                stepikSyncJobPoolSize,
+                stepikSyncJobPoolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(stepikSyncJobQueueCapacity),
+                Thread.ofVirtual().name("stepik-sync-job-", 0).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
     }
 }
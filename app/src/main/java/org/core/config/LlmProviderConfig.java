@@ -0,0 +1,66 @@
+package org.core.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.core.service.agent.llmProvider.CachingLlmProvider;
+import org.core.service.agent.llmProvider.LlmProvider;
+import org.core.service.agent.llmProvider.LlmResponseCache;
+import org.core.service.agent.llmProvider.RoutingLlmProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+@Configuration
+public class LlmProviderConfig {
+
+    @Bean(name = "cachingYandexProvider")
+    public LlmProvider cachingYandexProvider(@Qualifier("yandexProvider") LlmProvider yandexProvider,
+                                             LlmResponseCache llmResponseCache) {
+        return new CachingLlmProvider("yandex", yandexProvider, llmResponseCache);
+    }
+
+    @Bean(name = "cachingDeepseekProvider")
+    public LlmProvider cachingDeepseekProvider(@Qualifier("deepseekProvider") LlmProvider deepseekProvider,
+                                               LlmResponseCache llmResponseCache) {
+        return new CachingLlmProvider("deepseek", deepseekProvider, llmResponseCache);
+    }
+
+    /**
+     * Провайдер интерактивных вызовов: основной маршрут задаётся default.llm.provider,
+     * резервный (для hedging и failover) — llm.routing.fallback.*; provider=none отключает резервный маршрут.
+     */
+    @Bean(name = "routingProvider")
+    public LlmProvider routingProvider(@Value("${default.llm.provider}") String defaultProvider,
+                                       @Value("${llm.routing.fallback.provider}") String fallbackProvider,
+                                       @Value("${llm.routing.fallback.model-uri}") String fallbackModelUri,
+                                       @Value("${llm.routing.hedge.enabled}") boolean hedgeEnabled,
+                                       @Value("${llm.routing.hedge.initial-delay-ms}") long initialHedgeDelayMs,
+                                       @Value("${llm.routing.hedge.min-delay-ms}") long minHedgeDelayMs,
+                                       @Value("${llm.routing.hedge.max-delay-ms}") long maxHedgeDelayMs,
+                                       @Value("${llm.routing.hedge.ratio}") double hedgeRatio,
+                                       @Qualifier("yandexProvider") LlmProvider yandexProvider,
+                                       @Qualifier("deepseekProvider") LlmProvider deepseekProvider,
+                                       @Qualifier("virtualExecutor") ExecutorService virtualExecutor,
+                                       MeterRegistry meterRegistry) {
+        String primaryName = "yandex".equalsIgnoreCase(defaultProvider) ? "yandex" : "deepseek";
+        RoutingLlmProvider.Route primary = new RoutingLlmProvider.Route(primaryName,
+                "yandex".equals(primaryName) ? yandexProvider : deepseekProvider, null);
+
+        RoutingLlmProvider.Route fallback = null;
+        String fallbackUri = fallbackModelUri == null || fallbackModelUri.isBlank() ? null : fallbackModelUri.trim();
+        if ("yandex".equalsIgnoreCase(fallbackProvider) || "deepseek".equalsIgnoreCase(fallbackProvider)) {
+            String fallbackName = fallbackProvider.toLowerCase();
+            if (!fallbackName.equals(primaryName) || fallbackUri != null) {
+                fallback = new RoutingLlmProvider.Route(
+                        fallbackName.equals(primaryName) ? fallbackName + "-fallback" : fallbackName,
+                        "yandex".equals(fallbackName) ? yandexProvider : deepseekProvider,
+                        fallbackUri);
+            }
+        }
+
+        return new RoutingLlmProvider(primary, fallback, virtualExecutor, meterRegistry,
+                hedgeEnabled, initialHedgeDelayMs, minHedgeDelayMs, maxHedgeDelayMs, hedgeRatio);
+    }
+}
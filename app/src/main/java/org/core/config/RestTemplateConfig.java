@@ -1,22 +1,82 @@
 package org.core.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.core.service.stepik.StepikGateway;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Отдельные HTTP-клиенты для каждого внешнего сервиса: restTemplate для Stepik API и OAuth,
+ * llmRestTemplate для YandexGPT и DeepSeek. У каждого свой JDK HttpClient со своим пулом keep-alive соединений,
+ * HTTP/2 там, где его поддерживает сервер, и свои таймауты, поэтому долгие запросы к LLM не занимают соединения Stepik.
+ * Метрики запросов http.client.requests добавляет RestTemplateBuilder, занятость клиента видна по http.client.upstream.in-flight.
+ * Запросы Stepik дополнительно проходят через StepikGateway (лимит темпа, параллельности и повторы).
+ */
 @Configuration
 public class RestTemplateConfig {
 
     @Bean
     public RestTemplate restTemplate(
-            @Value("${http.client.connect-timeout-ms}") int connectTimeoutMs,
-            @Value("${http.client.read-timeout-ms}") int readTimeoutMs
+            RestTemplateBuilder restTemplateBuilder,
+            MeterRegistry meterRegistry,
+            StepikGateway stepikGateway,
+            @Value("${http.client.stepik.connect-timeout-ms}") long connectTimeoutMs,
+            @Value("${http.client.stepik.read-timeout-ms}") long readTimeoutMs
+    ) {
+        return buildRestTemplate("stepik", restTemplateBuilder, meterRegistry, connectTimeoutMs, readTimeoutMs)
+                .additionalInterceptors(stepikGateway)
+                .build();
+    }
+
+    @Bean
+    public RestTemplate llmRestTemplate(
+            RestTemplateBuilder restTemplateBuilder,
+            MeterRegistry meterRegistry,
+            @Value("${http.client.llm.connect-timeout-ms}") long connectTimeoutMs,
+            @Value("${http.client.llm.read-timeout-ms}") long readTimeoutMs
     ) {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(connectTimeoutMs);
-        factory.setReadTimeout(readTimeoutMs);
-        return new RestTemplate(factory);
+        return buildRestTemplate("llm", restTemplateBuilder, meterRegistry, connectTimeoutMs, readTimeoutMs).build();
+    }
+
+    private RestTemplateBuilder buildRestTemplate(String upstream,
+                                           RestTemplateBuilder restTemplateBuilder,
+                                           MeterRegistry meterRegistry,
+                                           long connectTimeoutMs,
+                                           long readTimeoutMs) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+
+        AtomicInteger inFlight = new AtomicInteger();
+        Gauge.builder("http.client.upstream.in-flight", inFlight, AtomicInteger::get)
+                .description("Requests waiting for response headers from the upstream")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        ClientHttpRequestInterceptor inFlightCounter = (request, body, execution) -> {
+            inFlight.incrementAndGet();
+            try {
+                return execution.execute(request, body);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        };
+
+        return restTemplateBuilder
+                .requestFactory(() -> factory)
+                .additionalInterceptors(inFlightCounter);
     }
 }
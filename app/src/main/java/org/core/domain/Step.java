@@ -52,6 +52,10 @@ public class Step {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+
     @PrePersist
     protected void onCreate() {
         this.createdAt = LocalDateTime.now();
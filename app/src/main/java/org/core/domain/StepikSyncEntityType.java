@@ -0,0 +1,7 @@
+package org.core.domain;
+
+public enum StepikSyncEntityType {
+    SECTION,
+    LESSON,
+    STEP
+}
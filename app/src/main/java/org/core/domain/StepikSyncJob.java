@@ -0,0 +1,62 @@
+package org.core.domain;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Фоновая отправка курса в Stepik. heartbeatAt обновляется перед каждой попыткой задачи:
+ * задание RUNNING с устаревшим heartbeatAt считается брошенным (например, после рестарта) и подхватывается снова.
+ * activeCourseId равен courseId, пока задание QUEUED или RUNNING: уникальный индекс по нему не даёт завести
+ * второе активное задание на тот же курс.
+ */
+@Entity
+@Table(name = "stepik_sync_job")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StepikSyncJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "course_id", nullable = false)
+    private Long courseId;
+
+    @Column(name = "active_course_id", unique = true)
+    private Long activeCourseId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private StepikSyncJobStatus status;
+
+    @Column(name = "total_tasks", nullable = false)
+    private Integer totalTasks;
+
+    @Column(name = "error_message", length = 1000)
+    private String errorMessage;
+
+    @Column(name = "heartbeat_at", nullable = false)
+    private LocalDateTime heartbeatAt;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+        if (this.heartbeatAt == null) {
+            this.heartbeatAt = this.createdAt;
+        }
+    }
+}
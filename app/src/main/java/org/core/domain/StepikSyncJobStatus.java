@@ -0,0 +1,10 @@
+package org.core.domain;
+
+public enum StepikSyncJobStatus {
+
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+
+}
@@ -0,0 +1,72 @@
+package org.core.domain;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Задача задания StepikSyncJob: отправить в Stepik один раздел, урок или шаг.
+ * seq — порядок в дереве курса, idempotencyKey ({@code TYPE:entityId}) определяет объект и уникален внутри задания;
+ * между заданиями объект не отправляется дважды, потому что у курса одновременно активно одно задание.
+ */
+@Entity
+@Table(name = "stepik_sync_task", uniqueConstraints = @UniqueConstraint(
+        name = "uk_stepik_sync_task_job_key", columnNames = {"job_id", "idempotency_key"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StepikSyncTask {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entity_type", nullable = false, length = 16)
+    private StepikSyncEntityType entityType;
+
+    @Column(name = "entity_id", nullable = false)
+    private Long entityId;
+
+    @Column(name = "section_id", nullable = false)
+    private Long sectionId;
+
+    @Column(name = "lesson_id")
+    private Long lessonId;
+
+    @Column(name = "seq", nullable = false)
+    private Integer seq;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private StepikSyncTaskStatus status;
+
+    @Column(name = "attempts", nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    @Column(name = "idempotency_key", nullable = false, length = 64)
+    private String idempotencyKey;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public static String idempotencyKey(StepikSyncEntityType entityType, Long entityId) {
+        return entityType + ":" + entityId;
+    }
+}
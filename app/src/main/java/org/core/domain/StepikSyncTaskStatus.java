@@ -0,0 +1,9 @@
+package org.core.domain;
+
+public enum StepikSyncTaskStatus {
+
+    PENDING,
+    DONE,
+    FAILED
+
+}
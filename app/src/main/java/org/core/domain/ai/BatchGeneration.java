@@ -7,6 +7,10 @@ import org.core.domain.User;
 
 import java.time.LocalDateTime;
 
+/**
+ * Запись batch-генерации. Пока задача RUNNING, узел ownerNode, который её выполняет, продлевает heartbeatAt;
+ * задача с устаревшим heartbeatAt считается оборванной остановкой узла.
+ */
 @Entity
 @Table(name = "batch_generation")
 @Getter
@@ -45,9 +49,19 @@ public class BatchGeneration {
     @Column(name = "total_steps", nullable = false)
     private Integer totalSteps;
 
+    @Column(name = "completed_steps", nullable = false)
+    @Builder.Default
+    private Integer completedSteps = 0;
+
     @Column(name = "error_message")
     private String errorMessage;
 
+    @Column(name = "owner_node", length = 64)
+    private String ownerNode;
+
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
@@ -57,5 +71,8 @@ public class BatchGeneration {
     @PrePersist
     protected void onCreate() {
         this.createdAt = LocalDateTime.now();
+        if (this.heartbeatAt == null) {
+            this.heartbeatAt = this.createdAt;
+        }
     }
 }
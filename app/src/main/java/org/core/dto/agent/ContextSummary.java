@@ -0,0 +1,18 @@
+package org.core.dto.agent;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContextSummary {
+    private String text;                // краткое содержание сообщений, вышедших за окно
+    private int lastCoveredFingerprint; // отпечаток последнего свёрнутого сообщения
+    private long version;               // версия истории сессии, по которой посчитано содержание
+}
@@ -24,6 +24,7 @@ public class BatchGenerationHistoryDTO {
     private List<StepikBlockRequest> generatedSteps;
     private String status;
     private Integer totalSteps;
+    private Integer completedSteps;
     private Long lessonId;
     private String errorMessage;
     private LocalDateTime createdAt;
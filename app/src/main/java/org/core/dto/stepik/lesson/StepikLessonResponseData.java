@@ -6,6 +6,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.util.List;
+
 @Getter
 @Setter
 @AllArgsConstructor
@@ -97,4 +99,6 @@ public class StepikLessonResponseData {
 
     private Object units;
 
+    private List<Long> steps;
+
 }
@@ -0,0 +1,34 @@
+package org.core.dto.stepik.sync;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.core.dto.CourseCaptchaChallenge;
+
+import java.time.LocalDateTime;
+
+/**
+ * Прогресс фоновой отправки курса. Если для создания курса нужна капча, задание не заводится:
+ * id пустой, а courseChallenge содержит siteKey.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StepikSyncJobDTO {
+
+    private Long id;
+    private Long courseId;
+    private String status;
+    private Integer totalTasks;
+    private Long completedTasks;
+    private Long failedTasks;
+    private Long pendingTasks;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime completedAt;
+    private CourseCaptchaChallenge courseChallenge;
+}
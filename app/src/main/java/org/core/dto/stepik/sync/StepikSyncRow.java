@@ -0,0 +1,18 @@
+package org.core.dto.stepik.sync;
+
+/**
+ * Строка дерева несинхронизированных объектов: раздел, урок и шаг (урок и шаг могут быть null).
+ */
+public record StepikSyncRow(Long sectionId,
+                            Long stepikSectionId,
+                            Boolean sectionNeedsSync,
+                            Integer sectionPosition,
+                            Long lessonId,
+                            Long stepikLessonId,
+                            Boolean lessonNeedsSync,
+                            Integer lessonPosition,
+                            Long stepId,
+                            Long stepikStepId,
+                            Boolean stepNeedsSync,
+                            Integer stepPosition) {
+}
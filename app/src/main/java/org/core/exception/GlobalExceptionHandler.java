@@ -2,6 +2,8 @@ package org.core.exception;
 
 import lombok.extern.slf4j.Slf4j;
 import org.core.exception.exceptions.*;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -226,6 +228,34 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
     }
 
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ErrorResponse> handleOptimisticLockingFailureException(OptimisticLockingFailureException ex) {
+        log.warn("Concurrent modification: {}", ex.getMessage());
+        ErrorResponse error = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.CONFLICT.value(),
+                "Concurrent modification",
+                ex.getMessage()
+        );
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+
+    @ExceptionHandler(LlmOverloadedException.class)
+    public ResponseEntity<ErrorResponse> handleLlmOverloadedException(LlmOverloadedException ex) {
+        log.warn("LLM overloaded: {}", ex.getMessage());
+        ErrorResponse error = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "LLM overloaded",
+                ex.getMessage()
+        );
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE);
+        if (ex.getRetryAfterSeconds() > 0) {
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+        }
+        return response.body(error);
+    }
+
     @ExceptionHandler(PromptLengthExceededException.class)
     public ResponseEntity<ErrorResponse> handlePromptLengthExceededException(PromptLengthExceededException ex) {
         log.warn("Prompt length exceeded: {}", ex.getMessage());
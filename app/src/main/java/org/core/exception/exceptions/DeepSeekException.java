@@ -4,4 +4,8 @@ public class DeepSeekException extends RuntimeException {
   public DeepSeekException(String message) {
     super(message);
   }
+
+  public DeepSeekException(String message, Throwable cause) {
+    super(message, cause);
+  }
 }
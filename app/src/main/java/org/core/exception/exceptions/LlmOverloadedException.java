@@ -0,0 +1,22 @@
+package org.core.exception.exceptions;
+
+public class LlmOverloadedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public LlmOverloadedException(String message) {
+        this(message, 0);
+    }
+
+    public LlmOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Через сколько секунд имеет смысл повторить запрос; 0 — оценки нет.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
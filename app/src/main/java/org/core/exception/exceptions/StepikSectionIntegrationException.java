@@ -4,4 +4,8 @@ public class StepikSectionIntegrationException extends RuntimeException {
   public StepikSectionIntegrationException(String message) {
     super(message);
   }
+
+  public StepikSectionIntegrationException(String message, Throwable cause) {
+    super(message, cause);
+  }
 }
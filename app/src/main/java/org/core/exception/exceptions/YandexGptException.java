@@ -4,4 +4,8 @@ public class YandexGptException extends RuntimeException {
     public YandexGptException(String message) {
         super(message);
     }
+
+    public YandexGptException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
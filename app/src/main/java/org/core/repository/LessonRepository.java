@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,6 +15,11 @@ import java.util.Optional;
 public interface LessonRepository extends JpaRepository<Lesson, Long> {
     Lesson findByStepikLessonId(Long stepikLessonId);
 
+    List<Lesson> findByStepikLessonIdIn(List<Long> stepikLessonIds);
+
+    @Query("SELECT l FROM Lesson l JOIN FETCH l.section WHERE l.id IN :lessonIds")
+    List<Lesson> findWithSectionByIdIn(@Param("lessonIds") Collection<Long> lessonIds);
+
     @Query("SELECT l from Lesson l where l.section.id = :modelId order by l.position asc")
     List<Lesson> findByModelIdOrderByPositionAsc(@Param("modelId") Long modelId);
     
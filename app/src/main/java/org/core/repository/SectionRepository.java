@@ -15,6 +15,8 @@ public interface SectionRepository extends JpaRepository<Section, Long> {
 
     Section findByStepikSectionId(Long stepikSectionId);
 
+    List<Section> findByStepikSectionIdIn(List<Long> stepikSectionIds);
+
     List<Section> findByCourseIdOrderByPositionAsc(Long courseId);
     
     List<Section> findByCourseIdAndStepikSectionIdIsNullOrderByPositionAsc(Long courseId);
@@ -1,12 +1,14 @@
 package org.core.repository;
 
 import org.core.domain.Step;
+import org.core.dto.stepik.sync.StepikSyncRow;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,9 +16,20 @@ import java.util.Optional;
 public interface StepRepository extends JpaRepository<Step, Long> {
 
     List<Step> findByLessonIdOrderByPositionAsc(Long lessonId);
+
+    @Query("SELECT s FROM Step s WHERE s.lesson.id = :lessonId " +
+            "AND (s.stepikStepId IS NULL OR s.needsStepikSync = true) ORDER BY s.position")
+    List<Step> findStepikDirtyByLessonId(@Param("lessonId") Long lessonId);
+
+    @Query("SELECT new org.core.dto.stepik.sync.StepikSyncRow(m.id, m.stepikSectionId, m.needsStepikSync, m.position, " +
+            "l.id, l.stepikLessonId, l.needsStepikSync, l.position, s.id, s.stepikStepId, s.needsStepikSync, s.position) " +
+            "FROM Step s JOIN s.lesson l JOIN l.section m WHERE s.id IN :stepIds")
+    List<StepikSyncRow> findStepikSyncRowsByIdIn(@Param("stepIds") Collection<Long> stepIds);
     
     Step findByStepikStepId(Long stepikStepId);
 
+    List<Step> findByStepikStepIdIn(List<Long> stepikStepIds);
+
     @Query("SELECT s FROM Step s JOIN FETCH s.lesson WHERE s.stepikStepId = :stepikStepId")
     Optional<Step> findWithLessonByStepikStepId(@Param("stepikStepId") Long stepikStepId);
 
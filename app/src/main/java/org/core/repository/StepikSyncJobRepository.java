@@ -0,0 +1,36 @@
+package org.core.repository;
+
+import org.core.domain.StepikSyncJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StepikSyncJobRepository extends JpaRepository<StepikSyncJob, Long> {
+
+    Optional<StepikSyncJob> findByActiveCourseId(Long courseId);
+
+    /**
+     * Захват задания исполнителем: удаётся только для QUEUED или для RUNNING с истёкшей арендой,
+     * поэтому одно задание не выполняется двумя потоками (или двумя узлами) одновременно.
+     */
+    @Modifying
+    @Query("UPDATE StepikSyncJob j SET j.status = org.core.domain.StepikSyncJobStatus.RUNNING, j.heartbeatAt = :now " +
+            "WHERE j.id = :id AND (j.status = org.core.domain.StepikSyncJobStatus.QUEUED " +
+            "OR (j.status = org.core.domain.StepikSyncJobStatus.RUNNING AND j.heartbeatAt < :staleBefore))")
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now, @Param("staleBefore") LocalDateTime staleBefore);
+
+    @Modifying
+    @Query("UPDATE StepikSyncJob j SET j.heartbeatAt = :now WHERE j.id = :id")
+    int heartbeat(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    @Query("SELECT j.id FROM StepikSyncJob j WHERE j.status IN (org.core.domain.StepikSyncJobStatus.QUEUED, " +
+            "org.core.domain.StepikSyncJobStatus.RUNNING) AND j.heartbeatAt < :staleBefore ORDER BY j.id")
+    List<Long> findStaleIds(@Param("staleBefore") LocalDateTime staleBefore);
+}
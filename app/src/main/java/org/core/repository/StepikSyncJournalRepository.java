@@ -0,0 +1,36 @@
+package org.core.repository;
+
+import org.core.domain.StepikSyncEntityType;
+import org.core.domain.StepikSyncJournalEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface StepikSyncJournalRepository extends JpaRepository<StepikSyncJournalEntry, Long> {
+
+    List<StepikSyncJournalEntry> findByCourseId(Long courseId);
+
+    /**
+     * Добавляет сущность в журнал, если её там ещё нет. Уникальный ключ (entity_type, entity_id) делает вставку
+     * идемпотентной и при гонке двух транзакций, в отличие от проверки existsBy перед save.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO stepik_sync_journal (course_id, entity_type, entity_id, created_at) " +
+            "VALUES (:courseId, :entityType, :entityId, CURRENT_TIMESTAMP) " +
+            "ON DUPLICATE KEY UPDATE course_id = VALUES(course_id)", nativeQuery = true)
+    int upsert(@Param("courseId") Long courseId, @Param("entityType") String entityType, @Param("entityId") Long entityId);
+
+    @Modifying
+    @Query("DELETE FROM StepikSyncJournalEntry e WHERE e.entityType = :entityType AND e.entityId = :entityId")
+    int deleteByEntity(@Param("entityType") StepikSyncEntityType entityType, @Param("entityId") Long entityId);
+
+    @Modifying
+    @Query("DELETE FROM StepikSyncJournalEntry e WHERE e.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,26 @@
+package org.core.repository;
+
+import org.core.domain.StepikSyncTask;
+import org.core.domain.StepikSyncTaskStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StepikSyncTaskRepository extends JpaRepository<StepikSyncTask, Long> {
+
+    List<StepikSyncTask> findByJobIdAndStatusOrderBySeq(Long jobId, StepikSyncTaskStatus status);
+
+    long countByJobIdAndStatus(Long jobId, StepikSyncTaskStatus status);
+
+    @Modifying
+    @Query("UPDATE StepikSyncTask t SET t.status = org.core.domain.StepikSyncTaskStatus.PENDING, t.lastError = NULL, " +
+            "t.updatedAt = :now " +
+            "WHERE t.jobId = :jobId AND t.status = org.core.domain.StepikSyncTaskStatus.FAILED")
+    int reopenFailed(@Param("jobId") Long jobId, @Param("now") LocalDateTime now);
+}
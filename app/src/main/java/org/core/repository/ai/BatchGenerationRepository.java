@@ -7,6 +7,8 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface BatchGenerationRepository extends JpaRepository<BatchGeneration, Long> {
@@ -16,4 +18,24 @@ public interface BatchGenerationRepository extends JpaRepository<BatchGeneration
     @Modifying
     @Query("DELETE FROM BatchGeneration b WHERE b.user.id = :userId")
     void deleteAllByUser_Id(@Param("userId") Long userId);
+
+    @Modifying
+    @Query("UPDATE BatchGeneration b SET b.heartbeatAt = :now " +
+            "WHERE b.id IN :ids AND b.status = org.core.domain.ai.BatchGenerationStatus.RUNNING")
+    int heartbeat(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE BatchGeneration b SET b.status = org.core.domain.ai.BatchGenerationStatus.FAILED, " +
+            "b.errorMessage = :errorMessage, b.completedAt = :now " +
+            "WHERE b.status = org.core.domain.ai.BatchGenerationStatus.RUNNING AND b.ownerNode = :ownerNode")
+    int failRunningOwnedBy(@Param("ownerNode") String ownerNode, @Param("errorMessage") String errorMessage,
+                           @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE BatchGeneration b SET b.status = org.core.domain.ai.BatchGenerationStatus.FAILED, " +
+            "b.errorMessage = :errorMessage, b.completedAt = :now " +
+            "WHERE b.status = org.core.domain.ai.BatchGenerationStatus.RUNNING " +
+            "AND (b.heartbeatAt IS NULL OR b.heartbeatAt < :staleBefore)")
+    int failStale(@Param("staleBefore") LocalDateTime staleBefore, @Param("errorMessage") String errorMessage,
+                  @Param("now") LocalDateTime now);
 }
@@ -1,17 +1,23 @@
 package org.core.rest.ai;
 
+import jakarta.annotation.Resource;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.core.context.UserContextBean;
 import org.core.dto.agent.batchAnalyzer.BatchStepDTO;
 import org.core.dto.stepik.step.StepikBlockRequest;
 import org.core.enums.LlmModel;
+import org.core.exception.exceptions.LlmOverloadedException;
 import org.core.exception.exceptions.PromptLengthExceededException;
 import org.core.exception.exceptions.SubscriptionLimitExceededException;
 import org.core.service.agent.AgentService;
 import org.core.service.ai.AiPromptLimitService;
+import org.core.service.ai.LlmCaller;
+import org.core.service.ai.LlmCallers;
+import org.core.service.ai.LlmWorkload;
 import org.core.service.agent.StepContentModifier;
 import org.core.service.agent.batch.BatchAnalyzerService;
+import org.core.service.agent.batch.BatchGenerationJobService;
 import org.core.service.agent.batch.BatchGeneratorService;
 import org.core.service.agent.StepikRequestParser;
 import org.core.service.ai.BatchSessionMessageService;
@@ -23,8 +29,13 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/agent")
@@ -35,15 +46,20 @@ public class AgentController {
     private final AgentService agentService;
     private final StepikRequestParser stepikRequestParser;
     private final BatchGeneratorService batchGeneratorService;
+    private final BatchGenerationJobService batchGenerationJobService;
     private final BatchAnalyzerService batchAnalyzerService;
     private final BatchSessionMessageService batchSessionMessageService;
     private final StepContentModifier stepContentModifier;
 
     private final SubscriptionService subscriptionService;
     private final AiPromptLimitService aiPromptLimitService;
+    private final LlmCallers llmCallers;
     private final UserContextBean userContextBean;
     private final ObjectMapper objectMapper;
 
+    @Resource(name = "virtualExecutor")
+    private final ExecutorService virtualExecutor;
+
     @PostMapping("/chat")
     public ResponseEntity<?> chat(
             @RequestParam String sessionId,
@@ -56,7 +72,8 @@ public class AgentController {
             subscriptionService.validateModelAccess(userId, model);
             subscriptionService.validateAiGenerationAllowed(userId, 1);
 
-            String response = agentService.handleUserMessage(userId, sessionId, userInput, model);
+            String response = llmCallers.forUser(userId, LlmWorkload.CHAT)
+                    .call(() -> agentService.handleUserMessage(userId, sessionId, userInput, model));
             subscriptionService.recordAiUsage(userId, 1);
             return ResponseEntity.ok(response);
         } catch (IllegalArgumentException e) {
@@ -70,6 +87,8 @@ public class AgentController {
             return ResponseEntity.badRequest().body(e.getMessage());
         } catch (SubscriptionLimitExceededException e) {
             return ResponseEntity.status(403).body(e.getMessage());
+        } catch (LlmOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error in chat endpoint: {}", e.getMessage());
             return ResponseEntity.internalServerError().body("Ошибка при обработке запроса");
@@ -81,7 +100,9 @@ public class AgentController {
             @RequestParam String sessionId,
             @RequestParam(required = false) String stepType,
             @RequestBody String userInput,
-            @RequestParam(required = false) String llmModel) {
+            @RequestParam(required = false) String llmModel,
+            @RequestParam(defaultValue = "false") boolean speculative,
+            @RequestParam(defaultValue = "1") int candidates) {
         Long userId = userContextBean.getUserId();
         try {
             aiPromptLimitService.validateGeneratePrompt(userInput);
@@ -90,12 +111,22 @@ public class AgentController {
             }
             LlmModel model = parseLlmModel(llmModel);
             subscriptionService.validateModelAccess(userId, model);
-            subscriptionService.validateAiGenerationAllowed(userId, 1);
+            // Каждый кандидат — отдельный вызов LLM, списывается как отдельная генерация
+            subscriptionService.validateAiGenerationAllowed(userId, agentService.candidateCount(candidates));
 
-            StepikBlockRequest stepikRequest = agentService.generateStep(userId, sessionId, userInput, stepType, model, true);
-            subscriptionService.recordAiUsage(userId, 1);
+            LlmCaller caller = llmCallers.forUser(userId, LlmWorkload.GENERATE);
+            String resolvedStepType = stepType;
+            AgentService.GeneratedStep generated = caller.call(() -> agentService.generateStep(
+                    userId, sessionId, userInput, resolvedStepType, model, true, candidates));
+            subscriptionService.recordAiUsage(userId, generated.generations());
             log.info("Generated step of type {} for session {} with model {}", stepType, sessionId, model);
-            return ResponseEntity.ok(stepikRequest);
+            if (speculative && subscriptionService.hasAiGenerationsLeft(userId, 1)) {
+                caller.call(() -> {
+                    agentService.speculateNextStep(userId, sessionId, userInput, resolvedStepType, model);
+                    return null;
+                });
+            }
+            return ResponseEntity.ok(generated.request());
         } catch (IllegalArgumentException e) {
             ResponseEntity<?> sessionError = sessionAccessDeniedResponse(e);
             if (sessionError != null) {
@@ -107,12 +138,106 @@ public class AgentController {
             return ResponseEntity.badRequest().body(e.getMessage());
         } catch (SubscriptionLimitExceededException e) {
             return ResponseEntity.status(403).body(e.getMessage());
+        } catch (LlmOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error in generateStep endpoint: {}", e.getMessage());
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(
+            @RequestParam String sessionId,
+            @RequestBody String userInput,
+            @RequestParam(required = false) String llmModel) {
+        Long userId = userContextBean.getUserId();
+        SseEmitter emitter = new SseEmitter();
+        LlmModel model;
+        try {
+            aiPromptLimitService.validateChatPrompt(userInput);
+            model = parseLlmModel(llmModel);
+            subscriptionService.validateModelAccess(userId, model);
+            subscriptionService.validateAiGenerationAllowed(userId, 1);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid LLM model: {}", llmModel);
+            return failStream(emitter, "Неверная модель LLM: " + llmModel);
+        } catch (PromptLengthExceededException | SubscriptionLimitExceededException e) {
+            return failStream(emitter, e.getMessage());
+        }
+
+        LlmCaller caller = llmCallers.forUser(userId, LlmWorkload.CHAT);
+        virtualExecutor.execute(() -> {
+            try {
+                String response = caller.call(() -> agentService.handleUserMessageStream(userId, sessionId, userInput, model,
+                        token -> sendEvent(emitter, "token", token)));
+                subscriptionService.recordAiUsage(userId, 1);
+                sendEvent(emitter, "done", response);
+                emitter.complete();
+            } catch (UncheckedIOException e) {
+                log.warn("Chat stream for session {} closed by client: {}", sessionId, e.getMessage());
+                emitter.completeWithError(e);
+            } catch (Exception e) {
+                log.error("Error in chat stream endpoint: {}", e.getMessage());
+                String message = "Session does not belong to user".equals(e.getMessage())
+                        ? e.getMessage()
+                        : "Ошибка при обработке запроса";
+                failStream(emitter, message);
+            }
+        });
+        return emitter;
+    }
+
+    @PostMapping(value = "/generate-step/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter generateStepStream(
+            @RequestParam String sessionId,
+            @RequestParam(required = false) String stepType,
+            @RequestBody String userInput,
+            @RequestParam(required = false) String llmModel) {
+        Long userId = userContextBean.getUserId();
+        SseEmitter emitter = new SseEmitter();
+        LlmModel model;
+        try {
+            aiPromptLimitService.validateGeneratePrompt(userInput);
+            model = parseLlmModel(llmModel);
+            subscriptionService.validateModelAccess(userId, model);
+            subscriptionService.validateAiGenerationAllowed(userId, 1);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid LLM model: {}", llmModel);
+            return failStream(emitter, "Неверная модель LLM: " + llmModel);
+        } catch (PromptLengthExceededException | SubscriptionLimitExceededException e) {
+            return failStream(emitter, e.getMessage());
+        }
+
+        LlmCaller caller = llmCallers.forUser(userId, LlmWorkload.GENERATE);
+        virtualExecutor.execute(() -> {
+            try {
+                String resolvedStepType = stepType;
+                if (resolvedStepType == null || resolvedStepType.isEmpty()) {
+                    resolvedStepType = agentService.classifyStepTypeFromUserInput(userInput);
+                    sendEvent(emitter, "step-type", resolvedStepType);
+                }
+                String streamStepType = resolvedStepType;
+                StepikBlockRequest stepikRequest = caller.call(() -> agentService.generateStepStream(userId, sessionId,
+                        userInput, streamStepType, model, token -> sendEvent(emitter, "token", token)));
+                subscriptionService.recordAiUsage(userId, 1);
+                log.info("Streamed step of type {} for session {} with model {}", resolvedStepType, sessionId, model);
+                sendEvent(emitter, "done", stepikRequest);
+                emitter.complete();
+            } catch (UncheckedIOException e) {
+                log.warn("Generate-step stream for session {} closed by client: {}", sessionId, e.getMessage());
+                emitter.completeWithError(e);
+            } catch (Exception e) {
+                log.error("Error in generateStep stream endpoint: {}", e.getMessage());
+                String message = "Session does not belong to user".equals(e.getMessage())
+                        ? e.getMessage()
+                        : "Ошибка при генерации шага";
+                failStream(emitter, message);
+            }
+        });
+        return emitter;
+    }
+
     @PostMapping("/generate-batch-steps")
     public ResponseEntity<?> generateBatchSteps(
             @RequestParam String sessionId,
@@ -124,7 +249,7 @@ public class AgentController {
             subscriptionService.validateBatchPlan(userId, batchStepDTO);
 
             int totalSteps = SubscriptionService.countBatchSteps(batchStepDTO);
-            batchGenerationId = batchSessionMessageService.startGeneration(
+            batchGenerationId = batchGenerationJobService.startTracked(
                     userId, buildUserInputFromPlan(batchStepDTO), batchStepDTO, totalSteps);
 
             log.info("Start generating batch steps with plan: {}", batchStepDTO);
@@ -149,6 +274,38 @@ public class AgentController {
             batchSessionMessageService.markFailed(batchGenerationId, e.getMessage());
             log.error("Error in generateBatchSteps endpoint: {}", e.getMessage(), e);
             return ResponseEntity.internalServerError().body("Ошибка при генерации batch шагов");
+        } finally {
+            if (batchGenerationId != null) {
+                batchGenerationJobService.release(batchGenerationId);
+            }
+        }
+    }
+
+    @PostMapping("/generate-batch-steps/jobs")
+    public ResponseEntity<?> submitBatchStepsJob(
+            @RequestParam String sessionId,
+            @RequestBody BatchStepDTO batchStepDTO) {
+        Long userId = userContextBean.getUserId();
+        try {
+            aiPromptLimitService.validateBatchPlan(batchStepDTO);
+            subscriptionService.validateBatchPlan(userId, batchStepDTO);
+
+            log.info("Submitting batch generation job with plan: {}", batchStepDTO);
+            Long batchGenerationId = batchGenerationJobService.submit(
+                    userId, sessionId, buildUserInputFromPlan(batchStepDTO), batchStepDTO);
+            return ResponseEntity.accepted().body(batchGenerationId);
+        } catch (PromptLengthExceededException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid batch plan: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (SubscriptionLimitExceededException e) {
+            return ResponseEntity.status(403).body(e.getMessage());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Очередь batch-генерации переполнена, попробуйте позже");
+        } catch (Exception e) {
+            log.error("Error in submitBatchStepsJob endpoint: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().body("Ошибка при запуске batch-генерации");
         }
     }
 
@@ -157,7 +314,8 @@ public class AgentController {
         try {
             aiPromptLimitService.validateBatchPrompt(userInput);
             log.info("Analyzing batch request: {}", userInput);
-            BatchStepDTO plan = batchAnalyzerService.analyzeUserInput(userInput);
+            BatchStepDTO plan = llmCallers.forUser(userContextBean.getUserId(), LlmWorkload.GENERATE)
+                    .call(() -> batchAnalyzerService.analyzeUserInput(userInput));
             return ResponseEntity.ok(plan);
         } catch (PromptLengthExceededException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -200,6 +358,24 @@ public class AgentController {
         }
     }
 
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private SseEmitter failStream(SseEmitter emitter, String message) {
+        try {
+            emitter.send(SseEmitter.event().name("error").data(message));
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
     private LlmModel parseLlmModel(String llmModel) {
         if (llmModel == null || llmModel.trim().isEmpty()) {
             return null;
@@ -8,6 +8,7 @@ import org.core.dto.ai.AiMessageHistoryDTO;
 import org.core.exception.exceptions.UserNotFoundException;
 import org.core.service.agent.AgentService;
 import org.core.service.ai.AiSessionMessageService;
+import org.core.service.ai.ChatHistoryWriteBehindService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -29,6 +30,7 @@ public class AiSessionController {
 
     private final UserContextBean userContextBean;
     private final AiSessionMessageService aiSessionMessageService;
+    private final ChatHistoryWriteBehindService chatHistoryWriteBehindService;
     private final AgentService agentService;
 
     @GetMapping("/latest")
@@ -61,6 +63,7 @@ public class AiSessionController {
                 log.error("Empty sessionId in history request for userId={}", userId);
                 return ResponseEntity.badRequest().body("SessionId is required");
             }
+            chatHistoryWriteBehindService.flush(sessionId.trim());
             List<AiMessageHistoryDTO> history = aiSessionMessageService.getSessionHistory(userId, sessionId.trim());
 
             log.info("Loaded {} messages for userId={}, sessionId={}", history.size(), userId, sessionId);
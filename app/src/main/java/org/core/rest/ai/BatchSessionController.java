@@ -4,12 +4,18 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.core.context.UserContextBean;
 import org.core.dto.ai.BatchGenerationHistoryDTO;
+import org.core.exception.exceptions.ResourceAccessDeniedException;
+import org.core.service.agent.batch.BatchGenerationJobService;
 import org.core.service.ai.BatchSessionMessageService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -20,6 +26,7 @@ import java.util.List;
 public class BatchSessionController {
 
     private final BatchSessionMessageService batchSessionMessageService;
+    private final BatchGenerationJobService batchGenerationJobService;
     private final UserContextBean userContextBean;
 
     @GetMapping("/history")
@@ -36,6 +43,25 @@ public class BatchSessionController {
         }
     }
 
+    @GetMapping("/{batchGenerationId}")
+    public ResponseEntity<?> getGeneration(@PathVariable Long batchGenerationId) {
+        Long userId = userContextBean.getUserId();
+        try {
+            return ResponseEntity.ok(batchSessionMessageService.getGeneration(userId, batchGenerationId));
+        } catch (ResourceAccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    @GetMapping(value = "/{batchGenerationId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeToGeneration(@PathVariable Long batchGenerationId) {
+        Long userId = userContextBean.getUserId();
+        log.info("Subscribing userId={} to batch generation {} progress", userId, batchGenerationId);
+        return batchGenerationJobService.subscribe(userId, batchGenerationId);
+    }
+
     @DeleteMapping("/history")
     public ResponseEntity<?> clearAllBatchGenerations() {
         Long userId = userContextBean.getUserId();
@@ -6,6 +6,7 @@ import org.core.context.UserContextBean;
 import org.core.dto.ai.GeneratedStepHistoryDTO;
 import org.core.exception.exceptions.UserNotFoundException;
 import org.core.service.ai.AiSessionMessageService;
+import org.core.service.ai.ChatHistoryWriteBehindService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -22,6 +23,7 @@ import java.util.List;
 public class GeneratedStepController {
 
     private final AiSessionMessageService aiSessionMessageService;
+    private final ChatHistoryWriteBehindService chatHistoryWriteBehindService;
     private final UserContextBean userContextBean;
 
     @GetMapping("/history")
@@ -29,6 +31,7 @@ public class GeneratedStepController {
         Long userId = userContextBean.getUserId();
         try {
             log.info("Loading generated steps history for userId={}", userId);
+            chatHistoryWriteBehindService.flushUser(userId);
             List<GeneratedStepHistoryDTO> history = aiSessionMessageService.getGeneratedStepsHistory(userId)
                     .stream()
                     .filter(entry -> entry.getGeneratedStep() != null)
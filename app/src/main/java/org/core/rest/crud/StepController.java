@@ -8,6 +8,8 @@ import org.core.dto.step.CreateStepDTO;
 import org.core.dto.step.StepResponseDTO;
 import org.core.dto.step.UpdateStepDTO;
 import org.core.dto.stepik.step.StepikBlockRequest;
+import org.core.service.ai.LlmCallers;
+import org.core.service.ai.LlmWorkload;
 import org.core.service.crud.StepService;
 import org.core.service.stepik.step.StepTypeChangeService;
 import org.springframework.web.bind.annotation.*;
@@ -22,6 +24,7 @@ public class StepController {
     private final StepService stepService;
     private final StepTypeChangeService stepTypeChangeService;
     private final UserContextBean userContextBean;
+    private final LlmCallers llmCallers;
 
     @GetMapping("/{stepId}")
     public StepResponseDTO getStepById(@PathVariable Long stepId) {
@@ -50,7 +53,8 @@ public class StepController {
             @RequestParam String sessionId
     ){
         Long userId = userContextBean.getUserId();
-        return stepTypeChangeService.changeStepType(stepId, newStepType, sessionId, userId);
+        return llmCallers.forUser(userId, LlmWorkload.GENERATE)
+                .call(() -> stepTypeChangeService.changeStepType(stepId, newStepType, sessionId, userId));
     }
 
     @DeleteMapping("/delete/{stepId}")
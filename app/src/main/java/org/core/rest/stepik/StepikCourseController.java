@@ -7,6 +7,7 @@ import org.core.dto.CourseCaptchaChallenge;
 import org.core.dto.course.CourseResponseDTO;
 import org.core.dto.stepik.FullCourseResponseDTO;
 import org.core.dto.stepik.course.StepikCourseResponseData;
+import org.core.dto.stepik.sync.StepikSyncJobDTO;
 import org.core.service.crud.CourseService;
 import org.core.service.stepik.StepikCascadeDeleteService;
 import org.core.service.stepik.course.StepikCourseSyncService;
@@ -14,7 +15,9 @@ import org.core.service.stepik.course.StepikCourseSyncService;
 import java.util.List;
 
 import org.core.service.stepik.StepikCascadeSyncService;
+import org.core.service.stepik.StepikSyncJobService;
 import org.core.service.stepik.course.getCourseFromStepik.StepikFullCourseService;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -32,6 +35,7 @@ public class StepikCourseController {
 
     private final StepikCascadeDeleteService cascadeDeleteService;
     private final StepikCascadeSyncService stepikCascadeSyncService;
+    private final StepikSyncJobService stepikSyncJobService;
 
     @GetMapping("/unsynced-courses/{userId}")
     public List<CourseResponseDTO> getUnsyncedCoursesByUserId(@PathVariable Long userId) {
@@ -57,6 +61,48 @@ public class StepikCourseController {
         }
     }
 
+    @PostMapping("/sync-course/jobs")
+    public ResponseEntity<StepikSyncJobDTO> submitCourseSyncJob(
+            @RequestParam Long courseId,
+            @RequestParam(required = false) String captchaToken) {
+        try {
+            log.info("Submitting background sync for course: {} with captcha: {}", courseId, captchaToken != null);
+            Long userId = userContextBean.getUserId();
+            StepikSyncJobDTO job = stepikSyncJobService.submit(userId, courseId, captchaToken);
+            return job.getId() != null
+                    ? ResponseEntity.status(HttpStatus.ACCEPTED).body(job)
+                    : ResponseEntity.ok(job);
+        } catch (IllegalStateException e) {
+            log.warn("Background sync failed for course {}: {}", courseId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/sync-jobs/{jobId}")
+    public ResponseEntity<StepikSyncJobDTO> getCourseSyncJob(@PathVariable Long jobId) {
+        try {
+            return ResponseEntity.ok(stepikSyncJobService.getProgress(userContextBean.getUserId(), jobId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @PostMapping("/sync-jobs/{jobId}/resume")
+    public ResponseEntity<StepikSyncJobDTO> resumeCourseSyncJob(
+            @PathVariable Long jobId,
+            @RequestParam(required = false) String captchaToken) {
+        try {
+            log.info("Resuming sync job: {} with captcha: {}", jobId, captchaToken != null);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(stepikSyncJobService.resume(userContextBean.getUserId(), jobId, captchaToken));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            log.warn("Resume failed for sync job {}: {}", jobId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
     @PutMapping("/update-course/{courseId}")
     public ResponseEntity<StepikCourseResponseData> updateCourseInStepik(@PathVariable Long courseId) {
         try {
@@ -1,5 +1,6 @@
 package org.core.service.agent;
 
+import jakarta.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
 import org.core.config.LlmModelConfig;
 import org.core.domain.ai.AiMessageRole;
@@ -8,15 +9,21 @@ import org.core.dto.agent.ChatMessage;
 import org.core.dto.ai.AiMessageHistoryDTO;
 import org.core.dto.stepik.step.StepikBlockRequest;
 import org.core.enums.LlmModel;
+import org.core.exception.exceptions.LlmOverloadedException;
 import org.core.service.agent.llmProvider.LlmProvider;
 import org.core.service.ai.AiSessionMessageService;
+import org.core.service.ai.ChatHistoryWriteBehindService;
+import org.core.service.ai.LlmCallPriority;
+import org.core.service.ai.LlmCaller;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -26,68 +33,45 @@ public class AgentService {
     private final LlmProvider llmProvider;
     private final SystemPromptService systemPromptService;
     private final AiSessionMessageService aiSessionMessageService;
+    private final ChatHistoryWriteBehindService chatHistoryWriteBehindService;
     private final StepikResponseParser responseParser;
     private final StepTypeClassifier stepTypeClassifier;
     private final LlmModelConfig llmModelConfig;
+    private final HistoryCompactor historyCompactor;
+    private final SpeculativeStepCache speculativeStepCache;
+    private final StepCandidateGenerator stepCandidateGenerator;
+    private final ExecutorService virtualExecutor;
 
     public AgentService(ContextStore contextStore,
                         AiSessionMessageService aiSessionMessageService,
+                        ChatHistoryWriteBehindService chatHistoryWriteBehindService,
                         SystemPromptService systemPromptService,
                         StepikResponseParser responseParser,
                         StepTypeClassifier stepTypeClassifier,
                         LlmModelConfig llmModelConfig,
-                        @Value("${default.llm.provider}") String defaultProvider,
-                        @Qualifier("yandexProvider") LlmProvider yandexProvider,
-                        @Qualifier("deepseekProvider") LlmProvider deepseekProvider){
+                        HistoryCompactor historyCompactor,
+                        SpeculativeStepCache speculativeStepCache,
+                        StepCandidateGenerator stepCandidateGenerator,
+                        @Qualifier("virtualExecutor") ExecutorService virtualExecutor,
+                        @Qualifier("routingProvider") LlmProvider llmProvider){
         this.aiSessionMessageService = aiSessionMessageService;
+        this.chatHistoryWriteBehindService = chatHistoryWriteBehindService;
         this.systemPromptService = systemPromptService;
         this.responseParser = responseParser;
         this.contextStore = contextStore;
         this.stepTypeClassifier = stepTypeClassifier;
         this.llmModelConfig = llmModelConfig;
-        this.llmProvider = "yandex".equalsIgnoreCase(defaultProvider) ? yandexProvider : deepseekProvider;
+        this.historyCompactor = historyCompactor;
+        this.speculativeStepCache = speculativeStepCache;
+        this.stepCandidateGenerator = stepCandidateGenerator;
+        this.virtualExecutor = virtualExecutor;
+        this.llmProvider = llmProvider;
     }
 
     public String handleUserMessage(Long userId, String sessionId, String userInput, LlmModel llmModel) {
         try {
-            hydrateContextFromDbIfEmpty(userId, sessionId);
-
-            ChatMessage userMessage = ChatMessage.builder()
-                    .role("user")
-                    .content(userInput)
-                    .build();
-            contextStore.addMessage(sessionId, userMessage);
-
-            aiSessionMessageService.saveMessageToChatHistory(userId,
-                    sessionId,
-                    AiMessageRole.USER,
-                    ChatType.CHAT,
-                    userInput,
-                    null,
-                    null);
-
-            List<ChatMessage> historyForLLM = processHistoryMessage(sessionId);
-            
-            String modelUri = llmModel != null ? llmModelConfig.getModelUri(llmModel) : null;
-            String assistantReply = modelUri != null && !modelUri.trim().isEmpty()
-                    ? llmProvider.chat(historyForLLM, modelUri)
-                    : llmProvider.chat(historyForLLM);
-            ChatMessage assistantMessage = ChatMessage.builder()
-                    .role("assistant")
-                    .content(assistantReply)
-                    .build();
-            contextStore.addMessage(sessionId, assistantMessage);
-
-            aiSessionMessageService.saveMessageToChatHistory(userId,sessionId,
-                    AiMessageRole.ASSISTANT,
-                    ChatType.CHAT,
-                    assistantMessage.getContent(),
-                    null,
-                    null);
-            
-            log.info("Agent response for session {} with model {}: {}", sessionId, llmModel, assistantReply);
-            return assistantReply;
-        } catch (IllegalArgumentException e) {
+            return processUserMessage(userId, sessionId, userInput, llmModel, null);
+        } catch (IllegalArgumentException | LlmOverloadedException e) {
             throw e;
         } catch (Exception e) {
             log.error("Error handling user message for session {}: {}", sessionId, e.getMessage());
@@ -95,6 +79,57 @@ public class AgentService {
         }
     }
 
+    public String handleUserMessageStream(Long userId,
+                                          String sessionId,
+                                          String userInput,
+                                          LlmModel llmModel,
+                                          Consumer<String> onToken) {
+        return processUserMessage(userId, sessionId, userInput, llmModel, onToken);
+    }
+
+    private String processUserMessage(Long userId,
+                                      String sessionId,
+                                      String userInput,
+                                      LlmModel llmModel,
+                                      @Nullable Consumer<String> onToken) {
+        hydrateContextFromDbIfEmpty(userId, sessionId);
+
+        ChatMessage userMessage = ChatMessage.builder()
+                .role("user")
+                .content(userInput)
+                .build();
+        contextStore.addMessage(sessionId, userMessage);
+
+        chatHistoryWriteBehindService.enqueue(userId,
+                sessionId,
+                AiMessageRole.USER,
+                ChatType.CHAT,
+                userInput,
+                null,
+                null);
+
+        List<ChatMessage> historyForLLM = processHistoryMessage(sessionId, llmModel, 0);
+
+        String assistantReply = callLlm(historyForLLM, llmModel, onToken);
+        ChatMessage assistantMessage = ChatMessage.builder()
+                .role("assistant")
+                .content(assistantReply)
+                .build();
+        contextStore.addMessage(sessionId, assistantMessage);
+        historyCompactor.summarizeAsync(sessionId, contextStore.getHistory(sessionId), llmModel, 0);
+
+        chatHistoryWriteBehindService.enqueue(userId,
+                sessionId,
+                AiMessageRole.ASSISTANT,
+                ChatType.CHAT,
+                assistantMessage.getContent(),
+                null,
+                null);
+
+        log.info("Agent response for session {} with model {}: {}", sessionId, llmModel, assistantReply);
+        return assistantReply;
+    }
+
     public StepikBlockRequest generateStep(Long userId, String sessionId, String userInput, String stepType) {
         return generateStep(userId, sessionId, userInput, stepType, null, true);
     }
@@ -109,13 +144,57 @@ public class AgentService {
                                            String stepType,
                                            LlmModel llmModel,
                                            boolean persistHistory) {
+        return generateStep(userId, sessionId, userInput, stepType, llmModel, persistHistory, 1).request();
+    }
+
+    /**
+     * Сколько генераций (вызовов LLM) будет потрачено на запрос с candidates кандидатами.
+     */
+    public int candidateCount(int candidates) {
+        return candidates > 1 ? stepCandidateGenerator.effectiveCount(candidates) : 1;
+    }
+
+    /**
+     * candidates > 1 — параллельно генерируется несколько кандидатов, возвращается первый прошедший валидацию.
+     * Вместе с шагом возвращается, сколько генераций на него реально ушло: готовый спекулятивный ответ — одна.
+     */
+    public GeneratedStep generateStep(Long userId,
+                                      String sessionId,
+                                      String userInput,
+                                      String stepType,
+                                      LlmModel llmModel,
+                                      boolean persistHistory,
+                                      int candidates) {
+        return generateStep(userId, sessionId, userInput, stepType, llmModel, persistHistory, candidates, null);
+    }
+
+    public StepikBlockRequest generateStepStream(Long userId,
+                                                 String sessionId,
+                                                 String userInput,
+                                                 String stepType,
+                                                 LlmModel llmModel,
+                                                 Consumer<String> onToken) {
+        return generateStep(userId, sessionId, userInput, stepType, llmModel, true, 1, onToken).request();
+    }
+
+    private GeneratedStep generateStep(Long userId,
+                                       String sessionId,
+                                       String userInput,
+                                       String stepType,
+                                       LlmModel llmModel,
+                                       boolean persistHistory,
+                                       int candidates,
+                                       @Nullable Consumer<String> onToken) {
         try {
             List<ChatMessage> historyForLLM = new ArrayList<>();
+            int reservedTokens = 0;
+            String contextFingerprint = null;
 
             if (persistHistory) {
                 hydrateContextFromDbIfEmpty(userId, sessionId);
 
                 List<ChatMessage> history = contextStore.getHistory(sessionId);
+                contextFingerprint = SpeculativeStepCache.fingerprint(history);
                 Optional<String> existingStepType = extractStepTypeFromHistory(history);
                 if (existingStepType.isEmpty() || !existingStepType.get().equals(stepType)) {
                     String systemPrompt = systemPromptService.getPromptForQuery(stepType);
@@ -142,8 +221,9 @@ public class AgentService {
                         .content(userInput)
                         .build();
                 contextStore.addMessage(sessionId, userMessage);
-                historyForLLM.addAll(processHistoryMessage(sessionId));
-                aiSessionMessageService.saveMessageToChatHistory(
+                reservedTokens = TokenEstimator.estimate(historyForLLM);
+                historyForLLM.addAll(processHistoryMessage(sessionId, llmModel, reservedTokens));
+                chatHistoryWriteBehindService.enqueue(
                         userId,
                         sessionId,
                         AiMessageRole.USER,
@@ -164,21 +244,36 @@ public class AgentService {
                         .build());
             }
 
-            String modelUri = llmModel != null ? llmModelConfig.getModelUri(llmModel) : null;
-            String aiResponse = modelUri != null && !modelUri.trim().isEmpty()
-                    ? llmProvider.chat(historyForLLM, modelUri)
-                    : llmProvider.chat(historyForLLM);
+            Optional<String> speculativeResponse = persistHistory
+                    ? speculativeStepCache.take(sessionId, stepType, modelKey(llmModel), userInput, contextFingerprint)
+                    : Optional.empty();
+            String aiResponse;
+            int generations = 1;
+            if (speculativeResponse.isPresent()) {
+                aiResponse = speculativeResponse.get();
+                if (onToken != null) {
+                    onToken.accept(aiResponse);
+                }
+            } else if (candidates > 1 && onToken == null) {
+                generations = candidateCount(candidates);
+                aiResponse = LlmCaller.current().withStepType(stepType)
+                        .call(() -> stepCandidateGenerator.generate(userId, historyForLLM, stepType, llmModel, candidates));
+            } else {
+                aiResponse = LlmCaller.current().withStepType(stepType)
+                        .call(() -> callLlm(historyForLLM, llmModel, onToken));
+            }
             if (persistHistory) {
                 ChatMessage assistantMessage = ChatMessage.builder()
                         .role("assistant")
                         .content(aiResponse)
                         .build();
                 contextStore.addMessage(sessionId, assistantMessage);
+                historyCompactor.summarizeAsync(sessionId, contextStore.getHistory(sessionId), llmModel, reservedTokens);
             }
 
             StepikBlockRequest stepikRequest = responseParser.parseResponse(aiResponse, stepType);
             if (persistHistory) {
-                aiSessionMessageService.saveMessageToChatHistory(
+                chatHistoryWriteBehindService.enqueue(
                         userId,
                         sessionId,
                         AiMessageRole.ASSISTANT,
@@ -190,7 +285,7 @@ public class AgentService {
 
             log.info("Successfully generated step for session {}, step type: {}, model: {}, persistHistory: {}",
                     sessionId, stepType, llmModel, persistHistory);
-            return stepikRequest;
+            return new GeneratedStep(stepikRequest, generations);
         } catch (RuntimeException e) {
             throw e;
         } catch (Exception e) {
@@ -199,16 +294,67 @@ public class AgentService {
         }
     }
 
-    private List<ChatMessage> processHistoryMessage(String sessionId) {
+    /**
+     * Фоново генерирует кандидата на повтор того же запроса в сессии: с тем же system-промптом и окном истории,
+     * которые соберёт следующий такой запрос. Кандидат отдаётся через SpeculativeStepCache только при точном совпадении.
+     */
+    public void speculateNextStep(Long userId, String sessionId, String userInput, String stepType, LlmModel llmModel) {
+        if (!speculativeStepCache.isEnabled()) {
+            return;
+        }
+        List<ChatMessage> history = contextStore.getHistory(sessionId);
+        if (!extractStepTypeFromHistory(history).map(stepType::equals).orElse(false)) {
+            return;
+        }
+        ChatMessage lastSystemPrompt = history.stream()
+                .filter(msg -> "system".equals(msg.getRole()))
+                .reduce((first, second) -> second)
+                .orElse(null);
+
+        List<ChatMessage> historyForLLM = new ArrayList<>();
+        if (lastSystemPrompt != null) {
+            historyForLLM.add(lastSystemPrompt);
+        }
+        List<ChatMessage> pendingHistory = new ArrayList<>(history);
+        pendingHistory.add(ChatMessage.builder()
+                .role("user")
+                .content(userInput)
+                .build());
+        historyForLLM.addAll(historyCompactor.compact(sessionId, pendingHistory, llmModel, TokenEstimator.estimate(historyForLLM)));
+
+        LlmCaller caller = LlmCaller.current().withStepType(stepType);
+        CompletableFuture<String> response = CompletableFuture.supplyAsync(() -> caller.call(() -> LlmCallPriority.BATCH.call(() -> {
+            String aiResponse = callLlm(historyForLLM, llmModel, null);
+            responseParser.parseResponse(aiResponse, stepType);
+            return aiResponse;
+        })), virtualExecutor);
+        speculativeStepCache.put(sessionId, stepType, modelKey(llmModel), userInput,
+                SpeculativeStepCache.fingerprint(history), response);
+        log.info("Started speculative {} step for session {} of user {}", stepType, sessionId, userId);
+    }
+
+    private static String modelKey(@Nullable LlmModel llmModel) {
+        return llmModel != null ? llmModel.name() : null;
+    }
+
+    private String callLlm(List<ChatMessage> historyForLLM, LlmModel llmModel, @Nullable Consumer<String> onToken) {
+        String modelUri = llmModel != null ? llmModelConfig.getModelUri(llmModel) : null;
+        if (onToken != null) {
+            return llmProvider.chatStream(historyForLLM, modelUri, onToken);
+        }
+        return modelUri != null && !modelUri.trim().isEmpty()
+                ? llmProvider.chat(historyForLLM, modelUri)
+                : llmProvider.chat(historyForLLM);
+    }
+
+    /**
+     * Окно истории под бюджет токенов модели; reservedTokens уже заняты system-промптом запроса.
+     */
+    private List<ChatMessage> processHistoryMessage(String sessionId, LlmModel llmModel, int reservedTokens) {
         List<ChatMessage> history = contextStore.getHistory(sessionId);
-        int windowSize = 16;
         if (history.isEmpty()) return history;
 
-        int startIndex = Math.max(0, history.size() - windowSize);
-        return history.subList(startIndex, history.size())
-                .stream()
-                .filter(chatMessage -> !chatMessage.getRole().equals("system"))
-                .toList();
+        return historyCompactor.compact(sessionId, history, llmModel, reservedTokens);
     }
 
     public String classifyStepTypeFromUserInput(String userInput){
@@ -227,8 +373,10 @@ public class AgentService {
     }
     
     public void clearSession(Long userId, String sessionId) {
+        chatHistoryWriteBehindService.discard(userId, sessionId);
         aiSessionMessageService.clearSession(userId, sessionId);
         contextStore.clearSession(sessionId);
+        speculativeStepCache.discard(sessionId);
         log.info("Cleared session in database and memory: {}", sessionId);
     }
 
@@ -237,6 +385,7 @@ public class AgentService {
             return;
         }
 
+        chatHistoryWriteBehindService.flush(sessionId);
         List<AiMessageHistoryDTO> dbHistory = aiSessionMessageService.getSessionHistory(userId, sessionId);
         for (AiMessageHistoryDTO message : dbHistory) {
             contextStore.addMessage(sessionId, ChatMessage.builder()
@@ -250,4 +399,6 @@ public class AgentService {
             log.info("Hydrated {} messages from database into context for session {}", dbHistory.size(), sessionId);
         }
     }
+
+    public record GeneratedStep(StepikBlockRequest request, int generations) {}
 }
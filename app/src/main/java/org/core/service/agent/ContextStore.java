@@ -1,33 +1,40 @@
 package org.core.service.agent;
 
-import lombok.extern.slf4j.Slf4j;
+import jakarta.annotation.Nullable;
 import org.core.dto.agent.ChatMessage;
-import org.springframework.stereotype.Service;
+import org.core.dto.agent.ContextSummary;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-@Service
-@Slf4j
-public class ContextStore {
-    
-    private final Map<String, List<ChatMessage>> sessions = new ConcurrentHashMap<>();
-    
-    public List<ChatMessage> getHistory(String sessionId) {
-        return sessions.computeIfAbsent(sessionId, id -> new ArrayList<>());
-    }
-    
-    public void addMessage(String sessionId, ChatMessage message) {
-        List<ChatMessage> history = getHistory(sessionId);
-        history.add(message);
-        log.debug("Added message to session {}: {} - {}", sessionId, message.getRole(), message.getContent());
-    }
-    
-    public void clearSession(String sessionId) {
-        sessions.remove(sessionId);
-        log.debug("Cleared session: {}", sessionId);
-    }
-    
+
+/**
+ * Хранилище скользящего окна сообщений чат-сессии.
+ * Реализация выбирается свойством context.store.backend: memory (по умолчанию) или redis.
+ */
+public interface ContextStore {
+
+    /**
+     * Неизменяемый снимок истории сессии; пустой список, если сессии нет.
+     */
+    List<ChatMessage> getHistory(String sessionId);
+
+    void addMessage(String sessionId, ChatMessage message);
+
+    void clearSession(String sessionId);
+
+    /**
+     * Версия истории сессии, растёт с каждым сообщением; 0 — сессии нет.
+     */
+    long getVersion(String sessionId);
+
+    /**
+     * Скользящее краткое содержание сессии. Хранится вместе с историей и удаляется вместе с ней,
+     * поэтому доступно любому узлу, который обслуживает сессию.
+     */
+    @Nullable
+    ContextSummary getSummary(String sessionId);
+
+    /**
+     * Сохраняет краткое содержание, если уже сохранённое посчитано не по более новой версии истории.
+     */
+    void putSummary(String sessionId, ContextSummary summary);
 }
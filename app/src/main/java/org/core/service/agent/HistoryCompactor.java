@@ -0,0 +1,215 @@
+package org.core.service.agent;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.core.dto.agent.ChatMessage;
+import org.core.dto.agent.ContextSummary;
+import org.core.enums.LlmModel;
+import org.core.service.agent.llmProvider.LlmProvider;
+import org.core.service.ai.LlmCallPriority;
+import org.core.service.ai.LlmCaller;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Подгоняет историю чата под бюджет токенов модели.
+ * В окно попадают самые свежие сообщения, которые помещаются в бюджет; всё, что старше окна,
+ * после каждого ответа асинхронно сворачивается в скользящее краткое содержание сессии,
+ * которое подставляется перед окном отдельным system-сообщением. Содержание хранится в ContextStore рядом с историей,
+ * поэтому переживает переход сессии на другой узел.
+ */
+@Service
+@Slf4j
+public class HistoryCompactor {
+
+    private static final String BUDGET_PROPERTY_PREFIX = "context.window.budget-tokens.";
+    private static final String SUMMARY_PREFIX = "Краткое содержание более ранней части диалога:\n";
+    private static final int SUMMARY_MESSAGE_MAX_CHARS = 4000;
+    private static final String SUMMARY_SYSTEM_PROMPT = """
+            Ты ведёшь краткое содержание диалога пользователя с ассистентом по созданию онлайн-курсов.
+            Обнови краткое содержание с учётом новых сообщений: сохрани тему курса, требования и решения пользователя,
+            уже сгенерированные материалы и открытые вопросы. Не добавляй ничего от себя.
+            Ответь только текстом краткого содержания, не длиннее %d слов.""";
+
+    private final LlmProvider llmProvider;
+    private final ContextStore contextStore;
+    private final ExecutorService virtualExecutor;
+    private final Environment environment;
+    private final int defaultBudgetTokens;
+    private final int maxWindowMessages;
+    private final int summaryMaxTokens;
+    private final Set<String> summarizing = ConcurrentHashMap.newKeySet();
+
+    public HistoryCompactor(@Value("${default.llm.provider}") String defaultProvider,
+                            @Qualifier("yandexProvider") LlmProvider yandexProvider,
+                            @Qualifier("deepseekProvider") LlmProvider deepseekProvider,
+                            ContextStore contextStore,
+                            @Qualifier("virtualExecutor") ExecutorService virtualExecutor,
+                            Environment environment,
+                            @Value("${context.window.budget-tokens.default}") int defaultBudgetTokens,
+                            @Value("${context.window.max-messages}") int maxWindowMessages,
+                            @Value("${context.window.summary.max-tokens}") int summaryMaxTokens) {
+        this.llmProvider = "yandex".equalsIgnoreCase(defaultProvider) ? yandexProvider : deepseekProvider;
+        this.contextStore = contextStore;
+        this.virtualExecutor = virtualExecutor;
+        this.environment = environment;
+        this.defaultBudgetTokens = defaultBudgetTokens;
+        this.maxWindowMessages = maxWindowMessages;
+        this.summaryMaxTokens = summaryMaxTokens;
+    }
+
+    /**
+     * Возвращает сообщения истории без system-промптов, уложенные в бюджет модели за вычетом reservedTokens
+     * (например, system-промпт, который вызывающий добавит сам). Последнее сообщение попадает в окно всегда.
+     */
+    public List<ChatMessage> compact(String sessionId, List<ChatMessage> history, @Nullable LlmModel llmModel, int reservedTokens) {
+        List<ChatMessage> dialog = dialogOf(history);
+        int windowStart = windowStart(dialog, llmModel, reservedTokens);
+        if (windowStart == 0) {
+            return dialog;
+        }
+
+        List<ChatMessage> compacted = new ArrayList<>(dialog.size() - windowStart + 1);
+        ContextSummary summary = contextStore.getSummary(sessionId);
+        if (summary != null) {
+            compacted.add(ChatMessage.builder()
+                    .role("system")
+                    .content(SUMMARY_PREFIX + summary.getText())
+                    .build());
+        }
+        compacted.addAll(dialog.subList(windowStart, dialog.size()));
+        log.debug("Compacted history of session {}: {} of {} messages in window, summary: {}",
+                sessionId, dialog.size() - windowStart, dialog.size(), summary != null);
+        return compacted;
+    }
+
+    /**
+     * Асинхронно дописывает в краткое содержание сессии сообщения, вышедшие за окно.
+     * Для одной сессии одновременно выполняется не больше одного пересчёта.
+     */
+    public void summarizeAsync(String sessionId, List<ChatMessage> history, @Nullable LlmModel llmModel, int reservedTokens) {
+        List<ChatMessage> dialog = dialogOf(history);
+        int windowStart = windowStart(dialog, llmModel, reservedTokens);
+        if (windowStart == 0) {
+            return;
+        }
+        long version = contextStore.getVersion(sessionId);
+        if (!summarizing.add(sessionId)) {
+            return;
+        }
+
+        LlmCaller caller = LlmCaller.current();
+        try {
+            virtualExecutor.execute(() -> {
+                try {
+                    caller.call(() -> {
+                        summarize(sessionId, version, dialog.subList(0, windowStart));
+                        return null;
+                    });
+                } catch (Exception e) {
+                    log.warn("Failed to update rolling summary for session {}: {}", sessionId, e.getMessage());
+                } finally {
+                    summarizing.remove(sessionId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            summarizing.remove(sessionId);
+            log.warn("Rolling summary for session {} was not scheduled: {}", sessionId, e.getMessage());
+        }
+    }
+
+    private void summarize(String sessionId, long version, List<ChatMessage> outOfWindow) {
+        ContextSummary previous = contextStore.getSummary(sessionId);
+        int from = 0;
+        if (previous != null) {
+            for (int i = outOfWindow.size() - 1; i >= 0; i--) {
+                if (fingerprint(outOfWindow.get(i)) == previous.getLastCoveredFingerprint()) {
+                    from = i + 1;
+                    break;
+                }
+            }
+        }
+        List<ChatMessage> fresh = outOfWindow.subList(from, outOfWindow.size());
+        if (fresh.isEmpty()) {
+            return;
+        }
+
+        StringBuilder request = new StringBuilder();
+        if (previous != null) {
+            request.append("Текущее краткое содержание:\n").append(previous.getText()).append("\n\n");
+        }
+        request.append("Новые сообщения:\n");
+        for (ChatMessage message : fresh) {
+            String content = message.getContent() == null ? "" : message.getContent();
+            if (content.length() > SUMMARY_MESSAGE_MAX_CHARS) {
+                content = content.substring(0, SUMMARY_MESSAGE_MAX_CHARS) + "…";
+            }
+            request.append(message.getRole()).append(": ").append(content).append('\n');
+        }
+
+        List<ChatMessage> messages = List.of(
+                ChatMessage.builder().role("system").content(SUMMARY_SYSTEM_PROMPT.formatted(summaryMaxTokens / 2)).build(),
+                ChatMessage.builder().role("user").content(request.toString()).build());
+        String text = LlmCallPriority.BATCH.call(() -> llmProvider.chat(messages, null, summaryMaxTokens));
+        if (text == null || text.isBlank()) {
+            return;
+        }
+
+        contextStore.putSummary(sessionId, ContextSummary.builder()
+                .text(text.trim())
+                .lastCoveredFingerprint(fingerprint(fresh.get(fresh.size() - 1)))
+                .version(version)
+                .build());
+        log.info("Updated rolling summary for session {}: folded {} messages", sessionId, fresh.size());
+    }
+
+    /**
+     * Индекс первого сообщения окна. Если вся история не помещается, из бюджета заранее вычитается место
+     * под краткое содержание, чтобы окно при сжатии и при пересчёте содержания совпадало.
+     */
+    private int windowStart(List<ChatMessage> dialog, @Nullable LlmModel llmModel, int reservedTokens) {
+        int budget = budgetFor(llmModel) - reservedTokens;
+        if (dialog.size() <= maxWindowMessages && TokenEstimator.estimate(dialog) <= budget) {
+            return 0;
+        }
+
+        int remaining = budget - summaryMaxTokens;
+        int start = dialog.size();
+        while (start > 0 && dialog.size() - start < maxWindowMessages) {
+            int tokens = TokenEstimator.estimate(dialog.get(start - 1));
+            if (tokens > remaining && start < dialog.size()) {
+                break;
+            }
+            remaining -= tokens;
+            start--;
+        }
+        return start;
+    }
+
+    private int budgetFor(@Nullable LlmModel llmModel) {
+        if (llmModel == null) {
+            return defaultBudgetTokens;
+        }
+        String key = BUDGET_PROPERTY_PREFIX + llmModel.name().toLowerCase().replace('_', '-');
+        return environment.getProperty(key, Integer.class, defaultBudgetTokens);
+    }
+
+    private static List<ChatMessage> dialogOf(List<ChatMessage> history) {
+        return history.stream()
+                .filter(message -> !"system".equals(message.getRole()))
+                .toList();
+    }
+
+    private static int fingerprint(ChatMessage message) {
+        return (message.getRole() + '\u0000' + message.getContent()).hashCode();
+    }
+}
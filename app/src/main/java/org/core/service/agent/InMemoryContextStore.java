@@ -0,0 +1,224 @@
+package org.core.service.agent;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.core.dto.agent.ChatMessage;
+import org.core.dto.agent.ContextSummary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Контекст чатов в памяти узла с ограничениями:
+ * не больше maxMessagesPerSession обычных сообщений на сессию (system-промпты хранятся отдельно, не больше двух),
+ * вытеснение сессий по простою и по LRU при превышении общего бюджета памяти.
+ */
+@Service
+@ConditionalOnProperty(name = "context.store.backend", havingValue = "memory", matchIfMissing = true)
+@Slf4j
+public class InMemoryContextStore implements ContextStore {
+
+    private static final int MAX_SYSTEM_MESSAGES = 2;
+    private static final int MESSAGE_OVERHEAD_BYTES = 64;
+
+    private final Map<String, SessionContext> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    private final int maxMessagesPerSession;
+    private final long idleTtlMillis;
+    private final long maxBytes;
+
+    public InMemoryContextStore(@Value("${context.store.max-messages-per-session}") int maxMessagesPerSession,
+                        @Value("${context.store.idle-ttl-seconds}") long idleTtlSeconds,
+                        @Value("${context.store.max-bytes}") long maxBytes,
+                        MeterRegistry meterRegistry) {
+        this.maxMessagesPerSession = maxMessagesPerSession;
+        this.idleTtlMillis = idleTtlSeconds * 1000;
+        this.maxBytes = maxBytes;
+
+        Gauge.builder("context.store.sessions", sessions, Map::size)
+                .description("Chat sessions held in memory")
+                .register(meterRegistry);
+        Gauge.builder("context.store.retained.bytes", retainedBytes, AtomicLong::get)
+                .description("Estimated size of chat messages held in memory")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<ChatMessage> getHistory(String sessionId) {
+        SessionContext context = sessions.get(sessionId);
+        return context != null ? context.snapshot() : List.of();
+    }
+
+    @Override
+    public void addMessage(String sessionId, ChatMessage message) {
+        long delta;
+        do {
+            SessionContext context = sessions.computeIfAbsent(sessionId, id -> new SessionContext());
+            delta = context.append(message);
+        } while (delta == Long.MIN_VALUE);
+        retainedBytes.addAndGet(delta);
+        log.debug("Added message to session {}: {} - {}", sessionId, message.getRole(), message.getContent());
+
+        if (retainedBytes.get() > maxBytes) {
+            evictLeastRecentlyUsed(sessionId);
+        }
+    }
+
+    @Override
+    public void clearSession(String sessionId) {
+        SessionContext context = sessions.remove(sessionId);
+        if (context != null) {
+            retainedBytes.addAndGet(-context.close());
+        }
+        log.debug("Cleared session: {}", sessionId);
+    }
+
+    @Override
+    public long getVersion(String sessionId) {
+        SessionContext context = sessions.get(sessionId);
+        return context != null ? context.version() : 0L;
+    }
+
+    @Override
+    @Nullable
+    public ContextSummary getSummary(String sessionId) {
+        SessionContext context = sessions.get(sessionId);
+        return context != null ? context.summary() : null;
+    }
+
+    @Override
+    public void putSummary(String sessionId, ContextSummary summary) {
+        SessionContext context = sessions.get(sessionId);
+        if (context != null) {
+            context.putSummary(summary);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${context.store.eviction-interval-ms}")
+    public void evictIdleSessions() {
+        long threshold = System.currentTimeMillis() - idleTtlMillis;
+        int evicted = 0;
+        for (Iterator<Map.Entry<String, SessionContext>> it = sessions.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, SessionContext> entry = it.next();
+            if (entry.getValue().lastAccessMillis() < threshold && sessions.remove(entry.getKey(), entry.getValue())) {
+                retainedBytes.addAndGet(-entry.getValue().close());
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            log.info("Evicted {} idle chat sessions from memory, {} remain", evicted, sessions.size());
+        }
+    }
+
+    private void evictLeastRecentlyUsed(String currentSessionId) {
+        List<Map.Entry<String, SessionContext>> candidates = new ArrayList<>(sessions.entrySet());
+        candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccessMillis()));
+        for (Map.Entry<String, SessionContext> entry : candidates) {
+            if (retainedBytes.get() <= maxBytes) {
+                return;
+            }
+            if (entry.getKey().equals(currentSessionId)) {
+                continue;
+            }
+            if (sessions.remove(entry.getKey(), entry.getValue())) {
+                retainedBytes.addAndGet(-entry.getValue().close());
+                log.info("Evicted chat session {} from memory: retained bytes over budget {}", entry.getKey(), maxBytes);
+            }
+        }
+    }
+
+    private static long estimateBytes(ChatMessage message) {
+        String content = message.getContent();
+        return MESSAGE_OVERHEAD_BYTES + (content != null ? content.length() * 2L : 0);
+    }
+
+    private final class SessionContext {
+
+        private final List<ChatMessage> messages = new ArrayList<>();
+        private long bytes;
+        private long version;
+        private ContextSummary summary;
+        private volatile long lastAccessMillis = System.currentTimeMillis();
+        private boolean closed;
+
+        synchronized List<ChatMessage> snapshot() {
+            lastAccessMillis = System.currentTimeMillis();
+            return List.copyOf(messages);
+        }
+
+        /**
+         * Возвращает изменение занятой памяти или Long.MIN_VALUE, если сессию уже вытеснили.
+         */
+        synchronized long append(ChatMessage message) {
+            if (closed) {
+                return Long.MIN_VALUE;
+            }
+            lastAccessMillis = System.currentTimeMillis();
+            long before = bytes;
+            version++;
+            messages.add(message);
+            bytes += estimateBytes(message);
+            trim();
+            return bytes - before;
+        }
+
+        synchronized long version() {
+            return version;
+        }
+
+        synchronized ContextSummary summary() {
+            return summary;
+        }
+
+        synchronized void putSummary(ContextSummary candidate) {
+            if (!closed && (summary == null || summary.getVersion() < candidate.getVersion())) {
+                summary = candidate;
+            }
+        }
+
+        synchronized long close() {
+            closed = true;
+            long released = bytes;
+            summary = null;
+            messages.clear();
+            bytes = 0;
+            return released;
+        }
+
+        long lastAccessMillis() {
+            return lastAccessMillis;
+        }
+
+        private void trim() {
+            long systemCount = messages.stream().filter(m -> "system".equals(m.getRole())).count();
+            long regularCount = messages.size() - systemCount;
+            Iterator<ChatMessage> it = messages.iterator();
+            while (it.hasNext() && (regularCount > maxMessagesPerSession || systemCount > MAX_SYSTEM_MESSAGES)) {
+                ChatMessage message = it.next();
+                boolean system = "system".equals(message.getRole());
+                if (system && systemCount > MAX_SYSTEM_MESSAGES) {
+                    it.remove();
+                    bytes -= estimateBytes(message);
+                    systemCount--;
+                } else if (!system && regularCount > maxMessagesPerSession) {
+                    it.remove();
+                    bytes -= estimateBytes(message);
+                    regularCount--;
+                }
+            }
+        }
+    }
+}
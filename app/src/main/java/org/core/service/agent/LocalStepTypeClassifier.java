@@ -0,0 +1,140 @@
+package org.core.service.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Быстрая локальная классификация типа шага по взвешенным ключевым фрагментам из classifier-keywords.txt.
+ * Фрагменты сравниваются целыми словами, "*" в конце слова допускает любое окончание.
+ * Возвращает тип только при достаточном счёте и отрыве от второго кандидата, иначе решение остаётся за LLM.
+ */
+@Component
+@Slf4j
+public class LocalStepTypeClassifier {
+
+    private static final String KEYWORDS_PATH = "classpath:prompts/stepik/classifier-keywords.txt";
+    private static final String WORD_CHAR = "[\\p{L}\\p{N}]";
+    private static final String WORD_START = "(?<!" + WORD_CHAR + ")";
+    private static final String WORD_END = "(?!" + WORD_CHAR + ")";
+
+    private final List<CompiledRule> rules;
+    private final double minScore;
+    private final double minMargin;
+
+    public LocalStepTypeClassifier(ResourceLoader resourceLoader,
+                                   @Value("${step.classifier.local.min-score}") double minScore,
+                                   @Value("${step.classifier.local.min-margin}") double minMargin) {
+        this(loadRules(resourceLoader), minScore, minMargin);
+    }
+
+    LocalStepTypeClassifier(List<KeywordRule> rules, double minScore, double minMargin) {
+        this.rules = rules.stream()
+                .map(rule -> new CompiledRule(rule, compile(rule.fragment())))
+                .toList();
+        this.minScore = minScore;
+        this.minMargin = minMargin;
+    }
+
+    public Optional<String> classify(String userInput) {
+        if (userInput == null || userInput.isBlank()) {
+            return Optional.empty();
+        }
+        String normalized = userInput.toLowerCase(Locale.ROOT).replace('ё', 'е');
+
+        Map<String, Double> scores = new HashMap<>();
+        for (CompiledRule compiled : rules) {
+            if (compiled.pattern().matcher(normalized).find()) {
+                scores.merge(compiled.rule().stepType(), compiled.rule().weight(), Double::sum);
+            }
+        }
+
+        String bestType = null;
+        double best = 0;
+        double second = 0;
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            double score = entry.getValue();
+            if (score > best) {
+                second = best;
+                best = score;
+                bestType = entry.getKey();
+            } else if (score > second) {
+                second = score;
+            }
+        }
+
+        if (bestType == null || best < minScore || best - second < minMargin) {
+            log.debug("Local step type classification is not confident: best={}, score={}, second={}", bestType, best, second);
+            return Optional.empty();
+        }
+        return Optional.of(bestType);
+    }
+
+    static List<KeywordRule> parseRules(String content) {
+        List<KeywordRule> rules = new ArrayList<>();
+        for (String line : content.split("\\R")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] parts = trimmed.split("\\|");
+            if (parts.length != 3) {
+                log.warn("Skipping malformed classifier keyword line: {}", trimmed);
+                continue;
+            }
+            rules.add(new KeywordRule(
+                    parts[0].trim(),
+                    Double.parseDouble(parts[1].trim()),
+                    parts[2].trim().toLowerCase(Locale.ROOT).replace('ё', 'е')));
+        }
+        return List.copyOf(rules);
+    }
+
+    /**
+     * Фрагмент в регулярное выражение по границам слов, например "правильн* ответ*" →
+     * (?<![\p{L}\p{N}])правильн[\p{L}\p{N}]*\s+ответ[\p{L}\p{N}]*(?![\p{L}\p{N}])
+     */
+    static Pattern compile(String fragment) {
+        StringBuilder regex = new StringBuilder(WORD_START);
+        String[] words = fragment.trim().split("\\s+");
+        for (int i = 0; i < words.length; i++) {
+            String word = words[i];
+            if (i > 0) {
+                regex.append("\\s+");
+            }
+            if (word.endsWith("*")) {
+                regex.append(Pattern.quote(word.substring(0, word.length() - 1))).append(WORD_CHAR).append('*');
+            } else {
+                regex.append(Pattern.quote(word));
+            }
+        }
+        return Pattern.compile(regex.append(WORD_END).toString());
+    }
+
+    private static List<KeywordRule> loadRules(ResourceLoader resourceLoader) {
+        try {
+            Resource resource = resourceLoader.getResource(KEYWORDS_PATH);
+            return parseRules(resource.getContentAsString(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load classifier keywords", e);
+        }
+    }
+
+    record KeywordRule(String stepType, double weight, String fragment) {
+    }
+
+    private record CompiledRule(KeywordRule rule, Pattern pattern) {
+    }
+}
@@ -0,0 +1,288 @@
+package org.core.service.agent;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.core.dto.agent.ChatMessage;
+import org.core.dto.agent.ContextSummary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Контекст чатов в Redis, общий для всех узлов: system-промпты и обычные сообщения лежат в двух списках,
+ * которые обрезаются LTRIM до размера окна. Каждая запись увеличивает счётчик версии сессии,
+ * по нему узел проверяет свой near-cache и перечитывает списки только если сессию меняли на другом узле.
+ */
+@Service
+@ConditionalOnProperty(name = "context.store.backend", havingValue = "redis")
+@Slf4j
+public class RedisContextStore implements ContextStore {
+
+    private static final String KEY_PREFIX = "ctx:";
+    private static final int MAX_SYSTEM_MESSAGES = 2;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final int maxMessagesPerSession;
+    private final Duration idleTtl;
+    private final Map<String, CachedHistory> nearCache;
+
+    public RedisContextStore(RedisTemplate<String, Object> redisTemplate,
+                             @Value("${context.store.max-messages-per-session}") int maxMessagesPerSession,
+                             @Value("${context.store.idle-ttl-seconds}") long idleTtlSeconds,
+                             @Value("${context.store.near-cache.max-sessions}") int maxNearCacheSessions,
+                             MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.maxMessagesPerSession = maxMessagesPerSession;
+        this.idleTtl = Duration.ofSeconds(idleTtlSeconds);
+        this.nearCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedHistory> eldest) {
+                return size() > maxNearCacheSessions;
+            }
+        };
+
+        Gauge.builder("context.store.sessions", nearCache, this::nearCacheSize)
+                .description("Chat sessions held in the node-local near-cache")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<ChatMessage> getHistory(String sessionId) {
+        CachedHistory cached;
+        synchronized (nearCache) {
+            cached = nearCache.get(sessionId);
+        }
+
+        try {
+            long version = toLong(redisTemplate.opsForValue().get(versionKey(sessionId)));
+            if (version == 0) {
+                evictLocal(sessionId);
+                return List.of();
+            }
+            if (cached != null && cached.version() == version) {
+                return cached.messages();
+            }
+            return reload(sessionId);
+        } catch (DataAccessException e) {
+            log.warn("Failed to read context of session {} from Redis: {}", sessionId, e.getMessage());
+            return cached != null ? cached.messages() : List.of();
+        }
+    }
+
+    @Override
+    public void addMessage(String sessionId, ChatMessage message) {
+        boolean system = "system".equals(message.getRole());
+        String listKey = system ? systemKey(sessionId) : messagesKey(sessionId);
+        int window = system ? MAX_SYSTEM_MESSAGES : maxMessagesPerSession;
+
+        try {
+            List<Object> results = pipelined(operations -> {
+                operations.opsForList().rightPush(listKey, message);
+                operations.opsForList().trim(listKey, -window, -1);
+                operations.opsForValue().increment(versionKey(sessionId));
+                operations.expire(systemKey(sessionId), idleTtl);
+                operations.expire(messagesKey(sessionId), idleTtl);
+                operations.expire(versionKey(sessionId), idleTtl);
+                operations.expire(summaryKey(sessionId), idleTtl);
+            });
+            appendLocal(sessionId, lastNumber(results), message);
+            log.debug("Added message to session {}: {} - {}", sessionId, message.getRole(), message.getContent());
+        } catch (DataAccessException e) {
+            log.warn("Failed to write context of session {} to Redis: {}", sessionId, e.getMessage());
+            evictLocal(sessionId);
+        }
+    }
+
+    @Override
+    public void clearSession(String sessionId) {
+        evictLocal(sessionId);
+        try {
+            redisTemplate.delete(List.of(systemKey(sessionId), messagesKey(sessionId), versionKey(sessionId),
+                    summaryKey(sessionId)));
+        } catch (DataAccessException e) {
+            log.warn("Failed to clear context of session {} in Redis: {}", sessionId, e.getMessage());
+        }
+        log.debug("Cleared session: {}", sessionId);
+    }
+
+    @Override
+    public long getVersion(String sessionId) {
+        try {
+            return toLong(redisTemplate.opsForValue().get(versionKey(sessionId)));
+        } catch (DataAccessException e) {
+            log.warn("Failed to read context version of session {} from Redis: {}", sessionId, e.getMessage());
+            return 0L;
+        }
+    }
+
+    @Override
+    @Nullable
+    public ContextSummary getSummary(String sessionId) {
+        try {
+            return redisTemplate.opsForValue().get(summaryKey(sessionId)) instanceof ContextSummary summary ? summary : null;
+        } catch (DataAccessException e) {
+            log.warn("Failed to read context summary of session {} from Redis: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * WATCH на ключе содержания: если его параллельно перезаписал другой узел, EXEC не выполнится,
+     * и более свежее содержание не будет затёрто.
+     */
+    @Override
+    public void putSummary(String sessionId, ContextSummary summary) {
+        String key = summaryKey(sessionId);
+        try {
+            redisTemplate.execute(new SessionCallback<List<Object>>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> List<Object> execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                    ops.watch(key);
+                    if (ops.opsForValue().get(key) instanceof ContextSummary current
+                            && current.getVersion() >= summary.getVersion()) {
+                        ops.unwatch();
+                        return List.of();
+                    }
+                    ops.multi();
+                    ops.opsForValue().set(key, summary, idleTtl);
+                    return ops.exec();
+                }
+            });
+        } catch (DataAccessException e) {
+            log.warn("Failed to write context summary of session {} to Redis: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * Команды пишутся в один pipeline, результаты возвращаются в порядке вызова.
+     */
+    private List<Object> pipelined(Consumer<RedisOperations<String, Object>> commands) {
+        return redisTemplate.executePipelined(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> List<Object> execute(RedisOperations<K, V> operations) {
+                // executePipelined передаёт сюда сам redisTemplate, типы ключей и значений совпадают
+                commands.accept((RedisOperations<String, Object>) operations);
+                return null;
+            }
+        });
+    }
+
+    private List<ChatMessage> reload(String sessionId) {
+        List<Object> results = pipelined(operations -> {
+            operations.opsForValue().get(versionKey(sessionId));
+            operations.opsForList().range(systemKey(sessionId), 0, -1);
+            operations.opsForList().range(messagesKey(sessionId), 0, -1);
+        });
+
+        List<ChatMessage> messages = new ArrayList<>();
+        addAll(messages, results.get(1));
+        addAll(messages, results.get(2));
+        List<ChatMessage> snapshot = List.copyOf(messages);
+
+        synchronized (nearCache) {
+            nearCache.put(sessionId, new CachedHistory(toLong(results.get(0)), snapshot));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Дописывает сообщение в near-cache, только если он отстаёт ровно на эту запись;
+     * иначе сессию меняли с другого узла и её перечитаем при следующем чтении.
+     */
+    private void appendLocal(String sessionId, long version, ChatMessage message) {
+        synchronized (nearCache) {
+            CachedHistory cached = nearCache.get(sessionId);
+            if (cached == null || cached.version() != version - 1) {
+                nearCache.remove(sessionId);
+                return;
+            }
+            List<ChatMessage> system = new ArrayList<>();
+            List<ChatMessage> regular = new ArrayList<>();
+            for (ChatMessage existing : cached.messages()) {
+                ("system".equals(existing.getRole()) ? system : regular).add(existing);
+            }
+            List<ChatMessage> target = "system".equals(message.getRole()) ? system : regular;
+            target.add(message);
+            int window = target == system ? MAX_SYSTEM_MESSAGES : maxMessagesPerSession;
+            if (target.size() > window) {
+                target.subList(0, target.size() - window).clear();
+            }
+            system.addAll(regular);
+            nearCache.put(sessionId, new CachedHistory(version, List.copyOf(system)));
+        }
+    }
+
+    private void evictLocal(String sessionId) {
+        synchronized (nearCache) {
+            nearCache.remove(sessionId);
+        }
+    }
+
+    private int nearCacheSize(Map<String, CachedHistory> cache) {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static void addAll(List<ChatMessage> target, Object range) {
+        if (range instanceof List<?> values) {
+            for (Object value : values) {
+                if (value instanceof ChatMessage message) {
+                    target.add(message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Версия сессии — последний числовой ответ pipeline: EXPIRE отвечает Boolean, а статусный ответ LTRIM
+     * Lettuce в результаты не кладёт вовсе, поэтому позиция INCR в списке зависит от драйвера.
+     */
+    private static long lastNumber(List<Object> results) {
+        for (int i = results.size() - 1; i >= 0; i--) {
+            if (results.get(i) instanceof Number number) {
+                return number.longValue();
+            }
+        }
+        return 0L;
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+
+    // Hash tag держит ключи одной сессии в одном слоте Redis Cluster
+    private static String systemKey(String sessionId) {
+        return KEY_PREFIX + "{" + sessionId + "}:system";
+    }
+
+    private static String messagesKey(String sessionId) {
+        return KEY_PREFIX + "{" + sessionId + "}:messages";
+    }
+
+    private static String versionKey(String sessionId) {
+        return KEY_PREFIX + "{" + sessionId + "}:version";
+    }
+
+    private static String summaryKey(String sessionId) {
+        return KEY_PREFIX + "{" + sessionId + "}:summary";
+    }
+
+    private record CachedHistory(long version, List<ChatMessage> messages) {}
+}
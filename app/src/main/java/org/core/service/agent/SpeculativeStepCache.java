@@ -0,0 +1,141 @@
+package org.core.service.agent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.core.dto.agent.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Заранее сгенерированные ответы для генерации шага: не больше одного кандидата на сессию.
+ * Кандидат отдаётся, только если следующий запрос сессии совпадает по типу шага, модели и тексту промпта,
+ * а контекст сессии с момента генерации не менялся. Любой другой запрос сессии кандидата выбрасывает.
+ */
+@Component
+@Slf4j
+public class SpeculativeStepCache {
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final Map<String, Candidate> candidates;
+    private final Counter started;
+    private final Counter served;
+    private final Counter discarded;
+
+    public SpeculativeStepCache(@Value("${agent.speculative.enabled}") boolean enabled,
+                                @Value("${agent.speculative.ttl-seconds}") long ttlSeconds,
+                                @Value("${agent.speculative.max-sessions}") int maxSessions,
+                                MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.candidates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Candidate> eldest) {
+                return size() > maxSessions;
+            }
+        };
+        this.started = meterRegistry.counter("agent.speculative.steps", "outcome", "started");
+        this.served = meterRegistry.counter("agent.speculative.steps", "outcome", "served");
+        this.discarded = meterRegistry.counter("agent.speculative.steps", "outcome", "discarded");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void put(String sessionId, String stepType, @Nullable String model, String userInput,
+                    String contextFingerprint, CompletableFuture<String> response) {
+        Candidate candidate = new Candidate(key(stepType, model, userInput), contextFingerprint, response,
+                System.currentTimeMillis() + ttlMillis);
+        synchronized (candidates) {
+            candidates.put(sessionId, candidate);
+        }
+        started.increment();
+    }
+
+    /**
+     * Забирает кандидата сессии. Ещё не готовый кандидат дожидается: он стартовал раньше, чем стартовал бы новый вызов.
+     * Возвращает пустой Optional, если кандидата нет, он не подходит, устарел или завершился ошибкой.
+     */
+    public Optional<String> take(String sessionId, String stepType, @Nullable String model, String userInput,
+                                 String contextFingerprint) {
+        Candidate candidate;
+        synchronized (candidates) {
+            candidate = candidates.remove(sessionId);
+        }
+        if (candidate == null) {
+            return Optional.empty();
+        }
+        if (!candidate.key().equals(key(stepType, model, userInput))
+                || !candidate.contextFingerprint().equals(contextFingerprint)
+                || candidate.expiresAtMillis() < System.currentTimeMillis()) {
+            discard(candidate);
+            return Optional.empty();
+        }
+        try {
+            String response = candidate.response().join();
+            served.increment();
+            log.info("Served speculative {} step for session {}", stepType, sessionId);
+            return Optional.of(response);
+        } catch (CompletionException e) {
+            discarded.increment();
+            log.debug("Speculative step for session {} failed: {}", sessionId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public void discard(String sessionId) {
+        Candidate candidate;
+        synchronized (candidates) {
+            candidate = candidates.remove(sessionId);
+        }
+        if (candidate != null) {
+            discard(candidate);
+        }
+    }
+
+    /**
+     * Отпечаток состояния контекста сессии: последнее сообщение и размер истории.
+     */
+    public static String fingerprint(List<ChatMessage> history) {
+        if (history.isEmpty()) {
+            return "empty";
+        }
+        ChatMessage last = history.get(history.size() - 1);
+        return history.size() + ":" + sha256(last.getRole() + '\u0000' + last.getContent());
+    }
+
+    private void discard(Candidate candidate) {
+        candidate.response().cancel(false);
+        discarded.increment();
+    }
+
+    private static String key(String stepType, @Nullable String model, String userInput) {
+        return stepType + '\u0000' + (model == null ? "auto" : model) + '\u0000' + sha256(userInput.strip());
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record Candidate(String key, String contextFingerprint, CompletableFuture<String> response, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,140 @@
+package org.core.service.agent;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.core.config.LlmModelConfig;
+import org.core.dto.agent.ChatMessage;
+import org.core.dto.stepik.step.StepikBlockRequest;
+import org.core.enums.LlmModel;
+import org.core.service.agent.llmProvider.LlmProvider;
+import org.core.service.ai.LlmCallPriority;
+import org.core.service.ai.LlmCaller;
+import org.core.service.stepik.step.validator.StepBlockValidator;
+import org.core.service.subscription.SubscriptionService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Параллельная генерация нескольких кандидатов шага: первый кандидат выбранной модели, остальные — на более дешёвых
+ * моделях из agent.candidates.models, доступных пользователю по подписке. Каждый кандидат проверяется StepBlockValidator по мере готовности,
+ * возвращается первый годный, остальные вызовы отменяются.
+ */
+@Component
+@Slf4j
+public class StepCandidateGenerator {
+
+    private final LlmProvider llmProvider;
+    private final LlmModelConfig llmModelConfig;
+    private final StepikResponseParser responseParser;
+    private final StepBlockValidator stepBlockValidator;
+    private final SubscriptionService subscriptionService;
+    private final ExecutorService virtualExecutor;
+    private final int maxCandidates;
+    private final List<LlmModel> candidateModels;
+
+    public StepCandidateGenerator(@Qualifier("routingProvider") LlmProvider llmProvider,
+                                  LlmModelConfig llmModelConfig,
+                                  StepikResponseParser responseParser,
+                                  StepBlockValidator stepBlockValidator,
+                                  SubscriptionService subscriptionService,
+                                  @Qualifier("virtualExecutor") ExecutorService virtualExecutor,
+                                  @Value("${agent.candidates.max}") int maxCandidates,
+                                  @Value("${agent.candidates.models}") List<LlmModel> candidateModels) {
+        this.llmProvider = llmProvider;
+        this.llmModelConfig = llmModelConfig;
+        this.responseParser = responseParser;
+        this.stepBlockValidator = stepBlockValidator;
+        this.subscriptionService = subscriptionService;
+        this.virtualExecutor = virtualExecutor;
+        this.maxCandidates = maxCandidates;
+        this.candidateModels = List.copyOf(candidateModels);
+    }
+
+    /**
+     * Сколько кандидатов реально будет запущено на запрошенное количество.
+     */
+    public int effectiveCount(int requested) {
+        return Math.max(1, Math.min(requested, maxCandidates));
+    }
+
+    /**
+     * Возвращает сырой ответ первого кандидата, прошедшего проверку. Если не прошёл ни один —
+     * бросает ошибку последнего завершившегося кандидата.
+     */
+    public String generate(Long userId, List<ChatMessage> messages, String stepType, @Nullable LlmModel llmModel,
+                           int requested) {
+        List<LlmModel> models = modelsFor(userId, llmModel, effectiveCount(requested));
+        LlmCallPriority priority = LlmCallPriority.current();
+        LlmCaller caller = LlmCaller.current();
+        CompletableFuture<String> winner = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(models.size());
+        AtomicReference<RuntimeException> lastError = new AtomicReference<>();
+
+        List<Future<?>> calls = new ArrayList<>(models.size());
+        for (int i = 0; i < models.size(); i++) {
+            LlmModel model = models.get(i);
+            int index = i;
+            calls.add(virtualExecutor.submit(() -> {
+                try {
+                    String response = caller.call(() -> priority.call(() -> chat(messages, model)));
+                    List<String> problems = stepBlockValidator.findProblems(responseParser.parseResponse(response, stepType));
+                    if (problems.isEmpty()) {
+                        if (winner.complete(response)) {
+                            log.info("Step candidate {} ({}) accepted for step type {}", index, model, stepType);
+                        }
+                        return;
+                    }
+                    log.warn("Step candidate {} ({}) rejected for step type {}: {}", index, model, stepType, problems);
+                    lastError.set(new RuntimeException("Generated step is invalid: " + String.join("; ", problems)));
+                } catch (RuntimeException e) {
+                    log.warn("Step candidate {} ({}) failed: {}", index, model, e.getMessage());
+                    lastError.set(e);
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    winner.completeExceptionally(lastError.get());
+                }
+            }));
+        }
+
+        try {
+            return winner.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        } finally {
+            calls.forEach(call -> call.cancel(true));
+        }
+    }
+
+    /**
+     * Первым идёт запрошенная модель (null — модель провайдера по умолчанию), дальше по кругу дешёвые модели,
+     * к которым у пользователя есть доступ; если таких нет, все кандидаты идут на запрошенной модели.
+     */
+    List<LlmModel> modelsFor(Long userId, @Nullable LlmModel llmModel, int count) {
+        List<LlmModel> allowed = count > 1
+                ? candidateModels.stream().filter(model -> subscriptionService.hasModelAccess(userId, model)).toList()
+                : List.of();
+        List<LlmModel> models = new ArrayList<>(count);
+        models.add(llmModel);
+        for (int i = 0; models.size() < count; i++) {
+            models.add(allowed.isEmpty() ? llmModel : allowed.get(i % allowed.size()));
+        }
+        return models;
+    }
+
+    private String chat(List<ChatMessage> messages, @Nullable LlmModel llmModel) {
+        String modelUri = llmModel != null ? llmModelConfig.getModelUri(llmModel) : null;
+        return modelUri != null && !modelUri.trim().isEmpty()
+                ? llmProvider.chat(messages, modelUri)
+                : llmProvider.chat(messages);
+    }
+}
@@ -1,51 +1,66 @@
 package org.core.service.agent;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.core.dto.agent.ChatMessage;
 import org.core.service.agent.llmProvider.LlmProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 @Service
 @Slf4j
 public class StepTypeClassifier {
     
-    private final ResourceLoader resourceLoader;
+    private final SystemPromptService systemPromptService;
+    private final LocalStepTypeClassifier localStepTypeClassifier;
     private final LlmProvider llmProvider;
-    
-    private static final String CLASSIFIER_PROMPT_PATH = "classpath:prompts/stepik/classifier.txt";
+    private final Counter localHits;
+    private final Counter llmFallbacks;
     
     private static final Set<String> VALID_TYPES = Set.of(
         "choice", "matching", "sorting", "table", "fill-blanks",
         "text", "free-answer", "string", "number", "math", "random-tasks"
     );
 
-    public StepTypeClassifier(ResourceLoader resourceLoader,
+    public StepTypeClassifier(SystemPromptService systemPromptService,
+            LocalStepTypeClassifier localStepTypeClassifier,
+            MeterRegistry meterRegistry,
             @Value("${default.llm.provider}") String defaultProvider,
-            @Qualifier("yandexProvider") LlmProvider yandexProvider,
-            @Qualifier("deepseekProvider") LlmProvider deepseekProvider){
-        this.resourceLoader = resourceLoader;
+            @Qualifier("cachingYandexProvider") LlmProvider yandexProvider,
+            @Qualifier("cachingDeepseekProvider") LlmProvider deepseekProvider){
+        this.systemPromptService = systemPromptService;
+        this.localStepTypeClassifier = localStepTypeClassifier;
+        this.localHits = Counter.builder("step.classifier.requests")
+                .tag("source", "local")
+                .description("Step type classifications resolved without the LLM")
+                .register(meterRegistry);
+        this.llmFallbacks = Counter.builder("step.classifier.requests")
+                .tag("source", "llm")
+                .description("Step type classifications escalated to the LLM")
+                .register(meterRegistry);
         this.llmProvider = "yandex".equalsIgnoreCase(defaultProvider) ? yandexProvider : deepseekProvider;
     }
 
     public String detectStepType(String userInput) {
+        Optional<String> localType = localStepTypeClassifier.classify(userInput);
+        if (localType.isPresent() && VALID_TYPES.contains(localType.get())) {
+            localHits.increment();
+            log.debug("Step type {} detected locally", localType.get());
+            return localType.get();
+        }
+        llmFallbacks.increment();
         return classifyViaLLM(userInput);
     }
 
     private String classifyViaLLM(String userInput) {
         try {
-            String classifierPrompt = loadClassifierPrompt();
+            String classifierPrompt = systemPromptService.getPromptForQuery("classifier");
             List<ChatMessage> messages = List.of(
                 ChatMessage.builder()
                     .role("system")
@@ -75,14 +90,4 @@ public class StepTypeClassifier {
             .replaceAll("[\"'.,!?]", "")
             .split("\\s+")[0];
     }
-
-    private String loadClassifierPrompt() {
-        try {
-            Resource resource = resourceLoader.getResource(CLASSIFIER_PROMPT_PATH);
-            return resource.getContentAsString(StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to load classifier prompt", e);
-        }
-    }
 }
-
@@ -49,22 +49,34 @@ public class StepikResponseParser {
     private final CodeStepParser codeStepParser;
 
     public StepikBlockRequest parseResponse(String aiResponse, String stepType) {
+        JsonNode node;
         try {
-            String cleanJson = extractJsonFromResponse(aiResponse);
+            node = LENIENT_MAPPER.readTree(extractJsonFromResponse(aiResponse));
+        } catch (Exception e) {
+            log.error("Failed to parse AI response for step type {}: {}", stepType, e.getMessage());
+            throw new RuntimeException("Invalid AI response format: " + e.getMessage());
+        }
+        return parseResponse(node, stepType);
+    }
 
+    /**
+     * Разбор уже прочитанного JSON шага, без повторной сериализации в строку (используется BatchStepParser).
+     */
+    public StepikBlockRequest parseResponse(JsonNode node, String stepType) {
+        try {
             return switch (stepType.toLowerCase()) {
-                case "choice" -> choiceStepParser.parseChoiceRequest(cleanJson);
-                case "text" -> textStepParser.parseTextRequest(cleanJson);
-                case "free-answer" -> freeAnswerStepParser.parseFreeAnswerRequest(cleanJson);
-                case "sorting" -> sortingStepParser.parseSortingRequest(cleanJson);
-                case "matching" -> matchingStepParser.parseMatchingRequest(cleanJson);
-                case "table" -> tableStepParser.parseTableRequest(cleanJson);
-                case "fill-blanks" -> fillBlanksStepParser.parseFillBlanksRequest(cleanJson);
-                case "math" -> mathStepParser.parseMathRequest(cleanJson);
-                case "string" -> stringStepParser.parseStringRequest(cleanJson);
-                case "random-tasks" -> randomTasksStepParser.parseRandomTasksRequest(cleanJson);
-                case "number" -> numberStepParser.parseNumberRequest(cleanJson);
-                case "code" -> codeStepParser.parseCodeRequest(cleanJson);
+                case "choice" -> choiceStepParser.parseChoiceRequest(node);
+                case "text" -> textStepParser.parseTextRequest(node);
+                case "free-answer" -> freeAnswerStepParser.parseFreeAnswerRequest(node);
+                case "sorting" -> sortingStepParser.parseSortingRequest(node);
+                case "matching" -> matchingStepParser.parseMatchingRequest(node);
+                case "table" -> tableStepParser.parseTableRequest(node);
+                case "fill-blanks" -> fillBlanksStepParser.parseFillBlanksRequest(node);
+                case "math" -> mathStepParser.parseMathRequest(node);
+                case "string" -> stringStepParser.parseStringRequest(node);
+                case "random-tasks" -> randomTasksStepParser.parseRandomTasksRequest(node);
+                case "number" -> numberStepParser.parseNumberRequest(node);
+                case "code" -> codeStepParser.parseCodeRequest(node);
                 default -> throw new IllegalArgumentException("Unsupported step type: " + stepType);
             };
             
@@ -134,21 +146,7 @@ public class StepikResponseParser {
             cleaned = cleaned.replace("\\\"", "\"");
         }
         
-        cleaned = cleaned.trim();
-        return normalizeJson(cleaned);
-    }
-
-    private String normalizeJson(String json) {
-        if (json == null || json.isEmpty()) {
-            return json;
-        }
-        try {
-            JsonNode node = LENIENT_MAPPER.readTree(json);
-            return LENIENT_MAPPER.writeValueAsString(node);
-        } catch (Exception e) {
-            log.warn("Failed to normalize JSON, using raw value: {}", e.getMessage());
-            return json;
-        }
+        return cleaned.trim();
     }
 
 }
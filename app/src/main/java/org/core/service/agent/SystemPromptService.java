@@ -2,56 +2,42 @@ package org.core.service.agent;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.ResourceLoader;
+import org.core.service.agent.prompt.PromptRegistry;
+import org.core.service.agent.prompt.PromptTemplate;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class SystemPromptService {
-    
-    private final ResourceLoader resourceLoader;
-    private final Map<String, String> promptCache = new ConcurrentHashMap<>();
-    
+
+    private static final String BATCH_FALLBACK_TEMPLATE = "_fallback";
+
+    private final PromptRegistry promptRegistry;
+
     public String getPromptForQuery(String query) {
-        return promptCache.computeIfAbsent(query, type -> {
-            try {
-                Resource resource = resourceLoader.getResource("classpath:prompts/stepik/" + type + ".txt");
-                return resource.getContentAsString(StandardCharsets.UTF_8);
-            } catch (IOException e) {
-                throw new RuntimeException("Prompt not found for type: {}, using default");
-            }
-        });
+        return promptRegistry.get(PromptRegistry.Namespace.STEP, query).text();
+    }
+
+    /**
+     * Разобранный batch-шаблон для типа шага; пустой, если для типа нет отдельного шаблона.
+     */
+    public Optional<PromptTemplate> getBatchTemplate(String query) {
+        Optional<PromptTemplate> template = promptRegistry.find(PromptRegistry.Namespace.BATCH, query);
+        if (template.isEmpty()) {
+            log.error("Batch prompt not found for type: {}, will use fallback", query);
+        }
+        return template;
     }
 
-    public String getBatchPromptByQuery(String query){
-        String cacheKey = "batch-creator-" + query;
-        return promptCache.computeIfAbsent(cacheKey, type -> {
-            try{
-                Resource resource = resourceLoader.getResource("classpath:prompts/stepik/batch-creator/" + query + ".txt");
-                return resource.getContentAsString(StandardCharsets.UTF_8);
-            }catch (IOException e) {
-                log.error("Batch prompt not found for type: {}, will use fallback", query);
-                return null;
-            }
-        });
+    public PromptTemplate getBatchFallbackTemplate() {
+        return promptRegistry.get(PromptRegistry.Namespace.BATCH, BATCH_FALLBACK_TEMPLATE);
     }
 
     public String getAnalyzerPromptByQuery(String query) {
-        return promptCache.computeIfAbsent(query, type -> {
-            try {
-                Resource resource = resourceLoader.getResource("classpath:prompts/stepik/analyzer/" + type + ".txt");
-                return resource.getContentAsString(StandardCharsets.UTF_8);
-            } catch (IOException e) {
-                throw new RuntimeException("Prompt not found for type: {}, using default");
-            }
-        });
+        return promptRegistry.get(PromptRegistry.Namespace.ANALYZER, query).text();
     }
 
 }
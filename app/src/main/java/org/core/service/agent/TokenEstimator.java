@@ -0,0 +1,53 @@
+package org.core.service.agent;
+
+import org.core.dto.agent.ChatMessage;
+
+import java.util.List;
+
+/**
+ * Грубая оценка числа токенов без токенизатора модели.
+ * Кириллица режется токенизаторами мельче латиницы, поэтому считается по ~2.5 символа на токен,
+ * латиница и цифры по ~4, знаки препинания по токену на символ. Пробелы не учитываются.
+ */
+public final class TokenEstimator {
+
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cyrillic = 0;
+        int latin = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            if (Character.UnicodeBlock.of(c) == Character.UnicodeBlock.CYRILLIC) {
+                cyrillic++;
+            } else if (Character.isLetterOrDigit(c)) {
+                latin++;
+            } else {
+                other++;
+            }
+        }
+        return (int) Math.ceil(cyrillic / 2.5 + latin / 4.0 + other);
+    }
+
+    public static int estimate(ChatMessage message) {
+        return MESSAGE_OVERHEAD_TOKENS + estimate(message.getContent());
+    }
+
+    public static int estimate(List<ChatMessage> messages) {
+        int total = 0;
+        for (ChatMessage message : messages) {
+            total += estimate(message);
+        }
+        return total;
+    }
+}
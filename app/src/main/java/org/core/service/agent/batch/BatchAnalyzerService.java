@@ -9,13 +9,23 @@ import org.core.dto.stepik.step.text.StepikBlockTextRequest;
 import org.core.exception.exceptions.YandexGptException;
 import org.core.service.agent.SystemPromptService;
 import org.core.service.agent.llmProvider.LlmProvider;
+import org.core.service.ai.LlmCallPriority;
+import org.core.service.ai.LlmCaller;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
 @Service
 @Slf4j
@@ -23,21 +33,24 @@ public class BatchAnalyzerService {
 
     private final ExecutorService executorService;
     private final SystemPromptService systemPromptService;
-    private final LlmProvider llmProvider;
+    private final LlmProvider cachingLlmProvider;
     private final BatchStepParser batchStepParser;
+    private final Semaphore summaryPermits;
 
     private final ObjectMapper objectMapper;
 
-    public BatchAnalyzerService(@Qualifier("yandexProvider") LlmProvider llmProvider,
+    public BatchAnalyzerService(@Qualifier("cachingYandexProvider") LlmProvider cachingLlmProvider,
                                 @Qualifier("virtualExecutor") ExecutorService executorService,
                                  SystemPromptService systemPromptService,
                                  ObjectMapper objectMapper,
-                                 BatchStepParser batchStepParser){
-        this.llmProvider = llmProvider;
+                                 BatchStepParser batchStepParser,
+                                 @Value("${batch.summary.max-concurrency}") int summaryMaxConcurrency){
+        this.cachingLlmProvider = cachingLlmProvider;
         this.executorService = executorService;
         this.systemPromptService = systemPromptService;
         this.objectMapper = objectMapper;
         this.batchStepParser = batchStepParser;
+        this.summaryPermits = new Semaphore(summaryMaxConcurrency);
     }
 
     public BatchStepDTO analyzeUserInput(String userInput) {
@@ -53,8 +66,8 @@ public class BatchAnalyzerService {
                         .build()
         );
 
-        String aiResponse = llmProvider.chat(messages);
-        log.info("Get response from llm for BatchStepDTO: {}", aiResponse);
+        String aiResponse = cachingLlmProvider.chat(messages);
+        log.info("Got response from llm for BatchStepDTO, length: {}", aiResponse.length());
 
         try {
             String json = batchStepParser.extractJsonFromResponse(aiResponse);
@@ -66,38 +79,28 @@ public class BatchAnalyzerService {
     }
 
     public String summariesTextSteps(List<StepikBlockRequest> requests) {
+        return summariesTextSteps(requests, new SummaryMemo());
+    }
+
+    /**
+     * Краткое содержание text-блоков для контекста остальных типов. Каждый блок суммаризируется не больше одного раза
+     * на memo (ключ — хэш очищенного текста), одновременно выполняется не больше batch.summary.max-concurrency вызовов.
+     */
+    public String summariesTextSteps(List<StepikBlockRequest> requests, SummaryMemo memo) {
         if(requests == null){
             throw new RuntimeException("List<StepikBlockRequest> requests is null");
         }
         String systemPrompt = systemPromptService.getPromptForQuery("text-summary");
+        LlmCaller caller = LlmCaller.current();
 
         List<CompletableFuture<String>> textSummaryFuture = new ArrayList<>();
         for (StepikBlockRequest request : requests) {
-            textSummaryFuture.add(CompletableFuture.supplyAsync(() -> {
-                String content;
-                if (request instanceof StepikBlockTextRequest textRequest) {
-                    String rawHtml = textRequest.getText() != null ? textRequest.getText() : "";
-                    content = rawHtml.replaceAll("<[^>]+>", " ").replaceAll("\\s+", " ").trim();
-                } else {
-                    try {
-                        content = objectMapper.writeValueAsString(request);
-                    } catch (Exception e) {
-                        content = "";
-                    }
-                }
-
-                List<ChatMessage> messages = List.of(
-                        ChatMessage.builder()
-                                .role("system")
-                                .content(systemPrompt)
-                                .build(),
-                        ChatMessage.builder()
-                                .role("user")
-                                .content(content)
-                                .build()
-                );
-                return llmProvider.chat(messages);
-            }, executorService));
+            String content = contentForSummary(request);
+            if (content.isEmpty()) {
+                continue;
+            }
+            textSummaryFuture.add(memo.summaries.computeIfAbsent(sha256(content),
+                    key -> CompletableFuture.supplyAsync(() -> caller.call(() -> summarize(systemPrompt, content)), executorService)));
         }
 
         CompletableFuture<Void> allFutures = CompletableFuture.allOf(textSummaryFuture.toArray(new CompletableFuture[0]));
@@ -111,4 +114,97 @@ public class BatchAnalyzerService {
 
     }
 
+    private String summarize(String systemPrompt, String content) {
+        List<ChatMessage> messages = List.of(
+                ChatMessage.builder()
+                        .role("system")
+                        .content(systemPrompt)
+                        .build(),
+                ChatMessage.builder()
+                        .role("user")
+                        .content(content)
+                        .build()
+        );
+        try {
+            summaryPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a text summary slot", e);
+        }
+        try {
+            return LlmCallPriority.BATCH.call(() -> cachingLlmProvider.chat(messages));
+        } finally {
+            summaryPermits.release();
+        }
+    }
+
+    private String contentForSummary(StepikBlockRequest request) {
+        if (request instanceof StepikBlockTextRequest textRequest) {
+            return stripHtml(textRequest.getText());
+        }
+        try {
+            return objectMapper.writeValueAsString(request);
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    /**
+     * Убирает теги и схлопывает пробелы за один проход: тег заменяется пробелом, серия пробелов — одним.
+     */
+    static String stripHtml(String html) {
+        if (html == null || html.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(html.length());
+        boolean inTag = false;
+        boolean pendingSpace = false;
+        int nextClose = -1;
+        for (int i = 0; i < html.length(); i++) {
+            char c = html.charAt(i);
+            if (inTag) {
+                if (c == '>') {
+                    inTag = false;
+                }
+                continue;
+            }
+            if (c == '<' && nextClose <= i) {
+                int close = html.indexOf('>', i + 1);
+                nextClose = close < 0 ? html.length() : close;
+            }
+            if (c == '<' && nextClose > i + 1 && nextClose < html.length()) {
+                inTag = true;
+                pendingSpace = true;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace && !sb.isEmpty()) {
+                sb.append(' ');
+            }
+            pendingSpace = false;
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static String sha256(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Результаты суммаризации в рамках одного batch-плана: общий для всех не-text пунктов плана.
+     */
+    public static final class SummaryMemo {
+
+        private final Map<String, CompletableFuture<String>> summaries = new ConcurrentHashMap<>();
+    }
+
 }
@@ -0,0 +1,195 @@
+package org.core.service.agent.batch;
+
+import jakarta.annotation.Resource;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.core.dto.agent.batchAnalyzer.BatchStepDTO;
+import org.core.dto.ai.BatchGenerationHistoryDTO;
+import org.core.dto.stepik.step.StepikBlockRequest;
+import org.core.service.ai.BatchSessionMessageService;
+import org.core.service.subscription.SubscriptionService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Фоновая batch-генерация: запрос сразу получает id записи BatchGeneration,
+ * генерация идёт в ограниченном пуле batchJobExecutor, прогресс пишется в ту же запись
+ * и рассылается подписчикам через SSE. Запись принадлежит узлу, который её выполняет: он продлевает аренду,
+ * а RUNNING-запись с истёкшей арендой переводится в FAILED любым узлом.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BatchGenerationJobService {
+
+    private static final String INTERRUPTED_MESSAGE = "Batch generation was interrupted by a server restart";
+
+    @Resource(name = "batchJobExecutor")
+    private final ExecutorService batchJobExecutor;
+
+    private final BatchGeneratorService batchGeneratorService;
+    private final BatchSessionMessageService batchSessionMessageService;
+    private final SubscriptionService subscriptionService;
+
+    @Value("${batch.job.node-id}")
+    private String nodeId;
+
+    @Value("${batch.job.lease-ms}")
+    private long leaseMs;
+
+    private final Map<Long, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private final Set<Long> localJobs = ConcurrentHashMap.newKeySet();
+
+    public Long submit(Long userId, String sessionId, String userInput, BatchStepDTO batchStepDTO) {
+        int totalSteps = SubscriptionService.countBatchSteps(batchStepDTO);
+        Long batchGenerationId = startTracked(userId, userInput, batchStepDTO, totalSteps);
+        try {
+            batchJobExecutor.execute(() -> runJob(batchGenerationId, userId, sessionId, batchStepDTO, totalSteps));
+        } catch (RejectedExecutionException e) {
+            release(batchGenerationId);
+            log.warn("Batch job queue is full, rejecting batch generation {}", batchGenerationId);
+            batchSessionMessageService.markFailed(batchGenerationId, "Batch generation queue is full");
+            throw e;
+        }
+        log.info("Submitted batch generation job {} for userId={}", batchGenerationId, userId);
+        return batchGenerationId;
+    }
+
+    /**
+     * Создаёт запись RUNNING этого узла; аренду узел продлевает, пока запись не отпущена через release.
+     * Используется и синхронной генерацией, которая идёт в потоке запроса.
+     */
+    public Long startTracked(Long userId, String userInput, BatchStepDTO batchStepDTO, int totalSteps) {
+        Long batchGenerationId = batchSessionMessageService.startGeneration(userId, userInput, batchStepDTO, totalSteps, nodeId);
+        localJobs.add(batchGenerationId);
+        return batchGenerationId;
+    }
+
+    public void release(Long batchGenerationId) {
+        localJobs.remove(batchGenerationId);
+    }
+
+    /**
+     * Задачи выполняются только в пуле процесса, поэтому после рестарта свои записи RUNNING уже никто не доведёт:
+     * помечаем их FAILED, чтобы клиент получил ошибку, а не бесконечный прогресс. Частичный результат сохраняется.
+     * Задачи других узлов не трогаем — их завершит истечение аренды.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void failInterruptedJobs() {
+        int interrupted = batchSessionMessageService.failRunningOwnedBy(nodeId, INTERRUPTED_MESSAGE);
+        if (interrupted > 0) {
+            log.warn("Marked {} interrupted batch generation job(s) of node {} as FAILED", interrupted, nodeId);
+        }
+    }
+
+    /**
+     * Продлевает аренду задач этого узла и переводит в FAILED задачи, чей узел перестал её продлевать.
+     */
+    @Scheduled(fixedDelayString = "${batch.job.heartbeat-interval-ms}")
+    public void renewLeases() {
+        batchSessionMessageService.heartbeat(List.copyOf(localJobs));
+        int abandoned = batchSessionMessageService.failStale(leaseMs, INTERRUPTED_MESSAGE);
+        if (abandoned > 0) {
+            log.warn("Marked {} batch generation job(s) with an expired lease as FAILED", abandoned);
+        }
+    }
+
+    public SseEmitter subscribe(Long userId, Long batchGenerationId) {
+        batchSessionMessageService.getGeneration(userId, batchGenerationId);
+
+        SseEmitter emitter = new SseEmitter();
+        List<SseEmitter> emitters = subscribers.computeIfAbsent(batchGenerationId, id -> new CopyOnWriteArrayList<>());
+        emitters.add(emitter);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+
+        // Снимок читаем после регистрации, чтобы не потерять завершение задачи между чтением и подпиской
+        BatchGenerationHistoryDTO current = batchSessionMessageService.getGeneration(userId, batchGenerationId);
+        if ("RUNNING".equals(current.getStatus())) {
+            send(emitter, "progress", current);
+        } else {
+            send(emitter, "COMPLETED".equals(current.getStatus()) ? "done" : "error", current);
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    private void runJob(Long batchGenerationId, Long userId, String sessionId, BatchStepDTO batchStepDTO, int totalSteps) {
+        NavigableMap<Integer, List<StepikBlockRequest>> completedEntries = new TreeMap<>();
+        try {
+            List<StepikBlockRequest> results = batchGeneratorService.generateBatchRequests(userId, sessionId, batchStepDTO,
+                    (index, blocks) -> {
+                        synchronized (completedEntries) {
+                            completedEntries.put(index, blocks);
+                            List<StepikBlockRequest> partialResults = completedEntries.values().stream()
+                                    .flatMap(List::stream)
+                                    .toList();
+                            batchSessionMessageService.recordProgress(batchGenerationId, partialResults);
+                            publish(batchGenerationId, "progress", progressOf(batchGenerationId, totalSteps, partialResults));
+                        }
+                    });
+            subscriptionService.recordAiUsage(userId, totalSteps);
+            batchSessionMessageService.markCompleted(batchGenerationId, results);
+            log.info("Batch generation job {} completed with {} steps", batchGenerationId, results.size());
+            publish(batchGenerationId, "done", batchSessionMessageService.getGeneration(userId, batchGenerationId));
+        } catch (Exception e) {
+            log.error("Batch generation job {} failed: {}", batchGenerationId, e.getMessage(), e);
+            batchSessionMessageService.markFailed(batchGenerationId, e.getMessage());
+            publish(batchGenerationId, "error", batchSessionMessageService.getGeneration(userId, batchGenerationId));
+        } finally {
+            release(batchGenerationId);
+            List<SseEmitter> emitters = subscribers.remove(batchGenerationId);
+            if (emitters != null) {
+                emitters.forEach(SseEmitter::complete);
+            }
+        }
+    }
+
+    private BatchGenerationHistoryDTO progressOf(Long batchGenerationId, int totalSteps, List<StepikBlockRequest> partialResults) {
+        return BatchGenerationHistoryDTO.builder()
+                .id(batchGenerationId)
+                .status("RUNNING")
+                .totalSteps(totalSteps)
+                .completedSteps(partialResults.size())
+                .generatedSteps(partialResults)
+                .build();
+    }
+
+    private void publish(Long batchGenerationId, String eventName, BatchGenerationHistoryDTO payload) {
+        List<SseEmitter> emitters = subscribers.get(batchGenerationId);
+        if (emitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : emitters) {
+            if (!send(emitter, eventName, payload)) {
+                emitters.remove(emitter);
+            }
+        }
+    }
+
+    private boolean send(SseEmitter emitter, String eventName, BatchGenerationHistoryDTO payload) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).data(payload));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Dropping batch progress subscriber: {}", e.getMessage());
+            return false;
+        }
+    }
+}
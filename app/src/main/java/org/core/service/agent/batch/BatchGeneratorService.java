@@ -1,5 +1,6 @@
 package org.core.service.agent.batch;
 
+import jakarta.annotation.Resource;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.core.dto.agent.ChatMessage;
@@ -8,12 +9,23 @@ import org.core.dto.agent.batchAnalyzer.CountStepDTO;
 import org.core.dto.stepik.step.StepikBlockRequest;
 import org.core.service.agent.AgentService;
 import org.core.service.agent.SystemPromptService;
+import org.core.service.ai.LlmCallPriority;
+import org.core.service.ai.LlmCaller;
+import org.core.service.ai.LlmCallers;
+import org.core.service.ai.LlmWorkload;
 import org.core.service.ai.YandexGptService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
 
 @Service
 @RequiredArgsConstructor
@@ -23,82 +35,166 @@ public class BatchGeneratorService {
     @Value("${yandex.gpt.api.model-uri.batch}")
     private String batchModelUri;
 
+    @Resource(name = "virtualExecutor")
+    private final ExecutorService virtualExecutor;
+
     private final YandexGptService yandexGptService;
     private final SystemPromptService systemPromptService;
     private final AgentService agenService;
     private final BatchStepParser batchStepParser;
     private final BatchPromptModifierService promptModifierService;
     private final BatchAnalyzerService batchAnalyzerService;
+    private final LlmCallers llmCallers;
 
     public List<StepikBlockRequest> generateBatchRequests(Long userId, String sessionId, BatchStepDTO batchStepDTO) {
+        return generateBatchRequests(userId, sessionId, batchStepDTO, (index, blocks) -> {});
+    }
+
+    /**
+     * onEntryCompleted вызывается по мере готовности каждого пункта плана (индекс в плане и его шаги),
+     * порядок вызовов не совпадает с порядком плана.
+     */
+    public List<StepikBlockRequest> generateBatchRequests(Long userId,
+                                                          String sessionId,
+                                                          BatchStepDTO batchStepDTO,
+                                                          BiConsumer<Integer, List<StepikBlockRequest>> onEntryCompleted) {
         if (batchStepDTO == null || batchStepDTO.getSteps() == null || batchStepDTO.getSteps().isEmpty()) {
             throw new RuntimeException("BatchStepDTO is null or empty");
         }
+        List<CountStepDTO> plan = batchStepDTO.getSteps();
+        BatchAnalyzerService.SummaryMemo summaryMemo = new BatchAnalyzerService.SummaryMemo();
+        LlmCaller caller = llmCallers.forUser(userId, LlmWorkload.BATCH);
+
+        // Сначала генерируем только text-блоки: их summary нужны как контекст для остальных типов
+        Map<Integer, CompletableFuture<List<StepikBlockRequest>>> planResults = new HashMap<>();
+        for (int i = 0; i < plan.size(); i++) {
+            CountStepDTO countStepDTO = plan.get(i);
+            if ("text".equals(countStepDTO.getType())) {
+                int entryIndex = i;
+                planResults.put(i, CompletableFuture.supplyAsync(
+                        () -> caller.call(() -> generatePlanEntry(userId, sessionId, countStepDTO, null, summaryMemo)),
+                        virtualExecutor)
+                        .thenApply(blocks -> notifyEntryCompleted(onEntryCompleted, entryIndex, blocks)));
+            }
+        }
+        awaitAll(planResults.values());
+
+        // Остальные типы независимы друг от друга и запускаются параллельно
+        for (int i = 0; i < plan.size(); i++) {
+            CountStepDTO countStepDTO = plan.get(i);
+            if (!"text".equals(countStepDTO.getType())) {
+                int entryIndex = i;
+                List<StepikBlockRequest> textContext = findPrecedingTextBlocks(plan, planResults, i);
+                planResults.put(i, CompletableFuture.supplyAsync(
+                        () -> caller.call(() -> generatePlanEntry(userId, sessionId, countStepDTO, textContext, summaryMemo)),
+                        virtualExecutor)
+                        .thenApply(blocks -> notifyEntryCompleted(onEntryCompleted, entryIndex, blocks)));
+            }
+        }
+        awaitAll(planResults.values());
 
         List<StepikBlockRequest> stepikBlockRequests = new ArrayList<>();
-        List<StepikBlockRequest> textBlockRequests = new ArrayList<>();
-        for (CountStepDTO countStepDTO : batchStepDTO.getSteps()) {
-            String type = countStepDTO.getType();
-            String systemPrompt = systemPromptService.getPromptForQuery(type);
+        for (int i = 0; i < plan.size(); i++) {
+            stepikBlockRequests.addAll(planResults.get(i).join());
+        }
+
+        log.info("Generated {} StepikBlockRequest for batch uploading", stepikBlockRequests.size());
+        return stepikBlockRequests;
+    }
 
+    private List<StepikBlockRequest> generatePlanEntry(Long userId,
+                                                       String sessionId,
+                                                       CountStepDTO countStepDTO,
+                                                       List<StepikBlockRequest> textBlockRequests,
+                                                       BatchAnalyzerService.SummaryMemo summaryMemo) {
+        String type = countStepDTO.getType();
+        if (countStepDTO.getCount() == 1) {
+            String userInput = countStepDTO.getSpecificInput();
+            return List.of(LlmCallPriority.BATCH.call(
+                    () -> agenService.generateStep(userId, sessionId, userInput, type, null, false)));
+        }
+
+        try {
+            String systemPrompt = systemPromptService.getPromptForQuery(type);
             boolean stepUseTextContext = countStepDTO.getUseSummarizedEnabled() == null || countStepDTO.getUseSummarizedEnabled();
-            if (countStepDTO.getCount() == 1) {
-                String userInput = countStepDTO.getSpecificInput();
-                StepikBlockRequest request = agenService.generateStep(userId, sessionId, userInput, type, null, false);
-                stepikBlockRequests.add(request);
-                if ("text".equals(type)) {
-                    textBlockRequests.clear();
-                    textBlockRequests.add(request);
-                }
-            } else {
-                try {
-                    String summariesContentFromTextBlock = null;
-                    if (!"text".equals(type) && stepUseTextContext && !textBlockRequests.isEmpty()) {
-                        summariesContentFromTextBlock = batchAnalyzerService.summariesTextSteps(textBlockRequests);
-                    }
-                    systemPrompt = promptModifierService.modifyPromptForBatch(systemPrompt, countStepDTO.getCount(), summariesContentFromTextBlock, type);
-                    String userInputForBatch = countStepDTO.getSpecificInput();
-                    List<StepikBlockRequest> batchBlockRequests = generateBatchSteps(userInputForBatch, systemPrompt, type, countStepDTO.getCount());
-                    stepikBlockRequests.addAll(batchBlockRequests);
-                    if ("text".equals(type)) {
-                        textBlockRequests.clear();
-                        textBlockRequests.addAll(batchBlockRequests);
-                    }
-                    log.info("Batch tasks successfully done for type {}", type);
-                } catch (Exception ex) {
-                    log.error("Batch generation failed for type {}, falling back to per-step generation: {}", type, ex.getMessage());
-//                    String contextFromTextMessage = null;
-//                    if (!"text".equals(type) && stepUseTextContext && !textBlockRequests.isEmpty()) {
-//                        contextFromTextMessage = batchAnalyzerService.summariesTextSteps(textBlockRequests);
-//                    }
-//                    for (int i = 0; i < countStepDTO.getCount(); i++) {
-//                        try {
-//                            String individualInput = countStepDTO.getSpecificInput();
-//                            if ("text".equals(type)) {
-//                                individualInput = "теория " + individualInput;
-//                            } else {
-//                                individualInput += " (задание " + (i + 1) + " из " + countStepDTO.getCount() + ", уникальное)";
-//                                if (contextFromTextMessage != null && !contextFromTextMessage.isBlank()) {
-//                                    individualInput += "\n\nКонтекст из теории:\n" + contextFromTextMessage;
-//                                }
-//                            }
-//                            StepikBlockRequest request = agenService.generateStep(sessionId, individualInput, type);
-//                            stepikBlockRequests.add(request);
-//                            if ("text".equals(type)) {
-//                                textBlockRequests.add(request);
-//                            }
-//                            log.info("Successfully generated step {}/{} individually for type {}", i + 1, countStepDTO.getCount(), type);
-//                        } catch (Exception individualError) {
-//                            log.error("Failed to generate individual step {}/{} for type {}: {}",
-//                                    i + 1, countStepDTO.getCount(), type, individualError.getMessage());
+            String summariesContentFromTextBlock = null;
+            if (!"text".equals(type) && stepUseTextContext && textBlockRequests != null && !textBlockRequests.isEmpty()) {
+                summariesContentFromTextBlock = batchAnalyzerService.summariesTextSteps(textBlockRequests, summaryMemo);
+            }
+            systemPrompt = promptModifierService.modifyPromptForBatch(systemPrompt, countStepDTO.getCount(), summariesContentFromTextBlock, type);
+            String userInputForBatch = countStepDTO.getSpecificInput();
+            List<StepikBlockRequest> batchBlockRequests = generateBatchSteps(userInputForBatch, systemPrompt, type, countStepDTO.getCount());
+            log.info("Batch tasks successfully done for type {}", type);
+            return batchBlockRequests;
+        } catch (Exception ex) {
+            log.error("Batch generation failed for type {}, falling back to per-step generation: {}", type, ex.getMessage());
+//            String contextFromTextMessage = null;
+//            if (!"text".equals(type) && stepUseTextContext && !textBlockRequests.isEmpty()) {
+//                contextFromTextMessage = batchAnalyzerService.summariesTextSteps(textBlockRequests, summaryMemo);
+//            }
+//            for (int i = 0; i < countStepDTO.getCount(); i++) {
+//                try {
+//                    String individualInput = countStepDTO.getSpecificInput();
+//                    if ("text".equals(type)) {
+//                        individualInput = "теория " + individualInput;
+//                    } else {
+//                        individualInput += " (задание " + (i + 1) + " из " + countStepDTO.getCount() + ", уникальное)";
+//                        if (contextFromTextMessage != null && !contextFromTextMessage.isBlank()) {
+//                            individualInput += "\n\nКонтекст из теории:\n" + contextFromTextMessage;
 //                        }
 //                    }
+//                    StepikBlockRequest request = agenService.generateStep(sessionId, individualInput, type);
+//                    stepikBlockRequests.add(request);
+//                    if ("text".equals(type)) {
+//                        textBlockRequests.add(request);
+//                    }
+//                    log.info("Successfully generated step {}/{} individually for type {}", i + 1, countStepDTO.getCount(), type);
+//                } catch (Exception individualError) {
+//                    log.error("Failed to generate individual step {}/{} for type {}: {}",
+//                            i + 1, countStepDTO.getCount(), type, individualError.getMessage());
+//                }
+//            }
+            return List.of();
+        }
+    }
+
+    /**
+     * Контекстом для шага служит ближайший предшествующий по плану text-блок, который удалось сгенерировать.
+     */
+    private List<StepikBlockRequest> findPrecedingTextBlocks(List<CountStepDTO> plan,
+                                                             Map<Integer, CompletableFuture<List<StepikBlockRequest>>> planResults,
+                                                             int index) {
+        for (int i = index - 1; i >= 0; i--) {
+            if ("text".equals(plan.get(i).getType())) {
+                List<StepikBlockRequest> textBlocks = planResults.get(i).join();
+                if (!textBlocks.isEmpty()) {
+                    return textBlocks;
                 }
             }
         }
+        return List.of();
+    }
 
-        log.info("Generated list StepikBlockRequest for batch uploading, list: {}", stepikBlockRequests);
-        return stepikBlockRequests;
+    private List<StepikBlockRequest> notifyEntryCompleted(BiConsumer<Integer, List<StepikBlockRequest>> onEntryCompleted,
+                                                          int entryIndex,
+                                                          List<StepikBlockRequest> blocks) {
+        try {
+            onEntryCompleted.accept(entryIndex, blocks);
+        } catch (Exception e) {
+            log.warn("Failed to report progress for batch plan entry {}: {}", entryIndex, e.getMessage());
+        }
+        return blocks;
+    }
+
+    private void awaitAll(Collection<CompletableFuture<List<StepikBlockRequest>>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
     }
 
     private List<StepikBlockRequest> generateBatchSteps(String userInput, String systemPrompt, String stepType, int count) {
@@ -114,10 +210,13 @@ public class BatchGeneratorService {
                             .build()
             );
             int maxTokens = "text".equals(stepType) ? 12000 : 10000;
-            String aiResponse = yandexGptService.generateResponse(messages, true, maxTokens, batchModelUri, false);
-            log.info("Get response from llm for list StepikBlockRequest: {}", aiResponse);
+            // Шаги разбираются по мере прихода токенов, к концу генерации остаётся только собрать результат
+            BatchStepParser.StepStream stepStream = batchStepParser.openStream(stepType);
+            String aiResponse = LlmCaller.current().withStepType(stepType).call(() -> LlmCallPriority.BATCH.call(
+                    () -> yandexGptService.generateResponseStream(messages, maxTokens, batchModelUri, stepStream::feed)));
+            log.info("Got batch response from llm for step type {}, length: {}", stepType, aiResponse.length());
 
-            return batchStepParser.parseAiResponseToRequestsList(aiResponse, stepType, count);
+            return stepStream.finish();
         } catch (Exception e) {
             log.error("Error generating batch steps: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to generate batch steps: " + e.getMessage(), e);
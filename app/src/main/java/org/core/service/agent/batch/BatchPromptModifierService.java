@@ -2,6 +2,7 @@ package org.core.service.agent.batch;
 
 import lombok.RequiredArgsConstructor;
 import org.core.service.agent.SystemPromptService;
+import org.core.service.agent.prompt.PromptTemplate;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -18,33 +19,13 @@ public class BatchPromptModifierService {
         return modifyPromptForBatch(systemPrompt, count, contextBlock, null);
     }
 
+    /**
+     * Рендерит batch-шаблон типа шага, а если его нет — общий шаблон поверх обычного system-промпта.
+     * Количество, контекст и тип подставляются в плейсхолдеры {{count}}, {{context}}, {{stepType}}.
+     */
     public String modifyPromptForBatch(String systemPrompt, int count, String contextBlock, String stepType) {
-        StringBuilder sb = new StringBuilder();        
-        String batchPrompt = systemPromptService.getBatchPromptByQuery(stepType);
-
-        if (batchPrompt != null) {
-            sb.append(batchPrompt);
-        } else {
-            sb.append(systemPrompt).append("\n\n");
-            sb.append("=== BATCH: СОЗДАЙ ").append(count).append(" ЗАДАНИЙ ===\n");
-            sb.append("Верни JSON МАССИВ с ").append(count).append(" объектами: [{...}, {...}]\n");
-            sb.append("ТОЛЬКО JSON без markdown ```, без дополнительного текста\n");
-        }
-
-        if (contextBlock != null && !contextBlock.isBlank()) {
-            sb.append("\n=== КОНТЕКСТ ДЛЯ ЗАДАНИЙ ===\n")
-              .append(contextBlock.trim())
-              .append("\n\n");
-        }
-
-        String result = sb.toString();
-        result = result.replaceAll("указанным количеством", count + " объектами");
-        result = result.replaceAll("количество объектов", count + " объектов");
-        
-        if (!result.contains("" + count) && batchPrompt != null) {
-            result = "Создай " + count + " заданий следующего типа.\n\n" + result;
-        }
-        
-        return result;
+        PromptTemplate template = systemPromptService.getBatchTemplate(stepType)
+                .orElseGet(systemPromptService::getBatchFallbackTemplate);
+        return template.render(new PromptTemplate.Arguments(count, contextBlock, stepType, systemPrompt));
     }
 }
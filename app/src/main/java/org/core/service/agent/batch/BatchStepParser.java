@@ -1,318 +1,372 @@
 package org.core.service.agent.batch;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ContainerNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.core.dto.stepik.step.StepikBlockRequest;
 import org.core.service.agent.StepikResponseParser;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Разбор batch-ответа LLM за один проход неблокирующим Jackson-парсером.
+ * Ответ можно подавать кусками по мере генерации: каждый шаг разбирается и валидируется,
+ * как только закрывается его объект, а обрезанный хвост ответа просто отбрасывается.
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class BatchStepParser {
 
-    private final ObjectMapper objectMapper;
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .enable(JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS)
+            .build();
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+    private static final int RESPONSE_HEAD_LENGTH = 1000;
+
     private final StepikResponseParser responseParser;
 
     public List<StepikBlockRequest> parseAiResponseToRequestsList(String aiResponse, String stepType, int count) {
-        try {
-            log.info("Raw AI response (length: {}): {}", aiResponse != null ? aiResponse.length() : 0, aiResponse);
-            
-            if (aiResponse == null || aiResponse.trim().length() < 20) {
-                throw new IllegalArgumentException("Response too short or empty, likely truncated");
-            }
-            String trimmed = aiResponse.trim();
-            int openBraces = (int) trimmed.chars().filter(c -> c == '{').count();
-            int closeBraces = (int) trimmed.chars().filter(c -> c == '}').count();
-            int openBrackets = (int) trimmed.chars().filter(c -> c == '[').count();
-            int closeBrackets = (int) trimmed.chars().filter(c -> c == ']').count();
-            
-            if (openBraces > closeBraces || openBrackets > closeBrackets) {
-                log.warn("Response appears to be truncated: openBraces={}, closeBraces={}, openBrackets={}, closeBrackets={}",
-                        openBraces, closeBraces, openBrackets, closeBrackets);
-                
-                long nonEscapeChars = trimmed.chars().filter(c -> c != '\u007f' && !Character.isWhitespace(c) && c != '\\').count();
-                if (nonEscapeChars < 50) {
-                    log.warn("Response contains mostly escape characters, cannot extract valid JSON");
-                    throw new IllegalArgumentException("Response appears to be truncated and contains invalid characters");
-                }
-                
-                log.info("Attempting to extract partial objects from truncated response");
-                try {
-                    String partialArray = extractPartialJsonArray(trimmed);
-                    if (partialArray != null && isValidJsonArray(partialArray)) {
-                        log.info("Successfully extracted partial JSON array from truncated response");
-                        trimmed = partialArray;
-                    } else {
-                        throw new IllegalArgumentException("Response appears to be truncated (unclosed brackets/braces)");
-                    }
-                } catch (StackOverflowError | OutOfMemoryError e) {
-                    log.error("Stack overflow or out of memory while extracting partial objects - response too complex");
-                    throw new IllegalArgumentException("Response appears to be truncated and too complex to parse");
-                } catch (Exception e) {
-                    log.error("Failed to extract partial objects: {}", e.getMessage());
-                    throw new IllegalArgumentException("Response appears to be truncated (unclosed brackets/braces)");
-                }
-            }
-            
-            String jsonArray = extractJsonArray(aiResponse);
-
-            List<Map<String, Object>> jsonArrayParsed = objectMapper.readValue(
-                    jsonArray,
-                    new TypeReference<List<Map<String, Object>>>() {}
-            );
-            log.info("Parsed {} JSON objects from batch response", jsonArrayParsed.size());
+        StepStream stream = openStream(stepType);
+        stream.feed(aiResponse);
+        return stream.finish();
+    }
 
-            List<StepikBlockRequest> steps = new ArrayList<>();
-            for (int i = 0; i < jsonArrayParsed.size(); i++) {
-                try {
-                    Map<String, Object> jsonObj = jsonArrayParsed.get(i);
+    /**
+     * Открывает потоковый разбор: куски ответа передаются в {@link StepStream#feed}, итог забирается через {@link StepStream#finish}.
+     */
+    public StepStream openStream(String stepType) {
+        return new StepStream(stepType);
+    }
 
-                    String jsonStr = objectMapper.writeValueAsString(jsonObj);
-                    StepikBlockRequest step = responseParser.parseResponse(jsonStr, stepType);
-                    steps.add(step);
+    public String extractJsonFromResponse(String response) {
+        if (response == null || response.trim().isEmpty()) {
+            throw new IllegalArgumentException("Empty response from AI");
+        }
 
-                    log.info("Successfully parsed step {}/{} of type {}", i + 1, jsonArrayParsed.size(), stepType);
-                } catch (Exception e) {
-                    log.error("Failed to parse step {}/{} in batch: {}", i + 1, jsonArrayParsed.size(), e.getMessage());
-                }
-            }
+        String trimmed = response.trim();
+        Pattern jsonPattern = Pattern.compile("```json\\s*(.*?)\\s*```", Pattern.DOTALL);
+        Matcher matcher = jsonPattern.matcher(trimmed);
+        if (matcher.find()) {
+            return matcher.group(1).trim();
+        }
 
-            if (steps.isEmpty()) {
-                throw new RuntimeException("No valid steps were parsed from the response. " +
-                        "Original response: " + (aiResponse != null && aiResponse.length() > 500 
-                        ? aiResponse.substring(0, 500) + "..." 
-                        : aiResponse));
-            }
+        if (trimmed.startsWith("{") && trimmed.endsWith("}")) {
+            return trimmed;
+        }
 
-            return steps;
-        } catch (IllegalArgumentException e) {
-            log.error("Failed to extract JSON array from response. Response length: {}, " +
-                    "Response content: {}", 
-                    aiResponse != null ? aiResponse.length() : 0,
-                    aiResponse != null && aiResponse.length() > 1000 
-                        ? aiResponse.substring(0, 1000) + "..." 
-                        : aiResponse);
-            throw new RuntimeException("Не удалось извлечь JSON массив из ответа LLM. " +
-                    "Ответ может быть некорректным или обрезанным. " +
-                    "Детали: " + e.getMessage() + 
-                    (aiResponse != null && aiResponse.length() < 500 
-                        ? ". Полный ответ: " + aiResponse 
-                        : ""), e);
-        } catch (Exception e) {
-            log.error("Failed to parse batch response. Response: {}", 
-                    aiResponse != null && aiResponse.length() > 500 
-                        ? aiResponse.substring(0, 500) + "..." 
-                        : aiResponse, e);
-            throw new RuntimeException("Ошибка при парсинге batch ответа: " + e.getMessage() + 
-                    (aiResponse != null && aiResponse.length() < 300 
-                        ? ". Ответ LLM: " + aiResponse 
-                        : ""), e);
+        int start = trimmed.indexOf('{');
+        int end = trimmed.lastIndexOf('}');
+        if (start != -1 && end != -1 && end > start) {
+            return trimmed.substring(start, end + 1);
         }
+
+        throw new IllegalArgumentException("No JSON found in response");
     }
 
-    private String extractJsonArray(String response) {
-        if (response == null || response.trim().isEmpty()) {
-            throw new IllegalArgumentException("Empty response from AI");
+    private static boolean isStepLike(ObjectNode node) {
+        return node.has("text") || node.has("source");
+    }
+
+    private static String sanitize(String text) {
+        if (text.indexOf('\u007f') >= 0) {
+            text = text.replace("\u007f", "");
         }
-        String trimmed = response.trim();
-        
-        // Проверка на валидный JSON с массивом объектов
-        if (trimmed.contains("\"batch\"") && !trimmed.contains("\"text\"")) {
-            throw new IllegalArgumentException("Response contains 'batch' field but no objects with 'text' field. " +
-                    "Model returned wrong format. Response: " + (trimmed.length() > 200 ? trimmed.substring(0, 200) : trimmed));
+        if (text.contains("\\u00")) {
+            text = text.replace("\\u007f", "")
+                    .replace("\\u003c", "<")
+                    .replace("\\u003e", ">");
         }
-        
-        long meaningfulChars = trimmed.chars().filter(c -> c != '\u007f' && !Character.isWhitespace(c) && c != '\\').count();
-        if (meaningfulChars < 30) {
-            log.warn("Response contains mostly escape characters, likely invalid");
-            throw new IllegalArgumentException("Response contains mostly escape characters and cannot be parsed");
+        return text;
+    }
+
+    /**
+     * Состояние разбора одного ответа. Шагами считаются объекты из массива верхнего уровня
+     * (или массива в поле объекта-обёртки вроде {"batch": [...]}), либо одиночный объект шага.
+     * Сами шаги в дерево массива не добавляются, поэтому в памяти держится только текущий шаг.
+     */
+    public final class StepStream {
+
+        private final String stepType;
+        private final Deque<Frame> stack = new ArrayDeque<>();
+        private final List<StepikBlockRequest> steps = new ArrayList<>();
+        private final StringBuilder responseHead = new StringBuilder();
+        // Текст от найденного начала JSON, пока в нём не встретилось ни одного поля: если это была скобка из прозы,
+        // разбор повторяется со следующей скобки
+        private final StringBuilder attempt = new StringBuilder();
+
+        private JsonParser parser;
+        private ByteArrayFeeder feeder;
+        private String carry = "";
+
+        private long responseLength;
+        private int stepObjects;
+        private boolean started;
+        private boolean finished;
+        private boolean stepArrayFound;
+        private boolean fieldSeen;
+        private String parseError;
+
+        private StepStream(String stepType) {
+            this.stepType = stepType;
+            openParser();
         }
-        
-        trimmed = fixEscapedHtmlTags(trimmed);
-        trimmed = removeMarkdownAndExtraText(trimmed);
-        Pattern markdownPattern = Pattern.compile(
-                "```(?:json)?\\s*(\\[.*?\\])\\s*```",
-                Pattern.DOTALL
-        );
-        Matcher matcher = markdownPattern.matcher(trimmed);
-        if (matcher.find()) {
-            String json = matcher.group(1).trim();
-            if (isValidJsonArray(json)) {
-                return json;
+
+        public void feed(String chunk) {
+            if (chunk == null || chunk.isEmpty()) {
+                return;
+            }
+            if (responseHead.length() < RESPONSE_HEAD_LENGTH) {
+                responseHead.append(chunk, 0, Math.min(chunk.length(), RESPONSE_HEAD_LENGTH - responseHead.length()));
+            }
+            responseLength += chunk.length();
+            if (finished) {
+                return;
             }
-        }
 
-        if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
-            if (isValidJsonArray(trimmed)) {
-                return trimmed;
+            String text = carry + chunk;
+            carry = "";
+            if (Character.isHighSurrogate(text.charAt(text.length() - 1))) {
+                // Половины суррогатной пары по отдельности в UTF-8 не кодируются: ждём вторую из следующего куска
+                carry = text.substring(text.length() - 1);
+                text = text.substring(0, text.length() - 1);
             }
+            consume(text);
         }
 
-        int start = trimmed.indexOf('[');
-        int end = trimmed.lastIndexOf(']');
-        if (start != -1 && end != -1 && end > start) {
-            String extracted = trimmed.substring(start, end + 1);
-            if (isValidJsonArray(extracted)) {
-                return extracted;
+        /**
+         * Завершает разбор и возвращает все валидные шаги. Незакрытый последний объект (обрезанный ответ) игнорируется.
+         */
+        public List<StepikBlockRequest> finish() {
+            if (!carry.isEmpty()) {
+                consume(carry);
+                carry = "";
             }
-        }
+            if (!finished) {
+                feeder.endOfInput();
+                drain();
+                finished = true;
+            }
+            log.info("Parsed {} of {} step objects from batch response (length: {})", steps.size(), stepObjects, responseLength);
 
-        Pattern objectPattern = Pattern.compile("\\{[^{}]*(?:\\{[^{}]*\\}[^{}]*)*\\}", Pattern.DOTALL);
-        matcher = objectPattern.matcher(trimmed);
-        List<String> objects = new ArrayList<>();
-        while (matcher.find()) {
-            String obj = matcher.group(0);
-            if (isValidJsonObject(obj)) {
-                objects.add(obj);
+            if (responseLength < 20) {
+                throw new RuntimeException("Не удалось извлечь JSON массив из ответа LLM. " +
+                        "Ответ может быть некорректным или обрезанным. " +
+                        "Детали: Response too short or empty, likely truncated" +
+                        (responseLength > 0 ? ". Полный ответ: " + responseHead : ""));
+            }
+            if (steps.isEmpty()) {
+                log.error("No valid steps in batch response. Parse error: {}, response head: {}", parseError, responseHead);
+                throw new RuntimeException("No valid steps were parsed from the response. " +
+                        (parseError != null ? "Parse error: " + parseError + ". " : "") +
+                        "Original response: " + (responseHead.length() > 500
+                        ? responseHead.substring(0, 500) + "..."
+                        : responseHead));
             }
+            return List.copyOf(steps);
         }
 
-        if (!objects.isEmpty()) {
-            String array = "[" + String.join(", ", objects) + "]";
-            if (isValidJsonArray(array)) {
-                return array;
+        private void consume(String text) {
+            while (!finished && !text.isEmpty()) {
+                if (!started) {
+                    int offset = indexOfJsonStart(text);
+                    if (offset < 0) {
+                        return;
+                    }
+                    started = true;
+                    text = text.substring(offset);
+                }
+                if (!fieldSeen) {
+                    attempt.append(text);
+                }
+
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                try {
+                    feeder.feedInput(bytes, 0, bytes.length);
+                } catch (IOException e) {
+                    stop(e);
+                    return;
+                }
+                drain();
+
+                if (fieldSeen || stepObjects > 0) {
+                    attempt.setLength(0);
+                    return;
+                }
+                if (!finished) {
+                    return;
+                }
+                // Скобка оказалась прозой вроде "Here are [3] steps:" — ищем начало JSON после неё
+                text = attempt.substring(1);
+                restart();
             }
         }
 
-        log.error("Failed to extract JSON array. Response details:");
-        log.error("  - Length: {}", response.length());
-        log.error("  - First 500 chars: {}", response.length() > 500 ? response.substring(0, 500) + "..." : response);
-        log.error("  - Last 200 chars: {}", response.length() > 200 
-                ? "..." + response.substring(response.length() - 200) 
-                : response);
-        log.error("  - Contains '[': {}", response.contains("["));
-        log.error("  - Contains ']': {}", response.contains("]"));
-        log.error("  - Contains '{': {}", response.contains("{"));
-        log.error("  - Contains '}': {}", response.contains("}"));
-        
-        throw new IllegalArgumentException("Не найден валидный JSON массив в ответе. " +
-                "Ответ LLM может быть некорректным, обрезанным или поврежденным. " +
-                "Первые 500 символов ответа: " + 
-                (response.length() > 500 ? response.substring(0, 500) + "..." : response));
-    }
+        private void restart() {
+            attempt.setLength(0);
+            stack.clear();
+            started = false;
+            finished = false;
+            stepArrayFound = false;
+            parseError = null;
+            openParser();
+        }
 
-    private String fixEscapedHtmlTags(String text) {
-        if (text == null) {
-            return text;
+        private void openParser() {
+            try {
+                parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to create JSON parser", e);
+            }
+            feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
         }
-        text = text.replace("\\u007f", "");
-        text = text.replace("\\u003c", "<");
-        text = text.replace("\\u003e", ">");
-        text = text.replace("\\\\u007f", "");
-        text = text.replace("\\\\u003c", "<");
-        text = text.replace("\\\\u003e", ">");
-        return text;
-    }
 
-    private String extractPartialJsonArray(String response) {
-        if (response.length() > 10000 || response.chars().allMatch(c -> c == '\u007f' || Character.isWhitespace(c))) {
-            log.warn("Response too long or contains only escape characters, skipping partial extraction");
-            return null;
+        private int indexOfJsonStart(String chunk) {
+            for (int i = 0; i < chunk.length(); i++) {
+                char c = chunk.charAt(i);
+                if (c == '[' || c == '{') {
+                    return i;
+                }
+            }
+            return -1;
         }
-        
-        List<String> validObjects = new ArrayList<>();
-        int start = response.indexOf('[');
-        if (start == -1) {
-            start = response.indexOf('{');
+
+        private void drain() {
+            try {
+                JsonToken token;
+                while (!finished && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                    handle(token);
+                }
+            } catch (IOException e) {
+                stop(e);
+            }
         }
-        if (start == -1) {
-            return null;
+
+        private void stop(IOException e) {
+            finished = true;
+            if (stack.isEmpty() && stepObjects > 0) {
+                log.debug("Ignoring trailing text after batch JSON: {}", e.getMessage());
+            } else if (!fieldSeen && stepObjects == 0) {
+                log.debug("Skipping bracket that does not start batch JSON: {}", e.getMessage());
+            } else {
+                parseError = e instanceof JsonProcessingException jsonError ? jsonError.getOriginalMessage() : e.getMessage();
+                log.warn("Batch response is truncated or malformed after {} step objects: {}", stepObjects, parseError);
+            }
         }
-        
-        int depth = 0;
-        int objStart = -1;
-        for (int i = start; i < response.length() && validObjects.size() < 10; i++) {
-            char c = response.charAt(i);
-            if (c == '{') {
-                if (depth == 0) {
-                    objStart = i;
+
+        private void handle(JsonToken token) throws IOException {
+            Frame parent = stack.peek();
+            switch (token) {
+                case START_OBJECT -> {
+                    ObjectNode node = NODES.objectNode();
+                    boolean step = parent != null && parent.stepArray;
+                    if (parent != null && !step) {
+                        parent.attach(node);
+                    }
+                    stack.push(new Frame(node, false, step));
+                }
+                case START_ARRAY -> {
+                    ArrayNode node = NODES.arrayNode();
+                    boolean stepArray = !stepArrayFound && (parent == null
+                            || stack.size() == 1 && parent.node instanceof ObjectNode root && !isStepLike(root));
+                    if (stepArray) {
+                        stepArrayFound = true;
+                    } else if (parent != null) {
+                        parent.attach(node);
+                    }
+                    stack.push(new Frame(node, stepArray, false));
                 }
-                depth++;
-            } else if (c == '}') {
-                depth--;
-                if (depth == 0 && objStart != -1) {
-                    String obj = response.substring(objStart, i + 1);
-                    if ((obj.contains("\"text\"") || obj.contains("\"source\"")) && obj.length() > 20) {
-                        try {
-                            if (isValidJsonObject(obj)) {
-                                validObjects.add(obj);
-                            }
-                        } catch (Exception e) {
+                case END_OBJECT -> {
+                    Frame frame = stack.pop();
+                    if (frame.step) {
+                        emit((ObjectNode) frame.node);
+                    } else if (stack.isEmpty()) {
+                        if (stepArrayFound) {
+                            finished = true;
+                        } else if (isStepLike((ObjectNode) frame.node)) {
+                            emit((ObjectNode) frame.node);
                         }
                     }
-                    objStart = -1;
+                }
+                case END_ARRAY -> {
+                    stack.pop();
+                    if (stack.isEmpty()) {
+                        finished = true;
+                    }
+                }
+                case FIELD_NAME -> {
+                    fieldSeen = true;
+                    parent.fieldName = parser.currentName();
+                }
+                case VALUE_STRING -> attachScalar(parent, NODES.textNode(sanitize(parser.getText())));
+                case VALUE_NUMBER_INT -> attachScalar(parent, switch (parser.getNumberType()) {
+                    case INT -> NODES.numberNode(parser.getIntValue());
+                    case LONG -> NODES.numberNode(parser.getLongValue());
+                    default -> NODES.numberNode(parser.getBigIntegerValue());
+                });
+                case VALUE_NUMBER_FLOAT -> attachScalar(parent, NODES.numberNode(parser.getDoubleValue()));
+                case VALUE_TRUE -> attachScalar(parent, NODES.booleanNode(true));
+                case VALUE_FALSE -> attachScalar(parent, NODES.booleanNode(false));
+                case VALUE_NULL -> attachScalar(parent, NODES.nullNode());
+                default -> {
                 }
             }
         }
-        
-        if (validObjects.isEmpty()) {
-            return null;
-        }
-        
-        return "[" + String.join(", ", validObjects) + "]";
-    }
 
-    private String removeMarkdownAndExtraText(String text) {
-        int firstBracket = text.indexOf('[');
-        if (firstBracket > 0) {
-            String beforeBracket = text.substring(0, firstBracket);
-            if (beforeBracket.contains("```") || beforeBracket.contains("json")) {
-                text = text.substring(firstBracket);
+        private void attachScalar(Frame parent, JsonNode value) {
+            if (parent != null && !parent.stepArray) {
+                parent.attach(value);
             }
         }
-        return text.trim();
-    }
-
-    private boolean isValidJsonArray(String json) {
-        try {
-            objectMapper.readValue(json, new TypeReference<List<Object>>() {});
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
-    }
 
-    private boolean isValidJsonObject(String json) {
-        try {
-            objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {});
-            return true;
-        } catch (Exception e) {
-            return false;
+        private void emit(ObjectNode node) {
+            int index = ++stepObjects;
+            try {
+                steps.add(responseParser.parseResponse(node, stepType));
+                log.info("Successfully parsed step {} of type {}", index, stepType);
+            } catch (Exception e) {
+                log.error("Failed to parse step {} in batch: {}", index, e.getMessage());
+            }
         }
     }
 
-    public String extractJsonFromResponse(String response) {
-        if (response == null || response.trim().isEmpty()) {
-            throw new IllegalArgumentException("Empty response from AI");
-        }
+    private static final class Frame {
 
-        String trimmed = response.trim();
-        Pattern jsonPattern = Pattern.compile("```json\\s*(.*?)\\s*```", Pattern.DOTALL);
-        Matcher matcher = jsonPattern.matcher(trimmed);
-        if (matcher.find()) {
-            return matcher.group(1).trim();
-        }
+        private final ContainerNode<?> node;
+        private final boolean stepArray;
+        private final boolean step;
+        private String fieldName;
 
-        if (trimmed.startsWith("{") && trimmed.endsWith("}")) {
-            return trimmed;
+        private Frame(ContainerNode<?> node, boolean stepArray, boolean step) {
+            this.node = node;
+            this.stepArray = stepArray;
+            this.step = step;
         }
 
-        int start = trimmed.indexOf('{');
-        int end = trimmed.lastIndexOf('}');
-        if (start != -1 && end != -1 && end > start) {
-            return trimmed.substring(start, end + 1);
+        private void attach(JsonNode value) {
+            if (node instanceof ObjectNode object) {
+                object.set(fieldName, value);
+            } else {
+                ((ArrayNode) node).add(value);
+            }
         }
-
-        throw new IllegalArgumentException("No JSON found in response");
     }
-
 }
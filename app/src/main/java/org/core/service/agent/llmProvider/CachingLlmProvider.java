@@ -0,0 +1,66 @@
+package org.core.service.agent.llmProvider;
+
+import lombok.extern.slf4j.Slf4j;
+import org.core.dto.agent.ChatMessage;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Декоратор LlmProvider для детерминированных вызовов (классификация, анализ batch-плана):
+ * одинаковый набор сообщений для того же провайдера и модели отдаётся из LlmResponseCache без запроса к LLM.
+ */
+@Slf4j
+public class CachingLlmProvider implements LlmProvider {
+
+    private final String name;
+    private final LlmProvider delegate;
+    private final LlmResponseCache cache;
+
+    public CachingLlmProvider(String name, LlmProvider delegate, LlmResponseCache cache) {
+        this.name = name;
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public String chat(List<ChatMessage> messages) {
+        return cached(messages, null, 0, () -> delegate.chat(messages));
+    }
+
+    @Override
+    public String chat(List<ChatMessage> messages, String modelUri) {
+        return cached(messages, modelUri, 0, () -> delegate.chat(messages, modelUri));
+    }
+
+    @Override
+    public String chat(List<ChatMessage> messages, String modelUri, int maxTokens) {
+        return cached(messages, modelUri, maxTokens, () -> delegate.chat(messages, modelUri, maxTokens));
+    }
+
+    @Override
+    public String chatStream(List<ChatMessage> messages, String modelUri, Consumer<String> onToken) {
+        String key = cache.buildKey(name, messages, modelUri, 0);
+        String cachedResponse = cache.get(key);
+        if (cachedResponse != null) {
+            onToken.accept(cachedResponse);
+            return cachedResponse;
+        }
+        String response = delegate.chatStream(messages, modelUri, onToken);
+        cache.put(key, response);
+        return response;
+    }
+
+    private String cached(List<ChatMessage> messages, String modelUri, int maxTokens, Supplier<String> call) {
+        String key = cache.buildKey(name, messages, modelUri, maxTokens);
+        String cachedResponse = cache.get(key);
+        if (cachedResponse != null) {
+            log.debug("LLM response cache hit for key {}", key);
+            return cachedResponse;
+        }
+        String response = call.get();
+        cache.put(key, response);
+        return response;
+    }
+}
@@ -4,10 +4,12 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.core.dto.agent.ChatMessage;
+import org.core.exception.exceptions.LlmOverloadedException;
 import org.core.service.ai.DeepSeekService;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 @Component("deepseekProvider")
 @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
@@ -21,9 +23,11 @@ public class DeepSeekStrategy implements LlmProvider {
         try {
             String prompt = buildPrompt(messages);
             return deepSeekService.generateResponse(prompt);
+        } catch (LlmOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error in DeepSeek adapter: {}", e.getMessage());
-            throw new RuntimeException("Failed to get response from DeepSeek: " + e.getMessage());
+            throw new RuntimeException("Failed to get response from DeepSeek: " + e.getMessage(), e);
         }
     }
 
@@ -43,6 +47,13 @@ public class DeepSeekStrategy implements LlmProvider {
         return chat(messages, modelUri);
     }
     
+    @Override
+    public String chatStream(List<ChatMessage> messages, String modelUri, Consumer<String> onToken) {
+        String response = chat(messages, modelUri);
+        onToken.accept(response);
+        return response;
+    }
+
     private String buildPrompt(List<ChatMessage> messages) {
         StringBuilder prompt = new StringBuilder();
         
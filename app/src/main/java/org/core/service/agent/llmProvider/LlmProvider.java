@@ -2,6 +2,7 @@ package org.core.service.agent.llmProvider;
 
 import org.core.dto.agent.ChatMessage;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface LlmProvider {
     String chat(List<ChatMessage> messages);
@@ -9,4 +10,9 @@ public interface LlmProvider {
     String chat(List<ChatMessage> messages, String modelUri);
 
     String chat(List<ChatMessage> messages, String modelUri, int maxTokens);
+
+    /**
+     * Streams the completion chunk by chunk into {@code onToken} and returns the full text once the model is done.
+     */
+    String chatStream(List<ChatMessage> messages, String modelUri, Consumer<String> onToken);
 }
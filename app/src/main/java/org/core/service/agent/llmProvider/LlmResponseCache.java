@@ -0,0 +1,129 @@
+package org.core.service.agent.llmProvider;
+
+import lombok.extern.slf4j.Slf4j;
+import org.core.dto.agent.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Двухуровневый кэш ответов LLM: локальный LRU с TTL на каждом узле и общий слой в Redis.
+ * Ключ строится из имени провайдера, modelUri, maxTokens и хэша нормализованного списка сообщений:
+ * без провайдера вызовы с моделью по умолчанию у разных провайдеров получали бы один ключ.
+ */
+@Service
+@Slf4j
+public class LlmResponseCache {
+
+    private static final String KEY_PREFIX = "llm:response:";
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final Map<String, LocalEntry> localEntries;
+
+    public LlmResponseCache(RedisTemplate<String, Object> redisTemplate,
+                            @Value("${llm.cache.enabled}") boolean enabled,
+                            @Value("${llm.cache.ttl-seconds}") long ttlSeconds,
+                            @Value("${llm.cache.local.max-entries}") int maxLocalEntries) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.localEntries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LocalEntry> eldest) {
+                return size() > maxLocalEntries;
+            }
+        };
+    }
+
+    public String buildKey(String provider, List<ChatMessage> messages, String modelUri, int maxTokens) {
+        StringBuilder normalized = new StringBuilder();
+        normalized.append(provider)
+                .append('\u0000')
+                .append(modelUri == null || modelUri.isBlank() ? "default" : modelUri.trim())
+                .append('\u0000')
+                .append(maxTokens);
+        for (ChatMessage message : messages) {
+            normalized.append('\u0000')
+                    .append(message.getRole())
+                    .append('\u0001')
+                    .append(normalizeContent(message.getContent()));
+        }
+        return KEY_PREFIX + sha256(normalized.toString());
+    }
+
+    public String get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (localEntries) {
+            LocalEntry entry = localEntries.get(key);
+            if (entry != null) {
+                if (entry.expiresAtMillis() > System.currentTimeMillis()) {
+                    return entry.value();
+                }
+                localEntries.remove(key);
+            }
+        }
+
+        try {
+            Object cached = redisTemplate.opsForValue().get(key);
+            if (cached != null) {
+                putLocal(key, cached.toString());
+                return cached.toString();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read LLM response from Redis cache: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    public void put(String key, String response) {
+        if (!enabled || response == null || response.isBlank()) {
+            return;
+        }
+        putLocal(key, response);
+        try {
+            redisTemplate.opsForValue().set(key, response, ttl);
+        } catch (Exception e) {
+            log.warn("Failed to write LLM response to Redis cache: {}", e.getMessage());
+        }
+    }
+
+    private void putLocal(String key, String response) {
+        synchronized (localEntries) {
+            localEntries.put(key, new LocalEntry(response, System.currentTimeMillis() + ttl.toMillis()));
+        }
+    }
+
+    private String normalizeContent(String content) {
+        if (content == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(content.trim()).replaceAll(" ");
+    }
+
+    private String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record LocalEntry(String value, long expiresAtMillis) {
+    }
+}
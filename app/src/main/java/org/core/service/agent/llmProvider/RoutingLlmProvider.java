@@ -0,0 +1,323 @@
+package org.core.service.agent.llmProvider;
+
+import com.openai.errors.OpenAIIoException;
+import com.openai.errors.OpenAIRetryableException;
+import com.openai.errors.OpenAIServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.core.dto.agent.ChatMessage;
+import org.core.exception.exceptions.LlmOverloadedException;
+import org.core.service.ai.LlmCallPriority;
+import org.core.service.ai.LlmCaller;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * LlmProvider поверх основного и резервного маршрутов (провайдер + modelUri).
+ * Интерактивный вызов, не ответивший за p95 задержки основного маршрута, дублируется на резервный:
+ * берётся первый успешный ответ, проигравший запрос прерывается. Доля дублей ограничена hedge-бюджетом.
+ * При 5xx/429, таймауте или переполнении очереди вызов сразу переключается на резервный маршрут.
+ * Потоковые вызовы не дублируются и переключаются, только если клиенту ещё не ушёл ни один токен.
+ */
+@Slf4j
+public class RoutingLlmProvider implements LlmProvider {
+
+    private static final int LATENCY_WINDOW = 128;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final double MAX_HEDGE_TOKENS = 10.0;
+
+    private final Route primary;
+    private final Route fallback;
+    private final ExecutorService executor;
+    private final boolean hedgeEnabled;
+    private final long initialHedgeDelayMs;
+    private final long minHedgeDelayMs;
+    private final long maxHedgeDelayMs;
+    private final double hedgeRatio;
+    private final MeterRegistry meterRegistry;
+    private final Counter hedges;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private double hedgeTokens = MAX_HEDGE_TOKENS;
+
+    public RoutingLlmProvider(Route primary,
+                              @Nullable Route fallback,
+                              ExecutorService executor,
+                              MeterRegistry meterRegistry,
+                              boolean hedgeEnabled,
+                              long initialHedgeDelayMs,
+                              long minHedgeDelayMs,
+                              long maxHedgeDelayMs,
+                              double hedgeRatio) {
+        this.primary = primary;
+        this.fallback = fallback;
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+        this.hedgeEnabled = hedgeEnabled;
+        this.initialHedgeDelayMs = initialHedgeDelayMs;
+        this.minHedgeDelayMs = minHedgeDelayMs;
+        this.maxHedgeDelayMs = maxHedgeDelayMs;
+        this.hedgeRatio = hedgeRatio;
+        this.hedges = Counter.builder("llm.routing.hedges")
+                .description("LLM calls duplicated to the fallback route after the primary's p95 latency")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Маршрут вызова: провайдер и modelUri. Пустой modelUri у основного маршрута означает модель из запроса.
+     */
+    public record Route(String name, LlmProvider provider, @Nullable String modelUri) {
+    }
+
+    @Override
+    public String chat(List<ChatMessage> messages) {
+        return execute(null, (provider, modelUri) -> provider.chat(messages, modelUri));
+    }
+
+    @Override
+    public String chat(List<ChatMessage> messages, String modelUri) {
+        return execute(modelUri, (provider, uri) -> provider.chat(messages, uri));
+    }
+
+    @Override
+    public String chat(List<ChatMessage> messages, String modelUri, int maxTokens) {
+        return execute(modelUri, (provider, uri) -> provider.chat(messages, uri, maxTokens));
+    }
+
+    @Override
+    public String chatStream(List<ChatMessage> messages, String modelUri, Consumer<String> onToken) {
+        boolean[] emitted = new boolean[1];
+        try {
+            return primary.provider().chatStream(messages, primaryModelUri(modelUri), token -> {
+                emitted[0] = true;
+                onToken.accept(token);
+            });
+        } catch (RuntimeException e) {
+            if (fallback == null || emitted[0] || !isRetryable(e)) {
+                throw e;
+            }
+            failover(e);
+            return fallback.provider().chatStream(messages, fallback.modelUri(), onToken);
+        }
+    }
+
+    private String execute(@Nullable String modelUri, BiFunction<LlmProvider, String, String> call) {
+        String primaryUri = primaryModelUri(modelUri);
+        if (fallback == null) {
+            return call.apply(primary.provider(), primaryUri);
+        }
+
+        refillHedgeBudget();
+        LlmCallPriority priority = LlmCallPriority.current();
+        String latencyKey = primary.name() + ":" + (primaryUri == null ? "default" : primaryUri);
+        if (!hedgeEnabled || priority != LlmCallPriority.INTERACTIVE) {
+            try {
+                return timed(latencyKey, () -> call.apply(primary.provider(), primaryUri));
+            } catch (RuntimeException e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                failover(e);
+                return call.apply(fallback.provider(), fallback.modelUri());
+            }
+        }
+
+        Attempt first = start(priority, () -> timed(latencyKey, () -> call.apply(primary.provider(), primaryUri)));
+        try {
+            return first.result().get(hedgeDelayMs(latencyKey), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            RuntimeException cause = unwrap(e);
+            if (!isRetryable(cause)) {
+                throw cause;
+            }
+            failover(cause);
+            return call.apply(fallback.provider(), fallback.modelUri());
+        } catch (TimeoutException e) {
+            if (!acquireHedgeToken()) {
+                return await(first.result(), first, null);
+            }
+        } catch (InterruptedException e) {
+            first.cancel();
+            Thread.currentThread().interrupt();
+            throw new LlmOverloadedException("Interrupted while waiting for LLM response");
+        }
+
+        hedges.increment();
+        log.info("LLM route {} did not answer within its p95, hedging to {}", primary.name(), fallback.name());
+        Attempt second = start(priority, () -> call.apply(fallback.provider(), fallback.modelUri()));
+        return await(firstSuccess(first.result(), second.result()), first, second);
+    }
+
+    private String await(CompletableFuture<String> result, Attempt first, @Nullable Attempt second) {
+        try {
+            String response = result.get();
+            if (second != null) {
+                boolean primaryWon = first.result().isDone() && !first.result().isCompletedExceptionally();
+                meterRegistry.counter("llm.routing.hedge.wins", "route", primaryWon ? primary.name() : fallback.name())
+                        .increment();
+            }
+            return response;
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LlmOverloadedException("Interrupted while waiting for LLM response");
+        } finally {
+            first.cancel();
+            if (second != null) {
+                second.cancel();
+            }
+        }
+    }
+
+    private Attempt start(LlmCallPriority priority, Supplier<String> call) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        LlmCaller caller = LlmCaller.current();
+        Future<?> task = executor.submit(() -> {
+            try {
+                result.complete(caller.call(() -> priority.call(call)));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return new Attempt(result, task);
+    }
+
+    private String timed(String latencyKey, Supplier<String> call) {
+        long started = System.nanoTime();
+        String response = call.get();
+        latencies.computeIfAbsent(latencyKey, key -> new LatencyWindow())
+                .record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return response;
+    }
+
+    private long hedgeDelayMs(String latencyKey) {
+        LatencyWindow window = latencies.get(latencyKey);
+        long p95 = window == null ? -1 : window.p95();
+        if (p95 < 0) {
+            return initialHedgeDelayMs;
+        }
+        return Math.max(minHedgeDelayMs, Math.min(maxHedgeDelayMs, p95));
+    }
+
+    /**
+     * Каждый вызов пополняет бюджет на hedge-ratio, дубль тратит единицу: при перегрузке дубли
+     * не удваивают нагрузку на провайдеров.
+     */
+    private synchronized void refillHedgeBudget() {
+        hedgeTokens = Math.min(MAX_HEDGE_TOKENS, hedgeTokens + hedgeRatio);
+    }
+
+    private synchronized boolean acquireHedgeToken() {
+        if (hedgeTokens < 1.0) {
+            return false;
+        }
+        hedgeTokens -= 1.0;
+        return true;
+    }
+
+    private void failover(RuntimeException cause) {
+        log.warn("LLM route {} failed ({}), failing over to {}", primary.name(), cause.getMessage(), fallback.name());
+        meterRegistry.counter("llm.routing.failovers", "from", primary.name(), "to", fallback.name()).increment();
+    }
+
+    private String primaryModelUri(@Nullable String modelUri) {
+        return modelUri == null || modelUri.isBlank() ? primary.modelUri() : modelUri;
+    }
+
+    private static CompletableFuture<String> firstSuccess(CompletableFuture<String> first, CompletableFuture<String> second) {
+        CompletableFuture<String> winner = new CompletableFuture<>();
+        for (CompletableFuture<String> attempt : Arrays.asList(first, second)) {
+            attempt.whenComplete((response, error) -> {
+                if (error == null) {
+                    winner.complete(response);
+                } else if (first.isCompletedExceptionally() && second.isCompletedExceptionally()) {
+                    winner.completeExceptionally(first.exceptionNow());
+                }
+            });
+        }
+        return winner;
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        return new RuntimeException(cause);
+    }
+
+    static boolean isRetryable(Throwable error) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof LlmOverloadedException) {
+                return true;
+            }
+            if (current instanceof HttpStatusCodeException httpError) {
+                int status = httpError.getStatusCode().value();
+                return status >= 500 || status == 429;
+            }
+            if (current instanceof OpenAIServiceException serviceError) {
+                int status = serviceError.statusCode();
+                return status >= 500 || status == 429;
+            }
+            if (current instanceof ResourceAccessException
+                    || current instanceof OpenAIIoException
+                    || current instanceof OpenAIRetryableException
+                    || current instanceof HttpTimeoutException
+                    || current instanceof SocketTimeoutException
+                    || current instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Attempt(CompletableFuture<String> result, Future<?> task) {
+
+        void cancel() {
+            if (!task.isDone()) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private static final class LatencyWindow {
+
+        private final long[] samples = new long[LATENCY_WINDOW];
+        private int count;
+        private int next;
+
+        synchronized void record(long latencyMs) {
+            samples[next] = latencyMs;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        synchronized long p95() {
+            if (count < MIN_LATENCY_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(count * 0.95) - 1];
+        }
+    }
+}
@@ -4,10 +4,13 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.core.dto.agent.ChatMessage;
+import org.core.exception.exceptions.LlmOverloadedException;
 import org.core.service.ai.YandexGptService;
 import org.springframework.stereotype.Component;
 
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Component("yandexProvider")
 @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
@@ -23,9 +26,11 @@ public class YandexGptStrategy implements LlmProvider {
                     .anyMatch(chatMessage -> chatMessage.getRole().equals("system"));
 
             return yandexGptService.generateResponse(messages, hasSystemPrompt);
+        } catch (LlmOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error in YandexGPT adapter: {}", e.getMessage());
-            throw new RuntimeException("Failed to get response from YandexGPT: " + e.getMessage());
+            throw new RuntimeException("Failed to get response from YandexGPT: " + e.getMessage(), e);
         }
     }
 
@@ -37,9 +42,11 @@ public class YandexGptStrategy implements LlmProvider {
                     .anyMatch(chatMessage -> chatMessage.getRole().equals("system"));
 
             return yandexGptService.generateResponse(messages, hasSystemPrompt, modelUri);
+        } catch (LlmOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error in YandexGPT adapter: {}, with modelUri: {}", e.getMessage(), modelUri);
-            throw new RuntimeException("Failed to get response from YandexGPT: " + e.getMessage());
+            throw new RuntimeException("Failed to get response from YandexGPT: " + e.getMessage(), e);
         }
     }
 
@@ -53,9 +60,23 @@ public class YandexGptStrategy implements LlmProvider {
                 return yandexGptService.generateResponse(messages, hasSystemPrompt, maxTokens);
             }
             return yandexGptService.generateResponse(messages, hasSystemPrompt, maxTokens, modelUri);
+        } catch (LlmOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error in YandexGPT adapter: {}, with modelUri: {}", e.getMessage(), modelUri);
-            throw new RuntimeException("Failed to get response from YandexGPT: " + e.getMessage());
+            throw new RuntimeException("Failed to get response from YandexGPT: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String chatStream(List<ChatMessage> messages, String modelUri, Consumer<String> onToken) {
+        try {
+            return yandexGptService.generateResponseStream(messages, modelUri, onToken);
+        } catch (LlmOverloadedException | UncheckedIOException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error in YandexGPT streaming adapter: {}, with modelUri: {}", e.getMessage(), modelUri);
+            throw new RuntimeException("Failed to get response from YandexGPT: " + e.getMessage(), e);
         }
     }
 }
@@ -0,0 +1,212 @@
+package org.core.service.agent.prompt;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Реестр шаблонов промптов из prompts/stepik/**. Шаблон читается и разбирается один раз,
+ * кэш разделён по пространствам имён (шаги, batch, анализаторы), чтобы одинаковые имена не пересекались.
+ * Если задан prompts.override-dir, файл оттуда (с тем же относительным путём) важнее classpath,
+ * а изменения в каталоге отслеживаются WatchService и сбрасывают кэш соответствующего шаблона.
+ * Кэшируются только найденные шаблоны: имя шага приходит из запроса, и промахи раздували бы кэш без предела.
+ */
+@Service
+@Slf4j
+public class PromptRegistry {
+
+    private static final String CLASSPATH_ROOT = "classpath:prompts/stepik/";
+    private static final String EXTENSION = ".txt";
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
+    public enum Namespace {
+        STEP(""),
+        BATCH("batch-creator/"),
+        ANALYZER("analyzer/");
+
+        private final String directory;
+
+        Namespace(String directory) {
+            this.directory = directory;
+        }
+    }
+
+    private record Key(Namespace namespace, String name) {
+    }
+
+    private final ResourceLoader resourceLoader;
+    private final Path overrideDir;
+    private final Map<Key, PromptTemplate> templates = new ConcurrentHashMap<>();
+    // Растёт при каждом сбросе кэша: шаблон, прочитанный до сброса, в кэш уже не кладём
+    private final AtomicLong generation = new AtomicLong();
+    private WatchService watchService;
+    private Thread watcher;
+
+    public PromptRegistry(ResourceLoader resourceLoader,
+                          @Value("${prompts.override-dir}") String overrideDir) {
+        this.resourceLoader = resourceLoader;
+        this.overrideDir = overrideDir == null || overrideDir.isBlank() ? null : Path.of(overrideDir).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Шаблон по имени или пустой Optional, если его нет ни в каталоге переопределений, ни в classpath.
+     */
+    public Optional<PromptTemplate> find(Namespace namespace, String name) {
+        if (name == null || !NAME.matcher(name).matches()) {
+            return Optional.empty();
+        }
+        Key key = new Key(namespace, name);
+        PromptTemplate cached = templates.get(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long loadedAt = generation.get();
+        Optional<PromptTemplate> loaded = load(key);
+        if (loaded.isEmpty() || generation.get() != loadedAt) {
+            return loaded;
+        }
+        return Optional.of(templates.merge(key, loaded.get(), (existing, ignored) -> existing));
+    }
+
+    public PromptTemplate get(Namespace namespace, String name) {
+        return find(namespace, name)
+                .orElseThrow(() -> new RuntimeException("Prompt not found: " + namespace.directory + name));
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        templates.clear();
+        log.info("Prompt template cache cleared");
+    }
+
+    private Optional<PromptTemplate> load(Key key) {
+        String relativePath = key.namespace().directory + key.name() + EXTENSION;
+        try {
+            if (overrideDir != null) {
+                Path override = overrideDir.resolve(relativePath);
+                if (Files.isRegularFile(override)) {
+                    log.info("Loaded prompt {} from override directory", relativePath);
+                    return Optional.of(PromptTemplate.parse(Files.readString(override, StandardCharsets.UTF_8)));
+                }
+            }
+            Resource resource = resourceLoader.getResource(CLASSPATH_ROOT + relativePath);
+            if (!resource.exists()) {
+                return Optional.empty();
+            }
+            return Optional.of(PromptTemplate.parse(resource.getContentAsString(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            log.error("Failed to read prompt {}: {}", relativePath, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @PostConstruct
+    void startWatching() {
+        if (overrideDir == null) {
+            return;
+        }
+        if (!Files.isDirectory(overrideDir)) {
+            log.warn("Prompt override directory {} does not exist, hot reload is disabled", overrideDir);
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            registerTree(overrideDir);
+        } catch (IOException e) {
+            log.warn("Failed to watch prompt override directory {}: {}", overrideDir, e.getMessage());
+            return;
+        }
+        watcher = Thread.ofPlatform().name("prompt-watcher").daemon().start(this::watch);
+        log.info("Watching prompt override directory {}", overrideDir);
+    }
+
+    @PreDestroy
+    void stopWatching() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey watchKey = watchService.take();
+                Path directory = (Path) watchKey.watchable();
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        invalidateAll();
+                        continue;
+                    }
+                    Path changed = directory.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                        registerTree(changed);
+                        invalidateAll();
+                    } else {
+                        invalidate(changed);
+                    }
+                }
+                watchKey.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Prompt override watcher stopped: {}", e.getMessage());
+        }
+    }
+
+    private void invalidate(Path changed) {
+        String relativePath = overrideDir.relativize(changed).toString().replace('\\', '/');
+        if (!relativePath.endsWith(EXTENSION)) {
+            return;
+        }
+        String withoutExtension = relativePath.substring(0, relativePath.length() - EXTENSION.length());
+        for (Namespace namespace : Namespace.values()) {
+            if (withoutExtension.startsWith(namespace.directory)) {
+                String name = withoutExtension.substring(namespace.directory.length());
+                generation.incrementAndGet();
+                if (templates.remove(new Key(namespace, name)) != null) {
+                    log.info("Prompt {} changed, reloading on next use", relativePath);
+                }
+            }
+        }
+    }
+
+    private void registerTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
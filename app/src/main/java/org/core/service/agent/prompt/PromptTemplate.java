@@ -0,0 +1,143 @@
+package org.core.service.agent.prompt;
+
+import jakarta.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Шаблон промпта, один раз разобранный на литеральные сегменты и типизированные плейсхолдеры {{имя}}.
+ * Рендер только склеивает сегменты в StringBuilder заранее посчитанного размера, без regex и промежуточных строк.
+ * Неизвестные {{...}} остаются в тексте как есть.
+ */
+public final class PromptTemplate {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+    private static final String CONTEXT_HEADER = "\n=== КОНТЕКСТ ДЛЯ ЗАДАНИЙ ===\n";
+
+    public enum Placeholder {
+        COUNT("count"),
+        CONTEXT("context"),
+        STEP_TYPE("stepType"),
+        BASE_PROMPT("basePrompt");
+
+        private final String token;
+
+        Placeholder(String token) {
+            this.token = token;
+        }
+
+        private static Placeholder byToken(String token) {
+            for (Placeholder placeholder : values()) {
+                if (placeholder.token.equals(token)) {
+                    return placeholder;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Значения плейсхолдеров; context выводится блоком с заголовком и только если он не пустой.
+     */
+    public record Arguments(int count, @Nullable String context, @Nullable String stepType, @Nullable String basePrompt) {
+    }
+
+    private final String text;
+    private final Object[] segments;
+    private final int literalLength;
+
+    private PromptTemplate(String text, Object[] segments, int literalLength) {
+        this.text = text;
+        this.segments = segments;
+        this.literalLength = literalLength;
+    }
+
+    public static PromptTemplate parse(String text) {
+        List<Object> segments = new ArrayList<>();
+        int literalLength = 0;
+        int literalStart = 0;
+        int position = 0;
+        while ((position = text.indexOf(OPEN, position)) >= 0) {
+            int end = text.indexOf(CLOSE, position + OPEN.length());
+            if (end < 0) {
+                break;
+            }
+            Placeholder placeholder = Placeholder.byToken(text.substring(position + OPEN.length(), end).trim());
+            if (placeholder == null) {
+                position += OPEN.length();
+                continue;
+            }
+            if (position > literalStart) {
+                segments.add(text.substring(literalStart, position));
+                literalLength += position - literalStart;
+            }
+            segments.add(placeholder);
+            position = end + CLOSE.length();
+            literalStart = position;
+        }
+        if (literalStart < text.length()) {
+            segments.add(text.substring(literalStart));
+            literalLength += text.length() - literalStart;
+        }
+        return new PromptTemplate(text, segments.toArray(), literalLength);
+    }
+
+    /**
+     * Исходный текст шаблона.
+     */
+    public String text() {
+        return text;
+    }
+
+    public boolean hasPlaceholders() {
+        return literalLength != text.length();
+    }
+
+    public String render(Arguments arguments) {
+        String count = Integer.toString(arguments.count());
+        String context = arguments.context() == null || arguments.context().isBlank() ? null : arguments.context().trim();
+
+        int capacity = literalLength;
+        for (Object segment : segments) {
+            if (segment instanceof Placeholder placeholder) {
+                capacity += switch (placeholder) {
+                    case COUNT -> count.length();
+                    case CONTEXT -> context == null ? 0 : CONTEXT_HEADER.length() + context.length() + 2;
+                    case STEP_TYPE -> lengthOf(arguments.stepType());
+                    case BASE_PROMPT -> lengthOf(arguments.basePrompt());
+                };
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(capacity);
+        for (Object segment : segments) {
+            if (segment instanceof String literal) {
+                sb.append(literal);
+                continue;
+            }
+            switch ((Placeholder) segment) {
+                case COUNT -> sb.append(count);
+                case CONTEXT -> {
+                    if (context != null) {
+                        sb.append(CONTEXT_HEADER).append(context).append("\n\n");
+                    }
+                }
+                case STEP_TYPE -> appendIfPresent(sb, arguments.stepType());
+                case BASE_PROMPT -> appendIfPresent(sb, arguments.basePrompt());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int lengthOf(@Nullable String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static void appendIfPresent(StringBuilder sb, @Nullable String value) {
+        if (value != null) {
+            sb.append(value);
+        }
+    }
+}
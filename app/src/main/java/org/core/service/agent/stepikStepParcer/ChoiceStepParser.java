@@ -1,5 +1,6 @@
 package org.core.service.agent.stepikStepParcer;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -22,15 +23,22 @@ public class ChoiceStepParser {
 
     public StepikBlockRequest parseChoiceRequest(String json) {
         try {
-            JsonNode node = objectMapper.readTree(json);
+            return parseChoiceRequest(objectMapper.readTree(json));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to parse choice request: {}", e.getMessage(), e);
+            throw new RuntimeException("Invalid choice request format", e);
+        }
+    }
+
+    public StepikBlockRequest parseChoiceRequest(JsonNode node) {
+        try {
             if (node.isObject()) {
                 ObjectNode objectNode = (ObjectNode) node;
                 if (!objectNode.has("name") || objectNode.get("name").isNull()) {
                     objectNode.put("name", "choice");
                 }
             }
-            String jsonWithName = objectMapper.writeValueAsString(node);
-            StepikBlockChoiceRequest request = objectMapper.readValue(jsonWithName, StepikBlockChoiceRequest.class);
+            StepikBlockChoiceRequest request = objectMapper.treeToValue(node, StepikBlockChoiceRequest.class);
             if (!validateChoiceRequest(request)) {
                 throw new IllegalArgumentException("Invalid choice request structure");
             }
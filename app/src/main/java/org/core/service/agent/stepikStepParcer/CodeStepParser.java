@@ -1,6 +1,7 @@
 package org.core.service.agent.stepikStepParcer;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.json.JsonReadFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -31,15 +32,22 @@ public class CodeStepParser {
             lenientMapper.setConfig(objectMapper.getDeserializationConfig());
             lenientMapper.setConfig(objectMapper.getSerializationConfig());
 
-            JsonNode node = lenientMapper.readTree(json);
+            return parseCodeRequest(lenientMapper.readTree(json));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to parse code request: {}", e.getMessage(), e);
+            throw new RuntimeException("Invalid code request format", e);
+        }
+    }
+
+    public StepikBlockRequest parseCodeRequest(JsonNode node) {
+        try {
             if (node.isObject()) {
                 ObjectNode objectNode = (ObjectNode) node;
                 if (!objectNode.has("name") || objectNode.get("name").isNull()) {
                     objectNode.put("name", "code");
                 }
             }
-            String jsonWithName = lenientMapper.writeValueAsString(node);
-            StepikBlockCodeRequest request = lenientMapper.readValue(jsonWithName, StepikBlockCodeRequest.class);
+            StepikBlockCodeRequest request = objectMapper.treeToValue(node, StepikBlockCodeRequest.class);
             fixCodeRequestIfNeeded(request);
             if (!validateCodeRequest(request)) {
                 throw new IllegalArgumentException("Invalid code request structure");
@@ -1,5 +1,6 @@
 package org.core.service.agent.stepikStepParcer;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -23,15 +24,22 @@ public class FillBlanksStepParser {
 
     public StepikBlockRequest parseFillBlanksRequest(String json) {
         try {
-            JsonNode node = objectMapper.readTree(json);
+            return parseFillBlanksRequest(objectMapper.readTree(json));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to parse fill-blanks request: {}", e.getMessage(), e);
+            throw new RuntimeException("Invalid fill-blanks request format", e);
+        }
+    }
+
+    public StepikBlockRequest parseFillBlanksRequest(JsonNode node) {
+        try {
             if (node.isObject()) {
                 ObjectNode objectNode = (ObjectNode) node;
                 if (!objectNode.has("name") || objectNode.get("name").isNull()) {
                     objectNode.put("name", "fill-blanks");
                 }
             }
-            String jsonWithName = objectMapper.writeValueAsString(node);
-            StepikBlockFillBlanksRequest request = objectMapper.readValue(jsonWithName, StepikBlockFillBlanksRequest.class);
+            StepikBlockFillBlanksRequest request = objectMapper.treeToValue(node, StepikBlockFillBlanksRequest.class);
             
             fixMissingIsCorrect(request);
             if (!validateFillBlanksRequest(request)) {
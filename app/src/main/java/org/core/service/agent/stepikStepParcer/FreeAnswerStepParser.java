@@ -1,5 +1,6 @@
 package org.core.service.agent.stepikStepParcer;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -19,15 +20,22 @@ public class FreeAnswerStepParser {
 
     public StepikBlockRequest parseFreeAnswerRequest(String json) {
         try {
-            JsonNode node = objectMapper.readTree(json);
+            return parseFreeAnswerRequest(objectMapper.readTree(json));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to parse free-answer request: {}", e.getMessage(), e);
+            throw new RuntimeException("Invalid free-answer request format", e);
+        }
+    }
+
+    public StepikBlockRequest parseFreeAnswerRequest(JsonNode node) {
+        try {
             if (node.isObject()) {
                 ObjectNode objectNode = (ObjectNode) node;
                 if (!objectNode.has("name") || objectNode.get("name").isNull()) {
                     objectNode.put("name", "free-answer");
                 }
             }
-            String jsonWithName = objectMapper.writeValueAsString(node);
-            StepikBlockFreeAnswerRequest request = objectMapper.readValue(jsonWithName, StepikBlockFreeAnswerRequest.class);
+            StepikBlockFreeAnswerRequest request = objectMapper.treeToValue(node, StepikBlockFreeAnswerRequest.class);
             if (!validateFreeAnswerRequest(request)) {
                 throw new IllegalArgumentException("Invalid free-answer request structure");
             }
@@ -1,6 +1,7 @@
 package org.core.service.agent.stepikStepParcer;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.json.JsonReadFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -32,15 +33,22 @@ public class MatchingStepParser {
             lenientMapper.setConfig(objectMapper.getDeserializationConfig());
             lenientMapper.setConfig(objectMapper.getSerializationConfig());
             
-            JsonNode node = lenientMapper.readTree(json);
+            return parseMatchingRequest(lenientMapper.readTree(json));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to parse matching request: {}", e.getMessage(), e);
+            throw new RuntimeException("Invalid matching request format", e);
+        }
+    }
+
+    public StepikBlockRequest parseMatchingRequest(JsonNode node) {
+        try {
             if (node.isObject()) {
                 ObjectNode objectNode = (ObjectNode) node;
                 if (!objectNode.has("name") || objectNode.get("name").isNull()) {
                     objectNode.put("name", "matching");
                 }
             }
-            String jsonWithName = lenientMapper.writeValueAsString(node);
-            StepikBlockMatchingRequest request = lenientMapper.readValue(jsonWithName, StepikBlockMatchingRequest.class);
+            StepikBlockMatchingRequest request = objectMapper.treeToValue(node, StepikBlockMatchingRequest.class);
             if (!validateMatchingRequest(request)) {
                 throw new IllegalArgumentException("Invalid matching request structure");
             }
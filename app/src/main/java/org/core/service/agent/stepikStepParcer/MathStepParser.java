@@ -1,5 +1,6 @@
 package org.core.service.agent.stepikStepParcer;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -19,15 +20,22 @@ public class MathStepParser {
 
     public StepikBlockRequest parseMathRequest(String json) {
         try {
-            JsonNode node = objectMapper.readTree(json);
+            return parseMathRequest(objectMapper.readTree(json));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to parse math request: {}", e.getMessage(), e);
+            throw new RuntimeException("Invalid math request format", e);
+        }
+    }
+
+    public StepikBlockRequest parseMathRequest(JsonNode node) {
+        try {
             if (node.isObject()) {
                 ObjectNode objectNode = (ObjectNode) node;
                 if (!objectNode.has("name") || objectNode.get("name").isNull()) {
                     objectNode.put("name", "math");
                 }
             }
-            String jsonWithName = objectMapper.writeValueAsString(node);
-            StepikBlockMathRequest request = objectMapper.readValue(jsonWithName, StepikBlockMathRequest.class);
+            StepikBlockMathRequest request = objectMapper.treeToValue(node, StepikBlockMathRequest.class);
             if (!validateMathRequest(request)) {
                 throw new IllegalArgumentException("Invalid math request structure");
             }
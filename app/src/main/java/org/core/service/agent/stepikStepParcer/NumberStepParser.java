@@ -1,6 +1,7 @@
 package org.core.service.agent.stepikStepParcer;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.json.JsonReadFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -32,15 +33,22 @@ public class NumberStepParser {
             lenientMapper.setConfig(objectMapper.getDeserializationConfig());
             lenientMapper.setConfig(objectMapper.getSerializationConfig());
             
-            JsonNode node = lenientMapper.readTree(json);
+            return parseNumberRequest(lenientMapper.readTree(json));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to parse number request: {}", e.getMessage(), e);
+            throw new RuntimeException("Invalid number request format", e);
+        }
+    }
+
+    public StepikBlockRequest parseNumberRequest(JsonNode node) {
+        try {
             if (node.isObject()) {
                 ObjectNode objectNode = (ObjectNode) node;
                 if (!objectNode.has("name") || objectNode.get("name").isNull()) {
                     objectNode.put("name", "number");
                 }
             }
-            String jsonWithName = lenientMapper.writeValueAsString(node);
-            StepikBlockNumberRequest request = lenientMapper.readValue(jsonWithName, StepikBlockNumberRequest.class);
+            StepikBlockNumberRequest request = objectMapper.treeToValue(node, StepikBlockNumberRequest.class);
             if (!validateNumberRequest(request)) {
                 throw new IllegalArgumentException("Invalid number request structure");
             }
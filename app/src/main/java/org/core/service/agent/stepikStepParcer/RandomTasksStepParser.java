@@ -1,5 +1,6 @@
 package org.core.service.agent.stepikStepParcer;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -19,15 +20,22 @@ public class RandomTasksStepParser {
 
     public StepikBlockRequest parseRandomTasksRequest(String json) {
         try {
-            JsonNode node = objectMapper.readTree(json);
+            return parseRandomTasksRequest(objectMapper.readTree(json));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to parse random-tasks request: {}", e.getMessage(), e);
+            throw new RuntimeException("Invalid random-tasks request format", e);
+        }
+    }
+
+    public StepikBlockRequest parseRandomTasksRequest(JsonNode node) {
+        try {
             if (node.isObject()) {
                 ObjectNode objectNode = (ObjectNode) node;
                 if (!objectNode.has("name") || objectNode.get("name").isNull()) {
                     objectNode.put("name", "random-tasks");
                 }
             }
-            String jsonWithName = objectMapper.writeValueAsString(node);
-            StepikBlockRandomTasksRequest request = objectMapper.readValue(jsonWithName, StepikBlockRandomTasksRequest.class);
+            StepikBlockRandomTasksRequest request = objectMapper.treeToValue(node, StepikBlockRandomTasksRequest.class);
             if (!validateRandomTasksRequest(request)) {
                 throw new IllegalArgumentException("Invalid random-tasks request structure");
             }
@@ -1,5 +1,6 @@
 package org.core.service.agent.stepikStepParcer;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -22,15 +23,22 @@ public class SortingStepParser {
 
     public StepikBlockRequest parseSortingRequest(String json) {
         try {
-            JsonNode node = objectMapper.readTree(json);
+            return parseSortingRequest(objectMapper.readTree(json));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to parse sorting request: {}", e.getMessage(), e);
+            throw new RuntimeException("Invalid sorting request format", e);
+        }
+    }
+
+    public StepikBlockRequest parseSortingRequest(JsonNode node) {
+        try {
             if (node.isObject()) {
                 ObjectNode objectNode = (ObjectNode) node;
                 if (!objectNode.has("name") || objectNode.get("name").isNull()) {
                     objectNode.put("name", "sorting");
                 }
             }
-            String jsonWithName = objectMapper.writeValueAsString(node);
-            StepikBlockSortingRequest request = objectMapper.readValue(jsonWithName, StepikBlockSortingRequest.class);
+            StepikBlockSortingRequest request = objectMapper.treeToValue(node, StepikBlockSortingRequest.class);
             if (!validateSortingRequest(request)) {
                 throw new IllegalArgumentException("Invalid sorting request structure");
             }
@@ -1,5 +1,6 @@
 package org.core.service.agent.stepikStepParcer;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -28,15 +29,22 @@ public class StringStepParser {
 
     public StepikBlockRequest parseStringRequest(String json) {
         try {
-            JsonNode node = objectMapper.readTree(json);
+            return parseStringRequest(objectMapper.readTree(json));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to parse string request: {}", e.getMessage(), e);
+            throw new RuntimeException("Invalid string request format", e);
+        }
+    }
+
+    public StepikBlockRequest parseStringRequest(JsonNode node) {
+        try {
             if (node.isObject()) {
                 ObjectNode objectNode = (ObjectNode) node;
                 if (!objectNode.has("name") || objectNode.get("name").isNull()) {
                     objectNode.put("name", "string");
                 }
             }
-            String jsonWithName = objectMapper.writeValueAsString(node);
-            StepikBlockStringRequest request = objectMapper.readValue(jsonWithName, StepikBlockStringRequest.class);
+            StepikBlockStringRequest request = objectMapper.treeToValue(node, StepikBlockStringRequest.class);
             fixEmptyPattern(request);
             if (!validateStringRequest(request)) {
                 throw new IllegalArgumentException("Invalid string request structure");
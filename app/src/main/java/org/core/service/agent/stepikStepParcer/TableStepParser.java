@@ -1,5 +1,6 @@
 package org.core.service.agent.stepikStepParcer;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -23,15 +24,22 @@ public class TableStepParser {
 
     public StepikBlockRequest parseTableRequest(String json) {
         try {
-            JsonNode node = objectMapper.readTree(json);
+            return parseTableRequest(objectMapper.readTree(json));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to parse table request: {}", e.getMessage(), e);
+            throw new RuntimeException("Invalid table request format", e);
+        }
+    }
+
+    public StepikBlockRequest parseTableRequest(JsonNode node) {
+        try {
             if (node.isObject()) {
                 ObjectNode objectNode = (ObjectNode) node;
                 if (!objectNode.has("name") || objectNode.get("name").isNull()) {
                     objectNode.put("name", "table");
                 }
             }
-            String jsonWithName = objectMapper.writeValueAsString(node);
-            StepikBlockTableRequest request = objectMapper.readValue(jsonWithName, StepikBlockTableRequest.class);
+            StepikBlockTableRequest request = objectMapper.treeToValue(node, StepikBlockTableRequest.class);
             if (!validateTableRequest(request)) {
                 throw new IllegalArgumentException("Invalid table request structure");
             }
@@ -1,5 +1,6 @@
 package org.core.service.agent.stepikStepParcer;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -19,15 +20,22 @@ public class TextStepParser {
 
     public StepikBlockRequest parseTextRequest(String json) {
         try {
-            JsonNode node = objectMapper.readTree(json);
+            return parseTextRequest(objectMapper.readTree(json));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to parse text request: {}", e.getMessage(), e);
+            throw new RuntimeException("Invalid text request format", e);
+        }
+    }
+
+    public StepikBlockRequest parseTextRequest(JsonNode node) {
+        try {
             if (node.isObject()) {
                 ObjectNode objectNode = (ObjectNode) node;
                 if (!objectNode.has("name") || objectNode.get("name").isNull()) {
                     objectNode.put("name", "text");
                 }
             }
-            String jsonWithName = objectMapper.writeValueAsString(node);
-            StepikBlockTextRequest request = objectMapper.readValue(jsonWithName, StepikBlockTextRequest.class);
+            StepikBlockTextRequest request = objectMapper.treeToValue(node, StepikBlockTextRequest.class);
 
             if (!validateTextRequest(request)) {
                 throw new IllegalArgumentException("Invalid text request structure");
@@ -9,7 +9,6 @@ import org.core.domain.ai.AiSession;
 import org.core.domain.ai.ChatType;
 import org.core.dto.ai.AiMessageHistoryDTO;
 import org.core.dto.ai.GeneratedStepHistoryDTO;
-import org.core.dto.stepik.step.StepikBlockRequest;
 import org.core.exception.exceptions.UserNotFoundException;
 import org.core.repository.UserRepository;
 import org.core.repository.ai.AiMessageRepository;
@@ -20,7 +19,6 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -42,32 +40,6 @@ public class AiSessionMessageService {
     private final AiMessageRepository aiMessageRepository;
     private final AiMessageHelper aiMessageHelper;
 
-    public void saveMessageToChatHistory(Long userId,
-                                         String sessionId,
-                                         AiMessageRole messageRole,
-                                         ChatType chatType,
-                                         String content,
-                                         @Nullable String stepType,
-                                         @Nullable StepikBlockRequest payload) {
-        AiSession aiSession = resolveSession(userId, sessionId, chatType, messageRole, content, stepType);
-
-        int nextOrder = aiMessageRepository.countByAiSession_Id(aiSession.getId()) + 1;
-
-        AiMessage aiMessage = AiMessage.builder()
-                .aiSession(aiSession)
-                .messageRole(messageRole)
-                .content(content)
-                .stepType(stepType)
-                .payloadJson(aiMessageHelper.serializePayload(payload))
-                .sortOrder(nextOrder)
-                .build();
-
-        aiMessageRepository.save(aiMessage);
-
-        aiSession.setUpdatedAt(LocalDateTime.now());
-        aiSessionRepository.save(aiSession);
-    }
-
     @Transactional(readOnly = true)
     public Optional<String> getLatestSessionId(Long userId, ChatType chatType, @Nullable String stepType) {
         if (chatType == ChatType.GENERATE && stepType != null && !stepType.isBlank()) {
@@ -159,7 +131,10 @@ public class AiSessionMessageService {
                 .build();
     }
 
-    private AiSession resolveSession(Long userId,
+    /**
+     * Находит сессию пользователя или создаёт её; используется ChatHistoryWriteBehindService при первом сообщении сессии.
+     */
+    AiSession resolveSession(Long userId,
                                      String sessionId,
                                      ChatType chatType,
                                      AiMessageRole messageRole,
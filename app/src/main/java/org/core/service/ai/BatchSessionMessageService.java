@@ -12,6 +12,7 @@ import org.core.domain.ai.BatchGenerationStatus;
 import org.core.dto.agent.batchAnalyzer.BatchStepDTO;
 import org.core.dto.ai.BatchGenerationHistoryDTO;
 import org.core.dto.stepik.step.StepikBlockRequest;
+import org.core.exception.exceptions.ResourceAccessDeniedException;
 import org.core.exception.exceptions.UserNotFoundException;
 import org.core.repository.UserRepository;
 import org.core.repository.ai.BatchGenerationRepository;
@@ -21,6 +22,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Service
@@ -36,7 +38,7 @@ public class BatchSessionMessageService {
     private final BatchGenerationRepository batchGenerationRepository;
     private final ObjectMapper objectMapper;
 
-    public Long startGeneration(Long userId, String userInput, BatchStepDTO plan, int totalSteps) {
+    public Long startGeneration(Long userId, String userInput, BatchStepDTO plan, int totalSteps, String ownerNode) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new UserNotFoundException("User with " + userId + " not found"));
         BatchGeneration batchGeneration = BatchGeneration.builder()
@@ -45,6 +47,7 @@ public class BatchSessionMessageService {
                 .planJson(serializePlan(plan))
                 .status(BatchGenerationStatus.RUNNING)
                 .totalSteps(totalSteps)
+                .ownerNode(ownerNode)
                 .build();
 
         return batchGenerationRepository.save(batchGeneration).getId();
@@ -57,12 +60,25 @@ public class BatchSessionMessageService {
         batchGenerationRepository.findById(batchGenerationId).ifPresent(batchGeneration -> {
             batchGeneration.setStatus(BatchGenerationStatus.COMPLETED);
             batchGeneration.setTotalSteps(results != null ? results.size() : 0);
+            batchGeneration.setCompletedSteps(results != null ? results.size() : 0);
             batchGeneration.setResultsJson(serializeResults(results));
             batchGeneration.setCompletedAt(LocalDateTime.now());
             batchGenerationRepository.save(batchGeneration);
         });
     }
 
+    public void recordProgress(Long batchGenerationId, List<StepikBlockRequest> partialResults) {
+        batchGenerationRepository.findById(batchGenerationId).ifPresent(batchGeneration -> {
+            if (batchGeneration.getStatus() != BatchGenerationStatus.RUNNING) {
+                return;
+            }
+            batchGeneration.setCompletedSteps(partialResults.size());
+            batchGeneration.setResultsJson(serializeResults(partialResults));
+            batchGeneration.setHeartbeatAt(LocalDateTime.now());
+            batchGenerationRepository.save(batchGeneration);
+        });
+    }
+
     public void markFailed(Long batchGenerationId, String errorMessage) {
         if (batchGenerationId == null) {
             return;
@@ -75,6 +91,30 @@ public class BatchSessionMessageService {
         });
     }
 
+    /**
+     * Продлевает аренду задач RUNNING, которые выполняет этот узел.
+     */
+    public void heartbeat(Collection<Long> batchGenerationIds) {
+        if (!batchGenerationIds.isEmpty()) {
+            batchGenerationRepository.heartbeat(batchGenerationIds, LocalDateTime.now());
+        }
+    }
+
+    /**
+     * Переводит в FAILED записи RUNNING узла ownerNode — после его рестарта их уже никто не доведёт.
+     */
+    public int failRunningOwnedBy(String ownerNode, String errorMessage) {
+        return batchGenerationRepository.failRunningOwnedBy(ownerNode, errorMessage, LocalDateTime.now());
+    }
+
+    /**
+     * Переводит в FAILED записи RUNNING, аренду которых не продлевали дольше leaseMs: их узел остановился.
+     */
+    public int failStale(long leaseMs, String errorMessage) {
+        LocalDateTime now = LocalDateTime.now();
+        return batchGenerationRepository.failStale(now.minusNanos(leaseMs * 1_000_000), errorMessage, now);
+    }
+
     @Transactional(readOnly = true)
     public List<BatchGenerationHistoryDTO> getHistory(Long userId) {
         return batchGenerationRepository
@@ -84,6 +124,16 @@ public class BatchSessionMessageService {
                 .toList();
     }
 
+    @Transactional(readOnly = true)
+    public BatchGenerationHistoryDTO getGeneration(Long userId, Long batchGenerationId) {
+        BatchGeneration batchGeneration = batchGenerationRepository.findById(batchGenerationId)
+                .orElseThrow(() -> new IllegalArgumentException("Batch generation " + batchGenerationId + " not found"));
+        if (!batchGeneration.getUser().getId().equals(userId)) {
+            throw new ResourceAccessDeniedException("Batch generation does not belong to user");
+        }
+        return toHistoryDto(batchGeneration);
+    }
+
     public void clearAllBatchGenerations(Long userId) {
         batchGenerationRepository.deleteAllByUser_Id(userId);
     }
@@ -96,6 +146,7 @@ public class BatchSessionMessageService {
                 .generatedSteps(deserializeResults(batchGeneration.getResultsJson()))
                 .status(batchGeneration.getStatus().name())
                 .totalSteps(batchGeneration.getTotalSteps())
+                .completedSteps(batchGeneration.getCompletedSteps())
                 .lessonId(batchGeneration.getLesson() != null ? batchGeneration.getLesson().getId() : null)
                 .errorMessage(batchGeneration.getErrorMessage())
                 .createdAt(batchGeneration.getCreatedAt())
@@ -0,0 +1,399 @@
+package org.core.service.ai;
+
+import jakarta.annotation.Nullable;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.core.domain.ai.AiMessageRole;
+import org.core.domain.ai.AiSession;
+import org.core.domain.ai.ChatType;
+import org.core.dto.stepik.step.StepikBlockRequest;
+import org.core.repository.ai.AiMessageRepository;
+import org.core.service.ai.util.AiMessageHelper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Отложенная запись истории AI-чатов. Сообщения копятся в очереди сессии, sortOrder выдаётся в памяти,
+ * а в БД они уходят пачкой через JDBC batch insert по таймеру или при наборе batch-size сообщений.
+ * Сессия в БД разрешается один раз при первом сообщении, дальше запись не трогает БД на пути запроса.
+ * Читатели истории вызывают flush(sessionId) перед чтением, при остановке приложения очередь сбрасывается целиком.
+ */
+@Service
+@Slf4j
+public class ChatHistoryWriteBehindService {
+
+    private static final String INSERT_MESSAGE_SQL = """
+            INSERT INTO ai_message (session_id, message_role, content, step_type, payload_json, sort_order, created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            """;
+    private static final String TOUCH_SESSION_SQL = "UPDATE ai_session SET updated_at = ? WHERE id = ?";
+
+    @Resource(name = "virtualExecutor")
+    private ExecutorService virtualExecutor;
+
+    private final AiSessionMessageService aiSessionMessageService;
+    private final AiMessageRepository aiMessageRepository;
+    private final AiMessageHelper aiMessageHelper;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long sessionTtlMillis;
+
+    private final Map<String, SessionQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public ChatHistoryWriteBehindService(AiSessionMessageService aiSessionMessageService,
+                                         AiMessageRepository aiMessageRepository,
+                                         AiMessageHelper aiMessageHelper,
+                                         JdbcTemplate jdbcTemplate,
+                                         PlatformTransactionManager transactionManager,
+                                         @Value("${chat.history.write-behind.enabled}") boolean enabled,
+                                         @Value("${chat.history.write-behind.batch-size}") int batchSize,
+                                         @Value("${chat.history.write-behind.max-attempts}") int maxAttempts,
+                                         @Value("${chat.history.write-behind.session-ttl-seconds}") long sessionTtlSeconds) {
+        this.aiSessionMessageService = aiSessionMessageService;
+        this.aiMessageRepository = aiMessageRepository;
+        this.aiMessageHelper = aiMessageHelper;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.sessionTtlMillis = sessionTtlSeconds * 1000;
+    }
+
+    /**
+     * Ставит сообщение в очередь записи. Проверка владельца сессии остаётся синхронной:
+     * чужая сессия по-прежнему даёт IllegalArgumentException.
+     * Сессия разрешается в БД до compute, чтобы не держать блокировку корзины ConcurrentHashMap на время запроса.
+     * Сообщение добавляется внутри compute по ключу сессии, поэтому вытеснение очереди не может
+     * пройти между её получением и добавлением; если очередь вытеснили после проверки, она открывается заново.
+     */
+    public void enqueue(Long userId,
+                        String sessionId,
+                        AiMessageRole messageRole,
+                        ChatType chatType,
+                        String content,
+                        @Nullable String stepType,
+                        @Nullable StepikBlockRequest payload) {
+        PendingMessage message = new PendingMessage(messageRole, content, stepType,
+                aiMessageHelper.serializePayload(payload), LocalDateTime.now());
+        SessionQueue target = null;
+        while (target == null) {
+            SessionQueue opened = queues.containsKey(sessionId)
+                    ? null
+                    : openQueue(userId, sessionId, chatType, messageRole, content, stepType);
+            target = queues.compute(sessionId, (id, existing) -> {
+                SessionQueue queue = existing != null ? existing : opened;
+                if (queue == null) {
+                    return null;
+                }
+                if (!queue.userId.equals(userId)) {
+                    throw new IllegalArgumentException("Session does not belong to user");
+                }
+                queue.add(message);
+                return queue;
+            });
+        }
+        int pending = pendingCount.incrementAndGet();
+
+        if (!enabled) {
+            flush(sessionId);
+        } else if (pending >= batchSize && flushRequested.compareAndSet(false, true)) {
+            virtualExecutor.execute(() -> {
+                flushRequested.set(false);
+                flushAll();
+            });
+        }
+    }
+
+    /**
+     * Дописывает в БД всё, что накоплено по сессии. Вызывается перед чтением истории из БД.
+     */
+    public void flush(String sessionId) {
+        SessionQueue queue = queues.get(sessionId);
+        if (queue == null || queue.isEmpty()) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            write(List.of(queue));
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public void flushUser(Long userId) {
+        List<SessionQueue> userQueues = queues.values().stream()
+                .filter(queue -> queue.userId.equals(userId) && !queue.isEmpty())
+                .toList();
+        if (userQueues.isEmpty()) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            write(userQueues);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Отбрасывает очередь удаляемой сессии: её строки в БД удаляются вместе с ai_session.
+     */
+    public void discard(Long userId, String sessionId) {
+        flushLock.lock();
+        try {
+            queues.computeIfPresent(sessionId, (id, queue) -> {
+                if (!queue.userId.equals(userId)) {
+                    return queue;
+                }
+                pendingCount.addAndGet(-queue.drain().size());
+                return null;
+            });
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.history.write-behind.flush-interval-ms}")
+    public void flushAll() {
+        flushLock.lock();
+        try {
+            write(new ArrayList<>(queues.values()));
+            evictIdleQueues();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        log.info("Flushing {} pending chat history messages before shutdown", pendingCount.get());
+        flushAll();
+    }
+
+    private SessionQueue openQueue(Long userId,
+                                   String sessionId,
+                                   ChatType chatType,
+                                   AiMessageRole messageRole,
+                                   String content,
+                                   @Nullable String stepType) {
+        try {
+            return loadQueue(userId, sessionId, chatType, messageRole, content, stepType);
+        } catch (DataIntegrityViolationException e) {
+            // Первое сообщение сессии пришло одновременно в двух запросах, сессию уже создал другой
+            return loadQueue(userId, sessionId, chatType, messageRole, content, stepType);
+        }
+    }
+
+    private SessionQueue loadQueue(Long userId,
+                                   String sessionId,
+                                   ChatType chatType,
+                                   AiMessageRole messageRole,
+                                   String content,
+                                   @Nullable String stepType) {
+        return transactionTemplate.execute(status -> {
+            AiSession aiSession = aiSessionMessageService.resolveSession(userId, sessionId, chatType, messageRole, content, stepType);
+            int nextOrder = aiMessageRepository.countByAiSession_Id(aiSession.getId()) + 1;
+            return new SessionQueue(sessionId, aiSession.getId(), userId, nextOrder);
+        });
+    }
+
+    /**
+     * Все сессии пишутся одной транзакцией. Если она не прошла, каждая сессия повторяется в своей транзакции,
+     * чтобы одна плохая строка (удалённая сессия, слишком длинный текст) не стоила истории другим пользователям:
+     * неудачная попытка засчитывается только той сессии, которая не записалась.
+     */
+    private void write(List<SessionQueue> sessionQueues) {
+        List<DrainedBatch> batches = new ArrayList<>();
+        for (SessionQueue queue : sessionQueues) {
+            List<PendingMessage> drained = queue.drain();
+            if (!drained.isEmpty()) {
+                batches.add(new DrainedBatch(queue, drained));
+            }
+        }
+        if (batches.isEmpty()) {
+            return;
+        }
+
+        try {
+            insert(batches);
+            batches.forEach(this::flushed);
+            log.debug("Flushed chat history of {} sessions", batches.size());
+            return;
+        } catch (RuntimeException e) {
+            if (batches.size() == 1) {
+                failed(batches.get(0), e);
+                return;
+            }
+            log.warn("Failed to flush chat history of {} sessions in one batch, retrying per session: {}",
+                    batches.size(), e.getMessage());
+        }
+
+        for (DrainedBatch batch : batches) {
+            try {
+                insert(List.of(batch));
+                flushed(batch);
+            } catch (RuntimeException e) {
+                failed(batch, e);
+            }
+        }
+    }
+
+    private void insert(List<DrainedBatch> batches) {
+        List<Object[]> messageRows = new ArrayList<>();
+        List<Object[]> sessionRows = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (DrainedBatch batch : batches) {
+            for (PendingMessage message : batch.messages()) {
+                messageRows.add(new Object[]{
+                        batch.queue().aiSessionId,
+                        message.role().name(),
+                        message.content(),
+                        message.stepType(),
+                        message.payloadJson(),
+                        message.sortOrder(),
+                        Timestamp.valueOf(message.createdAt())
+                });
+            }
+            sessionRows.add(new Object[]{now, batch.queue().aiSessionId});
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, messageRows);
+            jdbcTemplate.batchUpdate(TOUCH_SESSION_SQL, sessionRows);
+        });
+    }
+
+    private void flushed(DrainedBatch batch) {
+        pendingCount.addAndGet(-batch.messages().size());
+        batch.queue().flushed();
+    }
+
+    private void failed(DrainedBatch batch, RuntimeException e) {
+        SessionQueue queue = batch.queue();
+        if (queue.failedAttempt() >= maxAttempts) {
+            log.error("Dropping {} chat history messages of session {} after {} failed attempts: {}",
+                    batch.messages().size(), queue.aiSessionId, maxAttempts, e.getMessage());
+            pendingCount.addAndGet(-batch.messages().size());
+            queue.dropped();
+            queues.computeIfPresent(queue.sessionId, (id, current) -> current == queue && current.isEmpty() ? null : current);
+        } else {
+            log.warn("Failed to flush {} chat history messages of session {}: {}",
+                    batch.messages().size(), queue.aiSessionId, e.getMessage());
+            queue.requeue(batch.messages());
+        }
+    }
+
+    /**
+     * Очередь вытесняется только пустой и без незавершённой записи, атомарно с enqueue по той же сессии:
+     * иначе следующее сообщение открыло бы новую очередь с sortOrder из БД, не учитывающим ещё не записанные.
+     */
+    private void evictIdleQueues() {
+        long threshold = System.currentTimeMillis() - sessionTtlMillis;
+        for (String sessionId : new ArrayList<>(queues.keySet())) {
+            queues.computeIfPresent(sessionId, (id, queue) -> queue.isIdleSince(threshold) ? null : queue);
+        }
+    }
+
+    private static final class SessionQueue {
+
+        private final String sessionId;
+        private final Long aiSessionId;
+        private final Long userId;
+        private final List<PendingMessage> pending = new ArrayList<>();
+        private int nextSortOrder;
+        private long lastWriteMillis = System.currentTimeMillis();
+        private int failedAttempts;
+        private boolean flushing;
+
+        private SessionQueue(String sessionId, Long aiSessionId, Long userId, int nextSortOrder) {
+            this.sessionId = sessionId;
+            this.aiSessionId = aiSessionId;
+            this.userId = userId;
+            this.nextSortOrder = nextSortOrder;
+        }
+
+        synchronized void add(PendingMessage message) {
+            pending.add(message.withSortOrder(nextSortOrder++));
+            lastWriteMillis = System.currentTimeMillis();
+        }
+
+        synchronized List<PendingMessage> drain() {
+            List<PendingMessage> drained = List.copyOf(pending);
+            pending.clear();
+            flushing = !drained.isEmpty();
+            return drained;
+        }
+
+        synchronized void flushed() {
+            failedAttempts = 0;
+            flushing = false;
+        }
+
+        synchronized int failedAttempt() {
+            return ++failedAttempts;
+        }
+
+        synchronized void dropped() {
+            failedAttempts = 0;
+            flushing = false;
+        }
+
+        synchronized void requeue(List<PendingMessage> messages) {
+            pending.addAll(0, messages);
+            flushing = false;
+        }
+
+        synchronized boolean isEmpty() {
+            return pending.isEmpty();
+        }
+
+        synchronized boolean isIdleSince(long thresholdMillis) {
+            return pending.isEmpty() && !flushing && lastWriteMillis < thresholdMillis;
+        }
+    }
+
+    private record PendingMessage(AiMessageRole role,
+                                  String content,
+                                  @Nullable String stepType,
+                                  @Nullable String payloadJson,
+                                  LocalDateTime createdAt,
+                                  int sortOrder) {
+
+        PendingMessage(AiMessageRole role, String content, @Nullable String stepType,
+                       @Nullable String payloadJson, LocalDateTime createdAt) {
+            this(role, content, stepType, payloadJson, createdAt, 0);
+        }
+
+        PendingMessage withSortOrder(int order) {
+            return new PendingMessage(role, content, stepType, payloadJson, createdAt, order);
+        }
+    }
+
+    private record DrainedBatch(SessionQueue queue, List<PendingMessage> messages) {}
+}
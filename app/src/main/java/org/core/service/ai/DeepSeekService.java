@@ -1,10 +1,13 @@
 package org.core.service.ai;
 
+import jakarta.annotation.Resource;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.core.dto.deepseek.DeepSeekRequest;
 import org.core.dto.deepseek.DeepSeekResponse;
+import org.core.dto.deepseek.Usage;
 import org.core.exception.exceptions.DeepSeekException;
+import org.core.exception.exceptions.LlmOverloadedException;
 import org.core.service.AiService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
@@ -27,10 +30,14 @@ public class DeepSeekService implements AiService {
     @Value("${deepseek.api.model}")
     private String model;
 
-    private final RestTemplate restTemplate;
+    @Resource(name = "llmRestTemplate")
+    private final RestTemplate llmRestTemplate;
+    private final LlmConcurrencyLimiter llmConcurrencyLimiter;
+    private final LlmTelemetry llmTelemetry;
 
     @Override
     public String generateResponse(String prompt) {
+        LlmTelemetry.Call call = llmTelemetry.start(LlmConcurrencyLimiter.DEEPSEEK, model);
         try {
             DeepSeekRequest request = new DeepSeekRequest(model, prompt);
 
@@ -40,22 +47,38 @@ public class DeepSeekService implements AiService {
             headers.set("Authorization", "Bearer " + apiKey);
 
             HttpEntity<DeepSeekRequest> entity = new HttpEntity<>(request, headers);
-            ResponseEntity<DeepSeekResponse> response = restTemplate.exchange(
-                    url,
-                    HttpMethod.POST,
-                    entity,
-                    DeepSeekResponse.class
-            );
+            ResponseEntity<DeepSeekResponse> response = llmConcurrencyLimiter.execute(LlmConcurrencyLimiter.DEEPSEEK, model,
+                    () -> {
+                        call.begin();
+                        return llmRestTemplate.exchange(
+                                url,
+                                HttpMethod.POST,
+                                entity,
+                                DeepSeekResponse.class
+                        );
+                    });
 
             if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                return response.getBody().getChoices().get(0).getMessage().getContent();
+                String content = response.getBody().getChoices().get(0).getMessage().getContent();
+                Usage usage = response.getBody().getUsage();
+                if (usage == null) {
+                    call.success(null, null);
+                } else {
+                    call.success(usage.getPromptTokens(), usage.getCompletionTokens());
+                }
+                llmTelemetry.logPayload("Response from DeepSeek", model, () -> content);
+                return content;
             }
+            // Не возвращаем заглушку вместо ответа: её закэшировал бы CachingLlmProvider
+            throw new DeepSeekException("Unexpected DeepSeek status " + response.getStatusCode());
 
+        } catch (LlmOverloadedException e) {
+            call.failure(e);
+            throw e;
         } catch (Exception e) {
+            call.failure(e);
             log.error("Error calling DeepSeek API: {}", e.getMessage());
-            throw new DeepSeekException("Sorry, I couldn't generate a response at the moment.");
+            throw new DeepSeekException("Sorry, I couldn't generate a response at the moment.", e);
         }
-
-        return "Sorry, I couldn't generate a response at the moment.";
     }
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package org.core.service.ai;
+
+import java.util.function.Supplier;
+
+/**
+ * Приоритет вызова LLM в очереди LlmConcurrencyLimiter. По умолчанию вызов интерактивный,
+ * фоновые batch-задачи оборачивают свои вызовы в {@code LlmCallPriority.BATCH.call(...)}.
+ */
+public enum LlmCallPriority {
+    INTERACTIVE,
+    BATCH;
+
+    private static final ThreadLocal<LlmCallPriority> CURRENT = ThreadLocal.withInitial(() -> INTERACTIVE);
+
+    public static LlmCallPriority current() {
+        return CURRENT.get();
+    }
+
+    public <T> T call(Supplier<T> action) {
+        LlmCallPriority previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return action.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.core.service.ai;
+
+import jakarta.annotation.Nullable;
+
+import java.util.function.Supplier;
+
+/**
+ * Владелец вызова LLM для справедливой очереди LlmConcurrencyLimiter: поток очереди (пользователь и вид нагрузки)
+ * и его вес, а также тип шага для телеметрии. Как и LlmCallPriority, хранится в ThreadLocal;
+ * задачи в других потоках переносят его через {@code call}.
+ */
+public record LlmCaller(String userKey, LlmWorkload workload, double weight, @Nullable String stepType) {
+
+    public static final LlmCaller ANONYMOUS = new LlmCaller("anonymous", LlmWorkload.CHAT, 1.0);
+
+    private static final ThreadLocal<LlmCaller> CURRENT = ThreadLocal.withInitial(() -> ANONYMOUS);
+
+    public LlmCaller(String userKey, LlmWorkload workload, double weight) {
+        this(userKey, workload, weight, null);
+    }
+
+    public static LlmCaller current() {
+        return CURRENT.get();
+    }
+
+    public LlmCaller withStepType(@Nullable String stepType) {
+        return new LlmCaller(userKey, workload, weight, stepType);
+    }
+
+    public <T> T call(Supplier<T> action) {
+        LlmCaller previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return action.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Вид нагрузки с учётом приоритета вызова: фоновые вызовы пользователя идут в его batch-поток.
+     */
+    public LlmWorkload workloadFor(LlmCallPriority priority) {
+        return priority == LlmCallPriority.BATCH ? LlmWorkload.BATCH : workload;
+    }
+}
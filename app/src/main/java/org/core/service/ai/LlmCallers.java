@@ -0,0 +1,46 @@
+package org.core.service.ai;
+
+import org.core.service.subscription.SubscriptionService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Собирает LlmCaller для пользователя: вес потока — вес тарифа (pro/free из SubscriptionService) на вес вида нагрузки.
+ */
+@Component
+public class LlmCallers {
+
+    private final SubscriptionService subscriptionService;
+    private final double proWeight;
+    private final double freeWeight;
+    private final double chatWeight;
+    private final double generateWeight;
+    private final double batchWeight;
+
+    public LlmCallers(SubscriptionService subscriptionService,
+                      @Value("${llm.limiter.weight.pro}") double proWeight,
+                      @Value("${llm.limiter.weight.free}") double freeWeight,
+                      @Value("${llm.limiter.weight.chat}") double chatWeight,
+                      @Value("${llm.limiter.weight.generate}") double generateWeight,
+                      @Value("${llm.limiter.weight.batch}") double batchWeight) {
+        this.subscriptionService = subscriptionService;
+        this.proWeight = proWeight;
+        this.freeWeight = freeWeight;
+        this.chatWeight = chatWeight;
+        this.generateWeight = generateWeight;
+        this.batchWeight = batchWeight;
+    }
+
+    public LlmCaller forUser(Long userId, LlmWorkload workload) {
+        if (userId == null) {
+            return LlmCaller.ANONYMOUS;
+        }
+        double planWeight = subscriptionService.isPro(userId) ? proWeight : freeWeight;
+        double workloadWeight = switch (workload) {
+            case CHAT -> chatWeight;
+            case GENERATE -> generateWeight;
+            case BATCH -> batchWeight;
+        };
+        return new LlmCaller("user-" + userId, workload, planWeight * workloadWeight);
+    }
+}
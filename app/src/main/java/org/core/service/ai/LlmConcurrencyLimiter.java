@@ -0,0 +1,433 @@
+package org.core.service.ai;
+
+import com.openai.errors.OpenAIServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.core.exception.exceptions.LlmOverloadedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Адаптивное ограничение параллельных вызовов LLM.
+ * Для каждой модели лимит подбирается по AIMD: успешный ответ увеличивает его на 1/limit,
+ * ответ 429/503 или таймаут умножает на backoff-ratio. Поверх лимитов моделей действует bulkhead провайдера.
+ * Вызовы сверх лимита ждут в очереди провайдера, интерактивные обслуживаются раньше batch, а batch-вызовы занимают
+ * не больше batch-max-share лимита модели. Внутри очереди порядок справедливый (start-time fair queuing) между потоками
+ * LlmCaller — пользователь и вид нагрузки — с учётом их весов. Вызов, который не дождётся слота за SLO своего вида
+ * нагрузки, отклоняется сразу с оценкой Retry-After.
+ */
+@Component
+@Slf4j
+public class LlmConcurrencyLimiter {
+
+    public static final String YANDEX = "yandex";
+    public static final String DEEPSEEK = "deepseek";
+
+    private final MeterRegistry meterRegistry;
+    private final double initialLimit;
+    private final double minLimit;
+    private final double maxLimit;
+    private final double backoffRatio;
+    private final int queueSize;
+    private final Map<LlmWorkload, Duration> queueSlo;
+    private final double batchMaxShare;
+    private final Map<String, Integer> bulkheads;
+
+    private final Map<String, ProviderState> providers = new ConcurrentHashMap<>();
+
+    public LlmConcurrencyLimiter(MeterRegistry meterRegistry,
+                                 @Value("${llm.limiter.initial-limit}") double initialLimit,
+                                 @Value("${llm.limiter.min-limit}") double minLimit,
+                                 @Value("${llm.limiter.max-limit}") double maxLimit,
+                                 @Value("${llm.limiter.backoff-ratio}") double backoffRatio,
+                                 @Value("${llm.limiter.queue-size}") int queueSize,
+                                 @Value("${llm.limiter.queue-slo-ms.chat}") long chatQueueSloMs,
+                                 @Value("${llm.limiter.queue-slo-ms.generate}") long generateQueueSloMs,
+                                 @Value("${llm.limiter.queue-slo-ms.batch}") long batchQueueSloMs,
+                                 @Value("${llm.limiter.batch-max-share}") double batchMaxShare,
+                                 @Value("${llm.limiter.bulkhead.yandex}") int yandexBulkhead,
+                                 @Value("${llm.limiter.bulkhead.deepseek}") int deepseekBulkhead) {
+        this.meterRegistry = meterRegistry;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.queueSize = queueSize;
+        this.queueSlo = new EnumMap<>(Map.of(
+                LlmWorkload.CHAT, Duration.ofMillis(chatQueueSloMs),
+                LlmWorkload.GENERATE, Duration.ofMillis(generateQueueSloMs),
+                LlmWorkload.BATCH, Duration.ofMillis(batchQueueSloMs)));
+        this.batchMaxShare = batchMaxShare;
+        this.bulkheads = Map.of(YANDEX, yandexBulkhead, DEEPSEEK, deepseekBulkhead);
+    }
+
+    /**
+     * Выполняет вызов, когда у модели и провайдера есть свободный слот.
+     * Если очередь переполнена или слот не освободится за SLO ожидания, бросает LlmOverloadedException с Retry-After.
+     */
+    public <T> T execute(String provider, String model, Supplier<T> call) {
+        ProviderState providerState = providers.computeIfAbsent(provider, ProviderState::new);
+        ModelState modelState = providerState.model(model);
+        LlmCallPriority priority = LlmCallPriority.current();
+
+        providerState.acquire(modelState, priority, LlmCaller.current());
+        boolean throttled = false;
+        long startedAt = System.nanoTime();
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            throttled = isThrottled(e);
+            throw e;
+        } finally {
+            providerState.release(modelState, priority, throttled, System.nanoTime() - startedAt);
+        }
+    }
+
+    private static boolean isThrottled(Throwable error) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof HttpStatusCodeException httpError) {
+                int status = httpError.getStatusCode().value();
+                return status == 429 || status == 503;
+            }
+            if (current instanceof OpenAIServiceException serviceError) {
+                int status = serviceError.statusCode();
+                return status == 429 || status == 503;
+            }
+            if (current instanceof HttpTimeoutException || current instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final class ProviderState {
+
+        private final String provider;
+        private final int bulkhead;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, ModelState> models = new HashMap<>();
+        private final FairQueue interactiveQueue = new FairQueue();
+        private final FairQueue batchQueue = new FairQueue();
+        private final Counter queueFullRejections;
+        private final Counter timeoutRejections;
+        private final Counter sloRejections;
+        private final Map<LlmWorkload, Timer> queueWait = new EnumMap<>(LlmWorkload.class);
+        private long sequence;
+        private int inFlight;
+
+        ProviderState(String provider) {
+            this.provider = provider;
+            this.bulkhead = bulkheads.getOrDefault(provider, (int) maxLimit);
+
+            Gauge.builder("llm.limiter.queue", this, state -> state.queued(LlmCallPriority.INTERACTIVE))
+                    .tag("provider", provider).tag("priority", "interactive")
+                    .register(meterRegistry);
+            Gauge.builder("llm.limiter.queue", this, state -> state.queued(LlmCallPriority.BATCH))
+                    .tag("provider", provider).tag("priority", "batch")
+                    .register(meterRegistry);
+            Gauge.builder("llm.limiter.provider.in-flight", this, ProviderState::inFlight)
+                    .tag("provider", provider)
+                    .register(meterRegistry);
+            this.queueFullRejections = Counter.builder("llm.limiter.rejections")
+                    .tag("provider", provider).tag("reason", "queue-full")
+                    .register(meterRegistry);
+            this.timeoutRejections = Counter.builder("llm.limiter.rejections")
+                    .tag("provider", provider).tag("reason", "timeout")
+                    .register(meterRegistry);
+            this.sloRejections = Counter.builder("llm.limiter.rejections")
+                    .tag("provider", provider).tag("reason", "slo")
+                    .register(meterRegistry);
+            for (LlmWorkload workload : LlmWorkload.values()) {
+                queueWait.put(workload, Timer.builder("llm.limiter.queue.wait")
+                        .tag("provider", provider).tag("workload", workload.name().toLowerCase())
+                        .serviceLevelObjectives(queueSlo.get(workload))
+                        .register(meterRegistry));
+            }
+        }
+
+        ModelState model(String model) {
+            String key = model == null || model.isBlank() ? "default" : model;
+            lock.lock();
+            try {
+                return models.computeIfAbsent(key, name -> new ModelState(provider, name));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void acquire(ModelState model, LlmCallPriority priority, LlmCaller caller) {
+            LlmWorkload workload = caller.workloadFor(priority);
+            String flow = caller.userKey() + ':' + workload;
+            FairQueue queue = priority == LlmCallPriority.BATCH ? batchQueue : interactiveQueue;
+            long enqueuedAt = System.nanoTime();
+            lock.lock();
+            try {
+                if (canRun(model, priority) && !hasWaiterAhead(model, priority)) {
+                    queue.charge(flow, caller.weight());
+                    grant(model, priority);
+                    queueWait.get(workload).record(0, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                if (interactiveQueue.size() + batchQueue.size() >= queueSize) {
+                    queueFullRejections.increment();
+                    throw new LlmOverloadedException("LLM request queue for " + provider + " is full",
+                            retryAfterSeconds(model, interactiveQueue.size() + batchQueue.size()));
+                }
+
+                Waiter waiter = new Waiter(model, priority, lock.newCondition(), sequence++);
+                queue.add(waiter, flow, caller.weight());
+                long estimatedWaitNanos = estimateWaitNanos(model, waitersAhead(waiter));
+                long sloNanos = queueSlo.get(workload).toNanos();
+                if (estimatedWaitNanos > sloNanos) {
+                    queue.remove(waiter);
+                    sloRejections.increment();
+                    throw new LlmOverloadedException("Estimated wait for a free " + provider + " LLM slot exceeds the "
+                            + workload.name().toLowerCase() + " queue SLO", toRetryAfterSeconds(estimatedWaitNanos));
+                }
+                long remaining = sloNanos;
+                try {
+                    while (!waiter.granted) {
+                        if (remaining <= 0) {
+                            queue.remove(waiter);
+                            timeoutRejections.increment();
+                            throw new LlmOverloadedException("Timed out waiting for a free " + provider + " LLM slot",
+                                    retryAfterSeconds(model, waitersAhead(waiter)));
+                        }
+                        remaining = waiter.condition.awaitNanos(remaining);
+                    }
+                    queueWait.get(workload).record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (waiter.granted) {
+                        releaseSlot(model, priority);
+                    } else {
+                        queue.remove(waiter);
+                    }
+                    throw new LlmOverloadedException("Interrupted while waiting for a free " + provider + " LLM slot");
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release(ModelState model, LlmCallPriority priority, boolean throttled, long durationNanos) {
+            lock.lock();
+            try {
+                if (throttled) {
+                    double reduced = Math.max(minLimit, model.limit * backoffRatio);
+                    log.warn("LLM {} model {} throttled, concurrency limit {} -> {}",
+                            provider, model.name, String.format("%.1f", model.limit), String.format("%.1f", reduced));
+                    model.limit = reduced;
+                    model.throttled.increment();
+                } else {
+                    model.limit = Math.min(maxLimit, model.limit + 1.0 / model.limit);
+                    model.avgCallNanos = model.avgCallNanos == 0
+                            ? durationNanos
+                            : (long) (model.avgCallNanos * 0.8 + durationNanos * 0.2);
+                }
+                releaseSlot(model, priority);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void releaseSlot(ModelState model, LlmCallPriority priority) {
+            model.inFlight--;
+            if (priority == LlmCallPriority.BATCH) {
+                model.batchInFlight--;
+            }
+            inFlight--;
+            dispatch(interactiveQueue);
+            dispatch(batchQueue);
+        }
+
+        private void dispatch(FairQueue queue) {
+            for (Iterator<Waiter> it = queue.waiters.iterator(); it.hasNext() && inFlight < bulkhead; ) {
+                Waiter waiter = it.next();
+                if (canRun(waiter.model, waiter.priority)) {
+                    it.remove();
+                    queue.dispatched(waiter);
+                    grant(waiter.model, waiter.priority);
+                    waiter.granted = true;
+                    waiter.condition.signal();
+                }
+            }
+        }
+
+        private boolean canRun(ModelState model, LlmCallPriority priority) {
+            int modelLimit = Math.max(1, (int) model.limit);
+            if (inFlight >= bulkhead || model.inFlight >= modelLimit) {
+                return false;
+            }
+            return priority != LlmCallPriority.BATCH || model.batchInFlight < Math.max(1, (int) (modelLimit * batchMaxShare));
+        }
+
+        private boolean hasWaiterAhead(ModelState model, LlmCallPriority priority) {
+            if (interactiveQueue.waiters.stream().anyMatch(waiter -> waiter.model == model)) {
+                return true;
+            }
+            return priority == LlmCallPriority.BATCH && batchQueue.waiters.stream().anyMatch(waiter -> waiter.model == model);
+        }
+
+        /**
+         * Сколько ожидающих вызовов той же модели будет обслужено раньше waiter.
+         */
+        private int waitersAhead(Waiter waiter) {
+            int ahead = (int) (waiter.priority == LlmCallPriority.BATCH ? batchQueue : interactiveQueue).waiters
+                    .headSet(waiter, false).stream()
+                    .filter(other -> other.model == waiter.model)
+                    .count();
+            if (waiter.priority == LlmCallPriority.BATCH) {
+                ahead += (int) interactiveQueue.waiters.stream().filter(other -> other.model == waiter.model).count();
+            }
+            return ahead;
+        }
+
+        /**
+         * Оценка ожидания: очередь перед вызовом, делённая на лимит модели, в средних длительностях вызова.
+         * Пока длительность не измерена, оценки нет и вызов ждёт до SLO.
+         */
+        private long estimateWaitNanos(ModelState model, int ahead) {
+            return model.avgCallNanos * (ahead + 1) / Math.max(1, (int) model.limit);
+        }
+
+        private long retryAfterSeconds(ModelState model, int ahead) {
+            return toRetryAfterSeconds(estimateWaitNanos(model, ahead));
+        }
+
+        private void grant(ModelState model, LlmCallPriority priority) {
+            model.inFlight++;
+            if (priority == LlmCallPriority.BATCH) {
+                model.batchInFlight++;
+            }
+            inFlight++;
+        }
+
+        private int queued(LlmCallPriority priority) {
+            lock.lock();
+            try {
+                return priority == LlmCallPriority.BATCH ? batchQueue.size() : interactiveQueue.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int inFlight() {
+            lock.lock();
+            try {
+                return inFlight;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final class ModelState {
+
+        private final String name;
+        private final Counter throttled;
+        private volatile double limit = initialLimit;
+        private volatile int inFlight;
+        private int batchInFlight;
+        private long avgCallNanos;
+
+        ModelState(String provider, String name) {
+            this.name = name;
+            Gauge.builder("llm.limiter.limit", this, state -> state.limit)
+                    .tag("provider", provider).tag("model", name)
+                    .register(meterRegistry);
+            Gauge.builder("llm.limiter.in-flight", this, state -> state.inFlight)
+                    .tag("provider", provider).tag("model", name)
+                    .register(meterRegistry);
+            this.throttled = Counter.builder("llm.limiter.throttled")
+                    .tag("provider", provider).tag("model", name)
+                    .register(meterRegistry);
+        }
+    }
+
+    private static long toRetryAfterSeconds(long waitNanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    /**
+     * Очередь одного приоритета: start-time fair queuing. Вызов получает метку старта max(V, финиш его потока),
+     * финиш потока сдвигается на 1/weight; обслуживается меньшая метка, V — метка последнего обслуженного вызова.
+     * Вызовы, получившие слот без очереди, тоже двигают финиш потока и V, поэтому частый поток уходит в конец.
+     */
+    private static final class FairQueue {
+
+        private static final int MAX_TRACKED_FLOWS = 4096;
+
+        private final NavigableSet<Waiter> waiters = new TreeSet<>(
+                Comparator.comparingDouble((Waiter waiter) -> waiter.startTag).thenComparingLong(waiter -> waiter.sequence));
+        private final Map<String, Double> flowFinish = new HashMap<>();
+        private double virtualTime;
+
+        void add(Waiter waiter, String flow, double weight) {
+            waiter.startTag = nextStart(flow, weight);
+            waiters.add(waiter);
+        }
+
+        void charge(String flow, double weight) {
+            virtualTime = nextStart(flow, weight);
+        }
+
+        void dispatched(Waiter waiter) {
+            virtualTime = Math.max(virtualTime, waiter.startTag);
+        }
+
+        void remove(Waiter waiter) {
+            waiters.remove(waiter);
+        }
+
+        int size() {
+            return waiters.size();
+        }
+
+        private double nextStart(String flow, double weight) {
+            double start = Math.max(virtualTime, flowFinish.getOrDefault(flow, 0.0));
+            flowFinish.put(flow, start + 1.0 / Math.max(weight, 0.01));
+            if (flowFinish.size() > MAX_TRACKED_FLOWS) {
+                flowFinish.values().removeIf(finish -> finish <= virtualTime);
+            }
+            return start;
+        }
+    }
+
+    private static final class Waiter {
+
+        private final ModelState model;
+        private final LlmCallPriority priority;
+        private final Condition condition;
+        private final long sequence;
+        private double startTag;
+        private boolean granted;
+
+        Waiter(ModelState model, LlmCallPriority priority, Condition condition, long sequence) {
+            this.model = model;
+            this.priority = priority;
+            this.condition = condition;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.core.service.ai;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Телеметрия вызовов LLM: латентность (llm.calls), токены из usage провайдера (llm.tokens), ошибки (llm.errors)
+ * и оценка стоимости (llm.cost) по ценам llm.telemetry.price-per-1k.*. Теги — провайдер, модель, endpoint
+ * (вид нагрузки LlmCaller) и тип шага. Тела запросов и ответов логируются выборочно и с обрезкой.
+ */
+@Component
+@Slf4j
+public class LlmTelemetry {
+
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+    private final double bodySampleRate;
+    private final int bodyMaxChars;
+    private final Map<String, Price> prices = new ConcurrentHashMap<>();
+
+    public LlmTelemetry(MeterRegistry meterRegistry,
+                        Environment environment,
+                        @Value("${llm.telemetry.body-log.sample-rate}") double bodySampleRate,
+                        @Value("${llm.telemetry.body-log.max-chars}") int bodyMaxChars) {
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+        this.bodySampleRate = bodySampleRate;
+        this.bodyMaxChars = bodyMaxChars;
+    }
+
+    /**
+     * Новый вызов; теги endpoint и типа шага берутся из текущих LlmCaller и LlmCallPriority.
+     */
+    public Call start(String provider, @Nullable String modelUri) {
+        LlmCaller caller = LlmCaller.current();
+        String model = modelName(modelUri);
+        Tags tags = Tags.of(
+                "provider", provider,
+                "model", model,
+                "endpoint", caller.workloadFor(LlmCallPriority.current()).name().toLowerCase(Locale.ROOT),
+                "step_type", caller.stepType() == null ? "none" : caller.stepType());
+        return new Call(model, tags);
+    }
+
+    /**
+     * Логирует тело с вероятностью body-log.sample-rate, обрезая до body-log.max-chars.
+     * Тело строится только для попавших в выборку вызовов.
+     */
+    public void logPayload(String description, @Nullable String modelUri, Supplier<String> body) {
+        if (bodySampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= bodySampleRate) {
+            return;
+        }
+        String text = body.get();
+        if (text == null) {
+            return;
+        }
+        log.info("{} (model: {}, {} chars, sampled): {}", description, modelName(modelUri), text.length(),
+                text.length() > bodyMaxChars ? text.substring(0, bodyMaxChars) + "…" : text);
+    }
+
+    /**
+     * Имя модели без каталога: gpt://folder/yandexgpt-lite/latest -> yandexgpt-lite.
+     */
+    static String modelName(@Nullable String modelUri) {
+        if (modelUri == null || modelUri.isBlank()) {
+            return "default";
+        }
+        String uri = modelUri.trim();
+        int scheme = uri.indexOf("://");
+        if (scheme < 0) {
+            return uri.toLowerCase(Locale.ROOT);
+        }
+        String[] parts = uri.substring(scheme + 3).split("/");
+        return (parts.length > 1 ? parts[1] : parts[0]).toLowerCase(Locale.ROOT);
+    }
+
+    private Price price(String model) {
+        return prices.computeIfAbsent(model, name -> new Price(
+                pricePer1k(name, "input"),
+                pricePer1k(name, "output")));
+    }
+
+    private double pricePer1k(String model, String direction) {
+        return environment.getProperty("llm.telemetry.price-per-1k." + model + "." + direction, Double.class,
+                environment.getProperty("llm.telemetry.price-per-1k.default." + direction, Double.class, 0.0));
+    }
+
+    public final class Call {
+
+        private final String model;
+        private final Tags tags;
+        private long startedAt;
+
+        private Call(String model, Tags tags) {
+            this.model = model;
+            this.tags = tags;
+        }
+
+        /**
+         * Начало запроса к провайдеру; вызывается уже после получения слота, чтобы очередь не попадала в латентность.
+         */
+        public void begin() {
+            startedAt = System.nanoTime();
+        }
+
+        public void success(@Nullable Number inputTokens, @Nullable Number outputTokens) {
+            recordLatency("success");
+            long input = inputTokens == null ? 0 : inputTokens.longValue();
+            long output = outputTokens == null ? 0 : outputTokens.longValue();
+            if (inputTokens != null) {
+                tokens("input").record(input);
+            }
+            if (outputTokens != null) {
+                tokens("output").record(output);
+            }
+            Price price = price(model);
+            double cost = (input * price.input() + output * price.output()) / 1000.0;
+            if (cost > 0) {
+                Counter.builder("llm.cost")
+                        .baseUnit("rub")
+                        .tags(tags)
+                        .register(meterRegistry)
+                        .increment(cost);
+            }
+        }
+
+        public void failure(Throwable error) {
+            recordLatency("error");
+            Counter.builder("llm.errors")
+                    .tags(tags)
+                    .tag("exception", error.getClass().getSimpleName())
+                    .register(meterRegistry)
+                    .increment();
+        }
+
+        private void recordLatency(String outcome) {
+            if (startedAt == 0) {
+                return;
+            }
+            Timer.builder("llm.calls")
+                    .tags(tags)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+
+        private DistributionSummary tokens(String direction) {
+            return DistributionSummary.builder("llm.tokens")
+                    .baseUnit("tokens")
+                    .tags(tags)
+                    .tag("direction", direction)
+                    .register(meterRegistry);
+        }
+    }
+
+    private record Price(double input, double output) {
+    }
+}
@@ -0,0 +1,10 @@
+package org.core.service.ai;
+
+/**
+ * Вид нагрузки вызова LLM: у каждого свой вес в справедливой очереди LlmConcurrencyLimiter и своё SLO ожидания.
+ */
+public enum LlmWorkload {
+    CHAT,
+    GENERATE,
+    BATCH
+}
@@ -1,15 +1,21 @@
 package org.core.service.ai;
 
 import com.openai.client.OpenAIClient;
+import com.openai.core.http.StreamResponse;
 import com.openai.models.responses.Response;
 import com.openai.models.responses.ResponseCreateParams;
+import com.openai.models.responses.ResponseStreamEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.core.dto.agent.ChatMessage;
+import org.core.exception.exceptions.LlmOverloadedException;
 import org.core.exception.exceptions.YandexGptException;
 import org.springframework.stereotype.Service;
 
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -18,33 +24,98 @@ import java.util.stream.Collectors;
 public class YandexAiStudioService {
 
     private final OpenAIClient yandexAiStudioClient;
+    private final LlmConcurrencyLimiter llmConcurrencyLimiter;
+    private final LlmTelemetry llmTelemetry;
 
     public String generateResponse(List<ChatMessage> messages, int maxTokens, String modelUri) {
+        LlmTelemetry.Call call = llmTelemetry.start(LlmConcurrencyLimiter.YANDEX, modelUri);
         try {
             String instructions = buildInstructions(messages);
             String input = buildInput(messages);
 
-            ResponseCreateParams params = ResponseCreateParams.builder()
-                    .model(modelUri)
-                    .temperature(0.6)
-                    .instructions(instructions)
-                    .input(input)
-                    .maxOutputTokens(maxTokens)
-                    .build();
+            ResponseCreateParams params = buildParams(instructions, input, maxTokens, modelUri);
             log.info("Sending request to Yandex AI Studio (model: {}): inputLength={}, instructionsLength={}",
                     modelUri, input.length(), instructions.length());
 
-            var response = yandexAiStudioClient.responses().create(params);
+            var response = llmConcurrencyLimiter.execute(LlmConcurrencyLimiter.YANDEX, modelUri, () -> {
+                call.begin();
+                return yandexAiStudioClient.responses().create(params);
+            });
             String output = extractOutputText(response);
 
             if (output == null || output.isBlank()) {
                 throw new YandexGptException("No response from Yandex AI Studio");
             }
-            log.info("Response from Yandex AI Studio (model: {}): {}", modelUri, output);
+            recordSuccess(call, response);
+            log.info("Response from Yandex AI Studio (model: {}), length: {}", modelUri, output.length());
+            llmTelemetry.logPayload("Response from Yandex AI Studio", modelUri, () -> output);
             return output;
+        } catch (LlmOverloadedException e) {
+            call.failure(e);
+            throw e;
         } catch (RuntimeException e) {
+            call.failure(e);
             log.error("Error calling Yandex AI Studio API (model: {}): {}", modelUri, e.getMessage());
-            throw new YandexGptException("Sorry, I couldn't generate a response at the moment.");
+            throw new YandexGptException("Sorry, I couldn't generate a response at the moment.", e);
+        }
+    }
+
+    public String generateResponseStream(List<ChatMessage> messages, int maxTokens, String modelUri, Consumer<String> onToken) {
+        LlmTelemetry.Call call = llmTelemetry.start(LlmConcurrencyLimiter.YANDEX, modelUri);
+        try {
+            String instructions = buildInstructions(messages);
+            String input = buildInput(messages);
+
+            ResponseCreateParams params = buildParams(instructions, input, maxTokens, modelUri);
+            log.info("Sending streaming request to Yandex AI Studio (model: {}): inputLength={}, instructionsLength={}",
+                    modelUri, input.length(), instructions.length());
+
+            StringBuilder output = new StringBuilder();
+            AtomicReference<Response> completed = new AtomicReference<>();
+            llmConcurrencyLimiter.execute(LlmConcurrencyLimiter.YANDEX, modelUri, () -> {
+                call.begin();
+                try (StreamResponse<ResponseStreamEvent> stream = yandexAiStudioClient.responses().createStreaming(params)) {
+                    stream.stream().forEach(event -> {
+                        event.completed().ifPresent(done -> completed.set(done.response()));
+                        event.outputTextDelta()
+                                .map(delta -> delta.delta())
+                                .filter(delta -> !delta.isEmpty())
+                                .ifPresent(delta -> {
+                                    output.append(delta);
+                                    onToken.accept(delta);
+                                });
+                    });
+                }
+                return output;
+            });
+
+            if (output.isEmpty()) {
+                throw new YandexGptException("No response from Yandex AI Studio");
+            }
+            recordSuccess(call, completed.get());
+            log.info("Streaming response from Yandex AI Studio finished (model: {}), length: {}", modelUri, output.length());
+            llmTelemetry.logPayload("Streaming response from Yandex AI Studio", modelUri, output::toString);
+            return output.toString();
+        } catch (LlmOverloadedException e) {
+            call.failure(e);
+            throw e;
+        } catch (UncheckedIOException e) {
+            // onToken не смог отправить токен клиенту: клиент отключился, это не ошибка LLM
+            log.info("Yandex AI Studio stream stopped, client disconnected (model: {}): {}", modelUri, e.getMessage());
+            throw e;
+        } catch (RuntimeException e) {
+            call.failure(e);
+            log.error("Error calling Yandex AI Studio streaming API (model: {}): {}", modelUri, e.getMessage());
+            throw new YandexGptException("Sorry, I couldn't generate a response at the moment.", e);
+        }
+    }
+
+    private static void recordSuccess(LlmTelemetry.Call call, Response response) {
+        var usage = response == null ? null : response.usage().orElse(null);
+        if (usage == null) {
+            call.success(null, null);
+        } else {
+            call.success(usage.inputTokens(), usage.outputTokens());
         }
     }
 
@@ -56,6 +127,16 @@ public class YandexAiStudioService {
         return uri.contains("/qwen") || uri.contains("/gpt-oss") || uri.contains("/deepseek");
     }
 
+    private ResponseCreateParams buildParams(String instructions, String input, int maxTokens, String modelUri) {
+        return ResponseCreateParams.builder()
+                .model(modelUri)
+                .temperature(0.6)
+                .instructions(instructions)
+                .input(input)
+                .maxOutputTokens(maxTokens)
+                .build();
+    }
+
     private String buildInstructions(List<ChatMessage> messages) {
         return messages.stream()
                 .filter(message -> "system".equals(message.getRole()))
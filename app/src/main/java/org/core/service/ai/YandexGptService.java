@@ -1,13 +1,16 @@
 package org.core.service.ai;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.Resource;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.core.dto.agent.ChatMessage;
 import org.core.dto.yandexgpt.Message;
+import org.core.dto.yandexgpt.Usage;
 import org.core.dto.yandexgpt.YandexGptRequest;
 import org.core.dto.yandexgpt.YandexGptResponse;
+import org.core.exception.exceptions.LlmOverloadedException;
 import org.core.exception.exceptions.YandexGptException;
 import org.core.service.AiService;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,8 +18,16 @@ import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -38,9 +49,12 @@ public class YandexGptService implements AiService {
     @Value("${max.tokens.default}")
     private Integer maxTokensDefault;
 
-    private final RestTemplate restTemplate;
+    @Resource(name = "llmRestTemplate")
+    private final RestTemplate llmRestTemplate;
     private final ObjectMapper objectMapper;
     private final YandexAiStudioService yandexAiStudioService;
+    private final LlmConcurrencyLimiter llmConcurrencyLimiter;
+    private final LlmTelemetry llmTelemetry;
 
     @SneakyThrows
     public String generateResponse(List<ChatMessage> messages, boolean hasSystemPrompt){
@@ -73,24 +87,30 @@ public class YandexGptService implements AiService {
             return yandexAiStudioService.generateResponse(messages, maxTokens, uriToUse);
         }
 
+        LlmTelemetry.Call call = llmTelemetry.start(LlmConcurrencyLimiter.YANDEX, uriToUse);
         try{
             List<Message> yandexMessages = messages.stream()
                     .map(chatMessage -> new Message(chatMessage.getRole(), chatMessage.getContent()))
                     .toList();
             YandexGptRequest yandexGptRequest = new YandexGptRequest(uriToUse, yandexMessages, jsonObject);
             yandexGptRequest.setMaxTokens(maxTokens);
-            log.info("Sending request to Yandex GPT (model: {}): {}", uriToUse, objectMapper.writeValueAsString(yandexGptRequest));
+            log.info("Sending request to Yandex GPT (model: {}), messages: {}", uriToUse, yandexMessages.size());
+            llmTelemetry.logPayload("Yandex GPT request", uriToUse, () -> toJson(yandexGptRequest));
 
             HttpEntity<YandexGptRequest> entity = new HttpEntity<>(yandexGptRequest, createHeaders());
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url,
-                    HttpMethod.POST,
-                    entity,
-                    String.class
-            );
+            ResponseEntity<String> response = llmConcurrencyLimiter.execute(LlmConcurrencyLimiter.YANDEX, uriToUse,
+                    () -> {
+                        call.begin();
+                        return llmRestTemplate.exchange(
+                                url,
+                                HttpMethod.POST,
+                                entity,
+                                String.class
+                        );
+                    });
 
             if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                log.info("Response from Yandex GPT: {}", response.getBody());
+                llmTelemetry.logPayload("Response from Yandex GPT", uriToUse, response::getBody);
                 YandexGptResponse yandexGptResponse = objectMapper.readValue(response.getBody(), YandexGptResponse.class);
                 if (yandexGptResponse.getError() != null) {
                     throw new YandexGptException("Yandex GPT error: " + yandexGptResponse.getError().getMessage());
@@ -98,16 +118,134 @@ public class YandexGptService implements AiService {
                 if (yandexGptResponse.getResult() != null &&
                         yandexGptResponse.getResult().getAlternatives() != null &&
                         !yandexGptResponse.getResult().getAlternatives().isEmpty()) {
+                    recordSuccess(call, yandexGptResponse.getResult().getUsage());
                     return yandexGptResponse.getResult().getAlternatives().get(0).getMessage().getText();
                 }
                 throw new YandexGptException("No response from Yandex GPT");
             }
+            // Не возвращаем заглушку вместо ответа: её закэшировал бы CachingLlmProvider
+            throw new YandexGptException("Unexpected Yandex GPT status " + response.getStatusCode());
 
+        } catch (LlmOverloadedException e) {
+            call.failure(e);
+            throw e;
         }catch (RuntimeException e){
+            call.failure(e);
             log.error("Error calling Yandex GPT API: {}", e.getMessage());
-            throw new YandexGptException("Sorry, I couldn't generate a response at the moment.");
+            throw new YandexGptException("Sorry, I couldn't generate a response at the moment.", e);
+        }
+    }
+
+    public String generateResponseStream(List<ChatMessage> messages, String customModelUri, Consumer<String> onToken) {
+        return generateResponseStream(messages, maxTokensDefault, customModelUri, onToken);
+    }
+
+    /**
+     * Потоковая генерация: Yandex GPT отдаёт ответ построчно (по JSON-объекту на строку),
+     * каждый объект содержит накопленный текст. В onToken передаётся только новая часть.
+     */
+    public String generateResponseStream(List<ChatMessage> messages, int maxTokens, String customModelUri, Consumer<String> onToken) {
+        if (messages == null || messages.isEmpty()) {
+            throw new YandexGptException("Messages cannot be empty");
+        }
+
+        String uriToUse = customModelUri != null && !customModelUri.isBlank() ? customModelUri : modelUri;
+        if (YandexAiStudioService.requiresAiStudioApi(uriToUse)) {
+            return yandexAiStudioService.generateResponseStream(messages, maxTokens, uriToUse, onToken);
+        }
+
+        LlmTelemetry.Call call = llmTelemetry.start(LlmConcurrencyLimiter.YANDEX, uriToUse);
+        try {
+            List<Message> yandexMessages = messages.stream()
+                    .map(chatMessage -> new Message(chatMessage.getRole(), chatMessage.getContent()))
+                    .toList();
+            YandexGptRequest yandexGptRequest = new YandexGptRequest(uriToUse, yandexMessages, false);
+            yandexGptRequest.setMaxTokens(maxTokens);
+            yandexGptRequest.getCompletionOptions().setStream(true);
+            log.info("Sending streaming request to Yandex GPT (model: {}), messages: {}", uriToUse, yandexMessages.size());
+
+            HttpHeaders headers = createHeaders();
+            AtomicReference<Usage> usage = new AtomicReference<>();
+            String fullText = llmConcurrencyLimiter.execute(LlmConcurrencyLimiter.YANDEX, uriToUse,
+                    () -> {
+                        call.begin();
+                        return llmRestTemplate.execute(
+                                url,
+                                HttpMethod.POST,
+                                request -> {
+                                    request.getHeaders().putAll(headers);
+                                    objectMapper.writeValue(request.getBody(), yandexGptRequest);
+                                },
+                                response -> readStream(response.getBody(), onToken, usage)
+                        );
+                    });
+
+            if (fullText == null || fullText.isEmpty()) {
+                throw new YandexGptException("No response from Yandex GPT");
+            }
+            recordSuccess(call, usage.get());
+            log.info("Streaming response from Yandex GPT finished (model: {}), length: {}", uriToUse, fullText.length());
+            llmTelemetry.logPayload("Streaming response from Yandex GPT", uriToUse, () -> fullText);
+            return fullText;
+        } catch (LlmOverloadedException e) {
+            call.failure(e);
+            throw e;
+        } catch (UncheckedIOException e) {
+            // onToken не смог отправить токен клиенту: клиент отключился, это не ошибка LLM
+            log.info("Yandex GPT stream stopped, client disconnected: {}", e.getMessage());
+            throw e;
+        } catch (RuntimeException e) {
+            call.failure(e);
+            log.error("Error calling Yandex GPT streaming API: {}", e.getMessage());
+            throw new YandexGptException("Sorry, I couldn't generate a response at the moment.", e);
+        }
+    }
+
+    private String readStream(InputStream body, Consumer<String> onToken, AtomicReference<Usage> usage) throws IOException {
+        String accumulated = "";
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                YandexGptResponse chunk = objectMapper.readValue(line, YandexGptResponse.class);
+                if (chunk.getError() != null) {
+                    throw new YandexGptException("Yandex GPT error: " + chunk.getError().getMessage());
+                }
+                if (chunk.getResult() == null
+                        || chunk.getResult().getAlternatives() == null
+                        || chunk.getResult().getAlternatives().isEmpty()) {
+                    continue;
+                }
+                if (chunk.getResult().getUsage() != null) {
+                    usage.set(chunk.getResult().getUsage());
+                }
+                String text = chunk.getResult().getAlternatives().get(0).getMessage().getText();
+                if (text == null || text.length() <= accumulated.length()) {
+                    continue;
+                }
+                onToken.accept(text.substring(accumulated.length()));
+                accumulated = text;
+            }
+        }
+        return accumulated;
+    }
+
+    private static void recordSuccess(LlmTelemetry.Call call, Usage usage) {
+        if (usage == null) {
+            call.success(null, null);
+        } else {
+            call.success(usage.getInputTextTokens(), usage.getCompletionTokens());
+        }
+    }
+
+    private String toJson(YandexGptRequest request) {
+        try {
+            return objectMapper.writeValueAsString(request);
+        } catch (IOException e) {
+            return "<unserializable request: " + e.getMessage() + ">";
         }
-        return "Sorry, I couldn't generate a response at the moment.";
     }
 
     private HttpHeaders createHeaders() {
@@ -10,6 +10,7 @@ import org.core.dto.lesson.CreateLessonDTO;
 import org.core.dto.lesson.LessonResponseDTO;
 import org.core.dto.lesson.UpdateLessonDTO;
 import org.core.repository.LessonRepository;
+import org.core.service.stepik.StepikSyncJournal;
 import org.core.util.UserAccessService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -27,6 +28,7 @@ public class LessonService {
 
     private final UserContextBean userContextBean;
     private final UserAccessService userAccessService;
+    private final StepikSyncJournal stepikSyncJournal;
 
     public LessonResponseDTO createLesson(CreateLessonDTO createDTO) {
         Long contextUserId = userContextBean.getUserId();
@@ -39,8 +41,10 @@ public class LessonService {
         lesson.setTitle(createDTO.getTitle());
         lesson.setPosition(position);
 
-        log.info("Created new lesson with ID: {} in section: {} at position {}", lesson.getId(), section.getId(), position);
-        return mapToResponseDTO(lessonRepository.save(lesson));
+        Lesson savedLesson = lessonRepository.save(lesson);
+        stepikSyncJournal.track(savedLesson);
+        log.info("Created new lesson with ID: {} in section: {} at position {}", savedLesson.getId(), section.getId(), position);
+        return mapToResponseDTO(savedLesson);
     }
 
     public Lesson createLessonFromDTO(LessonResponseDTO lessonResponseDTO){
@@ -56,7 +60,9 @@ public class LessonService {
                 .updatedAt(lessonResponseDTO.getUpdatedAt())
                 .needsStepikSync(lessonResponseDTO.isNeedsStepikSync())
                 .build();
-        return lessonRepository.save(lesson);
+        Lesson savedLesson = lessonRepository.save(lesson);
+        stepikSyncJournal.track(savedLesson);
+        return savedLesson;
     }
 
     public LessonResponseDTO getLessonByLessonID(Long lessonId) {
@@ -92,8 +98,10 @@ public class LessonService {
             lesson.setNeedsStepikSync(true);
         }
 
+        Lesson savedLesson = lessonRepository.save(lesson);
+        stepikSyncJournal.track(savedLesson);
         log.info("Updated lesson with ID: {}", updateDTO.getLessonId());
-        return mapToResponseDTO(lessonRepository.save(lesson));
+        return mapToResponseDTO(savedLesson);
     }
 
     public void deleteLesson(Long lessonId) {
@@ -148,14 +156,15 @@ public class LessonService {
         Lesson lesson = userAccessService.findLessonAndVerifyOwner(contextUserId, lessonId);
         lesson.setStepikLessonId(stepikLessonId);
         lesson.setNeedsStepikSync(false);
-        lessonRepository.save(lesson);
+        stepikSyncJournal.track(lessonRepository.save(lesson));
         log.info("Updated lesson {} with stepikLessonId: {}", lessonId, stepikLessonId);
     }
 
     public void updateLessonStepikLessonIdSetNull(Long lessonId) {
         Long contextUserId = userContextBean.getUserId();
-        userAccessService.findLessonAndVerifyOwner(contextUserId, lessonId);
+        Lesson lesson = userAccessService.findLessonAndVerifyOwner(contextUserId, lessonId);
         lessonRepository.updateStepikLessonId(lessonId);
+        stepikSyncJournal.trackUnsynced(lesson);
         log.info("Updated lesson {} set NULL value", lessonId);
     }
 
@@ -164,6 +173,7 @@ public class LessonService {
         userAccessService.findSectionAndVerifyOwner(contextUserId, sectionId);
         log.info("Clearing stepikLessonId for all lessons in section {}", sectionId);
         int updatedCount = lessonRepository.clearStepikLessonIdsByModelId(sectionId);
+        lessonRepository.findByModelIdOrderByPositionAsc(sectionId).forEach(stepikSyncJournal::trackUnsynced);
         log.info("Cleared stepikLessonId for {} lessons in section {}", updatedCount, sectionId);
     }
 
@@ -172,7 +182,7 @@ public class LessonService {
         Lesson lesson = userAccessService.findLessonAndVerifyOwner(contextUserId, lessonId);
         if (lesson.isNeedsStepikSync()) {
             lesson.setNeedsStepikSync(false);
-            lessonRepository.save(lesson);
+            stepikSyncJournal.track(lessonRepository.save(lesson));
             log.info("Cleared needsStepikSync for lesson ID: {}", lessonId);
         }
     }
@@ -11,6 +11,7 @@ import org.core.dto.section.CreateSectionDTO;
 import org.core.dto.section.SectionResponseDTO;
 import org.core.dto.section.UpdateSectionDTO;
 import org.core.repository.SectionRepository;
+import org.core.service.stepik.StepikSyncJournal;
 import org.core.util.UserAccessService;
 import org.springframework.stereotype.Service;
 
@@ -27,6 +28,7 @@ public class SectionService {
 
     private final UserContextBean userContextBean;
     private final UserAccessService userAccessService;
+    private final StepikSyncJournal stepikSyncJournal;
 
     public SectionResponseDTO createSection(CreateSectionDTO createDTO){
         Long contextUserId = userContextBean.getUserId();
@@ -40,8 +42,10 @@ public class SectionService {
         section.setTitle(createDTO.getTitle());
         section.setDescription(createDTO.getDescription());
 
-        log.info("Created new section with ID: {} in course: {} at position {}", section.getId(), course.getId(), position);
-        return mapToResponseDTO(sectionRepository.save(section));
+        Section savedSection = sectionRepository.save(section);
+        stepikSyncJournal.track(savedSection);
+        log.info("Created new section with ID: {} in course: {} at position {}", savedSection.getId(), course.getId(), position);
+        return mapToResponseDTO(savedSection);
     }
 
     public Section createSectionFromDTO(SectionResponseDTO sectionResponseDTO){
@@ -58,7 +62,9 @@ public class SectionService {
                 .updatedAt(sectionResponseDTO.getUpdatedAt())
                 .needsStepikSync(sectionResponseDTO.isNeedsStepikSync())
                 .build();
-        return sectionRepository.save(section);
+        Section savedSection = sectionRepository.save(section);
+        stepikSyncJournal.track(savedSection);
+        return savedSection;
     }
 
     public SectionResponseDTO getSectionBySectionId(Long sectionId){
@@ -109,6 +115,7 @@ public class SectionService {
             section.setNeedsStepikSync(true);
         }
         Section savedSection = sectionRepository.save(section);
+        stepikSyncJournal.track(savedSection);
         log.info("Updated section with ID: {}", updateDTO.getSectionId());
         return mapToResponseDTO(savedSection);
     }
@@ -132,6 +139,7 @@ public class SectionService {
         section.setStepikSectionId(stepikSectionId);
         section.setNeedsStepikSync(false);
         Section savedSection = sectionRepository.save(section);
+        stepikSyncJournal.track(savedSection);
         log.info("Updated section ID: {} with Stepik section ID: {}", sectionId, stepikSectionId);
         mapToResponseDTO(savedSection);
     }
@@ -141,7 +149,7 @@ public class SectionService {
         Section section = userAccessService.findSectionAndVerifyOwner(contextUserId, sectionId);
         if (section.isNeedsStepikSync()) {
             section.setNeedsStepikSync(false);
-            sectionRepository.save(section);
+            stepikSyncJournal.track(sectionRepository.save(section));
             log.info("Cleared needsStepikSync for section ID: {}", sectionId);
         }
     }
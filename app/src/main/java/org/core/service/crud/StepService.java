@@ -14,6 +14,7 @@ import org.core.dto.step.StepResponseDTO;
 import org.core.dto.step.UpdateStepDTO;
 import org.core.dto.stepik.step.StepikBlockResponse;
 import org.core.repository.StepRepository;
+import org.core.service.stepik.StepikSyncJournal;
 import org.core.util.UserAccessService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -32,6 +33,7 @@ public class StepService {
 
     private final UserContextBean userContextBean;
     private final UserAccessService userAccessService;
+    private final StepikSyncJournal stepikSyncJournal;
 
     public StepResponseDTO createStep(CreateStepDTO createStepDTO){
         Long contextUserId = userContextBean.getUserId();
@@ -56,8 +58,10 @@ public class StepService {
             }
         }
 
-        log.info("Step created with id: {} in lesson: {} at position {}", step.getId(), lesson.getId(), position);
-        return mapToResponseDto(stepRepository.save(step));
+        Step savedStep = stepRepository.save(step);
+        stepikSyncJournal.track(savedStep);
+        log.info("Step created with id: {} in lesson: {} at position {}", savedStep.getId(), lesson.getId(), position);
+        return mapToResponseDto(savedStep);
     }
 
     public Step createStepFromDTO(StepResponseDTO stepResponseDTO){
@@ -76,7 +80,9 @@ public class StepService {
                 .updatedAt(stepResponseDTO.getUpdatedAt())
                 .needsStepikSync(stepResponseDTO.isNeedsStepikSync())
                 .build();
-        return stepRepository.save(step);
+        Step savedStep = stepRepository.save(step);
+        stepikSyncJournal.track(savedStep);
+        return savedStep;
     }
 
     public StepResponseDTO getStepById(Long stepId) {
@@ -127,8 +133,10 @@ public class StepService {
         if (step.getStepikStepId() != null && hasStepikContentChanges(updateDto)) {
             step.setNeedsStepikSync(true);
         }
+        Step savedStep = stepRepository.save(step);
+        stepikSyncJournal.track(savedStep);
         log.info("Step updated with ID: {}", updateDto.getStepId());
-        return mapToResponseDto(stepRepository.save(step));
+        return mapToResponseDto(savedStep);
     }
 
     private boolean hasStepikContentChanges(UpdateStepDTO updateDto) {
@@ -157,6 +165,7 @@ public class StepService {
         step.setStepikStepId(stepikStepId);
         step.setNeedsStepikSync(false);
         Step savedStep = stepRepository.save(step);
+        stepikSyncJournal.track(savedStep);
         log.info("Step with stepID: {} saved with stepikStepId: {}", savedStep.getId(), stepikStepId);
     }
 
@@ -165,7 +174,7 @@ public class StepService {
         Step step = userAccessService.findStepAndVerifyOwner(contextUserId, stepId);
         if (step.isNeedsStepikSync()) {
             step.setNeedsStepikSync(false);
-            stepRepository.save(step);
+            stepikSyncJournal.track(stepRepository.save(step));
             log.info("Cleared needsStepikSync for step ID: {}", stepId);
         }
     }
@@ -218,6 +227,7 @@ public class StepService {
                 .stepikStepId(step.getStepikStepId())
                 .createdAt(step.getCreatedAt())
                 .updatedAt(step.getUpdatedAt())
+                .version(step.getVersion())
                 .lessonId(step.getLesson().getId())
                 .needsStepikSync(step.isNeedsStepikSync())
                 .build();
@@ -0,0 +1,112 @@
+package org.core.service.stepik;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.core.annotation.RequiresStepikToken;
+import org.core.dto.stepik.lesson.StepikLessonResponseData;
+import org.core.dto.stepik.section.StepikSectionResponseData;
+import org.core.dto.stepik.step.StepikStepSourceResponseData;
+import org.core.dto.stepik.unit.StepikUnitResponseData;
+import org.core.exception.exceptions.StepikCourseIntegrationException;
+import org.core.util.HeaderBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Загрузка объектов Stepik списком id: один GET {@code /<resource>?ids[]=..&ids[]=..} на страницу
+ * из stepik.api.bulk.page-size id вместо запроса на каждый объект.
+ * Объекты, которых нет в ответе (удалены или недоступны), в результат не попадают.
+ */
+@Service
+@Slf4j
+public class StepikBulkFetcher {
+
+    private final HeaderBuilder headerBuilder;
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+    private final String baseUrl;
+    private final int pageSize;
+
+    public StepikBulkFetcher(HeaderBuilder headerBuilder,
+                             RestTemplate restTemplate,
+                             ObjectMapper objectMapper,
+                             @Value("${stepik.api.base-url}") String baseUrl,
+                             @Value("${stepik.api.bulk.page-size}") int pageSize) {
+        this.headerBuilder = headerBuilder;
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+        this.baseUrl = baseUrl;
+        this.pageSize = pageSize;
+    }
+
+    @RequiresStepikToken
+    public Map<Long, StepikSectionResponseData> getSections(Collection<Long> ids) {
+        return fetch("sections", "sections", ids, StepikSectionResponseData.class, StepikSectionResponseData::getId);
+    }
+
+    @RequiresStepikToken
+    public Map<Long, StepikUnitResponseData> getUnits(Collection<Long> ids) {
+        return fetch("units", "units", ids, StepikUnitResponseData.class, StepikUnitResponseData::getId);
+    }
+
+    @RequiresStepikToken
+    public Map<Long, StepikLessonResponseData> getLessons(Collection<Long> ids) {
+        return fetch("lessons", "lessons", ids, StepikLessonResponseData.class, StepikLessonResponseData::getId);
+    }
+
+    @RequiresStepikToken
+    public Map<Long, StepikStepSourceResponseData> getStepSources(Collection<Long> ids) {
+        return fetch("step-sources", "step-sources", ids, StepikStepSourceResponseData.class, StepikStepSourceResponseData::getId);
+    }
+
+    private <T> Map<Long, T> fetch(String resource, String field, Collection<Long> ids, Class<T> type, Function<T, Long> idOf) {
+        List<Long> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<Long, T> result = new LinkedHashMap<>();
+        for (int from = 0; from < uniqueIds.size(); from += pageSize) {
+            List<Long> page = uniqueIds.subList(from, Math.min(from + pageSize, uniqueIds.size()));
+            String url = baseUrl + "/" + resource + "?" + page.stream()
+                    .map(id -> "ids[]=" + id)
+                    .collect(Collectors.joining("&"));
+            try {
+                ResponseEntity<String> response = restTemplate.exchange(
+                        url, HttpMethod.GET, new HttpEntity<>(headerBuilder.createHeaders()), String.class);
+                if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+                    throw new StepikCourseIntegrationException("Failed to get " + resource + " from Stepik. Status: "
+                            + response.getStatusCode());
+                }
+                JsonNode items = objectMapper.readTree(response.getBody()).get(field);
+                if (items != null && items.isArray()) {
+                    for (JsonNode item : items) {
+                        T value = objectMapper.treeToValue(item, type);
+                        result.put(idOf.apply(value), value);
+                    }
+                }
+            } catch (StepikCourseIntegrationException e) {
+                throw e;
+            } catch (Exception e) {
+                log.error("Error getting {} {} from Stepik: {}", resource, page, e.getMessage());
+                throw new StepikCourseIntegrationException("Failed to get " + resource + " from Stepik: " + e.getMessage());
+            }
+        }
+        if (result.size() < uniqueIds.size()) {
+            log.warn("Stepik returned {} of {} requested {}", result.size(), uniqueIds.size(), resource);
+        }
+        log.info("Retrieved {} {} from Stepik in {} request(s)", result.size(), resource,
+                (uniqueIds.size() + pageSize - 1) / pageSize);
+        return result;
+    }
+}
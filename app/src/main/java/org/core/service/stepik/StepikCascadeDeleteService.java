@@ -1,8 +1,6 @@
 package org.core.service.stepik;
 
-import jakarta.annotation.Resource;
 import jakarta.transaction.Transactional;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.core.context.UserContextBean;
 import org.core.domain.Course;
@@ -16,20 +14,29 @@ import org.core.service.stepik.course.StepikCourseSyncService;
 import org.core.service.stepik.lesson.StepikLessonSyncService;
 import org.core.service.stepik.section.StepikSectionSyncService;
 import org.core.service.stepik.step.StepikStepSyncService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
-
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Каскадное удаление курса, раздела или урока из Stepik: сначала параллельно удаляются дочерние элементы, затем сам
+ * элемент. Одновременно в Stepik уходит не больше stepik.gateway.max-concurrent-per-user запросов, иначе на больших
+ * курсах запросы не дожидаются разрешения шлюза. Если удалить дочерний элемент не удалось, родитель не удаляется,
+ * а ошибка пробрасывается вызывающему.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 @Transactional
 public class StepikCascadeDeleteService {
 
-    @Resource(name = "virtualExecutor")
     private final ExecutorService virtualExecutor;
 
     private final StepikCourseSyncService courseSyncService;
@@ -43,6 +50,30 @@ public class StepikCascadeDeleteService {
     private final SectionRepository sectionRepository;
     private final LessonRepository lessonRepository;
 
+    private final int maxConcurrentRequests;
+
+    public StepikCascadeDeleteService(@Qualifier("virtualExecutor") ExecutorService virtualExecutor,
+                                      StepikCourseSyncService courseSyncService,
+                                      StepikSectionSyncService sectionSyncService,
+                                      StepikLessonSyncService lessonSyncService,
+                                      StepikStepSyncService stepSyncService,
+                                      UserContextBean userContextBean,
+                                      UserAccessService userAccessService,
+                                      SectionRepository sectionRepository,
+                                      LessonRepository lessonRepository,
+                                      @Value("${stepik.gateway.max-concurrent-per-user}") int maxConcurrentRequests) {
+        this.virtualExecutor = virtualExecutor;
+        this.courseSyncService = courseSyncService;
+        this.sectionSyncService = sectionSyncService;
+        this.lessonSyncService = lessonSyncService;
+        this.stepSyncService = stepSyncService;
+        this.userContextBean = userContextBean;
+        this.userAccessService = userAccessService;
+        this.sectionRepository = sectionRepository;
+        this.lessonRepository = lessonRepository;
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+    }
+
     public void deleteFullCourseFromStepik(Long courseId, Long userId){
         userContextBean.setUserId(userId);
         try {
@@ -52,137 +83,131 @@ public class StepikCascadeDeleteService {
                 throw new IllegalArgumentException("Course with id " + courseId + " not synchronized with stepik");
             }
 
-            List<CompletableFuture<Void>> sectionFutures = new ArrayList<>();
-            List<Section> courseSections = course.getSections();
-            for (Section section : courseSections) {
+            Semaphore permits = newPermits();
+            List<Section> sections = new ArrayList<>();
+            for (Section section : course.getSections()) {
                 if (section.getStepikSectionId() != null) {
-                    log.info("Start async deleting section from stepik with sectionId: {}", section.getId());
-                    sectionFutures.add(CompletableFuture.runAsync(() -> {
-                        userContextBean.setUserId(userId);
-                        try {
-                            deleteFullSectionFromStepik(section, userId).join();
-                        } finally {
-                            userContextBean.clear();
-                        }
-                    }, virtualExecutor));
+                    sections.add(section);
                 } else {
                     log.error("Section {} is not synchronized with stepik, skipping", section.getId());
                 }
             }
+            forEachConcurrently(sections, userId, section -> deleteSection(section, userId, permits));
 
-            CompletableFuture<Void> allFutures = CompletableFuture.allOf(sectionFutures.toArray(new CompletableFuture[0]))
-                    .exceptionally(ex -> {
-                        log.error("Error during section deletion for course {}: {}", courseId, ex.getMessage(), ex);
-                        return null;
-                    });
-            allFutures.join();
-
-            courseSyncService.deleteCourseFromStepik(courseId);
+            withPermit(permits, () -> courseSyncService.deleteCourseFromStepik(courseId));
             log.info("Course {} cascade deletion success", courseId);
         } finally {
             userContextBean.clear();
         }
     }
 
-    public CompletableFuture<Void> deleteFullSectionFromStepik(Section section, Long userId) {
-        if(section.getStepikSectionId() == null){
+    public void deleteFullSectionFromStepikById(Long sectionId, Long userId) {
+        userContextBean.setUserId(userId);
+        try {
+            Section section = sectionRepository.findById(sectionId)
+                    .orElseThrow(() -> new IllegalArgumentException("Section with id " + sectionId + " not found"));
+            deleteSection(section, userId, newPermits());
+        } finally {
+            userContextBean.clear();
+        }
+    }
+
+    public void deleteFullLessonFromStepikById(Long lessonId, Long userId) {
+        userContextBean.setUserId(userId);
+        try {
+            Lesson lesson = lessonRepository.findById(lessonId)
+                    .orElseThrow(() -> new IllegalArgumentException("Lesson with id " + lessonId + " not found"));
+            deleteLesson(lesson, userId, newPermits());
+        } finally {
+            userContextBean.clear();
+        }
+    }
+
+    private void deleteSection(Section section, Long userId, Semaphore permits) {
+        if (section.getStepikSectionId() == null) {
             log.error("Section with id: {} not synchronized with stepik", section.getId());
-            return CompletableFuture.completedFuture(null);
+            return;
         }
 
-        List<CompletableFuture<Void>> lessonFutures = new ArrayList<>();
-        List<Lesson> sectionLessons = section.getLessons();
-        for(Lesson lesson : sectionLessons){
+        List<Lesson> lessons = new ArrayList<>();
+        for (Lesson lesson : section.getLessons()) {
             if (lesson.getStepikLessonId() != null) {
-                log.info("Start async deleting lesson from stepik with lessonId: {}", lesson.getId());
-                lessonFutures.add(CompletableFuture.runAsync(() -> {
-                    userContextBean.setUserId(userId);
-                    try {
-                        deleteFullLessonFromStepik(lesson, userId).join();
-                    } finally {
-                        userContextBean.clear();
-                    }
-                }, virtualExecutor));
+                lessons.add(lesson);
             } else {
                 log.error("Lesson {} is not synchronized with stepik, skipping", lesson.getId());
             }
         }
+        forEachConcurrently(lessons, userId, lesson -> deleteLesson(lesson, userId, permits));
 
-        return CompletableFuture.allOf(lessonFutures.toArray(new CompletableFuture[0]))
-                .exceptionally(ex -> {
-                    log.error("Error during lesson deletion for section {}: {}", section.getId(), ex.getMessage(), ex);
-                    return null;
-                })
-                .thenRun(() -> {
-                    userContextBean.setUserId(userId);
-                    try {
-                        sectionSyncService.deleteSectionFromStepik(section.getId());
-                        log.info("Section {} cascade deletion success", section.getId());
-                    } finally {
-                        userContextBean.clear();
-                    }
-                });
+        withPermit(permits, () -> sectionSyncService.deleteSectionFromStepik(section.getId()));
+        log.info("Section {} cascade deletion success", section.getId());
     }
 
-    public CompletableFuture<Void> deleteFullLessonFromStepik(Lesson lesson, Long userId) {
-        if(lesson.getStepikLessonId() == null){
+    private void deleteLesson(Lesson lesson, Long userId, Semaphore permits) {
+        if (lesson.getStepikLessonId() == null) {
             log.error("Lesson with id: {} not synchronized with stepik", lesson.getId());
-            return CompletableFuture.completedFuture(null);
+            return;
         }
 
-        List<CompletableFuture<Void>> stepFutures = new ArrayList<>();
-        List<Step> lessonSteps = lesson.getSteps();
-        for(Step step : lessonSteps){
-            if(step.getStepikStepId() != null){
-                log.info("Start async deleting step from stepik with stepId: {}", step.getId());
-                stepFutures.add(CompletableFuture.runAsync(() -> {
-                    userContextBean.setUserId(userId);
-                    try {
-                        stepSyncService.deleteStepFromStepik(step.getId());
-                    } catch (RuntimeException e) {
-                        log.error("Failed to delete step {} from Stepik: {}", step.getId(), e.getMessage());
-                    } finally {
-                        userContextBean.clear();
-                    }
-                }, virtualExecutor));
-            }
-        }
+        List<Step> steps = lesson.getSteps().stream()
+                .filter(step -> step.getStepikStepId() != null)
+                .toList();
+        forEachConcurrently(steps, userId,
+                step -> withPermit(permits, () -> stepSyncService.deleteStepFromStepik(step.getId())));
 
-        return CompletableFuture.allOf(stepFutures.toArray(new CompletableFuture[0]))
-                .exceptionally(ex -> {
-                    log.error("Error during step deletion for lesson {}: {}", lesson.getId(), ex.getMessage(), ex);
-                    return null;
-                })
-                .thenRun(() -> {
-                    userContextBean.setUserId(userId);
-                    try {
-                        lessonSyncService.deleteLessonFromStepik(lesson.getId());
-                        log.info("Lesson {} cascade deletion success", lesson.getId());
-                    } finally {
-                        userContextBean.clear();
-                    }
-                });
+        withPermit(permits, () -> lessonSyncService.deleteLessonFromStepik(lesson.getId()));
+        log.info("Lesson {} cascade deletion success", lesson.getId());
     }
 
-    public void deleteFullSectionFromStepikById(Long sectionId, Long userId) {
-        userContextBean.setUserId(userId);
+    private Semaphore newPermits() {
+        return new Semaphore(maxConcurrentRequests);
+    }
+
+    /**
+     * Разрешение держится только на время запроса к Stepik, не на время ожидания дочерних элементов,
+     * поэтому вложенные уровни каскада не блокируют друг друга.
+     */
+    private void withPermit(Semaphore permits, Runnable request) {
+        permits.acquireUninterruptibly();
         try {
-            Section section = sectionRepository.findById(sectionId)
-                    .orElseThrow(() -> new IllegalArgumentException("Section with id " + sectionId + " not found"));
-            deleteFullSectionFromStepik(section, userId).join();
+            request.run();
         } finally {
-            userContextBean.clear();
+            permits.release();
         }
     }
 
-    public void deleteFullLessonFromStepikById(Long lessonId, Long userId) {
-        userContextBean.setUserId(userId);
-        try {
-            Lesson lesson = lessonRepository.findById(lessonId)
-                    .orElseThrow(() -> new IllegalArgumentException("Lesson with id " + lessonId + " not found"));
-            deleteFullLessonFromStepik(lesson, userId).join();
-        } finally {
-            userContextBean.clear();
+    /**
+     * Ждёт все элементы; при ошибках бросает первую, остальные добавляет в suppressed.
+     */
+    private <T> void forEachConcurrently(List<T> items, Long userId, Consumer<T> action) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                userContextBean.setUserId(userId);
+                try {
+                    action.accept(item);
+                } finally {
+                    userContextBean.clear();
+                }
+            }, virtualExecutor));
+        }
+
+        RuntimeException failure = null;
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException runtime ? runtime : e;
+                if (failure == null) {
+                    failure = cause;
+                } else if (failure != cause) {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            log.error("Stepik cascade deletion failed: {}", failure.getMessage());
+            throw failure;
         }
     }
 }
@@ -1,7 +1,5 @@
 package org.core.service.stepik;
 
-import jakarta.annotation.Resource;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.core.context.UserContextBean;
 import org.core.domain.Lesson;
@@ -9,34 +7,40 @@ import org.core.domain.Section;
 import org.core.dto.CourseCaptchaChallenge;
 import org.core.dto.LessonCaptchaChallenge;
 import org.core.dto.course.CourseResponseDTO;
-import org.core.dto.lesson.LessonResponseDTO;
-import org.core.dto.section.SectionResponseDTO;
-import org.core.dto.step.StepResponseDTO;
 import org.core.dto.stepik.section.StepikSectionResponseData;
 import org.core.repository.LessonRepository;
 import org.core.repository.SectionRepository;
 import org.core.service.crud.CourseService;
-import org.core.service.crud.LessonService;
-import org.core.service.crud.SectionService;
-import org.core.service.crud.StepService;
+import org.core.service.stepik.StepikSyncPlanner.LessonNode;
+import org.core.service.stepik.StepikSyncPlanner.SectionNode;
+import org.core.service.stepik.StepikSyncPlanner.StepNode;
+import org.core.service.stepik.StepikSyncPlanner.StepWaves;
 import org.core.service.stepik.course.StepikCourseSyncService;
 import org.core.service.stepik.lesson.StepikLessonSyncService;
 import org.core.service.stepik.section.StepikSectionSyncService;
 import org.core.service.stepik.section.StepikSectionService;
 import org.core.service.stepik.step.StepikStepSyncService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
+/**
+ * Каскадная отправка курса, раздела или урока в Stepik по плану StepikSyncPlanner (по журналу изменений курса).
+ * Разделы идут параллельно, уроки раздела — по порядку (создание урока может потребовать капчу, позиция юнита
+ * задаётся при создании). Шаги урока отправляются, не дожидаясь следующих уроков: новые шаги — по порядку позиций,
+ * изменённые шаги без сдвига позиции — параллельно, не больше stepik.sync.step-concurrency одновременно,
+ * шаги со сдвигом позиции — по одному в конце.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class StepikCascadeSyncService {
 
-    @Resource(name = "virtualExecutor")
     private final ExecutorService virtualExecutor;
 
     private final StepikCourseSyncService courseSyncService;
@@ -44,17 +48,60 @@ public class StepikCascadeSyncService {
     private final StepikSectionService stepikSectionService;
     private final StepikLessonSyncService lessonSyncService;
     private final StepikStepSyncService stepSyncService;
+    private final StepikSyncPlanner syncPlanner;
 
-    private final SectionService sectionService;
-    private final LessonService lessonService;
-    private final StepService stepService;
     private final CourseService courseService;
     private final UserContextBean userContextBean;
 
     private final LessonRepository lessonRepository;
     private final SectionRepository sectionRepository;
 
+    private final int stepConcurrency;
+
+    public StepikCascadeSyncService(@Qualifier("virtualExecutor") ExecutorService virtualExecutor,
+                                    StepikCourseSyncService courseSyncService,
+                                    StepikSectionSyncService sectionSyncService,
+                                    StepikSectionService stepikSectionService,
+                                    StepikLessonSyncService lessonSyncService,
+                                    StepikStepSyncService stepSyncService,
+                                    StepikSyncPlanner syncPlanner,
+                                    CourseService courseService,
+                                    UserContextBean userContextBean,
+                                    LessonRepository lessonRepository,
+                                    SectionRepository sectionRepository,
+                                    @Value("${stepik.sync.step-concurrency}") int stepConcurrency) {
+        this.virtualExecutor = virtualExecutor;
+        this.courseSyncService = courseSyncService;
+        this.sectionSyncService = sectionSyncService;
+        this.stepikSectionService = stepikSectionService;
+        this.lessonSyncService = lessonSyncService;
+        this.stepSyncService = stepSyncService;
+        this.syncPlanner = syncPlanner;
+        this.courseService = courseService;
+        this.userContextBean = userContextBean;
+        this.lessonRepository = lessonRepository;
+        this.sectionRepository = sectionRepository;
+        this.stepConcurrency = Math.max(1, stepConcurrency);
+    }
+
     public CourseCaptchaChallenge syncFullCourseForStepik(Long courseId, String captchaToken, Long userId) {
+        CourseCaptchaChallenge result = syncCourse(courseId, captchaToken);
+
+        List<CompletableFuture<Void>> sectionFutures = new ArrayList<>();
+        for (SectionNode section : syncPlanner.planCourse(courseId)) {
+            sectionFutures.add(CompletableFuture.runAsync(asUser(userId, () -> {
+                syncSection(section);
+                syncLessons(section, captchaToken, userId);
+            }), virtualExecutor));
+        }
+        CompletableFuture.allOf(sectionFutures.toArray(new CompletableFuture[0])).join();
+        return result;
+    }
+
+    /**
+     * Только сам курс: создание (возможно, с капчей) или обновление. Разделы, уроки и шаги не трогаются.
+     */
+    public CourseCaptchaChallenge syncCourse(Long courseId, String captchaToken) {
         CourseResponseDTO course = courseService.getCourseByCourseId(courseId);
         CourseCaptchaChallenge result;
         if (course.getStepikCourseId() == null) {
@@ -67,56 +114,9 @@ public class StepikCascadeSyncService {
         } else {
             result = courseSyncService.syncCourseWithStepik(courseId, captchaToken);
         }
-
-        List<SectionResponseDTO> sections = sectionService.getCourseSectionsByCourseId(courseId);
-
-        List<CompletableFuture<Void>> sectionFutures = new ArrayList<>();
-        for (SectionResponseDTO section : sections) {
-            sectionFutures.add(CompletableFuture.runAsync(
-                    () -> syncMissingInSection(section.getId(), captchaToken),
-                    virtualExecutor));
-        }
-        CompletableFuture.allOf(sectionFutures.toArray(new CompletableFuture[0])).join();
         return result;
     }
 
-    private void syncMissingInSection(Long sectionId, String captchaToken) {
-        try {
-            SectionResponseDTO section = sectionService.getSectionBySectionId(sectionId);
-            if (section.getStepikSectionId() == null) {
-                log.info("Start sync section with sectionId: {}", sectionId);
-                sectionSyncService.syncSectionWithStepik(sectionId);
-            } else if (section.isNeedsStepikSync()) {
-                log.info("Start update section in stepik with sectionId: {}", sectionId);
-                sectionSyncService.updateSectionInStepik(sectionId);
-            }
-
-            List<LessonResponseDTO> lessons = lessonService.getSectionLessonsBySectionId(sectionId);
-            for (LessonResponseDTO lesson : lessons) {
-                if (lesson.getStepikLessonId() == null) {
-                    log.info("Start sync lesson with lessonId: {}", lesson.getId());
-                    lessonSyncService.syncLessonWithStepik(lesson.getId(), captchaToken);
-                } else if (lesson.isNeedsStepikSync()) {
-                    log.info("Start update lesson in stepik with lessonId: {}", lesson.getId());
-                    lessonSyncService.updateLessonInStepik(lesson.getId());
-                }
-
-                List<StepResponseDTO> steps = stepService.getLessonStepsByLessonId(lesson.getId());
-                for (StepResponseDTO step : steps) {
-                    if (step.getStepikStepId() == null) {
-                        log.info("Start sync step with stepId: {}", step.getId());
-                        stepSyncService.syncStepWithStepik(step.getId());
-                    } else if (step.isNeedsStepikSync()) {
-                        log.info("Start update step in stepik with stepId: {}", step.getId());
-                        stepSyncService.updateStepInStepik(step.getId());
-                    }
-                }
-            }
-        } finally {
-            userContextBean.clear();
-        }
-    }
-
     public StepikSectionResponseData syncFullSectionById(Long sectionId, String captchaToken, Long userId) {
         userContextBean.setUserId(userId);
         try {
@@ -134,7 +134,9 @@ public class StepikCascadeSyncService {
                 sectionResponseData = stepikSectionService.getSectionByStepikId(section.getStepikSectionId());
             }
 
-            syncMissingInSection(sectionId, captchaToken);
+            for (SectionNode node : syncPlanner.planSection(section.getCourse().getId(), sectionId)) {
+                syncLessons(node, captchaToken, userId);
+            }
             return sectionResponseData;
         } finally {
             userContextBean.clear();
@@ -151,6 +153,9 @@ public class StepikCascadeSyncService {
             if (lesson.getStepikLessonId() == null) {
                 log.info("Start sync lesson with lessonId: {}", lesson.getId());
                 lessonCaptchaChallenge = lessonSyncService.syncLessonWithStepik(lesson.getId(), captchaToken);
+                if (lessonCaptchaChallenge.getSiteKey() != null) {
+                    return lessonCaptchaChallenge;
+                }
             } else if (lesson.isNeedsStepikSync()) {
                 log.info("Start update lesson in stepik with lessonId: {}", lesson.getId());
                 lessonSyncService.updateLessonInStepik(lesson.getId());
@@ -163,20 +168,97 @@ public class StepikCascadeSyncService {
                 lessonCaptchaChallenge.setMessage("Lesson is already synced with Stepik (ID: " + lesson.getStepikLessonId() + ")");
             }
 
-            List<StepResponseDTO> steps = stepService.getLessonStepsByLessonId(lessonId);
-            for (StepResponseDTO step : steps) {
-                if (step.getStepikStepId() == null) {
-                    log.info("Start sync step with stepId: {}", step.getId());
-                    stepSyncService.syncStepWithStepik(step.getId());
-                } else if (step.isNeedsStepikSync()) {
-                    log.info("Start update step in stepik with stepId: {}", step.getId());
-                    stepSyncService.updateStepInStepik(step.getId());
-                }
-            }
+            syncSteps(lessonId, syncPlanner.planLessonSteps(lessonId), userId);
             return lessonCaptchaChallenge;
         } finally {
             userContextBean.clear();
         }
     }
 
+    private void syncSection(SectionNode section) {
+        if (section.stepikSectionId() == null) {
+            log.info("Start sync section with sectionId: {}", section.id());
+            sectionSyncService.syncSectionWithStepik(section.id());
+        } else if (section.dirty()) {
+            log.info("Start update section in stepik with sectionId: {}", section.id());
+            sectionSyncService.updateSectionInStepik(section.id());
+        }
+    }
+
+    /**
+     * Уроки раздела по порядку; шаги каждого урока уходят в фон сразу после него, метод ждёт все шаги раздела.
+     */
+    private void syncLessons(SectionNode section, String captchaToken, Long userId) {
+        List<CompletableFuture<Void>> stepFutures = new ArrayList<>();
+        try {
+            for (LessonNode lesson : section.lessons()) {
+                if (lesson.stepikLessonId() == null) {
+                    log.info("Start sync lesson with lessonId: {}", lesson.id());
+                    LessonCaptchaChallenge challenge = lessonSyncService.syncLessonWithStepik(lesson.id(), captchaToken);
+                    if (challenge.getSiteKey() != null) {
+                        log.warn("Lesson {} requires captcha, its steps are not synced", lesson.id());
+                        continue;
+                    }
+                } else if (lesson.dirty()) {
+                    log.info("Start update lesson in stepik with lessonId: {}", lesson.id());
+                    lessonSyncService.updateLessonInStepik(lesson.id());
+                }
+                if (!lesson.steps().isEmpty()) {
+                    stepFutures.add(CompletableFuture.runAsync(
+                            asUser(userId, () -> syncSteps(lesson.id(), lesson.steps(), userId)), virtualExecutor));
+                }
+            }
+        } finally {
+            CompletableFuture.allOf(stepFutures.toArray(new CompletableFuture[0])).join();
+        }
+    }
+
+    private void syncSteps(Long lessonId, List<StepNode> steps, Long userId) {
+        for (StepNode step : steps) {
+            if (step.isNew()) {
+                log.info("Start sync step with stepId: {}", step.id());
+                stepSyncService.syncStepWithStepik(step.id());
+            }
+        }
+
+        List<StepNode> updates = steps.stream().filter(step -> !step.isNew()).toList();
+        if (updates.isEmpty()) {
+            return;
+        }
+        StepWaves waves = syncPlanner.splitByStepikPosition(updates);
+        List<Long> inPlace = waves.inPlace().stream().map(StepNode::id).toList();
+        List<Long> moved = waves.moved().stream().map(StepNode::id).toList();
+        log.info("Lesson {}: updating {} step(s) in place, {} with position shift", lessonId, inPlace.size(), moved.size());
+
+        Semaphore permits = new Semaphore(stepConcurrency);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(inPlace.size());
+        for (Long stepId : inPlace) {
+            permits.acquireUninterruptibly();
+            futures.add(CompletableFuture.runAsync(asUser(userId, () -> {
+                try {
+                    log.info("Start update step in stepik with stepId: {}", stepId);
+                    stepSyncService.updateStepInStepik(stepId);
+                } finally {
+                    permits.release();
+                }
+            }), virtualExecutor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        for (Long stepId : moved) {
+            log.info("Start update step in stepik with stepId: {}", stepId);
+            stepSyncService.updateStepInStepik(stepId);
+        }
+    }
+
+    private Runnable asUser(Long userId, Runnable action) {
+        return () -> {
+            userContextBean.setUserId(userId);
+            try {
+                action.run();
+            } finally {
+                userContextBean.clear();
+            }
+        };
+    }
 }
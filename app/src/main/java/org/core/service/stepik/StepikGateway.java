@@ -0,0 +1,242 @@
+package org.core.service.stepik;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.core.context.UserContextBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Шлюз ко всем запросам Stepik API: interceptor на restTemplate, через который проходят все service/stepik/**.
+ * Общий token bucket (rate-per-second, burst) держит темп запросов, семафор на пользователя — число одновременных
+ * запросов одного пользователя. Ответ 429 ставит на паузу весь bucket до Retry-After; 429 повторяется для любого метода,
+ * 502/503/504 и сетевые ошибки — только для идемпотентных, с экспоненциальной задержкой и полным jitter.
+ */
+@Component
+@Slf4j
+public class StepikGateway implements ClientHttpRequestInterceptor {
+
+    private static final long ANONYMOUS = 0L;
+    private static final Set<HttpMethod> IDEMPOTENT = Set.of(
+            HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE);
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(502, 503, 504);
+
+    private final UserContextBean userContextBean;
+    private final TokenBucket bucket;
+    private final int maxConcurrentPerUser;
+    private final long acquireTimeoutMs;
+    private final int maxAttempts;
+    private final long backoffBaseMs;
+    private final long backoffMaxMs;
+    private final long retryAfterMaxMs;
+
+    private final Map<Long, Semaphore> userPermits = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+    private final Timer permitWait;
+    private final Counter rejected;
+
+    public StepikGateway(UserContextBean userContextBean,
+                         MeterRegistry meterRegistry,
+                         @Value("${stepik.gateway.rate-per-second}") double ratePerSecond,
+                         @Value("${stepik.gateway.burst}") int burst,
+                         @Value("${stepik.gateway.max-concurrent-per-user}") int maxConcurrentPerUser,
+                         @Value("${stepik.gateway.acquire-timeout-ms}") long acquireTimeoutMs,
+                         @Value("${stepik.gateway.max-attempts}") int maxAttempts,
+                         @Value("${stepik.gateway.backoff.base-ms}") long backoffBaseMs,
+                         @Value("${stepik.gateway.backoff.max-ms}") long backoffMaxMs,
+                         @Value("${stepik.gateway.retry-after.max-ms}") long retryAfterMaxMs) {
+        this.userContextBean = userContextBean;
+        this.bucket = new TokenBucket(ratePerSecond, burst);
+        this.maxConcurrentPerUser = maxConcurrentPerUser;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffBaseMs = backoffBaseMs;
+        this.backoffMaxMs = backoffMaxMs;
+        this.retryAfterMaxMs = retryAfterMaxMs;
+        this.meterRegistry = meterRegistry;
+        this.permitWait = Timer.builder("stepik.gateway.permit.wait")
+                .description("Time a Stepik request waited for the rate limiter and the per-user permit")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("stepik.gateway.rejected")
+                .description("Stepik requests that did not get a permit within acquire-timeout-ms")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        Long userId = userContextBean.getUserId();
+        Semaphore permits = userPermits.computeIfAbsent(userId != null ? userId : ANONYMOUS,
+                key -> new Semaphore(maxConcurrentPerUser, true));
+        boolean idempotent = IDEMPOTENT.contains(request.getMethod());
+
+        for (int attempt = 1; ; attempt++) {
+            acquire(permits, request);
+            ClientHttpResponse response;
+            try {
+                response = execution.execute(request, body);
+            } catch (IOException e) {
+                if (!idempotent || attempt >= maxAttempts) {
+                    throw e;
+                }
+                retried("io");
+                log.warn("Stepik {} {} failed (attempt {}/{}): {}", request.getMethod(), request.getURI().getPath(),
+                        attempt, maxAttempts, e.getMessage());
+                sleep(backoff(attempt));
+                continue;
+            } finally {
+                permits.release();
+            }
+
+            HttpStatusCode status = response.getStatusCode();
+            boolean throttled = status.value() == 429;
+            if (!throttled && !(idempotent && RETRYABLE_STATUSES.contains(status.value()))) {
+                return response;
+            }
+            Long retryAfterMs = retryAfterMs(response);
+            if (throttled) {
+                bucket.pause(retryAfterMs != null ? retryAfterMs : backoff(attempt));
+            }
+            if (attempt >= maxAttempts || (retryAfterMs != null && retryAfterMs > retryAfterMaxMs)) {
+                log.warn("Stepik {} {} gave up after {} attempt(s) with status {}", request.getMethod(),
+                        request.getURI().getPath(), attempt, status.value());
+                return response;
+            }
+            response.close();
+            retried(String.valueOf(status.value()));
+            long delayMs = retryAfterMs != null ? retryAfterMs : backoff(attempt);
+            log.warn("Stepik {} {} returned {} (attempt {}/{}), retrying in {} ms", request.getMethod(),
+                    request.getURI().getPath(), status.value(), attempt, maxAttempts, delayMs);
+            sleep(delayMs);
+        }
+    }
+
+    private void acquire(Semaphore permits, HttpRequest request) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new IOException("Stepik request " + request.getURI().getPath()
+                        + " did not get a permit within " + acquireTimeoutMs + " ms");
+            }
+            try {
+                bucket.take();
+            } catch (InterruptedException e) {
+                permits.release();
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Stepik permit");
+        } finally {
+            permitWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Полный jitter: случайная задержка от 0 до min(max, base * 2^(attempt-1)).
+     */
+    long backoff(int attempt) {
+        long cap = Math.min(backoffMaxMs, backoffBaseMs << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    static Long retryAfterMs(ClientHttpResponse response) {
+        String value = response.getHeaders().getFirst("Retry-After");
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private void retried(String reason) {
+        meterRegistry.counter("stepik.gateway.retries", "reason", reason).increment();
+    }
+
+    private static void sleep(long delayMs) throws InterruptedIOException {
+        try {
+            Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during Stepik retry backoff");
+        }
+    }
+
+    /**
+     * Token bucket с паузой: после 429 токены не выдаются до pausedUntil.
+     */
+    static final class TokenBucket {
+
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+        private long pausedUntil = refilledAt;
+
+        TokenBucket(double ratePerSecond, int burst) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, burst);
+            this.tokens = capacity;
+        }
+
+        void take() throws InterruptedException {
+            while (true) {
+                long waitNanos;
+                synchronized (this) {
+                    long now = System.nanoTime();
+                    if (now - pausedUntil < 0) {
+                        waitNanos = pausedUntil - now;
+                    } else {
+                        tokens = Math.min(capacity, tokens + (now - refilledAt) * ratePerNano);
+                        refilledAt = now;
+                        if (tokens >= 1) {
+                            tokens -= 1;
+                            return;
+                        }
+                        waitNanos = (long) Math.ceil((1 - tokens) / ratePerNano);
+                    }
+                }
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+
+        synchronized void pause(long delayMs) {
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+            if (until - pausedUntil > 0) {
+                pausedUntil = until;
+                tokens = 0;
+                refilledAt = until;
+            }
+        }
+    }
+}
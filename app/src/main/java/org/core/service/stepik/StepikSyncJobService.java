@@ -0,0 +1,450 @@
+package org.core.service.stepik;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.core.context.UserContextBean;
+import org.core.domain.Lesson;
+import org.core.domain.Section;
+import org.core.domain.Step;
+import org.core.domain.StepikSyncEntityType;
+import org.core.domain.StepikSyncJob;
+import org.core.domain.StepikSyncJobStatus;
+import org.core.domain.StepikSyncTask;
+import org.core.dto.CourseCaptchaChallenge;
+import org.core.dto.LessonCaptchaChallenge;
+import org.core.dto.stepik.sync.StepikSyncJobDTO;
+import org.core.repository.LessonRepository;
+import org.core.repository.SectionRepository;
+import org.core.repository.StepRepository;
+import org.core.service.stepik.StepikSyncPlanner.StepNode;
+import org.core.service.stepik.StepikSyncPlanner.StepWaves;
+import org.core.service.stepik.lesson.StepikLessonSyncService;
+import org.core.service.stepik.section.StepikSectionSyncService;
+import org.core.service.stepik.step.StepikStepSyncService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Фоновая отправка курса в Stepik через задания StepikSyncJob. Сам курс отправляется сразу в запросе (он может
+ * потребовать капчу), разделы, уроки и шаги становятся задачами в БД и выполняются в пуле stepikSyncJobExecutor
+ * в том же порядке, что и в StepikCascadeSyncService. Перед каждой задачей заново читается локальное состояние
+ * объекта, поэтому уже отправленный объект повторно не создаётся. Упавшая задача повторяется с экспоненциальной
+ * задержкой, задания, брошенные при рестарте, подхватываются по истечении аренды.
+ */
+@Service
+@Slf4j
+public class StepikSyncJobService {
+
+    private final ExecutorService stepikSyncJobExecutor;
+    private final ExecutorService virtualExecutor;
+
+    private final StepikSyncJobStore jobStore;
+    private final StepikSyncPlanner syncPlanner;
+    private final StepikCascadeSyncService cascadeSyncService;
+    private final StepikSectionSyncService sectionSyncService;
+    private final StepikLessonSyncService lessonSyncService;
+    private final StepikStepSyncService stepSyncService;
+    private final SectionRepository sectionRepository;
+    private final LessonRepository lessonRepository;
+    private final StepRepository stepRepository;
+    private final UserContextBean userContextBean;
+
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final long leaseMs;
+    private final int stepConcurrency;
+
+    private final Set<Long> localJobs = ConcurrentHashMap.newKeySet();
+
+    public StepikSyncJobService(@Qualifier("stepikSyncJobExecutor") ExecutorService stepikSyncJobExecutor,
+                                @Qualifier("virtualExecutor") ExecutorService virtualExecutor,
+                                StepikSyncJobStore jobStore,
+                                StepikSyncPlanner syncPlanner,
+                                StepikCascadeSyncService cascadeSyncService,
+                                StepikSectionSyncService sectionSyncService,
+                                StepikLessonSyncService lessonSyncService,
+                                StepikStepSyncService stepSyncService,
+                                SectionRepository sectionRepository,
+                                LessonRepository lessonRepository,
+                                StepRepository stepRepository,
+                                UserContextBean userContextBean,
+                                @Value("${stepik.sync.job.max-attempts}") int maxAttempts,
+                                @Value("${stepik.sync.job.backoff-ms}") long backoffMs,
+                                @Value("${stepik.sync.job.lease-ms}") long leaseMs,
+                                @Value("${stepik.sync.step-concurrency}") int stepConcurrency) {
+        this.stepikSyncJobExecutor = stepikSyncJobExecutor;
+        this.virtualExecutor = virtualExecutor;
+        this.jobStore = jobStore;
+        this.syncPlanner = syncPlanner;
+        this.cascadeSyncService = cascadeSyncService;
+        this.sectionSyncService = sectionSyncService;
+        this.lessonSyncService = lessonSyncService;
+        this.stepSyncService = stepSyncService;
+        this.sectionRepository = sectionRepository;
+        this.lessonRepository = lessonRepository;
+        this.stepRepository = stepRepository;
+        this.userContextBean = userContextBean;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = backoffMs;
+        this.leaseMs = leaseMs;
+        this.stepConcurrency = stepConcurrency;
+    }
+
+    /**
+     * Ставит задание на курс и отправляет сам курс. Если у курса уже есть активное задание, возвращается оно:
+     * задание заводится до запроса к Stepik, и уникальный индекс по активному курсу не пропускает второй
+     * одновременный запрос. Если курс не удалось отправить (в том числе нужна капча), задание удаляется.
+     * captchaToken нужен только для создания курса и уроков в этом запуске и в БД не сохраняется.
+     */
+    public StepikSyncJobDTO submit(Long userId, Long courseId, @Nullable String captchaToken) {
+        Optional<StepikSyncJob> active = jobStore.findActiveJob(courseId);
+        if (active.isPresent()) {
+            return activeJob(active.get());
+        }
+
+        StepikSyncJob job;
+        try {
+            job = jobStore.createJob(userId, courseId, syncPlanner.planCourse(courseId));
+        } catch (DataIntegrityViolationException e) {
+            return activeJob(jobStore.findActiveJob(courseId).orElseThrow(() -> e));
+        }
+
+        CourseCaptchaChallenge courseChallenge;
+        try {
+            courseChallenge = cascadeSyncService.syncCourse(courseId, captchaToken);
+        } catch (RuntimeException e) {
+            jobStore.discard(job.getId());
+            throw e;
+        }
+        if (courseChallenge.getSiteKey() != null) {
+            jobStore.discard(job.getId());
+            return StepikSyncJobDTO.builder()
+                    .courseId(courseId)
+                    .courseChallenge(courseChallenge)
+                    .build();
+        }
+
+        execute(job.getId(), captchaToken);
+        StepikSyncJobDTO dto = jobStore.toDto(job);
+        dto.setCourseChallenge(courseChallenge);
+        return dto;
+    }
+
+    public StepikSyncJobDTO getProgress(Long userId, Long jobId) {
+        return jobStore.toDto(jobStore.getOwnedJob(userId, jobId));
+    }
+
+    /**
+     * Повторяет упавшие задачи задания; выполненные задачи не трогаются. Выполняющееся задание не перезапускается.
+     * Если у курса уже есть другое активное задание, бросает IllegalStateException.
+     */
+    public StepikSyncJobDTO resume(Long userId, Long jobId, @Nullable String captchaToken) {
+        StepikSyncJob job = jobStore.getOwnedJob(userId, jobId);
+        if (job.getStatus() == StepikSyncJobStatus.FAILED) {
+            try {
+                jobStore.reopen(jobId);
+            } catch (DataIntegrityViolationException e) {
+                throw new IllegalStateException("Course " + job.getCourseId() + " already has an active Stepik sync job");
+            }
+        }
+        if (job.getStatus() != StepikSyncJobStatus.COMPLETED) {
+            execute(jobId, captchaToken);
+        }
+        return getProgress(userId, jobId);
+    }
+
+    private StepikSyncJobDTO activeJob(StepikSyncJob job) {
+        log.info("Course {} already has Stepik sync job {}", job.getCourseId(), job.getId());
+        return jobStore.toDto(job);
+    }
+
+    /**
+     * Подхватывает задания, которые никто не выполняет: оставшиеся в очереди после переполнения пула
+     * и RUNNING с истёкшей арендой (узел остановился посреди задания).
+     */
+    @Scheduled(fixedDelayString = "${stepik.sync.job.resume-interval-ms}")
+    public void resumeStaleJobs() {
+        for (Long jobId : jobStore.findStaleJobIds(leaseMs)) {
+            if (!localJobs.contains(jobId) && !execute(jobId, null)) {
+                return;
+            }
+        }
+    }
+
+    private boolean execute(Long jobId, @Nullable String captchaToken) {
+        if (!localJobs.add(jobId)) {
+            return true;
+        }
+        try {
+            stepikSyncJobExecutor.execute(() -> {
+                try {
+                    runJob(jobId, captchaToken);
+                } finally {
+                    localJobs.remove(jobId);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            localJobs.remove(jobId);
+            log.warn("Stepik sync job queue is full, job {} stays queued", jobId);
+            return false;
+        }
+    }
+
+    void runJob(Long jobId, @Nullable String captchaToken) {
+        if (!jobStore.claim(jobId, leaseMs)) {
+            log.debug("Stepik sync job {} is already taken", jobId);
+            return;
+        }
+        StepikSyncJob job = jobStore.getJob(jobId);
+        Long userId = job.getUserId();
+        userContextBean.setUserId(userId);
+        try {
+            Map<Long, List<StepikSyncTask>> bySection = jobStore.getPendingTasks(jobId).stream()
+                    .collect(Collectors.groupingBy(StepikSyncTask::getSectionId, LinkedHashMap::new, Collectors.toList()));
+            log.info("Running Stepik sync job {} for course {}: {} section(s) with pending tasks",
+                    jobId, job.getCourseId(), bySection.size());
+
+            List<CompletableFuture<Void>> sectionFutures = new ArrayList<>(bySection.size());
+            for (List<StepikSyncTask> sectionTasks : bySection.values()) {
+                sectionFutures.add(CompletableFuture.runAsync(
+                        asUser(userId, () -> runSection(sectionTasks, captchaToken, userId)), virtualExecutor));
+            }
+            CompletableFuture.allOf(sectionFutures.toArray(new CompletableFuture[0])).join();
+
+            StepikSyncJobStatus status = jobStore.finish(jobId);
+            log.info("Stepik sync job {} finished with status {}", jobId, status);
+        } catch (Exception e) {
+            log.error("Stepik sync job {} failed: {}", jobId, e.getMessage(), e);
+            jobStore.fail(jobId, e.getMessage());
+        } finally {
+            userContextBean.clear();
+        }
+    }
+
+    /**
+     * Раздел, затем его уроки по порядку; шаги урока уходят в фон сразу после урока.
+     * Если раздел или урок отправить не удалось, его потомки помечаются упавшими без попыток.
+     */
+    private void runSection(List<StepikSyncTask> tasks, @Nullable String captchaToken, Long userId) {
+        Map<Long, List<StepikSyncTask>> byLesson = new LinkedHashMap<>();
+        StepikSyncTask sectionTask = null;
+        for (StepikSyncTask task : tasks) {
+            if (task.getEntityType() == StepikSyncEntityType.SECTION) {
+                sectionTask = task;
+            } else {
+                byLesson.computeIfAbsent(task.getLessonId(), id -> new ArrayList<>()).add(task);
+            }
+        }
+        if (sectionTask != null && !runTask(sectionTask, this::syncSection)) {
+            failAll(byLesson.values().stream().flatMap(List::stream).toList(),
+                    "Section " + sectionTask.getEntityId() + " was not synced");
+            return;
+        }
+
+        List<CompletableFuture<Void>> stepFutures = new ArrayList<>();
+        try {
+            for (List<StepikSyncTask> lessonTasks : byLesson.values()) {
+                StepikSyncTask lessonTask = lessonTasks.getFirst().getEntityType() == StepikSyncEntityType.LESSON
+                        ? lessonTasks.getFirst() : null;
+                List<StepikSyncTask> stepTasks = lessonTask != null ? lessonTasks.subList(1, lessonTasks.size()) : lessonTasks;
+                if (lessonTask != null && !runTask(lessonTask, task -> syncLesson(task, captchaToken))) {
+                    failAll(stepTasks, "Lesson " + lessonTask.getEntityId() + " was not synced");
+                    continue;
+                }
+                if (!stepTasks.isEmpty()) {
+                    stepFutures.add(CompletableFuture.runAsync(asUser(userId, () -> runSteps(stepTasks, userId)), virtualExecutor));
+                }
+            }
+        } finally {
+            CompletableFuture.allOf(stepFutures.toArray(new CompletableFuture[0])).join();
+        }
+    }
+
+    /**
+     * Шаги урока по той же схеме, что и в каскадной синхронизации. Шаги, которые уже не требуют отправки
+     * (например, отправлены до рестарта), закрываются без запроса в Stepik.
+     */
+    private void runSteps(List<StepikSyncTask> tasks, Long userId) {
+        Long lessonId = tasks.getFirst().getLessonId();
+        Map<Long, StepNode> dirty = syncPlanner.planLessonSteps(lessonId).stream()
+                .collect(Collectors.toMap(StepNode::id, Function.identity()));
+
+        Map<Long, StepikSyncTask> updates = new LinkedHashMap<>();
+        for (StepikSyncTask task : tasks) {
+            StepNode step = dirty.get(task.getEntityId());
+            if (step == null) {
+                jobStore.markDone(task);
+            } else if (step.isNew()) {
+                runTask(task, this::syncStep);
+            } else {
+                updates.put(step.id(), task);
+            }
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        List<StepNode> updateNodes = updates.keySet().stream().map(dirty::get).toList();
+        StepWaves waves;
+        try {
+            waves = syncPlanner.splitByStepikPosition(updateNodes);
+        } catch (RuntimeException e) {
+            log.warn("Lesson {}: could not read step positions from Stepik, updating steps one by one: {}",
+                    lessonId, e.getMessage());
+            waves = new StepWaves(List.of(), updateNodes);
+        }
+
+        Semaphore permits = new Semaphore(stepConcurrency);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(waves.inPlace().size());
+        for (StepNode step : waves.inPlace()) {
+            permits.acquireUninterruptibly();
+            futures.add(CompletableFuture.runAsync(asUser(userId, () -> {
+                try {
+                    runTask(updates.get(step.id()), this::syncStep);
+                } finally {
+                    permits.release();
+                }
+            }), virtualExecutor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        for (StepNode step : waves.moved()) {
+            runTask(updates.get(step.id()), this::syncStep);
+        }
+    }
+
+    private void syncSection(StepikSyncTask task) {
+        Optional<Section> section = sectionRepository.findById(task.getEntityId());
+        if (section.isEmpty()) {
+            log.info("Section {} was deleted, nothing to sync", task.getEntityId());
+        } else if (section.get().getStepikSectionId() == null) {
+            sectionSyncService.syncSectionWithStepik(task.getEntityId());
+        } else if (section.get().isNeedsStepikSync()) {
+            sectionSyncService.updateSectionInStepik(task.getEntityId());
+        }
+    }
+
+    private void syncLesson(StepikSyncTask task, @Nullable String captchaToken) {
+        Optional<Lesson> lesson = lessonRepository.findById(task.getEntityId());
+        if (lesson.isEmpty()) {
+            log.info("Lesson {} was deleted, nothing to sync", task.getEntityId());
+        } else if (lesson.get().getStepikLessonId() == null) {
+            LessonCaptchaChallenge challenge = lessonSyncService.syncLessonWithStepik(task.getEntityId(), captchaToken);
+            if (challenge.getSiteKey() != null) {
+                throw new CaptchaRequiredException("Lesson " + task.getEntityId() + " requires captcha, resume the job with a captcha token");
+            }
+        } else if (lesson.get().isNeedsStepikSync()) {
+            lessonSyncService.updateLessonInStepik(task.getEntityId());
+        }
+    }
+
+    /**
+     * Шаг перечитывается в каждой попытке: если прошлая попытка успела создать шаг в Stepik и сохранить его id,
+     * повторный POST не отправляется.
+     */
+    private void syncStep(StepikSyncTask task) {
+        Optional<Step> step = stepRepository.findById(task.getEntityId());
+        if (step.isEmpty()) {
+            log.info("Step {} was deleted, nothing to sync", task.getEntityId());
+        } else if (step.get().getStepikStepId() == null) {
+            stepSyncService.syncStepWithStepik(task.getEntityId());
+        } else if (step.get().isNeedsStepikSync()) {
+            stepSyncService.updateStepInStepik(task.getEntityId());
+        }
+    }
+
+    /**
+     * Выполняет задачу с повторами: до stepik.sync.job.max-attempts попыток, задержка backoff-ms * 2^(attempt-1).
+     * Не повторяются запрос капчи и ответы Stepik 4xx (кроме 429, его уже повторял StepikGateway):
+     * такой запрос упадёт так же. Возвращает true, если задача выполнена.
+     */
+    private boolean runTask(StepikSyncTask task, TaskAction action) {
+        for (int attempt = 1; ; attempt++) {
+            jobStore.startAttempt(task);
+            try {
+                action.run(task);
+                jobStore.markDone(task);
+                return true;
+            } catch (CaptchaRequiredException e) {
+                log.warn("Stepik sync task {} needs captcha", task.getIdempotencyKey());
+                jobStore.markFailed(task, e.getMessage());
+                return false;
+            } catch (RuntimeException e) {
+                if (isClientError(e)) {
+                    log.warn("Stepik sync task {} rejected by Stepik: {}", task.getIdempotencyKey(), e.getMessage());
+                    jobStore.markFailed(task, e.getMessage());
+                    return false;
+                }
+                if (attempt >= maxAttempts) {
+                    log.error("Stepik sync task {} failed after {} attempt(s): {}", task.getIdempotencyKey(), attempt, e.getMessage());
+                    jobStore.markFailed(task, e.getMessage());
+                    return false;
+                }
+                long delayMs = backoffMs << Math.min(attempt - 1, 20);
+                log.warn("Stepik sync task {} failed (attempt {}/{}), retrying in {} ms: {}",
+                        task.getIdempotencyKey(), attempt, maxAttempts, delayMs, e.getMessage());
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    jobStore.markFailed(task, "Interrupted");
+                    return false;
+                }
+            }
+        }
+    }
+
+    static boolean isClientError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpClientErrorException clientError) {
+                return clientError.getStatusCode().value() != 429;
+            }
+        }
+        return false;
+    }
+
+    private void failAll(List<StepikSyncTask> tasks, String reason) {
+        tasks.forEach(task -> jobStore.markFailed(task, reason));
+    }
+
+    private Runnable asUser(Long userId, Runnable action) {
+        return () -> {
+            userContextBean.setUserId(userId);
+            try {
+                action.run();
+            } finally {
+                userContextBean.clear();
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface TaskAction {
+        void run(StepikSyncTask task);
+    }
+
+    private static final class CaptchaRequiredException extends RuntimeException {
+        CaptchaRequiredException(String message) {
+            super(message);
+        }
+    }
+}
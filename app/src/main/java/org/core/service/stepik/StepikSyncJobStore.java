@@ -0,0 +1,211 @@
+package org.core.service.stepik;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.core.domain.StepikSyncEntityType;
+import org.core.domain.StepikSyncJob;
+import org.core.domain.StepikSyncJobStatus;
+import org.core.domain.StepikSyncTask;
+import org.core.domain.StepikSyncTaskStatus;
+import org.core.dto.stepik.sync.StepikSyncJobDTO;
+import org.core.exception.exceptions.ResourceAccessDeniedException;
+import org.core.repository.StepikSyncJobRepository;
+import org.core.repository.StepikSyncTaskRepository;
+import org.core.service.stepik.StepikSyncPlanner.LessonNode;
+import org.core.service.stepik.StepikSyncPlanner.SectionNode;
+import org.core.service.stepik.StepikSyncPlanner.StepNode;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Хранение заданий фоновой отправки курса в Stepik и их задач: создание по плану StepikSyncPlanner,
+ * захват задания исполнителем, учёт попыток и итог задания.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional
+public class StepikSyncJobStore {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final StepikSyncJobRepository jobRepository;
+    private final StepikSyncTaskRepository taskRepository;
+
+    /**
+     * Задачи заводятся в порядке дерева курса: раздел, затем по каждому уроку — урок и его шаги.
+     * Раздел и урок попадают в план только если их самих надо отправить.
+     * Если у курса уже есть активное задание, бросает DataIntegrityViolationException (uk_stepik_sync_job_active_course).
+     */
+    public StepikSyncJob createJob(Long userId, Long courseId, List<SectionNode> plan) {
+        StepikSyncJob job = jobRepository.save(StepikSyncJob.builder()
+                .userId(userId)
+                .courseId(courseId)
+                .activeCourseId(courseId)
+                .status(StepikSyncJobStatus.QUEUED)
+                .totalTasks(0)
+                .build());
+
+        List<StepikSyncTask> tasks = new ArrayList<>();
+        for (SectionNode section : plan) {
+            if (section.stepikSectionId() == null || section.dirty()) {
+                tasks.add(task(job.getId(), StepikSyncEntityType.SECTION, section.id(), section.id(), null, tasks.size()));
+            }
+            for (LessonNode lesson : section.lessons()) {
+                if (lesson.stepikLessonId() == null || lesson.dirty()) {
+                    tasks.add(task(job.getId(), StepikSyncEntityType.LESSON, lesson.id(), section.id(), lesson.id(), tasks.size()));
+                }
+                for (StepNode step : lesson.steps()) {
+                    tasks.add(task(job.getId(), StepikSyncEntityType.STEP, step.id(), section.id(), lesson.id(), tasks.size()));
+                }
+            }
+        }
+        taskRepository.saveAll(tasks);
+        job.setTotalTasks(tasks.size());
+        log.info("Created Stepik sync job {} for course {} with {} task(s)", job.getId(), courseId, tasks.size());
+        return job;
+    }
+
+    public boolean claim(Long jobId, long leaseMs) {
+        LocalDateTime now = LocalDateTime.now();
+        return jobRepository.claim(jobId, now, now.minusNanos(leaseMs * 1_000_000)) > 0;
+    }
+
+    public StepikSyncJob getJob(Long jobId) {
+        return jobRepository.findById(jobId)
+                .orElseThrow(() -> new IllegalArgumentException("Stepik sync job " + jobId + " not found"));
+    }
+
+    public StepikSyncJob getOwnedJob(Long userId, Long jobId) {
+        StepikSyncJob job = getJob(jobId);
+        if (!job.getUserId().equals(userId)) {
+            throw new ResourceAccessDeniedException("Stepik sync job does not belong to user");
+        }
+        return job;
+    }
+
+    public Optional<StepikSyncJob> findActiveJob(Long courseId) {
+        return jobRepository.findByActiveCourseId(courseId);
+    }
+
+    public List<Long> findStaleJobIds(long leaseMs) {
+        return jobRepository.findStaleIds(LocalDateTime.now().minusNanos(leaseMs * 1_000_000));
+    }
+
+    public List<StepikSyncTask> getPendingTasks(Long jobId) {
+        return taskRepository.findByJobIdAndStatusOrderBySeq(jobId, StepikSyncTaskStatus.PENDING);
+    }
+
+    /**
+     * Попытка задачи продлевает аренду задания.
+     */
+    public void startAttempt(StepikSyncTask task) {
+        task.setAttempts(task.getAttempts() + 1);
+        taskRepository.save(task);
+        jobRepository.heartbeat(task.getJobId(), LocalDateTime.now());
+    }
+
+    public void markDone(StepikSyncTask task) {
+        task.setStatus(StepikSyncTaskStatus.DONE);
+        task.setLastError(null);
+        taskRepository.save(task);
+    }
+
+    public void markFailed(StepikSyncTask task, String error) {
+        task.setStatus(StepikSyncTaskStatus.FAILED);
+        task.setLastError(truncate(error));
+        taskRepository.save(task);
+    }
+
+    /**
+     * COMPLETED, если все задачи выполнены, иначе FAILED — такое задание можно продолжить через reopen.
+     */
+    public StepikSyncJobStatus finish(Long jobId) {
+        StepikSyncJob job = getJob(jobId);
+        long failed = taskRepository.countByJobIdAndStatus(jobId, StepikSyncTaskStatus.FAILED);
+        long pending = taskRepository.countByJobIdAndStatus(jobId, StepikSyncTaskStatus.PENDING);
+        if (failed == 0 && pending == 0) {
+            job.setStatus(StepikSyncJobStatus.COMPLETED);
+            job.setErrorMessage(null);
+        } else {
+            job.setStatus(StepikSyncJobStatus.FAILED);
+            job.setErrorMessage(failed + " task(s) failed, " + pending + " not started");
+        }
+        job.setActiveCourseId(null);
+        job.setCompletedAt(LocalDateTime.now());
+        return job.getStatus();
+    }
+
+    public void fail(Long jobId, String error) {
+        StepikSyncJob job = getJob(jobId);
+        job.setStatus(StepikSyncJobStatus.FAILED);
+        job.setErrorMessage(truncate(error));
+        job.setActiveCourseId(null);
+        job.setCompletedAt(LocalDateTime.now());
+    }
+
+    /**
+     * Удаляет задание, которое так и не было запущено (курс не удалось отправить), задачи удаляются каскадом.
+     */
+    public void discard(Long jobId) {
+        jobRepository.deleteById(jobId);
+    }
+
+    /**
+     * Возвращает упавшие задачи в очередь, выполненные не повторяются. Если у курса уже есть другое активное задание,
+     * бросает DataIntegrityViolationException.
+     */
+    public void reopen(Long jobId) {
+        StepikSyncJob job = getJob(jobId);
+        LocalDateTime now = LocalDateTime.now();
+        job.setStatus(StepikSyncJobStatus.QUEUED);
+        job.setActiveCourseId(job.getCourseId());
+        job.setErrorMessage(null);
+        job.setCompletedAt(null);
+        job.setHeartbeatAt(now);
+        jobRepository.saveAndFlush(job);
+        int reopened = taskRepository.reopenFailed(jobId, now);
+        log.info("Reopened Stepik sync job {} with {} failed task(s)", jobId, reopened);
+    }
+
+    public StepikSyncJobDTO toDto(StepikSyncJob job) {
+        return StepikSyncJobDTO.builder()
+                .id(job.getId())
+                .courseId(job.getCourseId())
+                .status(job.getStatus().name())
+                .totalTasks(job.getTotalTasks())
+                .completedTasks(taskRepository.countByJobIdAndStatus(job.getId(), StepikSyncTaskStatus.DONE))
+                .failedTasks(taskRepository.countByJobIdAndStatus(job.getId(), StepikSyncTaskStatus.FAILED))
+                .pendingTasks(taskRepository.countByJobIdAndStatus(job.getId(), StepikSyncTaskStatus.PENDING))
+                .errorMessage(job.getErrorMessage())
+                .createdAt(job.getCreatedAt())
+                .completedAt(job.getCompletedAt())
+                .build();
+    }
+
+    private static StepikSyncTask task(Long jobId, StepikSyncEntityType type, Long entityId,
+                                       Long sectionId, Long lessonId, int seq) {
+        return StepikSyncTask.builder()
+                .jobId(jobId)
+                .entityType(type)
+                .entityId(entityId)
+                .sectionId(sectionId)
+                .lessonId(lessonId)
+                .seq(seq)
+                .status(StepikSyncTaskStatus.PENDING)
+                .idempotencyKey(StepikSyncTask.idempotencyKey(type, entityId))
+                .build();
+    }
+
+    private static String truncate(String error) {
+        if (error == null) {
+            return null;
+        }
+        return error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH);
+    }
+}
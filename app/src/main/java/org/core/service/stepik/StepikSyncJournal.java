@@ -0,0 +1,63 @@
+package org.core.service.stepik;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.core.domain.Lesson;
+import org.core.domain.Section;
+import org.core.domain.Step;
+import org.core.domain.StepikSyncEntityType;
+import org.core.repository.StepikSyncJournalRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+
+/**
+ * Журнал изменений для отправки в Stepik. CRUD-сервисы вызывают track после сохранения раздела, урока или шага:
+ * объект без stepikId или с needsStepikSync попадает в журнал, синхронизированный — удаляется из него.
+ * StepikSyncPlanner строит план синхронизации курса только по записям журнала.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional
+public class StepikSyncJournal {
+
+    private final StepikSyncJournalRepository journalRepository;
+
+    public void track(Section section) {
+        track(StepikSyncEntityType.SECTION, section.getId(), section.getCourse().getId(),
+                section.getStepikSectionId() == null || section.isNeedsStepikSync());
+    }
+
+    public void track(Lesson lesson) {
+        track(StepikSyncEntityType.LESSON, lesson.getId(), lesson.getSection().getCourse().getId(),
+                lesson.getStepikLessonId() == null || lesson.isNeedsStepikSync());
+    }
+
+    public void track(Step step) {
+        track(StepikSyncEntityType.STEP, step.getId(), step.getLesson().getSection().getCourse().getId(),
+                step.getStepikStepId() == null || step.isNeedsStepikSync());
+    }
+
+    /**
+     * Урок, у которого stepikLessonId обнулён массовым UPDATE, — сущность в памяти об этом не знает.
+     */
+    public void trackUnsynced(Lesson lesson) {
+        track(StepikSyncEntityType.LESSON, lesson.getId(), lesson.getSection().getCourse().getId(), true);
+    }
+
+    public void remove(Collection<Long> entryIds) {
+        if (!entryIds.isEmpty()) {
+            journalRepository.deleteByIdIn(entryIds);
+        }
+    }
+
+    private void track(StepikSyncEntityType type, Long entityId, Long courseId, boolean dirty) {
+        if (!dirty) {
+            journalRepository.deleteByEntity(type, entityId);
+        } else if (journalRepository.upsert(courseId, type.name(), entityId) == 1) {
+            log.debug("Journaled {} {} of course {} for Stepik sync", type, entityId, courseId);
+        }
+    }
+}
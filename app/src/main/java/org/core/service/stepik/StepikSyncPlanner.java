@@ -0,0 +1,192 @@
+package org.core.service.stepik;
+
+import jakarta.annotation.Nullable;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.core.domain.Lesson;
+import org.core.domain.Section;
+import org.core.domain.StepikSyncEntityType;
+import org.core.domain.StepikSyncJournalEntry;
+import org.core.dto.stepik.step.StepikStepSourceResponseData;
+import org.core.dto.stepik.sync.StepikSyncRow;
+import org.core.repository.LessonRepository;
+import org.core.repository.SectionRepository;
+import org.core.repository.StepRepository;
+import org.core.repository.StepikSyncJournalRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Строит дерево объектов, которые надо отправить в Stepik, по журналу изменений курса (StepikSyncJournal):
+ * читаются только объекты из журнала и их предки, а не всё дерево курса.
+ * Записи журнала, чьи объекты уже синхронизированы или удалены, при планировании курса удаляются.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StepikSyncPlanner {
+
+    private static final Comparator<StepikSyncRow> TREE_ORDER = Comparator
+            .comparing(StepikSyncRow::sectionPosition, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(StepikSyncRow::sectionId)
+            .thenComparing(StepikSyncRow::lessonPosition, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(StepikSyncRow::stepPosition, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final StepikSyncJournalRepository journalRepository;
+    private final StepikSyncJournal stepikSyncJournal;
+    private final SectionRepository sectionRepository;
+    private final LessonRepository lessonRepository;
+    private final StepRepository stepRepository;
+    private final StepikBulkFetcher stepikBulkFetcher;
+
+    public List<SectionNode> planCourse(Long courseId) {
+        return plan(courseId, null);
+    }
+
+    public List<SectionNode> planSection(Long courseId, Long sectionId) {
+        return plan(courseId, sectionId);
+    }
+
+    public List<StepNode> planLessonSteps(Long lessonId) {
+        return stepRepository.findStepikDirtyByLessonId(lessonId).stream()
+                .map(step -> new StepNode(step.getId(), step.getStepikStepId(), step.getPosition()))
+                .toList();
+    }
+
+    /**
+     * Делит изменённые (уже существующие в Stepik) шаги урока одним запросом ids[]: шаги, чья позиция в Stepik
+     * совпадает с локальной, можно обновлять параллельно; остальным нужен сдвиг позиций, их обновляют по одному.
+     */
+    public StepWaves splitByStepikPosition(List<StepNode> updates) {
+        if (updates.isEmpty()) {
+            return new StepWaves(List.of(), List.of());
+        }
+        Map<Long, StepikStepSourceResponseData> remote = stepikBulkFetcher.getStepSources(
+                updates.stream().map(StepNode::stepikStepId).toList());
+        List<StepNode> inPlace = new ArrayList<>();
+        List<StepNode> moved = new ArrayList<>();
+        for (StepNode step : updates) {
+            StepikStepSourceResponseData data = remote.get(step.stepikStepId());
+            if (data != null && Objects.equals(data.getPosition(), step.position())) {
+                inPlace.add(step);
+            } else {
+                moved.add(step);
+            }
+        }
+        return new StepWaves(inPlace, moved);
+    }
+
+    private List<SectionNode> plan(Long courseId, @Nullable Long sectionId) {
+        List<StepikSyncJournalEntry> entries = journalRepository.findByCourseId(courseId);
+        Map<StepikSyncEntityType, Set<Long>> ids = new EnumMap<>(StepikSyncEntityType.class);
+        for (StepikSyncEntityType type : StepikSyncEntityType.values()) {
+            ids.put(type, new HashSet<>());
+        }
+        entries.forEach(entry -> ids.get(entry.getEntityType()).add(entry.getEntityId()));
+
+        List<StepikSyncRow> rows = new ArrayList<>();
+        if (!ids.get(StepikSyncEntityType.SECTION).isEmpty()) {
+            sectionRepository.findAllById(ids.get(StepikSyncEntityType.SECTION))
+                    .forEach(section -> rows.add(row(section, null)));
+        }
+        if (!ids.get(StepikSyncEntityType.LESSON).isEmpty()) {
+            lessonRepository.findWithSectionByIdIn(ids.get(StepikSyncEntityType.LESSON))
+                    .forEach(lesson -> rows.add(row(lesson.getSection(), lesson)));
+        }
+        if (!ids.get(StepikSyncEntityType.STEP).isEmpty()) {
+            rows.addAll(stepRepository.findStepikSyncRowsByIdIn(ids.get(StepikSyncEntityType.STEP)));
+        }
+        if (sectionId != null) {
+            rows.removeIf(row -> !sectionId.equals(row.sectionId()));
+        }
+
+        List<SectionNode> plan = build(rows);
+        if (sectionId == null) {
+            purgeStale(entries, plan);
+        }
+        log.info("Stepik sync plan for course {}: {} journal entries, {} section(s) to visit", courseId, entries.size(), plan.size());
+        return plan;
+    }
+
+    private void purgeStale(List<StepikSyncJournalEntry> entries, List<SectionNode> plan) {
+        Map<StepikSyncEntityType, Set<Long>> dirty = new EnumMap<>(StepikSyncEntityType.class);
+        for (StepikSyncEntityType type : StepikSyncEntityType.values()) {
+            dirty.put(type, new HashSet<>());
+        }
+        for (SectionNode section : plan) {
+            if (section.dirty()) {
+                dirty.get(StepikSyncEntityType.SECTION).add(section.id());
+            }
+            for (LessonNode lesson : section.lessons()) {
+                if (lesson.dirty()) {
+                    dirty.get(StepikSyncEntityType.LESSON).add(lesson.id());
+                }
+                lesson.steps().forEach(step -> dirty.get(StepikSyncEntityType.STEP).add(step.id()));
+            }
+        }
+        List<Long> stale = entries.stream()
+                .filter(entry -> !dirty.get(entry.getEntityType()).remove(entry.getEntityId()))
+                .map(StepikSyncJournalEntry::getId)
+                .toList();
+        stepikSyncJournal.remove(stale);
+    }
+
+    private static StepikSyncRow row(Section section, @Nullable Lesson lesson) {
+        return new StepikSyncRow(section.getId(), section.getStepikSectionId(), section.isNeedsStepikSync(), section.getPosition(),
+                lesson != null ? lesson.getId() : null,
+                lesson != null ? lesson.getStepikLessonId() : null,
+                lesson != null ? lesson.isNeedsStepikSync() : null,
+                lesson != null ? lesson.getPosition() : null,
+                null, null, null, null);
+    }
+
+    static List<SectionNode> build(List<StepikSyncRow> rows) {
+        Map<Long, SectionNode> sections = new LinkedHashMap<>();
+        Map<Long, LessonNode> lessons = new LinkedHashMap<>();
+        for (StepikSyncRow row : rows.stream().sorted(TREE_ORDER).toList()) {
+            SectionNode section = sections.computeIfAbsent(row.sectionId(), id -> new SectionNode(id,
+                    row.stepikSectionId(), row.stepikSectionId() == null || Boolean.TRUE.equals(row.sectionNeedsSync()), new ArrayList<>()));
+            if (row.lessonId() == null) {
+                continue;
+            }
+            LessonNode lesson = lessons.computeIfAbsent(row.lessonId(), id -> {
+                LessonNode node = new LessonNode(id, row.stepikLessonId(),
+                        row.stepikLessonId() == null || Boolean.TRUE.equals(row.lessonNeedsSync()), new ArrayList<>());
+                section.lessons().add(node);
+                return node;
+            });
+            if (row.stepId() != null && (row.stepikStepId() == null || Boolean.TRUE.equals(row.stepNeedsSync()))) {
+                lesson.steps().add(new StepNode(row.stepId(), row.stepikStepId(), row.stepPosition()));
+            }
+        }
+        sections.values().forEach(section -> section.lessons().removeIf(lesson -> !lesson.dirty() && lesson.steps().isEmpty()));
+        return sections.values().stream()
+                .filter(section -> section.dirty() || !section.lessons().isEmpty())
+                .toList();
+    }
+
+    public record SectionNode(Long id, Long stepikSectionId, boolean dirty, List<LessonNode> lessons) {
+    }
+
+    public record LessonNode(Long id, Long stepikLessonId, boolean dirty, List<StepNode> steps) {
+    }
+
+    public record StepNode(Long id, Long stepikStepId, Integer position) {
+
+        public boolean isNew() {
+            return stepikStepId == null;
+        }
+    }
+
+    public record StepWaves(List<StepNode> inPlace, List<StepNode> moved) {
+    }
+}
@@ -1,6 +1,5 @@
 package org.core.service.stepik.course.getCourseFromStepik;
 
-import jakarta.annotation.Resource;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.core.context.UserContextBean;
@@ -17,11 +16,8 @@ import org.core.dto.stepik.unit.StepikUnitResponseData;
 import org.core.repository.LessonRepository;
 import org.core.repository.SectionRepository;
 import org.core.repository.StepRepository;
-import org.core.service.stepik.lesson.StepikLessonService;
-import org.core.service.stepik.lesson.StepikUnitLessonFetcher;
+import org.core.service.stepik.StepikBulkFetcher;
 import org.core.service.stepik.section.StepikSectionService;
-import org.core.service.stepik.step.StepikStepService;
-import org.core.service.stepik.unit.StepikUnitService;
 import org.core.util.converterToDTO.ConverterStepikLessonResponseDataToLessonResponseDTO;
 import org.core.util.converterToDTO.ConverterStepikSectionResponseDataToModelResponseDTO;
 import org.core.util.converterToDTO.ConverterStepikStepSourceResponseDataToStepResponseDTO;
@@ -29,24 +25,21 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Загрузка курса из Stepik по уровням: на каждый уровень (разделы, юниты, уроки, шаги) — несколько
+ * запросов {@code ids[]} через StepikBulkFetcher вместо запроса на каждый объект.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class FullCourseDataService {
 
-    @Resource(name = "virtualExecutor")
-    private final ExecutorService virtualExecutor;
-
     private final StepikSectionService stepikSectionService;
-    private final StepikLessonService stepikLessonService;
-    private final StepikUnitService stepikUnitService;
-    private final StepikStepService stepikStepService;
-
-    private final StepikUnitLessonFetcher stepikUnitLessonFetcher;
+    private final StepikBulkFetcher stepikBulkFetcher;
 
     private final ConverterStepikSectionResponseDataToModelResponseDTO sectionConverter;
     private final ConverterStepikLessonResponseDataToLessonResponseDTO lessonConverter;
@@ -57,118 +50,109 @@ public class FullCourseDataService {
     private final StepRepository stepRepository;
     private final UserContextBean userContextBean;
 
-    public List<SectionResponseDTO> getSectionsResponseDTO(Long stepikCourseId, Long userId){
-        List<Long> sectionsIds = stepikSectionService.getCourseSectionIds(stepikCourseId);
-
-        List<CompletableFuture<SectionResponseDTO>> modelResponseDTOS = sectionsIds.stream()
-                .map(id -> CompletableFuture.supplyAsync(() -> {
-                    try {
-                        userContextBean.setUserId(userId);
-                        StepikSectionResponseData stepikSectionResponseData = stepikSectionService.getSectionByStepikId(id);
-
-                        Section existingSection = sectionRepository.findByStepikSectionId(id);
-                        Long localSectionId = existingSection != null ? existingSection.getId() : null;
-                        return sectionConverter.convert(stepikSectionResponseData, localSectionId);
-                    } catch (Exception e) {
-                        log.error("Failed to load section {}: {}", id, e.getMessage(), e);
-                        return null;
-                    } finally {
-                        userContextBean.clear();
-                    }
-                },virtualExecutor)).toList();
-        return modelResponseDTOS.stream()
-                .map(CompletableFuture::join)
-                .filter(Objects::nonNull)
-                .toList();
+    public List<SectionResponseDTO> getSectionsResponseDTO(Long stepikCourseId, Long userId) {
+        return asUser(userId, () -> {
+            List<Long> sectionIds = stepikSectionService.getCourseSectionIds(stepikCourseId);
+            Map<Long, StepikSectionResponseData> sections = stepikBulkFetcher.getSections(sectionIds);
+            Map<Long, Long> localIds = sectionRepository.findByStepikSectionIdIn(sectionIds).stream()
+                    .collect(Collectors.toMap(Section::getStepikSectionId, Section::getId, (a, b) -> a));
+
+            List<SectionResponseDTO> result = new ArrayList<>(sectionIds.size());
+            for (Long id : sectionIds) {
+                StepikSectionResponseData data = sections.get(id);
+                if (data == null) {
+                    log.error("Failed to load section {}: not returned by Stepik", id);
+                    continue;
+                }
+                result.add(sectionConverter.convert(data, localIds.get(id)));
+            }
+            return result;
+        });
     }
 
-    public List<LessonResponseDTO> getLessonsResponseDTO(List<SectionResponseDTO> sectionResponseDTOS, Long userId){
-        List<CompletableFuture<List<LessonResponseDTO>>> lessonsResponseDTOS = sectionResponseDTOS.stream()
-                .map(section -> CompletableFuture.<List<LessonResponseDTO>>supplyAsync(() -> {
-                    try {
-                        userContextBean.setUserId(userId);
-                        List<Long> unitIds = stepikUnitLessonFetcher.getSectionUnitIds(section.getStepikSectionId());
-                        return unitIds.stream()
-                                .map(id -> CompletableFuture.supplyAsync(() -> {
-                                    try {
-                                        // Устанавливаем userId в ThreadLocal для вложенного потока
-                                        userContextBean.setUserId(userId);
-                                        Long stepikLessonId = stepikUnitLessonFetcher.getLessonIdByUnitID(id);
-                                        StepikLessonResponseData stepikLessonResponseData = stepikLessonService.getLessonByStepikId(stepikLessonId);
-
-                                        StepikUnitResponseData unit = stepikUnitService.getUnitByLessonId(stepikLessonResponseData.getId());
-                                        Integer position = unit.getPosition();
-
-                                        Lesson existingLesson = lessonRepository.findByStepikLessonId(stepikLessonId);
-                                        Long localLessonId = existingLesson != null ? existingLesson.getId() : null;
-                                        return lessonConverter.convert(stepikLessonResponseData, localLessonId, section.getId(), section.getStepikSectionId(), position);
-                                    } catch (Exception e) {
-                                        log.error("Failed to load lesson from unit {}: {}", id, e.getMessage(), e);
-                                        return null;
-                                    } finally {
-                                        userContextBean.clear();
-                                    }
-                                }, virtualExecutor))
-                                .map(CompletableFuture::join)
-                                .filter(Objects::nonNull)
-                                .toList();
-                    } catch (Exception e) {
-                        log.error("Failed to load lessons for section {}: {}", section.getStepikSectionId(), e.getMessage(), e);
-                        return new ArrayList<>();
-                    } finally {
-                        userContextBean.clear();
+    public List<LessonResponseDTO> getLessonsResponseDTO(List<SectionResponseDTO> sectionResponseDTOS, Long userId) {
+        return asUser(userId, () -> {
+            Map<Long, StepikSectionResponseData> sections = stepikBulkFetcher.getSections(sectionResponseDTOS.stream()
+                    .map(SectionResponseDTO::getStepikSectionId)
+                    .toList());
+            List<Long> unitIds = sections.values().stream()
+                    .filter(section -> section.getUnits() != null)
+                    .flatMap(section -> section.getUnits().stream())
+                    .toList();
+            Map<Long, StepikUnitResponseData> units = stepikBulkFetcher.getUnits(unitIds);
+            List<Long> lessonIds = units.values().stream()
+                    .map(StepikUnitResponseData::getLesson)
+                    .toList();
+            Map<Long, StepikLessonResponseData> lessons = stepikBulkFetcher.getLessons(lessonIds);
+            Map<Long, Long> localIds = lessonRepository.findByStepikLessonIdIn(lessonIds).stream()
+                    .collect(Collectors.toMap(Lesson::getStepikLessonId, Lesson::getId, (a, b) -> a));
+
+            List<LessonResponseDTO> result = new ArrayList<>(lessonIds.size());
+            for (SectionResponseDTO section : sectionResponseDTOS) {
+                StepikSectionResponseData sectionData = sections.get(section.getStepikSectionId());
+                if (sectionData == null || sectionData.getUnits() == null) {
+                    log.error("Failed to load lessons for section {}: not returned by Stepik", section.getStepikSectionId());
+                    continue;
+                }
+                for (Long unitId : sectionData.getUnits()) {
+                    StepikUnitResponseData unit = units.get(unitId);
+                    StepikLessonResponseData lesson = unit != null ? lessons.get(unit.getLesson()) : null;
+                    if (lesson == null) {
+                        log.error("Failed to load lesson from unit {}: not returned by Stepik", unitId);
+                        continue;
                     }
-                }, virtualExecutor))
-                .toList();
-        return lessonsResponseDTOS.stream()
-                .map(CompletableFuture::join)
-                .flatMap(List::stream)
-                .toList();
+                    result.add(lessonConverter.convert(lesson, localIds.get(lesson.getId()), section.getId(),
+                            section.getStepikSectionId(), unit.getPosition()));
+                }
+            }
+            return result;
+        });
     }
 
-    public List<StepResponseDTO> getStepResponseDTO(List<LessonResponseDTO> lessonsResponseDTOS, Long userId){
-        List<CompletableFuture<List<StepResponseDTO>>> stepResponseDTOS = lessonsResponseDTOS.stream()
-                .map(lesson -> CompletableFuture.<List<StepResponseDTO>>supplyAsync(() -> {
-                    try {
-                        userContextBean.setUserId(userId);
-                        List<Long> stepIds = stepikStepService.getLessonStepIdsFromStepik(lesson.getStepikLessonId());
-                        return stepIds.stream()
-                                .map(id -> CompletableFuture.supplyAsync(() -> {
-                                    try {
-                                        userContextBean.setUserId(userId);
-                                        StepikStepSourceResponseData stepSourceResponseData = stepikStepService.getStepikStepById(id);
-
-                                        Step existingStep = stepRepository.findByStepikStepId(id);
-                                        Long localStepId = existingStep != null ? existingStep.getId() : null;
-
-                                        StepResponseDTO stepDTO = stepConverter.convert(stepSourceResponseData, localStepId);
-                                        if (stepDTO != null) {
-                                            stepDTO.setLessonId(lesson.getStepikLessonId());
-                                            return stepDTO;
-                                        }
-                                        return null;
-                                    } catch (Exception e) {
-                                        log.error("Failed to load step {}: {}", id, e.getMessage(), e);
-                                        return null;
-                                    } finally {
-                                        userContextBean.clear();
-                                    }
-                                }, virtualExecutor))
-                                .map(CompletableFuture::join)
-                                .filter(Objects::nonNull)
-                                .toList();
-                    } catch (Exception e) {
-                        log.error("Failed to load steps for lesson {}: {}", lesson.getStepikLessonId(), e.getMessage(), e);
-                        return new ArrayList<StepResponseDTO>();
-                    } finally {
-                        userContextBean.clear();
+    public List<StepResponseDTO> getStepResponseDTO(List<LessonResponseDTO> lessonsResponseDTOS, Long userId) {
+        return asUser(userId, () -> {
+            Map<Long, StepikLessonResponseData> lessons = stepikBulkFetcher.getLessons(lessonsResponseDTOS.stream()
+                    .map(LessonResponseDTO::getStepikLessonId)
+                    .toList());
+            List<Long> stepIds = lessons.values().stream()
+                    .filter(lesson -> lesson.getSteps() != null)
+                    .flatMap(lesson -> lesson.getSteps().stream())
+                    .toList();
+            Map<Long, StepikStepSourceResponseData> steps = stepikBulkFetcher.getStepSources(stepIds);
+            Map<Long, Long> localIds = stepRepository.findByStepikStepIdIn(stepIds).stream()
+                    .collect(Collectors.toMap(Step::getStepikStepId, Step::getId, (a, b) -> a));
+
+            List<StepResponseDTO> result = new ArrayList<>(stepIds.size());
+            for (LessonResponseDTO lesson : lessonsResponseDTOS) {
+                StepikLessonResponseData lessonData = lessons.get(lesson.getStepikLessonId());
+                if (lessonData == null || lessonData.getSteps() == null) {
+                    log.error("Failed to load steps for lesson {}: not returned by Stepik", lesson.getStepikLessonId());
+                    continue;
+                }
+                for (Long stepId : lessonData.getSteps()) {
+                    StepikStepSourceResponseData data = steps.get(stepId);
+                    if (data == null) {
+                        log.error("Failed to load step {}: not returned by Stepik", stepId);
+                        continue;
+                    }
+                    StepResponseDTO stepDTO = stepConverter.convert(data, localIds.get(stepId));
+                    if (stepDTO != null) {
+                        stepDTO.setLessonId(lesson.getStepikLessonId());
+                        result.add(stepDTO);
                     }
-                },virtualExecutor))
-                .toList();
-        return stepResponseDTOS.stream()
-                .map(CompletableFuture::join)
-                .flatMap(List::stream)
-                .toList();
+                }
+            }
+            return result;
+        });
     }
 
+    private <T> T asUser(Long userId, Supplier<T> action) {
+        Long previous = userContextBean.getUserId();
+        userContextBean.setUserId(userId);
+        try {
+            return action.get();
+        } finally {
+            userContextBean.setUserId(previous);
+        }
+    }
 }
@@ -75,7 +75,7 @@ public class StepikLessonService {
             } else throw new StepikLessonIntegrationException("Failed to create lesson in Stepik");
         } catch (Exception e) {
             log.error("Error creating lesson in Stepik for lesson ID: {}: {}", lesson.getId(), e.getMessage());
-            throw new StepikLessonIntegrationException("Failed to create lesson in Stepik: " + e.getMessage());
+            throw new StepikLessonIntegrationException("Failed to create lesson in Stepik: " + e.getMessage(), e);
         }
     }
 
@@ -108,7 +108,7 @@ public class StepikLessonService {
             }
         } catch (Exception e) {
             log.error("Error updating lesson in Stepik with stepikLessonId: {}: {}", stepikLessonId, e.getMessage());
-            throw new StepikLessonIntegrationException("Failed to update lesson in Stepik: " + e.getMessage());
+            throw new StepikLessonIntegrationException("Failed to update lesson in Stepik: " + e.getMessage(), e);
         }
     }
 
@@ -78,7 +78,7 @@ public class StepikLessonSyncService {
             return result;
         } catch (StepikLessonIntegrationException e) {
             log.error("Error updating lesson in Stepik : {}", e.getMessage());
-            throw new StepikLessonIntegrationException("Failed to update lesson in Stepik: " + e.getMessage());
+            throw new StepikLessonIntegrationException("Failed to update lesson in Stepik: " + e.getMessage(), e);
         }
     }
 
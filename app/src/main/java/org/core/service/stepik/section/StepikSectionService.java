@@ -54,7 +54,7 @@ public class StepikSectionService {
             }
         } catch (Exception e) {
             log.error("Error creating section in Stepik: {}", e.getMessage());
-            throw new StepikSectionIntegrationException("Failed to create section in Stepik: " + e.getMessage());
+            throw new StepikSectionIntegrationException("Failed to create section in Stepik: " + e.getMessage(), e);
         }
     }
 
@@ -91,7 +91,7 @@ public class StepikSectionService {
             }
         } catch (Exception e) {
             log.error("Error updating section in Stepik: {}", e.getMessage(), e);
-            throw new StepikSectionIntegrationException("Failed to update section in Stepik: " + e.getMessage());
+            throw new StepikSectionIntegrationException("Failed to update section in Stepik: " + e.getMessage(), e);
         }
     }
 
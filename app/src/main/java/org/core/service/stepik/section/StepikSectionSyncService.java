@@ -90,7 +90,7 @@ public class StepikSectionSyncService {
             updateStepikSectionService.performStepikPositionShift(section,sectionDTO.getCourseId(),currentDbPosition);
         }catch (StepikSectionIntegrationException e){
             log.error("Error updating section in Stepik : {}", e.getMessage());
-            throw new StepikLessonIntegrationException("Failed to update section in Stepik: " + e.getMessage());
+            throw new StepikLessonIntegrationException("Failed to update section in Stepik: " + e.getMessage(), e);
         }
 
         sectionService.clearNeedsStepikSync(sectionId);
@@ -3,7 +3,6 @@ package org.core.service.stepik.step;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.core.domain.Step;
 import org.core.domain.StepType;
@@ -13,17 +12,33 @@ import org.core.dto.stepik.step.StepikBlockRequest;
 import org.core.exception.exceptions.StepNotFoundException;
 import org.core.repository.StepRepository;
 import org.core.service.agent.AgentService;
+import org.core.service.ai.LlmCaller;
 import org.core.service.crud.StepService;
+import org.core.service.stepik.StepikSyncJournal;
 import org.core.service.subscription.SubscriptionService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Смена типа шага в три этапа, чтобы соединение с БД не простаивало во время вызовов Stepik и LLM:
+ * короткое чтение шага, затем удаление шага в Stepik и генерация нового содержимого вне транзакции (параллельно),
+ * затем короткая транзакция записи с оптимистичной проверкой, что шаг не меняли за это время (по @Version).
+ * Сразу после удаления шага в Stepik у локального шага сбрасывается stepikStepId, чем бы ни закончилась смена типа.
+ */
 @Service
-@RequiredArgsConstructor
-@Transactional
 @Slf4j
 public class StepTypeChangeService {
 
+    private final ExecutorService virtualExecutor;
+
     private final ObjectMapper objectMapper;
 
     private final AgentService agentService;
@@ -31,6 +46,28 @@ public class StepTypeChangeService {
     private final StepService stepService;
     private final StepikStepService stepikStepService;
     private final SubscriptionService subscriptionService;
+    private final StepikSyncJournal stepikSyncJournal;
+    private final TransactionTemplate transactionTemplate;
+
+    public StepTypeChangeService(@Qualifier("virtualExecutor") ExecutorService virtualExecutor,
+                                 ObjectMapper objectMapper,
+                                 AgentService agentService,
+                                 StepRepository stepRepository,
+                                 StepService stepService,
+                                 StepikStepService stepikStepService,
+                                 SubscriptionService subscriptionService,
+                                 StepikSyncJournal stepikSyncJournal,
+                                 PlatformTransactionManager transactionManager) {
+        this.virtualExecutor = virtualExecutor;
+        this.objectMapper = objectMapper;
+        this.agentService = agentService;
+        this.stepRepository = stepRepository;
+        this.stepService = stepService;
+        this.stepikStepService = stepikStepService;
+        this.subscriptionService = subscriptionService;
+        this.stepikSyncJournal = stepikSyncJournal;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
 
     public StepResponseDTO changeStepType(Long stepId, StepType newType, String sessionId, Long userId) {
         subscriptionService.validateStepTypeChangeAllowed(userId);
@@ -42,16 +79,6 @@ public class StepTypeChangeService {
             return stepResponseDTO;
         }
 
-        Long stepikStepId = stepResponseDTO.getStepikStepId();
-        boolean isStepikStepIdExist = stepikStepId != null;
-        if (isStepikStepIdExist) {
-            stepikStepService.deleteStep(stepikStepId);
-
-            Step step = getStepByStepId(stepId);
-            step.setStepikStepId(null);
-            stepRepository.save(step);
-        }
-
         String content = getContentForNewStep(stepResponseDTO);
         if (content == null || content.trim().isEmpty()) {
             log.error("Content is null or empty for stepId: {}", stepId);
@@ -59,12 +86,35 @@ public class StepTypeChangeService {
         }
         String correctStepType = convertStepTypeToBlockName(newType);
 
+        // submit, а не CompletableFuture: cancel(true) должен прерывать поток с вызовом LLM.
+        // LlmCaller хранится в ThreadLocal, в поток генерации его переносим явно
+        LlmCaller caller = LlmCaller.current();
+        Future<StepikBlockRequest> generation = virtualExecutor.submit(() -> caller.call(
+                () -> agentService.generateStep(userId, sessionId, content, correctStepType, null, false)));
+
+        long expectedVersion = stepResponseDTO.getVersion();
+        Long stepikStepId = stepResponseDTO.getStepikStepId();
+        if (stepikStepId != null) {
+            try {
+                stepikStepService.deleteStep(stepikStepId);
+                expectedVersion = detachFromStepik(stepId, expectedVersion);
+            } catch (RuntimeException e) {
+                generation.cancel(true);
+                throw e;
+            }
+        }
+
         StepikBlockRequest newStepikBlockRequest;
         try {
-            newStepikBlockRequest = agentService.generateStep(userId, sessionId, content, correctStepType, null, false);
-        } catch (Exception e) {
-            log.error("Failed to generate step via AI for stepId: {}, newType: {}", stepId, newType, e);
-            throw new RuntimeException("Не удалось сгенерировать шаг через AI: " + e.getMessage(), e);
+            newStepikBlockRequest = generation.get();
+        } catch (InterruptedException e) {
+            generation.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Смена типа шага прервана", e);
+        } catch (ExecutionException | CancellationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.error("Failed to generate step via AI for stepId: {}, newType: {}", stepId, newType, cause);
+            throw new RuntimeException("Не удалось сгенерировать шаг через AI: " + cause.getMessage(), cause);
         }
 
         String newContent = extractTextFromStepikBlockRequest(newStepikBlockRequest);
@@ -76,16 +126,39 @@ public class StepTypeChangeService {
         updateStepDTO.setStepId(stepId);
         updateStepDTO.setType(newType);
         updateStepDTO.setStepikBlock(newStepikBlockRequest);
-        updateStepDTO.setStepikStepId(null);
         updateStepDTO.setCost(stepResponseDTO.getCost());
         updateStepDTO.setContent(newContent);
         updateStepDTO.setPosition(stepResponseDTO.getPosition());
 
-        StepResponseDTO updated = stepService.updateStep(updateStepDTO);
+        long versionToMatch = expectedVersion;
+        // Изменение шага между проверкой и коммитом JPA отловит сама по @Version при сбросе изменений
+        StepResponseDTO updated = transactionTemplate.execute(status -> {
+            if (getStepByStepId(stepId).getVersion() != versionToMatch) {
+                throw new ObjectOptimisticLockingFailureException(Step.class, stepId);
+            }
+            return stepService.updateStep(updateStepDTO);
+        });
         subscriptionService.recordAiUsage(userId, 1);
         return updated;
     }
 
+    /**
+     * Шаг в Stepik уже удалён: ссылка на него не должна остаться у локального шага, иначе следующая
+     * синхронизация попытается обновить несуществующий шаг. Возвращает версию, с которой сверяется запись
+     * нового типа: если шаг успели изменить до отвязки, остаётся прежняя и запись получит конфликт.
+     */
+    private long detachFromStepik(Long stepId, long expectedVersion) {
+        return transactionTemplate.execute(status -> {
+            Step step = getStepByStepId(stepId);
+            boolean unchanged = step.getVersion() == expectedVersion;
+            step.setStepikStepId(null);
+            step.setNeedsStepikSync(false);
+            Step saved = stepRepository.saveAndFlush(step);
+            stepikSyncJournal.track(saved);
+            return unchanged ? saved.getVersion() : expectedVersion;
+        });
+    }
+
     private Step getStepByStepId(Long stepId) {
         return stepRepository.findById(stepId)
                 .orElseThrow(() -> new StepNotFoundException("Step not found"));
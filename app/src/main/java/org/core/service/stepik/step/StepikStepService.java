@@ -83,12 +83,12 @@ public class StepikStepService {
             String errorMessage = parseStepikError(errorBody);
             log.error("HTTP error creating step in Stepik for step ID: {}. Status: {}, Error: {}", 
                 step.getId(), e.getStatusCode(), errorMessage);
-            throw new StepikStepIntegrationException(errorMessage);
+            throw new StepikStepIntegrationException(errorMessage, e);
         } catch (StepikStepIntegrationException e) {
             throw e;
         } catch (Exception e) {
             log.error("Error creating step in Stepik for step ID: {}: {}", step.getId(), e.getMessage(), e);
-            throw new StepikStepIntegrationException("Failed to create step in Stepik: " + e.getMessage());
+            throw new StepikStepIntegrationException("Failed to create step in Stepik: " + e.getMessage(), e);
         }
     }
 
@@ -171,7 +171,7 @@ public class StepikStepService {
             }
         } catch (Exception e) {
             log.error("Error updating step in Stepik with stepikStepId: {}: {}", stepikStepId, e.getMessage());
-            throw new StepikStepIntegrationException("Failed to update step in Stepik: " + e.getMessage());
+            throw new StepikStepIntegrationException("Failed to update step in Stepik: " + e.getMessage(), e);
         }
     }
 
@@ -35,15 +35,7 @@ public class StepikStepSourceDataRequestBuilder {
 
     private final ObjectMapper objectMapper;
 
-    private final FillBlanksStepRequestBlockValidator fillBlanksValidator;
-    private final StringStepRequestBlockValidator stringValidator;
-    private final NumberStepRequestBlockValidator numberValidator;
-    private final RandomTasksStepRequestBlockValidator randomTasksValidator;
-    private final ChoiceTasksStepRequestBlockValidator choiceValidator;
-    private final TableTasksStepRequestBlockValidator tableValidator;
-    private final CodeTasksStepRequestBlockValidator codeValidator;
-    private final MatchingTasksStepRequestBlockValidator matchingValidator;
-    private final MathStepRequestBlockValidator mathValidator;
+    private final StepBlockValidator stepBlockValidator;
 
     public StepikStepSourceRequestData createRequestDataForCreate(Step step) {
         StepikStepSourceRequestData requestData = new StepikStepSourceRequestData();
@@ -57,15 +49,7 @@ public class StepikStepSourceDataRequestBuilder {
             if (step.getStepikBlockData() != null && !step.getStepikBlockData().trim().isEmpty()) {
                 StepikBlockRequest stepikBlockRequest = objectMapper.readValue(step.getStepikBlockData(), StepikBlockRequest.class);
 
-                fillBlanksValidator.validateAndFixFillBlanksBlock(stepikBlockRequest, step.getId());
-                stringValidator.validateAndFixStringBlock(stepikBlockRequest, step.getId());
-                numberValidator.validateAndFixNumberBlock(stepikBlockRequest, step.getId());
-                randomTasksValidator.validateAndFixRandomTasksBlock(stepikBlockRequest, step.getId());
-                choiceValidator.validateAndFixChoiceBlock(stepikBlockRequest, step.getId());
-                tableValidator.validateAndFixTableBlock(stepikBlockRequest, step.getId());
-                codeValidator.validateAndFixCodeBlock(stepikBlockRequest, step.getId());
-                matchingValidator.validateAndFixMatchingBlock(stepikBlockRequest, step.getId());
-                mathValidator.validateAndFixMathBlock(stepikBlockRequest, step.getId());
+                stepBlockValidator.validateAndFix(stepikBlockRequest, step.getId());
 
                 if (stepikBlockRequest instanceof StepikBlockFillBlanksRequest fillBlanks) {
                     if (fillBlanks.getSource() != null && fillBlanks.getSource().getComponents() != null) {
@@ -105,15 +89,7 @@ public class StepikStepSourceDataRequestBuilder {
             if (step.getStepikBlockData() != null && !step.getStepikBlockData().trim().isEmpty()) {
                 StepikBlockRequest stepikBlockRequest = objectMapper.readValue(step.getStepikBlockData(), StepikBlockRequest.class);
 
-                fillBlanksValidator.validateAndFixFillBlanksBlock(stepikBlockRequest, step.getId());
-                stringValidator.validateAndFixStringBlock(stepikBlockRequest, step.getId());
-                numberValidator.validateAndFixNumberBlock(stepikBlockRequest, step.getId());
-                randomTasksValidator.validateAndFixRandomTasksBlock(stepikBlockRequest, step.getId());
-                choiceValidator.validateAndFixChoiceBlock(stepikBlockRequest, step.getId());
-                tableValidator.validateAndFixTableBlock(stepikBlockRequest, step.getId());
-                codeValidator.validateAndFixCodeBlock(stepikBlockRequest, step.getId());
-                matchingValidator.validateAndFixMatchingBlock(stepikBlockRequest, step.getId());
-                mathValidator.validateAndFixMathBlock(stepikBlockRequest, step.getId());
+                stepBlockValidator.validateAndFix(stepikBlockRequest, step.getId());
 
                 requestData.setBlock(stepikBlockRequest);
             } else {
@@ -80,7 +80,7 @@ public class StepikStepSyncService {
             return result;
         } catch (StepikStepIntegrationException e) {
             log.error("Error updating step in Stepik : {}", e.getMessage());
-            throw new StepikStepIntegrationException("Failed to update step in Stepik: " + e.getMessage());
+            throw new StepikStepIntegrationException("Failed to update step in Stepik: " + e.getMessage(), e);
         }
     }
 
@@ -0,0 +1,106 @@
+package org.core.service.stepik.step.validator;
+
+import lombok.RequiredArgsConstructor;
+import org.core.dto.stepik.step.StepikBlockRequest;
+import org.core.dto.stepik.step.enterWord.number.request.StepikBlockNumberRequest;
+import org.core.dto.stepik.step.test.choise.request.StepikBlockChoiceRequest;
+import org.core.dto.stepik.step.test.matching.request.StepikBlockMatchingRequest;
+import org.core.dto.stepik.step.test.sorting.request.StepikBlockSortingRequest;
+import org.core.dto.stepik.step.test.table.request.StepikBlockTableRequest;
+import org.core.dto.stepik.step.test.table.request.StepikTableCellRequest;
+import org.core.dto.stepik.step.test.table.request.StepikTableRowRequest;
+import org.core.dto.stepik.step.text.StepikBlockTextRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Цепочка *StepRequestBlockValidator для блока шага. Валидаторы только чинят блок; findProblems дополнительно
+ * находит то, что починка скрыла бы догадкой (нет правильного ответа, пустые варианты), — такой блок не принимается.
+ */
+@Component
+@RequiredArgsConstructor
+public class StepBlockValidator {
+
+    private final FillBlanksStepRequestBlockValidator fillBlanksValidator;
+    private final StringStepRequestBlockValidator stringValidator;
+    private final NumberStepRequestBlockValidator numberValidator;
+    private final RandomTasksStepRequestBlockValidator randomTasksValidator;
+    private final ChoiceTasksStepRequestBlockValidator choiceValidator;
+    private final TableTasksStepRequestBlockValidator tableValidator;
+    private final CodeTasksStepRequestBlockValidator codeValidator;
+    private final MatchingTasksStepRequestBlockValidator matchingValidator;
+    private final MathStepRequestBlockValidator mathValidator;
+
+    public void validateAndFix(StepikBlockRequest blockRequest, Long stepId) {
+        fillBlanksValidator.validateAndFixFillBlanksBlock(blockRequest, stepId);
+        stringValidator.validateAndFixStringBlock(blockRequest, stepId);
+        numberValidator.validateAndFixNumberBlock(blockRequest, stepId);
+        randomTasksValidator.validateAndFixRandomTasksBlock(blockRequest, stepId);
+        choiceValidator.validateAndFixChoiceBlock(blockRequest, stepId);
+        tableValidator.validateAndFixTableBlock(blockRequest, stepId);
+        codeValidator.validateAndFixCodeBlock(blockRequest, stepId);
+        matchingValidator.validateAndFixMatchingBlock(blockRequest, stepId);
+        mathValidator.validateAndFixMathBlock(blockRequest, stepId);
+    }
+
+    /**
+     * Проблемы, из-за которых сгенерированный блок нельзя принять. Пустой список — блок годен и уже починен.
+     */
+    public List<String> findProblems(StepikBlockRequest blockRequest) {
+        List<String> problems = new ArrayList<>();
+        if (blockRequest == null) {
+            problems.add("block is empty");
+            return problems;
+        }
+        if (blockRequest instanceof StepikBlockTextRequest textRequest) {
+            if (isBlank(textRequest.getText())) {
+                problems.add("text is empty");
+            }
+        } else if (blockRequest instanceof StepikBlockChoiceRequest choiceRequest) {
+            var source = choiceRequest.getSource();
+            if (source == null || source.getOptions() == null || source.getOptions().size() < 2) {
+                problems.add("choice has less than two options");
+            } else if (source.getOptions().stream().noneMatch(option -> Boolean.TRUE.equals(option.getIsCorrect()))) {
+                problems.add("choice has no correct option");
+            }
+        } else if (blockRequest instanceof StepikBlockSortingRequest sortingRequest) {
+            var source = sortingRequest.getSource();
+            if (source == null || source.getOptions() == null || source.getOptions().size() < 2) {
+                problems.add("sorting has less than two options");
+            }
+        } else if (blockRequest instanceof StepikBlockMatchingRequest matchingRequest) {
+            var source = matchingRequest.getSource();
+            if (source == null || source.getPairs() == null || source.getPairs().isEmpty()) {
+                problems.add("matching has no pairs");
+            }
+        } else if (blockRequest instanceof StepikBlockNumberRequest numberRequest) {
+            var source = numberRequest.getSource();
+            if (source == null || source.getOptions() == null
+                    || source.getOptions().stream().allMatch(option -> isBlank(option.getAnswer()))) {
+                problems.add("number has no answer");
+            }
+        } else if (blockRequest instanceof StepikBlockTableRequest tableRequest) {
+            var source = tableRequest.getSource();
+            if (source == null || source.getRows() == null || source.getRows().isEmpty()) {
+                problems.add("table has no rows");
+            } else {
+                for (StepikTableRowRequest row : source.getRows()) {
+                    if (row.getColumns() == null
+                            || row.getColumns().stream().map(StepikTableCellRequest::getChoice).noneMatch(Boolean.TRUE::equals)) {
+                        problems.add("table row '" + row.getName() + "' has no correct cell");
+                    }
+                }
+            }
+        }
+        if (problems.isEmpty()) {
+            validateAndFix(blockRequest, null);
+        }
+        return problems;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
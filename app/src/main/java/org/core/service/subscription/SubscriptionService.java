@@ -66,11 +66,15 @@ public class SubscriptionService {
         return isPro(userId) ? proMaxBatchSteps : freeMaxBatchSteps;
     }
 
+    /**
+     * Auto (null) доступна всем, выбор конкретной модели — только в Pro.
+     */
+    public boolean hasModelAccess(Long userId, LlmModel llmModel) {
+        return llmModel == null || isPro(userId);
+    }
+
     public void validateModelAccess(Long userId, LlmModel llmModel) {
-        if (llmModel == null) {
-            return;
-        }
-        if (!isPro(userId)) {
+        if (!hasModelAccess(userId, llmModel)) {
             throw new SubscriptionLimitExceededException("Выбор модели доступен в подписке Pro. На бесплатном тарифе доступна только Auto.");
         }
     }
@@ -89,6 +93,13 @@ public class SubscriptionService {
         }
     }
 
+    /**
+     * Хватит ли пользователю лимита ещё на units генераций; в отличие от validateAiGenerationAllowed не бросает исключение.
+     */
+    public boolean hasAiGenerationsLeft(Long userId, int units) {
+        return isPro(userId) || getUsedCount(userId) + units <= freeAiLimit;
+    }
+
     public void validateBatchPlan(Long userId, BatchStepDTO batchStepDTO) {
         int totalSteps = countBatchSteps(batchStepDTO);
         int maxBatchSteps = getMaxBatchSteps(userId);
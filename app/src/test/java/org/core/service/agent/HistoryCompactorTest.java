@@ -0,0 +1,119 @@
+package org.core.service.agent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.core.dto.agent.ChatMessage;
+import org.core.dto.agent.ContextSummary;
+import org.core.enums.LlmModel;
+import org.core.service.agent.llmProvider.LlmProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class HistoryCompactorTest {
+
+    @Mock
+    private LlmProvider llmProvider;
+
+    private ExecutorService executor;
+    private InMemoryContextStore contextStore;
+    private HistoryCompactor compactor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("context.window.budget-tokens.yandex-gpt-pro", "700");
+        contextStore = new InMemoryContextStore(100, 3600, 1 << 20, new SimpleMeterRegistry());
+        compactor = new HistoryCompactor("yandex", llmProvider, llmProvider, contextStore, executor, environment,
+                300, 14, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void compact_keepsWholeDialogWithinBudget() {
+        List<ChatMessage> history = List.of(
+                message("system", "Ты помощник"),
+                message("user", "Привет"),
+                message("assistant", "Здравствуйте"));
+
+        assertThat(compactor.compact("s1", history, null, 0))
+                .extracting(ChatMessage::getContent)
+                .containsExactly("Привет", "Здравствуйте");
+    }
+
+    @Test
+    void compact_dropsOldTurnsAndPrependsRollingSummary() throws Exception {
+        List<ChatMessage> history = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            history.add(message("user", "Вопрос " + i + " " + "слово ".repeat(60)));
+            history.add(message("assistant", "Ответ " + i));
+        }
+        history.forEach(message -> contextStore.addMessage("s1", message));
+        when(llmProvider.chat(anyList(), isNull(), anyInt())).thenReturn("Обсуждали вопросы 0-3");
+
+        List<ChatMessage> window = compactor.compact("s1", history, null, 0);
+        assertThat(window).hasSizeLessThan(history.size());
+        assertThat(window.get(window.size() - 1).getContent()).isEqualTo("Ответ 5");
+        assertThat(window).noneMatch(message -> "system".equals(message.getRole()));
+
+        compactor.summarizeAsync("s1", history, null, 0);
+        verify(llmProvider, timeout(5_000)).chat(anyList(), isNull(), anyInt());
+        waitForSummary(history);
+
+        List<ChatMessage> compacted = compactor.compact("s1", history, null, 0);
+        assertThat(compacted.get(0).getRole()).isEqualTo("system");
+        assertThat(compacted.get(0).getContent()).endsWith("Обсуждали вопросы 0-3");
+        assertThat(contextStore.getSummary("s1").getVersion()).isEqualTo(12);
+
+        // содержание, посчитанное по более старой версии истории, не затирает сохранённое
+        contextStore.putSummary("s1", ContextSummary.builder().text("Устарело").version(5).build());
+        assertThat(contextStore.getSummary("s1").getText()).isEqualTo("Обсуждали вопросы 0-3");
+
+        contextStore.clearSession("s1");
+        assertThat(contextStore.getSummary("s1")).isNull();
+    }
+
+    @Test
+    void compact_usesPerModelBudget() {
+        List<ChatMessage> history = List.of(
+                message("user", "слово ".repeat(150)),
+                message("assistant", "Ответ"));
+
+        assertThat(compactor.compact("s1", history, LlmModel.YANDEX_GPT_LITE, 0)).hasSize(1);
+        assertThat(compactor.compact("s1", history, LlmModel.YANDEX_GPT_PRO, 0)).hasSize(2);
+    }
+
+    private void waitForSummary(List<ChatMessage> history) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!"system".equals(compactor.compact("s1", history, null, 0).get(0).getRole())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static ChatMessage message(String role, String content) {
+        return ChatMessage.builder().role(role).content(content).build();
+    }
+}
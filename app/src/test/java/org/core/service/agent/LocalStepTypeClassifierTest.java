@@ -0,0 +1,80 @@
+package org.core.service.agent;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalStepTypeClassifierTest {
+
+    private LocalStepTypeClassifier classifier;
+
+    @BeforeEach
+    void setUp() {
+        classifier = new LocalStepTypeClassifier(new DefaultResourceLoader(), 2.0, 1.0);
+    }
+
+    @Test
+    void classify_returnsTypeForUnambiguousKeywords() {
+        assertThat(classifier.classify("Сделай задание на соответствие столиц и стран")).contains("matching");
+        assertThat(classifier.classify("Заполни таблицу истинности")).contains("table");
+        assertThat(classifier.classify("Добавь теорию про циклы в Python")).contains("text");
+        assertThat(classifier.classify("Вставь пропуски в определение")).contains("fill-blanks");
+        assertThat(classifier.classify("Упорядочи этапы жизненного цикла")).contains("sorting");
+    }
+
+    @Test
+    void classify_returnsEmptyWhenNoKeywordsMatch() {
+        assertThat(classifier.classify("Придумай что-нибудь интересное про Java")).isEmpty();
+        assertThat(classifier.classify("   ")).isEmpty();
+        assertThat(classifier.classify(null)).isEmpty();
+    }
+
+    @Test
+    void classify_returnsEmptyWhenTopTypesAreTooClose() {
+        assertThat(classifier.classify("Формула и таблица")).isEmpty();
+    }
+
+    @Test
+    void classify_ignoresTypesBelowMinScore() {
+        assertThat(classifier.classify("Один вопрос по теме")).isEmpty();
+    }
+
+    @Test
+    void classify_matchesWholeWordsOnly() {
+        assertThat(classifier.classify("Сформулируй вопрос о регулярных выражениях")).isEmpty();
+        assertThat(classifier.classify("Напиши объяснение про регулярные выражения")).contains("text");
+        assertThat(classifier.classify("Расскажи про основы тестирования")).isEmpty();
+        assertThat(classifier.classify("Генератор случайных чисел в Python")).isEmpty();
+    }
+
+    @Test
+    void classify_matchesStemsAndPhrases() {
+        assertThat(classifier.classify("Составь тест по Java")).contains("choice");
+        assertThat(classifier.classify("Задача со случайными параметрами")).contains("random-tasks");
+        assertThat(classifier.classify("Выведи формулу площади круга")).contains("math");
+    }
+
+    @Test
+    void compile_anchorsFragmentToWordBoundaries() {
+        assertThat(LocalStepTypeClassifier.compile("формул*").matcher("сформулируй").find()).isFalse();
+        assertThat(LocalStepTypeClassifier.compile("формул*").matcher("по формуле").find()).isTrue();
+        assertThat(LocalStepTypeClassifier.compile("тест").matcher("тестирования").find()).isFalse();
+        assertThat(LocalStepTypeClassifier.compile("правильн* ответ*").matcher("правильные  ответы").find()).isTrue();
+    }
+
+    @Test
+    void parseRules_skipsCommentsAndMalformedLines() {
+        List<LocalStepTypeClassifier.KeywordRule> rules = LocalStepTypeClassifier.parseRules("""
+                # comment
+                choice|2.0|Тест
+
+                broken line
+                """);
+
+        assertThat(rules).containsExactly(new LocalStepTypeClassifier.KeywordRule("choice", 2.0, "тест"));
+    }
+}
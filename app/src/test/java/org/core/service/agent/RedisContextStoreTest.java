@@ -0,0 +1,67 @@
+package org.core.service.agent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.core.dto.agent.ChatMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RedisContextStoreTest {
+
+    private static final String VERSION_KEY = "ctx:{s1}:version";
+    private static final ChatMessage FIRST = ChatMessage.builder().role("user").content("Привет").build();
+    private static final ChatMessage SECOND = ChatMessage.builder().role("assistant").content("Здравствуйте").build();
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    @Mock
+    private ValueOperations<String, Object> valueOperations;
+
+    private RedisContextStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new RedisContextStore(redisTemplate, 10, 3600, 16, new SimpleMeterRegistry());
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @Test
+    void addMessage_keepsNearCacheWhenLettuceOmitsTrimReply() {
+        // RPUSH, INCR и три EXPIRE: статусный ответ LTRIM Lettuce не возвращает
+        assertNearCacheSurvivesWrite(new ArrayList<>(List.of(2L, 4L, true, true, true)));
+    }
+
+    @Test
+    void addMessage_keepsNearCacheWhenTrimReplyIsPresent() {
+        assertNearCacheSurvivesWrite(new ArrayList<>(List.of(2L, "OK", 4L, true, true, true)));
+    }
+
+    private void assertNearCacheSurvivesWrite(List<Object> writeResults) {
+        when(valueOperations.get(VERSION_KEY)).thenReturn(3L, 4L);
+        when(redisTemplate.executePipelined(any(SessionCallback.class)))
+                .thenReturn(new ArrayList<>(List.of(3L, List.of(), List.of(FIRST))))
+                .thenReturn(writeResults);
+
+        assertThat(store.getHistory("s1")).containsExactly(FIRST);
+        store.addMessage("s1", SECOND);
+
+        assertThat(store.getHistory("s1")).containsExactly(FIRST, SECOND);
+        // один pipeline на перечитывание и один на запись, второе чтение обслужил near-cache
+        verify(redisTemplate, times(2)).executePipelined(any(SessionCallback.class));
+    }
+}
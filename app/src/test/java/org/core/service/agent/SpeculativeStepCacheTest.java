@@ -0,0 +1,54 @@
+package org.core.service.agent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.core.dto.agent.ChatMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpeculativeStepCacheTest {
+
+    private static final List<ChatMessage> HISTORY = List.of(
+            ChatMessage.builder().role("system").content("prompt").stepType("choice").build(),
+            ChatMessage.builder().role("assistant").content("{\"text\": \"шаг\"}").build());
+
+    private SimpleMeterRegistry meterRegistry;
+    private SpeculativeStepCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new SpeculativeStepCache(true, 600, 10, meterRegistry);
+    }
+
+    @Test
+    void take_servesCandidateForSamePromptAndContext() {
+        String fingerprint = SpeculativeStepCache.fingerprint(HISTORY);
+        cache.put("s1", "choice", null, "Вопрос про Java", fingerprint, CompletableFuture.completedFuture("ответ"));
+
+        assertThat(cache.take("s1", "choice", null, " Вопрос про Java ", fingerprint)).contains("ответ");
+        assertThat(cache.take("s1", "choice", null, "Вопрос про Java", fingerprint)).isEmpty();
+        assertThat(outcome("served")).isEqualTo(1.0);
+    }
+
+    @Test
+    void take_discardsCandidateWhenRequestOrContextDiffers() {
+        String fingerprint = SpeculativeStepCache.fingerprint(HISTORY);
+        cache.put("s1", "choice", null, "Вопрос про Java", fingerprint, CompletableFuture.completedFuture("ответ"));
+        assertThat(cache.take("s1", "choice", null, "Другой вопрос", fingerprint)).isEmpty();
+        assertThat(cache.take("s1", "choice", null, "Вопрос про Java", fingerprint)).isEmpty();
+
+        cache.put("s1", "choice", null, "Вопрос про Java", fingerprint, CompletableFuture.completedFuture("ответ"));
+        assertThat(cache.take("s1", "choice", null, "Вопрос про Java", SpeculativeStepCache.fingerprint(HISTORY.subList(0, 1))))
+                .isEmpty();
+        assertThat(outcome("discarded")).isEqualTo(2.0);
+    }
+
+    private double outcome(String outcome) {
+        return meterRegistry.get("agent.speculative.steps").tag("outcome", outcome).counter().count();
+    }
+}
@@ -0,0 +1,106 @@
+package org.core.service.agent;
+
+import org.core.config.LlmModelConfig;
+import org.core.dto.agent.ChatMessage;
+import org.core.dto.stepik.step.text.StepikBlockTextRequest;
+import org.core.enums.LlmModel;
+import org.core.service.agent.llmProvider.LlmProvider;
+import org.core.service.stepik.step.validator.StepBlockValidator;
+import org.core.service.subscription.SubscriptionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StepCandidateGeneratorTest {
+
+    private static final List<ChatMessage> MESSAGES = List.of(
+            ChatMessage.builder().role("user").content("Шаг про Java").build());
+
+    @Mock
+    private LlmProvider llmProvider;
+
+    @Mock
+    private LlmModelConfig llmModelConfig;
+
+    @Mock
+    private StepikResponseParser responseParser;
+
+    @Mock
+    private StepBlockValidator stepBlockValidator;
+
+    @Mock
+    private SubscriptionService subscriptionService;
+
+    private ExecutorService executor;
+    private StepCandidateGenerator generator;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        generator = new StepCandidateGenerator(llmProvider, llmModelConfig, responseParser, stepBlockValidator,
+                subscriptionService, executor, 3, List.of(LlmModel.YANDEX_GPT_LITE));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void generate_returnsFirstValidCandidate() {
+        stubModelUris();
+        when(subscriptionService.hasModelAccess(1L, LlmModel.YANDEX_GPT_LITE)).thenReturn(true);
+        StepikBlockTextRequest invalid = new StepikBlockTextRequest("", null, null);
+        StepikBlockTextRequest valid = new StepikBlockTextRequest("Теория", null, null);
+        when(llmProvider.chat(anyList(), eq("pro-uri"))).thenReturn("pro");
+        when(llmProvider.chat(anyList(), eq("lite-uri"))).thenReturn("lite");
+        when(responseParser.parseResponse("pro", "text")).thenReturn(invalid);
+        when(responseParser.parseResponse("lite", "text")).thenReturn(valid);
+        when(stepBlockValidator.findProblems(invalid)).thenReturn(List.of("text is empty"));
+        when(stepBlockValidator.findProblems(valid)).thenReturn(List.of());
+
+        assertThat(generator.generate(1L, MESSAGES, "text", LlmModel.YANDEX_GPT_PRO, 2)).isEqualTo("lite");
+    }
+
+    @Test
+    void generate_failsWhenNoCandidateIsValid() {
+        stubModelUris();
+        when(subscriptionService.hasModelAccess(1L, LlmModel.YANDEX_GPT_LITE)).thenReturn(true);
+        StepikBlockTextRequest invalid = new StepikBlockTextRequest("", null, null);
+        when(llmProvider.chat(anyList(), any())).thenReturn("raw");
+        when(responseParser.parseResponse("raw", "text")).thenReturn(invalid);
+        when(stepBlockValidator.findProblems(invalid)).thenReturn(List.of("text is empty"));
+
+        assertThatThrownBy(() -> generator.generate(1L, MESSAGES, "text", LlmModel.YANDEX_GPT_PRO, 5))
+                .hasMessageContaining("text is empty");
+        assertThat(generator.modelsFor(1L, LlmModel.YANDEX_GPT_PRO, generator.effectiveCount(5)))
+                .containsExactly(LlmModel.YANDEX_GPT_PRO, LlmModel.YANDEX_GPT_LITE, LlmModel.YANDEX_GPT_LITE);
+    }
+
+    @Test
+    void modelsFor_usesOnlyRequestedModelWithoutAccessToCandidateModels() {
+        when(subscriptionService.hasModelAccess(1L, LlmModel.YANDEX_GPT_LITE)).thenReturn(false);
+
+        assertThat(generator.modelsFor(1L, null, 3)).containsExactly(null, null, null);
+    }
+
+    private void stubModelUris() {
+        when(llmModelConfig.getModelUri(LlmModel.YANDEX_GPT_PRO)).thenReturn("pro-uri");
+        when(llmModelConfig.getModelUri(LlmModel.YANDEX_GPT_LITE)).thenReturn("lite-uri");
+    }
+}
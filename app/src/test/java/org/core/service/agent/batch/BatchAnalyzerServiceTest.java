@@ -0,0 +1,72 @@
+package org.core.service.agent.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.core.dto.stepik.step.StepikBlockRequest;
+import org.core.dto.stepik.step.text.StepikBlockTextRequest;
+import org.core.service.agent.SystemPromptService;
+import org.core.service.agent.llmProvider.LlmProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BatchAnalyzerServiceTest {
+
+    @Mock
+    private LlmProvider llmProvider;
+
+    @Mock
+    private SystemPromptService systemPromptService;
+
+    @Mock
+    private BatchStepParser batchStepParser;
+
+    private ExecutorService executor;
+    private BatchAnalyzerService service;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        service = new BatchAnalyzerService(llmProvider, executor, systemPromptService, new ObjectMapper(), batchStepParser, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void stripHtml_removesTagsAndCollapsesWhitespace() {
+        assertThat(BatchAnalyzerService.stripHtml("<p>Первый\n\n абзац</p><ul><li>2 > 1</li></ul>  "))
+                .isEqualTo("Первый абзац 2 > 1");
+        assertThat(BatchAnalyzerService.stripHtml(null)).isEmpty();
+    }
+
+    @Test
+    void summariesTextSteps_summarizesEachBlockOncePerMemo() {
+        when(systemPromptService.getPromptForQuery("text-summary")).thenReturn("summary prompt");
+        when(llmProvider.chat(anyList())).thenReturn("итог");
+        List<StepikBlockRequest> blocks = List.of(
+                new StepikBlockTextRequest("<p>Теория</p>", null, null),
+                new StepikBlockTextRequest("<b>Теория</b>", null, null),
+                new StepikBlockTextRequest("<p></p>", null, null));
+        BatchAnalyzerService.SummaryMemo memo = new BatchAnalyzerService.SummaryMemo();
+
+        assertThat(service.summariesTextSteps(blocks, memo)).isEqualTo("итог\nитог");
+        assertThat(service.summariesTextSteps(blocks, memo)).isEqualTo("итог\nитог");
+        verify(llmProvider, times(1)).chat(anyList());
+    }
+}
@@ -0,0 +1,114 @@
+package org.core.service.agent.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.core.dto.stepik.step.StepikBlockRequest;
+import org.core.dto.stepik.step.text.StepikBlockTextRequest;
+import org.core.service.agent.StepikResponseParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class BatchStepParserTest {
+
+    @Mock
+    private StepikResponseParser responseParser;
+
+    private BatchStepParser parser;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(responseParser.parseResponse(any(JsonNode.class), eq("text"))).thenAnswer(invocation -> {
+            JsonNode node = invocation.getArgument(0);
+            if (!node.hasNonNull("text")) {
+                throw new RuntimeException("Invalid AI response format: missing text");
+            }
+            return new StepikBlockTextRequest(node.get("text").asText(), null, null);
+        });
+        parser = new BatchStepParser(responseParser);
+    }
+
+    @Test
+    void parse_extractsStepsFromMarkdownWrappedArray() {
+        String response = """
+                Вот шаги:
+                ```json
+                [{"text": "<p>Первый</p>"}, {"text": "<p>Второй</p>", "source": {"options": [{"text": "a"}]}}]
+                ```
+                """;
+
+        assertThat(texts(parser.parseAiResponseToRequestsList(response, "text", 2)))
+                .containsExactly("<p>Первый</p>", "<p>Второй</p>");
+    }
+
+    @Test
+    void parse_keepsCompleteStepsOfTruncatedResponse() {
+        String response = "[{\"text\": \"Первый шаг\"}, {\"text\": \"Второй шаг\"}, {\"text\": \"Обрезан";
+
+        assertThat(texts(parser.parseAiResponseToRequestsList(response, "text", 3)))
+                .containsExactly("Первый шаг", "Второй шаг");
+    }
+
+    @Test
+    void parse_unwrapsBatchObjectAndSingleStepObject() {
+        assertThat(texts(parser.parseAiResponseToRequestsList(
+                "{\"batch\": [{\"text\": \"Шаг из обёртки\"}]}", "text", 1)))
+                .containsExactly("Шаг из обёртки");
+        assertThat(texts(parser.parseAiResponseToRequestsList(
+                "{\"text\": \"Одиночный шаг\", \"source\": {\"options\": [{\"text\": \"a\"}]}}", "text", 1)))
+                .containsExactly("Одиночный шаг");
+    }
+
+    @Test
+    void parse_skipsBracketsInProseBeforeJson() {
+        String response = "Here are [3] steps for {topic}:\n[{\"text\": \"Первый\"}, {\"text\": \"Второй\"}]";
+
+        assertThat(texts(parser.parseAiResponseToRequestsList(response, "text", 2)))
+                .containsExactly("Первый", "Второй");
+    }
+
+    @Test
+    void stream_keepsSurrogatePairSplitBetweenChunks() {
+        String response = "[{\"text\": \"Итог \uD83D\uDE80\"}]";
+        BatchStepParser.StepStream stream = parser.openStream("text");
+        for (int i = 0; i < response.length(); i++) {
+            stream.feed(response.substring(i, i + 1));
+        }
+
+        assertThat(texts(stream.finish())).containsExactly("Итог \uD83D\uDE80");
+    }
+
+    @Test
+    void stream_emitsStepsAcrossArbitraryChunkBoundaries() {
+        String response = "```json\n[{\"text\": \"Шаг \\u003cb\\u003e1\\u003c/b\\u003e\"}, {\"text\": \"Шаг 2\"}]\n```";
+        BatchStepParser.StepStream stream = parser.openStream("text");
+        for (int i = 0; i < response.length(); i += 3) {
+            stream.feed(response.substring(i, Math.min(response.length(), i + 3)));
+        }
+
+        assertThat(texts(stream.finish())).containsExactly("Шаг <b>1</b>", "Шаг 2");
+    }
+
+    @Test
+    void parse_failsWhenNoStepIsValid() {
+        assertThatThrownBy(() -> parser.parseAiResponseToRequestsList("[{\"title\": \"без текста\"}, {\"title\": \"x\"}]", "text", 2))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("No valid steps");
+    }
+
+    private static List<String> texts(List<StepikBlockRequest> steps) {
+        return steps.stream()
+                .map(step -> ((StepikBlockTextRequest) step).getText())
+                .toList();
+    }
+}
@@ -0,0 +1,28 @@
+package org.core.service.agent.llmProvider;
+
+import org.core.dto.agent.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LlmResponseCacheTest {
+
+    private static final List<ChatMessage> MESSAGES = List.of(ChatMessage.builder().role("user").content("Привет").build());
+
+    private final LlmResponseCache cache = new LlmResponseCache(null, true, 60, 16);
+
+    @Test
+    void buildKey_differsBetweenProvidersForDefaultModel() {
+        assertThat(cache.buildKey("yandex", MESSAGES, null, 0))
+                .isNotEqualTo(cache.buildKey("deepseek", MESSAGES, null, 0));
+    }
+
+    @Test
+    void buildKey_ignoresWhitespaceDifferences() {
+        List<ChatMessage> spaced = List.of(ChatMessage.builder().role("user").content("  Привет ").build());
+
+        assertThat(cache.buildKey("yandex", spaced, null, 0)).isEqualTo(cache.buildKey("yandex", MESSAGES, null, 0));
+    }
+}
@@ -0,0 +1,128 @@
+package org.core.service.agent.llmProvider;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.core.dto.agent.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RoutingLlmProviderTest {
+
+    private static final List<ChatMessage> MESSAGES = List.of(ChatMessage.builder().role("user").content("Привет").build());
+
+    @Mock
+    private LlmProvider primaryProvider;
+
+    @Mock
+    private LlmProvider fallbackProvider;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ExecutorService executor;
+    private RoutingLlmProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        provider = new RoutingLlmProvider(
+                new RoutingLlmProvider.Route("yandex", primaryProvider, null),
+                new RoutingLlmProvider.Route("yandex-fallback", fallbackProvider, "gpt://folder/fallback"),
+                executor, meterRegistry, true, 50, 10, 1_000, 1.0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void chat_failsOverOnServerError() {
+        when(primaryProvider.chat(MESSAGES, "gpt://folder/lite"))
+                .thenThrow(new RuntimeException("Failed to get response from YandexGPT",
+                        HttpServerErrorException.create(HttpStatus.SERVICE_UNAVAILABLE, "Unavailable", null, null, null)));
+        when(fallbackProvider.chat(MESSAGES, "gpt://folder/fallback")).thenReturn("fallback");
+
+        assertThat(provider.chat(MESSAGES, "gpt://folder/lite")).isEqualTo("fallback");
+        assertThat(meterRegistry.get("llm.routing.failovers").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void chat_doesNotFailOverOnClientError() {
+        when(primaryProvider.chat(MESSAGES, "gpt://folder/lite"))
+                .thenThrow(new RuntimeException("Failed to get response from YandexGPT",
+                        HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", null, null, null)));
+
+        assertThatThrownBy(() -> provider.chat(MESSAGES, "gpt://folder/lite")).isInstanceOf(RuntimeException.class);
+        verify(fallbackProvider, never()).chat(any(), any());
+    }
+
+    @Test
+    void chat_hedgesSlowPrimaryAndCancelsIt() throws Exception {
+        CountDownLatch primaryInterrupted = new CountDownLatch(1);
+        when(primaryProvider.chat(eq(MESSAGES), eq("gpt://folder/lite"))).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(5_000);
+                return "primary";
+            } catch (InterruptedException e) {
+                primaryInterrupted.countDown();
+                throw e;
+            }
+        });
+        when(fallbackProvider.chat(MESSAGES, "gpt://folder/fallback")).thenReturn("hedged");
+
+        assertThat(provider.chat(MESSAGES, "gpt://folder/lite")).isEqualTo("hedged");
+        assertThat(primaryInterrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(meterRegistry.get("llm.routing.hedges").counter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("llm.routing.hedge.wins").tag("route", "yandex-fallback").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void chat_fastCallsRefillHedgeBudget() {
+        provider = new RoutingLlmProvider(
+                new RoutingLlmProvider.Route("yandex", primaryProvider, null),
+                new RoutingLlmProvider.Route("yandex-fallback", fallbackProvider, "gpt://folder/fallback"),
+                executor, meterRegistry, true, 50, 10, 1_000, 0.5);
+        AtomicBoolean slow = new AtomicBoolean(true);
+        when(primaryProvider.chat(eq(MESSAGES), eq("gpt://folder/lite"))).thenAnswer(invocation -> {
+            if (slow.get()) {
+                Thread.sleep(5_000);
+            }
+            return "primary";
+        });
+        when(fallbackProvider.chat(MESSAGES, "gpt://folder/fallback")).thenReturn("hedged");
+
+        // бюджет полон, первый дубль тратит единицу, следующие по 0.5 (+0.5 за вызов, -1 за дубль) — после 19 он пуст
+        for (int i = 0; i < 19; i++) {
+            assertThat(provider.chat(MESSAGES, "gpt://folder/lite")).isEqualTo("hedged");
+        }
+        slow.set(false);
+        assertThat(provider.chat(MESSAGES, "gpt://folder/lite")).isEqualTo("primary");
+        slow.set(true);
+
+        assertThat(provider.chat(MESSAGES, "gpt://folder/lite")).isEqualTo("hedged");
+        assertThat(meterRegistry.get("llm.routing.hedges").counter().count()).isEqualTo(20.0);
+    }
+}
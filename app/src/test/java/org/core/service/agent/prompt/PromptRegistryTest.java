@@ -0,0 +1,65 @@
+package org.core.service.agent.prompt;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromptRegistryTest {
+
+    @TempDir
+    Path overrideDir;
+
+    @Test
+    void render_substitutesCountAndContextBlock() {
+        PromptTemplate template = PromptTemplate.parse("Создай {{count}} шагов типа {{stepType}} {x}.\n{{context}}{{unknown}}");
+
+        assertThat(template.render(new PromptTemplate.Arguments(3, "  теория  ", "choice", null)))
+                .isEqualTo("Создай 3 шагов типа choice {x}.\n\n=== КОНТЕКСТ ДЛЯ ЗАДАНИЙ ===\nтеория\n\n{{unknown}}");
+        assertThat(template.render(new PromptTemplate.Arguments(2, " ", "choice", null)))
+                .isEqualTo("Создай 2 шагов типа choice {x}.\n{{unknown}}");
+    }
+
+    @Test
+    void find_keepsNamespacesApartAndRejectsPaths() {
+        PromptRegistry registry = new PromptRegistry(new DefaultResourceLoader(), "");
+
+        assertThat(registry.find(PromptRegistry.Namespace.BATCH, "choice")).get()
+                .satisfies(template -> assertThat(template.hasPlaceholders()).isTrue());
+        assertThat(registry.find(PromptRegistry.Namespace.STEP, "choice")).get()
+                .satisfies(template -> assertThat(template.hasPlaceholders()).isFalse());
+        assertThat(registry.find(PromptRegistry.Namespace.STEP, "batch-analyzer")).isEmpty();
+        assertThat(registry.find(PromptRegistry.Namespace.ANALYZER, "batch-analyzer")).isPresent();
+        assertThat(registry.find(PromptRegistry.Namespace.STEP, "../application")).isEmpty();
+    }
+
+    @Test
+    void find_prefersOverrideDirectoryAndReloadsAfterInvalidation() throws Exception {
+        Files.createDirectories(overrideDir.resolve("batch-creator"));
+        Path override = overrideDir.resolve("batch-creator/choice.txt");
+        Files.writeString(override, "v1 {{count}}");
+        PromptRegistry registry = new PromptRegistry(new DefaultResourceLoader(), overrideDir.toString());
+
+        assertThat(registry.get(PromptRegistry.Namespace.BATCH, "choice").render(
+                new PromptTemplate.Arguments(4, null, "choice", null))).isEqualTo("v1 4");
+
+        Files.writeString(override, "v2 {{count}}");
+        registry.invalidateAll();
+        assertThat(registry.get(PromptRegistry.Namespace.BATCH, "choice").text()).isEqualTo("v2 {{count}}");
+    }
+
+    @Test
+    void find_doesNotCacheMissingTemplates() throws Exception {
+        PromptRegistry registry = new PromptRegistry(new DefaultResourceLoader(), overrideDir.toString());
+
+        assertThat(registry.find(PromptRegistry.Namespace.STEP, "custom")).isEmpty();
+
+        Files.writeString(overrideDir.resolve("custom.txt"), "Новый тип шага");
+        assertThat(registry.find(PromptRegistry.Namespace.STEP, "custom")).get()
+                .satisfies(template -> assertThat(template.text()).isEqualTo("Новый тип шага"));
+    }
+}
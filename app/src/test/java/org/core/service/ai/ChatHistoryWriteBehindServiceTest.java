@@ -0,0 +1,153 @@
+package org.core.service.ai;
+
+import org.core.domain.ai.AiMessageRole;
+import org.core.domain.ai.AiSession;
+import org.core.domain.ai.ChatType;
+import org.core.repository.ai.AiMessageRepository;
+import org.core.service.ai.util.AiMessageHelper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChatHistoryWriteBehindServiceTest {
+
+    private static final String INSERT_PREFIX = "INSERT INTO ai_message";
+
+    @Mock
+    private AiSessionMessageService aiSessionMessageService;
+    @Mock
+    private AiMessageRepository aiMessageRepository;
+    @Mock
+    private AiMessageHelper aiMessageHelper;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ChatHistoryWriteBehindService service;
+    private final List<List<Object[]>> inserts = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        service = new ChatHistoryWriteBehindService(aiSessionMessageService, aiMessageRepository, aiMessageHelper,
+                jdbcTemplate, transactionManager, true, 100, 2, 3600);
+        when(aiSessionMessageService.resolveSession(eq(1L), anyString(), eq(ChatType.CHAT), any(), any(), isNull()))
+                .thenAnswer(invocation -> AiSession.builder()
+                        .id("s1".equals(invocation.getArgument(1)) ? 10L : 20L)
+                        .build());
+        when(aiMessageRepository.countByAiSession_Id(any())).thenReturn(4);
+        lenient().when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            if (sql.startsWith(INSERT_PREFIX)) {
+                inserts.add(new ArrayList<>(invocation.<List<Object[]>>getArgument(1)));
+            }
+            return new int[0];
+        });
+    }
+
+    @Test
+    void flush_writesMessagesInEnqueueOrderContinuingSortOrder() {
+        enqueue("s1", "first");
+        enqueue("s1", "second");
+
+        service.flush("s1");
+
+        assertThat(inserts).hasSize(1);
+        assertThat(inserts.get(0))
+                .extracting(row -> row[2], row -> row[5])
+                .containsExactly(tuple("first", 5), tuple("second", 6));
+        verify(aiSessionMessageService, times(1))
+                .resolveSession(eq(1L), eq("s1"), eq(ChatType.CHAT), any(), any(), isNull());
+    }
+
+    @Test
+    void flush_retriesFailedMessagesOnNextFlush() {
+        failInsertsOfSession(10L, 1);
+        enqueue("s1", "first");
+
+        service.flush("s1");
+        enqueue("s1", "second");
+        service.flush("s1");
+
+        assertThat(inserts).hasSize(2);
+        assertThat(inserts.get(1)).extracting(row -> row[2]).containsExactly("first", "second");
+    }
+
+    @Test
+    void flush_dropsMessagesAfterMaxAttempts() {
+        failInsertsOfSession(10L, Integer.MAX_VALUE);
+        enqueue("s1", "first");
+
+        service.flush("s1");
+        service.flush("s1");
+        service.flush("s1");
+
+        assertThat(inserts).hasSize(2);
+    }
+
+    @Test
+    void flushAll_failingSessionDoesNotDropOtherSessions() {
+        failInsertsOfSession(10L, Integer.MAX_VALUE);
+        enqueue("s1", "broken");
+        enqueue("s2", "healthy");
+
+        service.flushAll();
+
+        // общая пачка, затем каждая сессия отдельно: s2 записана, s1 ждёт повтора
+        assertThat(inserts).extracting(List::size).containsExactly(2, 1, 1);
+        assertThat(inserts.subList(1, 3)).extracting(rows -> rows.get(0)[0]).containsExactlyInAnyOrder(10L, 20L);
+
+        service.flushAll();
+        service.flushAll();
+
+        // вторая неудача s1 исчерпала попытки, s2 больше не пишется
+        assertThat(inserts).hasSize(4);
+        assertThat(inserts.get(3)).extracting(row -> row[0]).containsExactly(10L);
+    }
+
+    private void enqueue(String sessionId, String content) {
+        service.enqueue(1L, sessionId, AiMessageRole.USER, ChatType.CHAT, content, null, null);
+    }
+
+    /**
+     * Вставка, содержащая строки сессии, падает первые times раз.
+     */
+    private void failInsertsOfSession(Long aiSessionId, int times) {
+        int[] failures = {0};
+        doAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            if (!sql.startsWith(INSERT_PREFIX)) {
+                return new int[0];
+            }
+            List<Object[]> rows = new ArrayList<>(invocation.<List<Object[]>>getArgument(1));
+            inserts.add(rows);
+            if (failures[0] < times && rows.stream().anyMatch(row -> aiSessionId.equals(row[0]))) {
+                failures[0]++;
+                throw new DataIntegrityViolationException("ai_message.session_id foreign key");
+            }
+            return new int[0];
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyList());
+    }
+}
@@ -0,0 +1,143 @@
+package org.core.service.ai;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.core.exception.exceptions.LlmOverloadedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LlmConcurrencyLimiterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private LlmConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new LlmConcurrencyLimiter(meterRegistry, 4, 1, 32, 0.5, 1, 200, 200, 200, 0.5, 48, 16);
+    }
+
+    @Test
+    void execute_halvesLimitWhenUpstreamThrottles() {
+        assertThatThrownBy(() -> limiter.execute(LlmConcurrencyLimiter.YANDEX, "gpt://model", () -> {
+            throw HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null);
+        })).isInstanceOf(HttpClientErrorException.class);
+
+        assertThat(limitOf("gpt://model")).isEqualTo(2.0);
+        assertThat(meterRegistry.get("llm.limiter.throttled").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void execute_growsLimitAdditivelyOnSuccess() {
+        limiter.execute(LlmConcurrencyLimiter.YANDEX, "gpt://model", () -> "ok");
+
+        assertThat(limitOf("gpt://model")).isEqualTo(4.25);
+    }
+
+    @Test
+    void execute_rejectsWhenQueueIsFull() throws Exception {
+        limiter = new LlmConcurrencyLimiter(meterRegistry, 1, 1, 1, 0.5, 1, 5_000, 5_000, 5_000, 0.5, 48, 16);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> limiter.execute(LlmConcurrencyLimiter.YANDEX, "gpt://model", () -> {
+                running.countDown();
+                await(release);
+                return "first";
+            }));
+            assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+            Future<String> queued = executor.submit(() -> limiter.execute(LlmConcurrencyLimiter.YANDEX, "gpt://model", () -> "queued"));
+            waitUntilQueued();
+
+            assertThatThrownBy(() -> limiter.execute(LlmConcurrencyLimiter.YANDEX, "gpt://model", () -> "rejected"))
+                    .isInstanceOf(LlmOverloadedException.class);
+
+            release.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("first");
+            assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("queued");
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_interleavesFlowsFairlyInQueue() throws Exception {
+        limiter = new LlmConcurrencyLimiter(meterRegistry, 1, 1, 1, 0.5, 10, 5_000, 5_000, 5_000, 0.5, 48, 16);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        LlmCaller heavy = new LlmCaller("user-1", LlmWorkload.GENERATE, 1.0);
+        LlmCaller light = new LlmCaller("user-2", LlmWorkload.GENERATE, 1.0);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            executor.submit(() -> limiter.execute(LlmConcurrencyLimiter.YANDEX, "gpt://model", () -> {
+                running.countDown();
+                await(release);
+                return "holder";
+            }));
+            assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+            List<Future<String>> queued = new ArrayList<>();
+            String[] names = {"heavy-1", "heavy-2", "heavy-3", "light-1"};
+            for (int i = 0; i < names.length; i++) {
+                String name = names[i];
+                LlmCaller caller = name.startsWith("heavy") ? heavy : light;
+                queued.add(executor.submit(() -> caller.call(() -> limiter.execute(LlmConcurrencyLimiter.YANDEX,
+                        "gpt://model", () -> {
+                            order.add(name);
+                            return name;
+                        }))));
+                waitUntilQueued(i + 1);
+            }
+
+            release.countDown();
+            for (Future<String> future : queued) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            assertThat(order).containsExactly("heavy-1", "light-1", "heavy-2", "heavy-3");
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private double limitOf(String model) {
+        return meterRegistry.get("llm.limiter.limit").tag("model", model).gauge().value();
+    }
+
+    private void waitUntilQueued() throws InterruptedException {
+        waitUntilQueued(1);
+    }
+
+    private void waitUntilQueued(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (meterRegistry.get("llm.limiter.queue").tag("priority", "interactive").gauge().value() < count
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
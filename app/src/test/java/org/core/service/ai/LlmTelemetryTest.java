@@ -0,0 +1,57 @@
+package org.core.service.ai;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.core.exception.exceptions.YandexGptException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LlmTelemetryTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private LlmTelemetry telemetry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("llm.telemetry.price-per-1k.yandexgpt-lite.input", "0.2")
+                .withProperty("llm.telemetry.price-per-1k.yandexgpt-lite.output", "0.4");
+        telemetry = new LlmTelemetry(meterRegistry, environment, 0, 100);
+    }
+
+    @Test
+    void modelName_dropsSchemeFolderAndVersion() {
+        assertThat(LlmTelemetry.modelName("gpt://b1g/yandexgpt-lite/latest")).isEqualTo("yandexgpt-lite");
+        assertThat(LlmTelemetry.modelName("deepseek-chat")).isEqualTo("deepseek-chat");
+        assertThat(LlmTelemetry.modelName(null)).isEqualTo("default");
+    }
+
+    @Test
+    void success_recordsLatencyTokensAndCostWithCallerTags() {
+        LlmCaller caller = new LlmCaller("user-1", LlmWorkload.GENERATE, 1.0).withStepType("choice");
+        caller.call(() -> {
+            LlmTelemetry.Call call = telemetry.start(LlmConcurrencyLimiter.YANDEX, "gpt://b1g/yandexgpt-lite/latest");
+            call.begin();
+            call.success(1000, 500);
+            return null;
+        });
+
+        assertThat(meterRegistry.get("llm.calls")
+                .tag("model", "yandexgpt-lite").tag("endpoint", "generate").tag("step_type", "choice")
+                .tag("outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("llm.tokens").tag("direction", "output").summary().totalAmount()).isEqualTo(500.0);
+        assertThat(meterRegistry.get("llm.cost").counter().count()).isEqualTo(0.4);
+    }
+
+    @Test
+    void failure_countsErrorsAndSkipsLatencyWhenCallNeverStarted() {
+        LlmTelemetry.Call call = telemetry.start(LlmConcurrencyLimiter.YANDEX, "gpt://b1g/yandexgpt-lite/latest");
+        call.failure(new YandexGptException("boom"));
+
+        assertThat(meterRegistry.get("llm.errors").tag("exception", "YandexGptException").counter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.find("llm.calls").timer()).isNull();
+    }
+}
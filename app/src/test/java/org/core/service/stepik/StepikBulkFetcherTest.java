@@ -0,0 +1,71 @@
+package org.core.service.stepik;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.core.dto.stepik.unit.StepikUnitResponseData;
+import org.core.exception.exceptions.StepikCourseIntegrationException;
+import org.core.util.HeaderBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StepikBulkFetcherTest {
+
+    private static final String BASE_URL = "https://stepik.test/api";
+
+    @Mock
+    private HeaderBuilder headerBuilder;
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    private StepikBulkFetcher fetcher;
+
+    @BeforeEach
+    void setUp() {
+        fetcher = new StepikBulkFetcher(headerBuilder, restTemplate, new ObjectMapper(), BASE_URL, 2);
+        when(headerBuilder.createHeaders()).thenReturn(new HttpHeaders());
+    }
+
+    @Test
+    void getUnits_pagesIdsAndSkipsMissing() {
+        when(restTemplate.exchange(eq(BASE_URL + "/units?ids[]=1&ids[]=2"), eq(HttpMethod.GET), any(HttpEntity.class), eq(String.class)))
+                .thenReturn(ResponseEntity.ok("{\"units\":[{\"id\":2,\"lesson\":20,\"position\":2},{\"id\":1,\"lesson\":10,\"position\":1}]}"));
+        when(restTemplate.exchange(eq(BASE_URL + "/units?ids[]=3"), eq(HttpMethod.GET), any(HttpEntity.class), eq(String.class)))
+                .thenReturn(ResponseEntity.ok("{\"units\":[]}"));
+
+        Map<Long, StepikUnitResponseData> units = fetcher.getUnits(List.of(1L, 2L, 1L, 3L));
+
+        assertThat(units).containsOnlyKeys(1L, 2L);
+        assertThat(units.get(2L).getLesson()).isEqualTo(20L);
+        verify(restTemplate, times(2)).exchange(any(String.class), eq(HttpMethod.GET), any(HttpEntity.class), eq(String.class));
+    }
+
+    @Test
+    void getUnits_failsOnErrorStatus() {
+        when(restTemplate.exchange(any(String.class), eq(HttpMethod.GET), any(HttpEntity.class), eq(String.class)))
+                .thenReturn(ResponseEntity.status(HttpStatus.BAD_GATEWAY).body("oops"));
+
+        assertThatThrownBy(() -> fetcher.getUnits(List.of(1L)))
+                .isInstanceOf(StepikCourseIntegrationException.class);
+    }
+}
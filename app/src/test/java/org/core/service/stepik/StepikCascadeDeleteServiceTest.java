@@ -0,0 +1,124 @@
+package org.core.service.stepik;
+
+import org.core.context.UserContextBean;
+import org.core.domain.Lesson;
+import org.core.domain.Step;
+import org.core.exception.exceptions.StepikStepIntegrationException;
+import org.core.repository.LessonRepository;
+import org.core.repository.SectionRepository;
+import org.core.service.stepik.course.StepikCourseSyncService;
+import org.core.service.stepik.lesson.StepikLessonSyncService;
+import org.core.service.stepik.section.StepikSectionSyncService;
+import org.core.service.stepik.step.StepikStepSyncService;
+import org.core.util.UserAccessService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StepikCascadeDeleteServiceTest {
+
+    @Mock
+    private StepikCourseSyncService courseSyncService;
+
+    @Mock
+    private StepikSectionSyncService sectionSyncService;
+
+    @Mock
+    private StepikLessonSyncService lessonSyncService;
+
+    @Mock
+    private StepikStepSyncService stepSyncService;
+
+    @Mock
+    private UserAccessService userAccessService;
+
+    @Mock
+    private SectionRepository sectionRepository;
+
+    @Mock
+    private LessonRepository lessonRepository;
+
+    private ExecutorService executor;
+    private StepikCascadeDeleteService service;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        service = new StepikCascadeDeleteService(executor, courseSyncService, sectionSyncService, lessonSyncService,
+                stepSyncService, new UserContextBean(), userAccessService, sectionRepository, lessonRepository, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void deleteLesson_limitsConcurrentStepikRequests() {
+        when(lessonRepository.findById(1L)).thenReturn(Optional.of(lesson(20)));
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(10);
+            inFlight.decrementAndGet();
+            return null;
+        }).when(stepSyncService).deleteStepFromStepik(anyLong());
+
+        service.deleteFullLessonFromStepikById(1L, 7L);
+
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+        verify(lessonSyncService).deleteLessonFromStepik(1L);
+    }
+
+    @Test
+    void deleteLesson_propagatesStepFailureAndKeepsLesson() {
+        when(lessonRepository.findById(1L)).thenReturn(Optional.of(lesson(3)));
+        doAnswer(invocation -> {
+            if (invocation.<Long>getArgument(0) == 102L) {
+                throw new StepikStepIntegrationException("Stepik request failed");
+            }
+            return null;
+        }).when(stepSyncService).deleteStepFromStepik(anyLong());
+
+        assertThatThrownBy(() -> service.deleteFullLessonFromStepikById(1L, 7L))
+                .isInstanceOf(StepikStepIntegrationException.class);
+        verify(stepSyncService).deleteStepFromStepik(101L);
+        verify(stepSyncService).deleteStepFromStepik(103L);
+        verify(lessonSyncService, never()).deleteLessonFromStepik(anyLong());
+    }
+
+    private static Lesson lesson(int stepCount) {
+        Lesson lesson = new Lesson();
+        lesson.setId(1L);
+        lesson.setStepikLessonId(500L);
+        lesson.setSteps(new ArrayList<>(LongStream.rangeClosed(1, stepCount)
+                .mapToObj(i -> {
+                    Step step = new Step();
+                    step.setId(100L + i);
+                    step.setStepikStepId(900L + i);
+                    return step;
+                })
+                .toList()));
+        return lesson;
+    }
+}
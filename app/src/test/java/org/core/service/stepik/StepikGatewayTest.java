@@ -0,0 +1,78 @@
+package org.core.service.stepik;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.core.context.UserContextBean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StepikGatewayTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private StepikGateway gateway;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        gateway = new StepikGateway(new UserContextBean(), meterRegistry, 1000, 10, 2, 1000, 3, 1, 5, 1000);
+    }
+
+    @Test
+    void intercept_retriesThrottledRequestAfterRetryAfter() throws Exception {
+        MockClientHttpResponse throttled = new MockClientHttpResponse(new byte[0], HttpStatus.TOO_MANY_REQUESTS);
+        throttled.getHeaders().add("Retry-After", "0");
+        Deque<ClientHttpResponse> responses = new ArrayDeque<>(List.of(
+                throttled, new MockClientHttpResponse(new byte[0], HttpStatus.OK)));
+        AtomicInteger calls = new AtomicInteger();
+
+        ClientHttpResponse response = gateway.intercept(new MockClientHttpRequest(HttpMethod.POST, URI.create("/api/lessons")),
+                new byte[0], (request, body) -> {
+                    calls.incrementAndGet();
+                    return responses.poll();
+                });
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(calls).hasValue(2);
+        assertThat(meterRegistry.counter("stepik.gateway.retries", "reason", "429").count()).isEqualTo(1);
+    }
+
+    @Test
+    void intercept_doesNotRetryNonIdempotentServerError() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        ClientHttpResponse response = gateway.intercept(new MockClientHttpRequest(HttpMethod.POST, URI.create("/api/lessons")),
+                new byte[0], (request, body) -> {
+                    calls.incrementAndGet();
+                    return new MockClientHttpResponse(new byte[0], HttpStatus.SERVICE_UNAVAILABLE);
+                });
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void intercept_givesUpAfterMaxAttemptsForIdempotentRequest() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        ClientHttpResponse response = gateway.intercept(new MockClientHttpRequest(HttpMethod.GET, URI.create("/api/steps")),
+                new byte[0], (request, body) -> {
+                    calls.incrementAndGet();
+                    return new MockClientHttpResponse(new byte[0], HttpStatus.BAD_GATEWAY);
+                });
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_GATEWAY);
+        assertThat(calls).hasValue(3);
+    }
+}
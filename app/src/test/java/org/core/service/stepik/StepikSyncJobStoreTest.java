@@ -0,0 +1,69 @@
+package org.core.service.stepik;
+
+import org.core.domain.StepikSyncEntityType;
+import org.core.domain.StepikSyncJob;
+import org.core.domain.StepikSyncTask;
+import org.core.repository.StepikSyncJobRepository;
+import org.core.repository.StepikSyncTaskRepository;
+import org.core.service.stepik.StepikSyncPlanner.LessonNode;
+import org.core.service.stepik.StepikSyncPlanner.SectionNode;
+import org.core.service.stepik.StepikSyncPlanner.StepNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StepikSyncJobStoreTest {
+
+    @Mock
+    private StepikSyncJobRepository jobRepository;
+
+    @Mock
+    private StepikSyncTaskRepository taskRepository;
+
+    @InjectMocks
+    private StepikSyncJobStore jobStore;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void createJob_ordersTasksByTreeAndSkipsSyncedParents() {
+        when(jobRepository.save(any(StepikSyncJob.class))).thenAnswer(invocation -> {
+            StepikSyncJob job = invocation.getArgument(0);
+            job.setId(5L);
+            return job;
+        });
+        List<SectionNode> plan = List.of(
+                new SectionNode(1L, 100L, false, List.of(
+                        new LessonNode(10L, 200L, false, List.of(new StepNode(20L, 300L, 1))),
+                        new LessonNode(11L, null, false, List.of(new StepNode(21L, null, 1), new StepNode(22L, null, 2))))),
+                new SectionNode(2L, null, false, List.of()));
+
+        StepikSyncJob job = jobStore.createJob(7L, 3L, plan);
+
+        ArgumentCaptor<List<StepikSyncTask>> tasks = ArgumentCaptor.forClass(List.class);
+        verify(taskRepository).saveAll(tasks.capture());
+        assertThat(tasks.getValue())
+                .extracting(StepikSyncTask::getEntityType, StepikSyncTask::getEntityId, StepikSyncTask::getSeq,
+                        StepikSyncTask::getIdempotencyKey)
+                .containsExactly(
+                        tuple(StepikSyncEntityType.STEP, 20L, 0, "STEP:20"),
+                        tuple(StepikSyncEntityType.LESSON, 11L, 1, "LESSON:11"),
+                        tuple(StepikSyncEntityType.STEP, 21L, 2, "STEP:21"),
+                        tuple(StepikSyncEntityType.STEP, 22L, 3, "STEP:22"),
+                        tuple(StepikSyncEntityType.SECTION, 2L, 4, "SECTION:2"));
+        assertThat(job.getTotalTasks()).isEqualTo(5);
+        assertThat(job.getUserId()).isEqualTo(7L);
+        assertThat(job.getActiveCourseId()).isEqualTo(3L);
+    }
+}
@@ -0,0 +1,51 @@
+package org.core.service.stepik;
+
+import org.core.domain.Course;
+import org.core.domain.Lesson;
+import org.core.domain.Section;
+import org.core.domain.Step;
+import org.core.domain.StepikSyncEntityType;
+import org.core.repository.StepikSyncJournalRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class StepikSyncJournalTest {
+
+    @Mock
+    private StepikSyncJournalRepository journalRepository;
+
+    @InjectMocks
+    private StepikSyncJournal journal;
+
+    @Test
+    void track_journalsUnsyncedStepIdempotently() {
+        journal.track(step(null, false));
+
+        verify(journalRepository).upsert(1L, "STEP", 7L);
+        verify(journalRepository, never()).deleteByEntity(any(), any());
+    }
+
+    @Test
+    void track_removesSyncedStep() {
+        journal.track(step(900L, false));
+
+        verify(journalRepository).deleteByEntity(StepikSyncEntityType.STEP, 7L);
+        verify(journalRepository, never()).upsert(any(), any(), any());
+    }
+
+    private static Step step(Long stepikStepId, boolean needsStepikSync) {
+        Course course = new Course();
+        course.setId(1L);
+        Section section = Section.builder().id(2L).course(course).build();
+        Lesson lesson = Lesson.builder().id(3L).section(section).build();
+        return Step.builder().id(7L).lesson(lesson).stepikStepId(stepikStepId).needsStepikSync(needsStepikSync).build();
+    }
+}
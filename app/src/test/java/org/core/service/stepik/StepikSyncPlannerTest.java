@@ -0,0 +1,35 @@
+package org.core.service.stepik;
+
+import org.core.dto.stepik.sync.StepikSyncRow;
+import org.core.service.stepik.StepikSyncPlanner.SectionNode;
+import org.core.service.stepik.StepikSyncPlanner.StepNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StepikSyncPlannerTest {
+
+    @Test
+    void build_keepsDirtyNodesWithTheirAncestors() {
+        List<SectionNode> plan = StepikSyncPlanner.build(List.of(
+                // строки из разных запросов приходят не по порядку
+                new StepikSyncRow(2L, 200L, false, 2, 20L, 2000L, false, 1, 203L, 9003L, true, 3),
+                // новый раздел с уже синхронизированным уроком
+                new StepikSyncRow(3L, null, false, 3, 30L, 3000L, false, 1, null, null, null, null),
+                // раздел из журнала, который уже синхронизирован
+                new StepikSyncRow(1L, 100L, false, 1, null, null, null, null, null, null, null, null),
+                new StepikSyncRow(2L, 200L, false, 2, 20L, 2000L, false, 1, 201L, 9001L, true, 1),
+                new StepikSyncRow(2L, 200L, false, 2, 20L, 2000L, false, 1, 202L, null, false, 2)));
+
+        assertThat(plan).extracting(SectionNode::id).containsExactly(2L, 3L);
+        SectionNode section = plan.get(0);
+        assertThat(section.dirty()).isFalse();
+        assertThat(section.lessons()).hasSize(1);
+        assertThat(section.lessons().get(0).steps()).extracting(StepNode::id).containsExactly(201L, 202L, 203L);
+        assertThat(section.lessons().get(0).steps()).filteredOn(StepNode::isNew).extracting(StepNode::id).containsExactly(202L);
+        assertThat(plan.get(1).dirty()).isTrue();
+        assertThat(plan.get(1).lessons()).isEmpty();
+    }
+}
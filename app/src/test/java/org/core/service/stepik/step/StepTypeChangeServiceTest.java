@@ -0,0 +1,148 @@
+package org.core.service.stepik.step;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.core.domain.Step;
+import org.core.domain.StepType;
+import org.core.dto.step.StepResponseDTO;
+import org.core.dto.step.UpdateStepDTO;
+import org.core.dto.stepik.step.text.StepikBlockTextRequest;
+import org.core.repository.StepRepository;
+import org.core.service.agent.AgentService;
+import org.core.service.crud.StepService;
+import org.core.service.stepik.StepikSyncJournal;
+import org.core.service.subscription.SubscriptionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StepTypeChangeServiceTest {
+
+    @Mock
+    private AgentService agentService;
+    @Mock
+    private StepRepository stepRepository;
+    @Mock
+    private StepService stepService;
+    @Mock
+    private StepikStepService stepikStepService;
+    @Mock
+    private SubscriptionService subscriptionService;
+    @Mock
+    private StepikSyncJournal stepikSyncJournal;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ExecutorService executor;
+    private StepTypeChangeService service;
+    private Step step;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        service = new StepTypeChangeService(executor, new ObjectMapper(), agentService, stepRepository, stepService,
+                stepikStepService, subscriptionService, stepikSyncJournal, transactionManager);
+        step = Step.builder().id(7L).stepikStepId(900L).version(3L).build();
+        when(stepService.getStepById(7L)).thenReturn(StepResponseDTO.builder()
+                .id(7L)
+                .type(StepType.TEXT)
+                .content("Что такое JVM?")
+                .stepikStepId(900L)
+                .version(3L)
+                .build());
+        when(stepRepository.findById(7L)).thenReturn(Optional.of(step));
+        when(stepRepository.saveAndFlush(step)).thenAnswer(invocation -> {
+            step.setVersion(step.getVersion() + 1);
+            return step;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void changeStepType_detachesFromStepikAndUpdatesType() {
+        StepikBlockTextRequest block = new StepikBlockTextRequest();
+        when(agentService.generateStep(eq(1L), eq("s"), any(), eq("choice"), isNull(), eq(false))).thenReturn(block);
+        StepResponseDTO result = StepResponseDTO.builder().id(7L).type(StepType.CHOICE).build();
+        when(stepService.updateStep(any())).thenAnswer(invocation -> {
+            UpdateStepDTO update = invocation.getArgument(0);
+            step.setType(update.getType());
+            return result;
+        });
+
+        assertThat(service.changeStepType(7L, StepType.CHOICE, "s", 1L)).isSameAs(result);
+
+        verify(stepikStepService).deleteStep(900L);
+        assertThat(step.getStepikStepId()).isNull();
+        assertThat(step.getType()).isEqualTo(StepType.CHOICE);
+        verify(stepikSyncJournal).track(step);
+        verify(subscriptionService).recordAiUsage(1L, 1);
+    }
+
+    @Test
+    void changeStepType_clearsStepikIdWhenStepWasModifiedConcurrently() {
+        when(agentService.generateStep(eq(1L), eq("s"), any(), eq("choice"), isNull(), eq(false)))
+                .thenReturn(new StepikBlockTextRequest());
+        // после отвязки от Stepik, пока шла генерация, шаг успел изменить пользователь
+        when(stepRepository.findById(7L)).thenReturn(Optional.of(step)).thenAnswer(invocation -> {
+            step.setVersion(step.getVersion() + 1);
+            return Optional.of(step);
+        });
+
+        assertThatThrownBy(() -> service.changeStepType(7L, StepType.CHOICE, "s", 1L))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+
+        verify(stepikStepService).deleteStep(900L);
+        assertThat(step.getStepikStepId()).isNull();
+        verify(stepService, never()).updateStep(any());
+        verify(subscriptionService, never()).recordAiUsage(anyLong(), any(Integer.class));
+    }
+
+    @Test
+    void changeStepType_clearsStepikIdWhenUpdateFails() {
+        when(agentService.generateStep(eq(1L), eq("s"), any(), eq("choice"), isNull(), eq(false)))
+                .thenReturn(new StepikBlockTextRequest());
+        when(stepService.updateStep(any())).thenThrow(new IllegalStateException("DB is down"));
+
+        assertThatThrownBy(() -> service.changeStepType(7L, StepType.CHOICE, "s", 1L))
+                .hasMessageContaining("DB is down");
+
+        assertThat(step.getStepikStepId()).isNull();
+        verify(stepikSyncJournal).track(step);
+    }
+
+    @Test
+    void changeStepType_clearsStepikIdWhenGenerationFails() {
+        when(agentService.generateStep(eq(1L), eq("s"), any(), eq("choice"), isNull(), eq(false)))
+                .thenThrow(new IllegalStateException("LLM is down"));
+
+        assertThatThrownBy(() -> service.changeStepType(7L, StepType.CHOICE, "s", 1L))
+                .hasMessageContaining("LLM is down");
+
+        assertThat(step.getStepikStepId()).isNull();
+        verify(stepikSyncJournal).track(step);
+        verify(stepService, never()).updateStep(any());
+    }
+}